@@ -19,6 +19,8 @@ package org.ardverk.dht;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.SocketAddress;
+import java.util.Collection;
+import java.util.Map;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -37,8 +39,10 @@ import org.ardverk.dht.entity.PutEntity;
 import org.ardverk.dht.entity.QuickenEntity;
 import org.ardverk.dht.entity.ValueEntity;
 import org.ardverk.dht.io.MessageDispatcher;
+import org.ardverk.dht.io.ValueListener;
 import org.ardverk.dht.io.transport.Transport;
 import org.ardverk.dht.routing.Contact;
+import org.ardverk.dht.routing.LivenessTracker;
 import org.ardverk.dht.routing.RouteTable;
 import org.ardverk.dht.rsrc.Key;
 import org.ardverk.dht.rsrc.Value;
@@ -56,14 +60,24 @@ public class ArdverkDHT extends AbstractDHT {
   
   private final QuickenManager quickenManager;
   
+  private final RefreshManager refreshManager;
+  
   private final StoreManager storeManager;
   
   private final DiscoveryManager discoveryManager;
   
+  private final BatchManager batchManager;
+  
   private final PingManager pingManager;
   
   private final MessageDispatcher messageDispatcher;
   
+  private final LivenessTracker liveness;
+  
+  private final LookupCache lookupCache;
+  
+  private final ValueEntityCache valueCache;
+  
   @Inject
   public ArdverkDHT(RouteTable routeTable, 
       Datastore datastore,
@@ -71,18 +85,28 @@ public class ArdverkDHT extends AbstractDHT {
       PingManager pingManager, 
       BootstrapManager bootstrapManager,
       QuickenManager quickenManager,
+      RefreshManager refreshManager,
       StoreManager storeManager,
       DiscoveryManager discoveryManager,
-      MessageDispatcher messageDispatcher) {
+      BatchManager batchManager,
+      MessageDispatcher messageDispatcher,
+      LivenessTracker liveness,
+      LookupCache lookupCache,
+      ValueEntityCache valueCache) {
     super(routeTable, datastore, futureManager);
     
     this.messageDispatcher = messageDispatcher;
+    this.liveness = liveness;
+    this.lookupCache = lookupCache;
+    this.valueCache = valueCache;
     
     this.pingManager = pingManager;
     this.bootstrapManager = bootstrapManager;
     this.quickenManager = quickenManager;
+    this.refreshManager = refreshManager;
     this.storeManager = storeManager;
     this.discoveryManager = discoveryManager;
+    this.batchManager = batchManager;
     
     BindableUtils.bind(routeTable, new RouteTable.ContactPinger() {
       @Override
@@ -97,6 +121,7 @@ public class ArdverkDHT extends AbstractDHT {
   @Override
   public void close() {
     super.close();
+    refreshManager.close();
     messageDispatcher.close();
     
     BindableUtils.unbind(datastore);
@@ -124,6 +149,13 @@ public class ArdverkDHT extends AbstractDHT {
     return quickenManager;
   }
 
+  /**
+   * Returns the {@link RefreshManager}.
+   */
+  public RefreshManager getRefreshManager() {
+    return refreshManager;
+  }
+
   /**
    * Returns the {@link StoreManager}.
    */
@@ -138,6 +170,13 @@ public class ArdverkDHT extends AbstractDHT {
     return discoveryManager;
   }
   
+  /**
+   * Returns the {@link BatchManager}.
+   */
+  public BatchManager getBatchManager() {
+    return batchManager;
+  }
+  
   /**
    * Returns the {@link PingManager}.
    */
@@ -145,6 +184,27 @@ public class ArdverkDHT extends AbstractDHT {
     return pingManager;
   }
   
+  /**
+   * Returns the {@link LivenessTracker}.
+   */
+  public LivenessTracker getLivenessTracker() {
+    return liveness;
+  }
+  
+  /**
+   * Returns the {@link LookupCache}.
+   */
+  public LookupCache getLookupCache() {
+    return lookupCache;
+  }
+  
+  /**
+   * Returns the {@link ValueEntityCache}.
+   */
+  public ValueEntityCache getValueEntityCache() {
+    return valueCache;
+  }
+  
   @Override
   public void bind(Transport transport) throws IOException {
     messageDispatcher.bind(transport);
@@ -203,11 +263,29 @@ public class ArdverkDHT extends AbstractDHT {
   public DHTFuture<ValueEntity> get(Key key, ValueConfig config) {
     return discoveryManager.get(key, config);
   }
+  
+  @Override
+  public DHTFuture<ValueEntity> get(Key key, 
+      ValueListener listener, ValueConfig config) {
+    return discoveryManager.get(key, listener, config);
+  }
 
   @Override
   public DHTFuture<PutEntity> put(Key key, Value value, PutConfig config) {
     return storeManager.put(key, value, config);
   }
+  
+  @Override
+  public Map<Key, DHTFuture<ValueEntity>> getAll(
+      Collection<? extends Key> keys, ValueConfig config) {
+    return batchManager.getAll(keys, config);
+  }
+  
+  @Override
+  public Map<Key, DHTFuture<PutEntity>> putAll(
+      Map<? extends Key, ? extends Value> values, PutConfig config) {
+    return batchManager.putAll(values, config);
+  }
 
   @Override
   public DHTFuture<QuickenEntity> quicken(QuickenConfig config) {
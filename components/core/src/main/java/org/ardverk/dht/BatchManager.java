@@ -0,0 +1,600 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.ardverk.concurrent.AsyncFuture;
+import org.ardverk.concurrent.AsyncFutureListener;
+import org.ardverk.concurrent.FutureUtils;
+import org.ardverk.dht.concurrent.DHTFuture;
+import org.ardverk.dht.concurrent.DHTFutures;
+import org.ardverk.dht.concurrent.DHTFutures.Function;
+import org.ardverk.dht.concurrent.DHTProcess;
+import org.ardverk.dht.concurrent.Deadline;
+import org.ardverk.dht.concurrent.NopProcess;
+import org.ardverk.dht.config.Config;
+import org.ardverk.dht.config.ConfigProvider;
+import org.ardverk.dht.config.PutConfig;
+import org.ardverk.dht.config.StoreConfig;
+import org.ardverk.dht.config.ValueConfig;
+import org.ardverk.dht.entity.NodeEntity;
+import org.ardverk.dht.entity.PutEntity;
+import org.ardverk.dht.entity.StoreBatchEntity;
+import org.ardverk.dht.entity.StoreEntity;
+import org.ardverk.dht.entity.ValueEntity;
+import org.ardverk.dht.routing.Contact;
+import org.ardverk.dht.routing.RouteTable;
+import org.ardverk.dht.rsrc.Key;
+import org.ardverk.dht.rsrc.Value;
+import org.ardverk.dht.utils.XorComparator;
+
+/**
+ * The {@link BatchManager} manages FIND_VALUE and STORE operations 
+ * for many {@link Key}s at once. {@link Key}s for which our 
+ * {@link RouteTable} yields the same closest {@link Contact}s share 
+ * a single FIND_NODE lookup and the number of lookups that are 
+ * running at the same time is bounded.
+ */
+@Singleton
+public class BatchManager {
+  
+  public static final int DEFAULT_MAX_CONCURRENT_LOOKUPS = 4;
+  
+  private final ConfigProvider configProvider;
+  
+  private final FutureManager futureManager;
+  
+  private final RouteTable routeTable;
+  
+  private final DiscoveryManager discoveryManager;
+  
+  private final StoreManager storeManager;
+  
+  private volatile int maxConcurrentLookups = DEFAULT_MAX_CONCURRENT_LOOKUPS;
+  
+  @Inject
+  BatchManager(ConfigProvider configProvider,
+      FutureManager futureManager, 
+      RouteTable routeTable,
+      DiscoveryManager discoveryManager,
+      StoreManager storeManager) {
+    
+    this.configProvider = configProvider;
+    this.futureManager = futureManager;
+    this.routeTable = routeTable;
+    this.discoveryManager = discoveryManager;
+    this.storeManager = storeManager;
+  }
+  
+  /**
+   * Returns the maximum number of lookups a single batch 
+   * operation may run at the same time.
+   */
+  public int getMaxConcurrentLookups() {
+    return maxConcurrentLookups;
+  }
+  
+  public void setMaxConcurrentLookups(int maxConcurrentLookups) {
+    if (maxConcurrentLookups < 1) {
+      throw new IllegalArgumentException(
+          "maxConcurrentLookups=" + maxConcurrentLookups);
+    }
+    this.maxConcurrentLookups = maxConcurrentLookups;
+  }
+  
+  /**
+   * Performs FIND_VALUE lookups for all given 
+   * {@link Key}s and returns a {@link DHTFuture} for each of them.
+   */
+  public Map<Key, DHTFuture<ValueEntity>> getAll(
+      Collection<? extends Key> keys, ValueConfig config) {
+    
+    final ValueConfig cfg = configProvider.get(config);
+    
+    Map<Key, DHTFuture<ValueEntity>> futures = new LinkedHashMap<>();
+    Batch batch = new Batch(maxConcurrentLookups);
+    
+    for (List<Key> keyGroup : group(keys)) {
+      batch.add(new Group<ValueEntity>(keyGroup, cfg, futures) {
+        @Override
+        protected DHTFuture<NodeEntity> lookup(Key key) {
+          return discoveryManager.discover(key.getId(), cfg, deadline);
+        }
+        
+        @Override
+        protected void single(Key key, DHTFuture<ValueEntity> dst) {
+          DHTFutures.forward(discoveryManager.get(key, cfg), dst);
+        }
+
+        @Override
+        protected void follow(Key key, Contact[] contacts, 
+            NodeEntity nodeEntity, DHTFuture<ValueEntity> dst) {
+          DHTFutures.forward(discoveryManager.get(contacts, key, 
+              null, cfg, deadline), dst);
+        }
+      });
+    }
+    
+    batch.start();
+    return futures;
+  }
+  
+  /**
+   * Performs STORE operations for all given 
+   * {@link Key}-{@link Value} pairs and returns a {@link DHTFuture}
+   * for each {@link Key}. 
+   * 
+   * NOTE: {@link Key}s that share a lookup with other {@link Key}s 
+   * are being stored with a plain STORE or, if the {@link StoreConfig}
+   * has a batch size, with STOREs of many key-value pairs. The 
+   * {@link PutEntity} of such a {@link Key} has the {@link NodeEntity} 
+   * of the shared lookup.
+   */
+  public Map<Key, DHTFuture<PutEntity>> putAll(
+      final Map<? extends Key, ? extends Value> values, PutConfig config) {
+    
+    final PutConfig cfg = configProvider.get(config);
+    
+    int w = cfg.getStoreConfig().getW();
+    if (w < 1) {
+      throw new IllegalArgumentException("w=" + w);
+    }
+    
+    for (Map.Entry<? extends Key, ? extends Value> entry : values.entrySet()) {
+      if (w >= 2 && !entry.getValue().isRepeatable()) {
+        throw new IllegalArgumentException(
+            "The value is not repeatable: " + entry.getKey() + ", w=" + w);
+      }
+    }
+    
+    Map<Key, DHTFuture<PutEntity>> futures = new LinkedHashMap<>();
+    Batch batch = new Batch(maxConcurrentLookups);
+    
+    for (List<Key> keyGroup : group(values.keySet())) {
+      batch.add(new Group<PutEntity>(keyGroup, cfg, futures) {
+        @Override
+        protected DHTFuture<NodeEntity> lookup(Key key) {
+          return discoveryManager.discover(key.getId(), 
+              cfg.getLookupConfig(), deadline);
+        }
+        
+        @Override
+        protected void single(Key key, DHTFuture<PutEntity> dst) {
+          DHTFutures.forward(storeManager.put(key, values.get(key), cfg), dst);
+        }
+        
+        @Override
+        protected void follow(Key key, Contact[] contacts, 
+            final NodeEntity nodeEntity, DHTFuture<PutEntity> dst) {
+          
+          DHTFuture<StoreEntity> storeFuture = storeManager.store(
+              contacts, key, values.get(key), 
+              cfg.getStoreConfig(), deadline);
+          
+          DHTFutures.forward(DHTFutures.transform(storeFuture, 
+              new Function<StoreEntity, PutEntity>() {
+            @Override
+            public PutEntity apply(StoreEntity storeEntity) {
+              return new PutEntity(nodeEntity, storeEntity);
+            }
+          }), dst);
+        }
+        
+        @Override
+        protected void follow(Map<Key, DHTFuture<PutEntity>> pending, 
+            NodeEntity nodeEntity) {
+          
+          int batchSize = cfg.getStoreConfig().getBatchSize();
+          if (batchSize <= 0) {
+            super.follow(pending, nodeEntity);
+            return;
+          }
+          
+          List<Key> keys = new ArrayList<>(pending.keySet());
+          for (int i = 0; i < keys.size(); i += batchSize) {
+            List<Key> batch = keys.subList(i, 
+                Math.min(i + batchSize, keys.size()));
+            
+            try {
+              storeAll(batch, values, pending, nodeEntity, 
+                  cfg.getStoreConfig(), deadline);
+            } catch (Throwable t) {
+              for (Key key : batch) {
+                pending.get(key).setException(t);
+              }
+            }
+          }
+        }
+      });
+    }
+    
+    batch.start();
+    return futures;
+  }
+  
+  /**
+   * Sends the given {@link Key}s and their {@link Value}s in a single
+   * STORE request to each replica and completes their {@link DHTFuture}s 
+   * with the result.
+   */
+  private void storeAll(List<Key> keys, Map<? extends Key, ? extends Value> values,
+      Map<Key, DHTFuture<PutEntity>> dst, final NodeEntity nodeEntity, 
+      StoreConfig config, Deadline deadline) {
+    
+    Key[] batchKeys = keys.toArray(new Key[0]);
+    Value[] batchValues = new Value[batchKeys.length];
+    
+    final List<DHTFuture<PutEntity>> futures = new ArrayList<>();
+    for (int i = 0; i < batchKeys.length; i++) {
+      batchValues[i] = values.get(batchKeys[i]);
+      futures.add(dst.get(batchKeys[i]));
+    }
+    
+    final DHTFuture<StoreBatchEntity> storeFuture = storeManager.storeAll(
+        nodeEntity.getContacts(), batchKeys, batchValues, config, deadline);
+    
+    storeFuture.addAsyncFutureListener(new AsyncFutureListener<StoreBatchEntity>() {
+      @Override
+      public void operationComplete(AsyncFuture<StoreBatchEntity> future) {
+        if (future.isCancelled()) {
+          for (DHTFuture<PutEntity> dst : futures) {
+            dst.cancel(true);
+          }
+          return;
+        }
+        
+        Throwable exception = null;
+        try {
+          StoreEntity[] entities = future.get().getStoreEntities();
+          for (int i = 0; i < entities.length; i++) {
+            futures.get(i).setValue(new PutEntity(nodeEntity, entities[i]));
+          }
+        } catch (ExecutionException err) {
+          exception = err.getCause();
+        } catch (Throwable t) {
+          exception = t;
+        }
+        
+        if (exception != null) {
+          for (DHTFuture<PutEntity> dst : futures) {
+            dst.setException(exception);
+          }
+        }
+      }
+    });
+    
+    // Cancel the STORE once nobody is waiting for it anymore
+    final AtomicInteger remaining = new AtomicInteger(futures.size());
+    AsyncFutureListener<PutEntity> listener = new AsyncFutureListener<PutEntity>() {
+      @Override
+      public void operationComplete(AsyncFuture<PutEntity> future) {
+        if (remaining.decrementAndGet() == 0) {
+          storeFuture.cancel(true);
+        }
+      }
+    };
+    
+    for (DHTFuture<PutEntity> future : futures) {
+      future.addAsyncFutureListener(listener);
+    }
+  }
+  
+  /**
+   * Groups the given {@link Key}s by the closest {@link Contact}s
+   * of our {@link RouteTable}.
+   */
+  private List<List<Key>> group(Collection<? extends Key> keys) {
+    Map<Set<KUID>, List<Key>> groups = new LinkedHashMap<>();
+    
+    for (Key key : new LinkedHashSet<Key>(keys)) {
+      Set<KUID> closest = new HashSet<>();
+      for (Contact contact : routeTable.select(key.getId())) {
+        closest.add(contact.getId());
+      }
+      
+      List<Key> group = groups.get(closest);
+      if (group == null) {
+        group = new ArrayList<>();
+        groups.put(closest, group);
+      }
+      group.add(key);
+    }
+    
+    return new ArrayList<>(groups.values());
+  }
+  
+  /**
+   * A {@link Batch} runs its {@link Group}s one after the other 
+   * with at most the given number of them at the same time.
+   */
+  private static class Batch {
+    
+    private final Queue<Group<?>> queue = new ArrayDeque<>();
+    
+    private int permits;
+    
+    private boolean running = false;
+    
+    public Batch(int permits) {
+      this.permits = permits;
+    }
+    
+    public synchronized void add(Group<?> group) {
+      group.batch = this;
+      queue.add(group);
+    }
+    
+    public void start() {
+      next();
+    }
+    
+    private void release() {
+      synchronized (this) {
+        ++permits;
+      }
+      next();
+    }
+    
+    /**
+     * Starts as many {@link Group}s as there are permits. Groups
+     * that complete right away don't recurse into this method but
+     * leave it to the loop that is already running.
+     */
+    private void next() {
+      synchronized (this) {
+        if (running) {
+          return;
+        }
+        running = true;
+      }
+      
+      while (true) {
+        Group<?> group = null;
+        synchronized (this) {
+          if (permits <= 0 || queue.isEmpty()) {
+            running = false;
+            return;
+          }
+          
+          --permits;
+          group = queue.poll();
+        }
+        
+        group.start();
+      }
+    }
+  }
+  
+  /**
+   * A {@link Group} of {@link Key}s that share a single FIND_NODE 
+   * lookup. The {@link Key}s are being looked up one-by-one if 
+   * there is only one of them.
+   */
+  private abstract class Group<V> {
+    
+    private final List<Key> keys;
+    
+    private final Config config;
+    
+    private final Map<Key, DHTFuture<V>> futures = new LinkedHashMap<>();
+    
+    /**
+     * The {@link Deadline} of the {@link Group}'s lookup and the 
+     * operations that follow it. It starts once the {@link Group}
+     * has been started rather than when it's been queued.
+     */
+    protected volatile Deadline deadline = null;
+    
+    private Batch batch = null;
+    
+    private DHTFuture<NodeEntity> lookupFuture = null;
+    
+    private int remaining;
+    
+    private boolean started = false;
+    
+    public Group(List<Key> keys, Config config, 
+        Map<Key, DHTFuture<V>> dst) {
+      this.keys = keys;
+      this.config = config;
+      this.remaining = keys.size();
+      
+      AsyncFutureListener<V> listener = new AsyncFutureListener<V>() {
+        @Override
+        public void operationComplete(AsyncFuture<V> future) {
+          handleDone();
+        }
+      };
+      
+      // The DHTFutures have no timeout of their own as the Group 
+      // may have to wait for a while until it gets started. The 
+      // operations that complete them are bound by the Deadline.
+      for (Key key : keys) {
+        DHTProcess<V> process = NopProcess.create();
+        DHTFuture<V> future = futureManager.submit(
+            config.getExecutorKey(), process, -1L, TimeUnit.MILLISECONDS);
+        
+        futures.put(key, future);
+        dst.put(key, future);
+        
+        future.addAsyncFutureListener(listener);
+      }
+    }
+    
+    /**
+     * Starts the lookup for the given {@link Key}.
+     */
+    protected abstract DHTFuture<NodeEntity> lookup(Key key);
+    
+    /**
+     * Starts the operation for a {@link Key} that doesn't share
+     * its lookup with any other {@link Key}.
+     */
+    protected abstract void single(Key key, DHTFuture<V> dst);
+    
+    /**
+     * Starts the operation for the given {@link Key} with the
+     * result of the shared lookup. The {@link Contact}s are sorted
+     * by their XOR distance to the {@link Key}.
+     */
+    protected abstract void follow(Key key, Contact[] contacts, 
+        NodeEntity nodeEntity, DHTFuture<V> dst);
+    
+    /**
+     * Starts the operations for the given {@link Key}s with the
+     * result of the shared lookup. 
+     */
+    protected void follow(Map<Key, DHTFuture<V>> pending, 
+        NodeEntity nodeEntity) {
+      
+      Contact[] contacts = nodeEntity.getContacts();
+      
+      for (Map.Entry<Key, DHTFuture<V>> entry : pending.entrySet()) {
+        Key key = entry.getKey();
+        DHTFuture<V> future = entry.getValue();
+        
+        Contact[] sorted = contacts.clone();
+        Arrays.sort(sorted, new XorComparator(key.getId()));
+        
+        try {
+          follow(key, sorted, nodeEntity, future);
+        } catch (Throwable t) {
+          future.setException(t);
+        }
+      }
+    }
+    
+    public void start() {
+      boolean done = false;
+      synchronized (this) {
+        started = true;
+        done = (remaining == 0);
+      }
+      
+      // All DHTFutures were cancelled before we got started
+      if (done) {
+        batch.release();
+        return;
+      }
+      
+      deadline = Deadline.after(config.getOperationTimeoutInMillis(), 
+          TimeUnit.MILLISECONDS);
+      
+      try {
+        if (keys.size() == 1) {
+          Key key = keys.get(0);
+          single(key, futures.get(key));
+          return;
+        }
+        
+        DHTFuture<NodeEntity> future = lookup(keys.get(0));
+        synchronized (this) {
+          lookupFuture = future;
+          if (remaining == 0) {
+            future.cancel(true);
+            return;
+          }
+        }
+        
+        future.addAsyncFutureListener(new AsyncFutureListener<NodeEntity>() {
+          @Override
+          public void operationComplete(AsyncFuture<NodeEntity> future) {
+            try {
+              if (!future.isCancelled()) {
+                handleNodeEntity(future.get());
+              } else {
+                cancel();
+              }
+            } catch (ExecutionException err) {
+              setException(err.getCause());
+            } catch (Throwable t) {
+              setException(t);
+            }
+          }
+        });
+      } catch (Throwable t) {
+        setException(t);
+      }
+    }
+    
+    private void handleNodeEntity(NodeEntity nodeEntity) {
+      Map<Key, DHTFuture<V>> pending = new LinkedHashMap<>();
+      for (Map.Entry<Key, DHTFuture<V>> entry : futures.entrySet()) {
+        if (!entry.getValue().isDone()) {
+          pending.put(entry.getKey(), entry.getValue());
+        }
+      }
+      
+      if (!pending.isEmpty()) {
+        follow(pending, nodeEntity);
+      }
+    }
+    
+    private void cancel() {
+      for (DHTFuture<V> future : futures.values()) {
+        future.cancel(true);
+      }
+    }
+    
+    private void setException(Throwable t) {
+      for (DHTFuture<V> future : futures.values()) {
+        future.setException(t);
+      }
+    }
+    
+    /**
+     * Called every time one of the {@link DHTFuture}s completes.
+     */
+    private void handleDone() {
+      DHTFuture<NodeEntity> future = null;
+      synchronized (this) {
+        if (--remaining > 0) {
+          return;
+        }
+        
+        // The Batch hasn't started us yet
+        if (!started) {
+          return;
+        }
+        
+        future = lookupFuture;
+      }
+      
+      if (future != null) {
+        future.cancel(true);
+      }
+      batch.release();
+    }
+  }
+}
@@ -18,16 +18,18 @@ package org.ardverk.dht;
 
 import java.net.InetAddress;
 import java.net.SocketAddress;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
-import org.ardverk.concurrent.AsyncFuture;
-import org.ardverk.concurrent.AsyncFutureListener;
-import org.ardverk.concurrent.FutureUtils;
 import org.ardverk.concurrent.ValueReference;
 import org.ardverk.dht.concurrent.DHTFuture;
+import org.ardverk.dht.concurrent.DHTFutures;
+import org.ardverk.dht.concurrent.DHTFutures.AsyncFunction;
+import org.ardverk.dht.concurrent.DHTFutures.Function;
 import org.ardverk.dht.concurrent.DHTProcess;
+import org.ardverk.dht.concurrent.Deadline;
 import org.ardverk.dht.concurrent.NopProcess;
 import org.ardverk.dht.config.BootstrapConfig;
 import org.ardverk.dht.config.ConfigProvider;
@@ -88,96 +90,55 @@ public class BootstrapManager {
     
     BootstrapConfig cfg = configProvider.get(config);
     
+    // The PING and the lookup share the same budget
+    Deadline deadline = Deadline.after(
+        cfg.getOperationTimeoutInMillis(), TimeUnit.MILLISECONDS);
+    
     DHTFuture<PingEntity> pingFuture = pingManager.ping(
         address, cfg.getPingConfig());
     
-    return bootstrap(pingFuture, cfg);
+    return bootstrap(pingFuture, cfg, deadline);
   }
   
   private DHTFuture<BootstrapEntity> bootstrap(
       final DHTFuture<PingEntity> pingFuture, 
-      final BootstrapConfig config) {
+      final BootstrapConfig config, final Deadline deadline) {
     
-    final Object lock = new Object();
+    DHTProcess<BootstrapEntity> process = NopProcess.create();
+    DHTFuture<BootstrapEntity> userFuture 
+      = futureManager.submit(process, config);
     
-    synchronized (lock) {
-      DHTProcess<BootstrapEntity> process = NopProcess.create();
-      final DHTFuture<BootstrapEntity> userFuture 
-        = futureManager.submit(process, config);
-      
-      final ValueReference<DHTFuture<NodeEntity>> lookupFutureRef
-        = new ValueReference<DHTFuture<NodeEntity>>();
-      
-      pingFuture.addAsyncFutureListener(new AsyncFutureListener<PingEntity>() {
-        @Override
-        public void operationComplete(AsyncFuture<PingEntity> future) {
-          synchronized (lock) {
-            try {
-              if (!future.isCancelled()) {
-                handlePingEntity(future.get());
-              } else {
-                handleCancelled();
-              }
-            } catch (Throwable t) {
-              handleException(t);
-            }
-          }
-        }
-        
-        private void handlePingEntity(final PingEntity pingEntity) {
-          Contact[] contacts = new Contact[] { pingEntity.getContact() };
-          
-          KUID localhostId = localhost.getId();
-          AsyncFuture<NodeEntity> lookupFuture 
-            = lookupFutureRef.make(
-                lookupManager.discover(contacts, 
-                  localhostId, config.getLookupConfig()));
-          
-          lookupFuture.addAsyncFutureListener(new AsyncFutureListener<NodeEntity>() {
-            @Override
-            public void operationComplete(AsyncFuture<NodeEntity> future) {
-              synchronized (lock) {
-                try {
-                  if (!future.isCancelled()) {
-                    handleNodeEntity(future.get());
-                  } else {
-                    handleCancelled();
-                  }
-                } catch (Throwable t) {
-                  handleException(t);
-                }
-              }
-            }
-            
-            private void handleNodeEntity(NodeEntity nodeEntity) {
-              userFuture.setValue(new BootstrapEntity(
-                  pingEntity, nodeEntity));
-            }
-          });
-        }
+    final ValueReference<DHTFuture<NodeEntity>> lookupFutureRef
+      = new ValueReference<DHTFuture<NodeEntity>>();
+    
+    // Look up our own KUID through the Contact that responded
+    // to the PING once the PING has completed.
+    DHTFuture<BootstrapEntity> bootstrapFuture = DHTFutures.compose(
+        pingFuture, new AsyncFunction<PingEntity, BootstrapEntity>() {
+      @Override
+      public DHTFuture<BootstrapEntity> apply(final PingEntity pingEntity) {
+        Contact[] contacts = new Contact[] { pingEntity.getContact() };
         
-        private void handleCancelled() {
-          userFuture.cancel(true);
-        }
+        KUID localhostId = localhost.getId();
+        DHTFuture<NodeEntity> lookupFuture 
+          = lookupFutureRef.make(
+              lookupManager.discover(contacts, localhostId, 
+                null, config.getLookupConfig(), deadline));
         
-        private void handleException(Throwable t) {
-          userFuture.setException(t);
-        }
-      });
-      
-      userFuture.addAsyncFutureListener(new AsyncFutureListener<BootstrapEntity>() {
-        @Override
-        public void operationComplete(AsyncFuture<BootstrapEntity> future) {
-          synchronized (lock) {
-            FutureUtils.cancel(pingFuture, true);
-            FutureUtils.cancel(lookupFutureRef, true);
+        return DHTFutures.transform(lookupFuture, 
+            new Function<NodeEntity, BootstrapEntity>() {
+          @Override
+          public BootstrapEntity apply(NodeEntity nodeEntity) {
+            return new BootstrapEntity(pingEntity, nodeEntity);
           }
-        }
-      });
-      
-      userFuture.setAttachment(new Attachment(pingFuture, lookupFutureRef));
-      return userFuture;
-    }
+        });
+      }
+    });
+    
+    DHTFutures.forward(bootstrapFuture, userFuture);
+    
+    userFuture.setAttachment(new Attachment(pingFuture, lookupFutureRef));
+    return userFuture;
   }
   
   public static class Attachment {
@@ -18,6 +18,8 @@ package org.ardverk.dht;
 
 import java.net.InetAddress;
 import java.net.SocketAddress;
+import java.util.Collection;
+import java.util.Map;
 
 import org.ardverk.dht.concurrent.DHTFuture;
 import org.ardverk.dht.config.ValueConfig;
@@ -28,6 +30,7 @@ import org.ardverk.dht.entity.NodeEntity;
 import org.ardverk.dht.entity.PingEntity;
 import org.ardverk.dht.entity.PutEntity;
 import org.ardverk.dht.entity.ValueEntity;
+import org.ardverk.dht.io.ValueListener;
 import org.ardverk.dht.message.MessageType;
 import org.ardverk.dht.routing.Contact;
 import org.ardverk.dht.rsrc.Key;
@@ -69,9 +72,34 @@ interface DHTService {
    */
   public DHTFuture<ValueEntity> get(Key key, ValueConfig config);
   
+  /**
+   * Performs a {@link MessageType#FIND_VALUE} lookup in the DHT and 
+   * notifies the {@link ValueListener} about every value as soon as 
+   * it arrives. Cancelling the {@link DHTFuture} stops the lookup.
+   */
+  public DHTFuture<ValueEntity> get(Key key, 
+      ValueListener listener, ValueConfig config);
+  
   /**
    * Performs a {@link MessageType#FIND_NODE} lookup followed by 
    * a {@link MessageType#STORE} operation.
    */
   public DHTFuture<PutEntity> put(Key key, Value value, PutConfig config);
+  
+  /**
+   * Performs {@link MessageType#FIND_VALUE} lookups for all given
+   * {@link Key}s and returns a {@link DHTFuture} for each of them.
+   * {@link Key}s with the same closest {@link Contact}s share their
+   * {@link MessageType#FIND_NODE} lookup.
+   */
+  public Map<Key, DHTFuture<ValueEntity>> getAll(
+      Collection<? extends Key> keys, ValueConfig config);
+  
+  /**
+   * Performs {@link MessageType#STORE} operations for all given
+   * {@link Key}-{@link Value} pairs and returns a {@link DHTFuture}
+   * for each {@link Key}.
+   */
+  public Map<Key, DHTFuture<PutEntity>> putAll(
+      Map<? extends Key, ? extends Value> values, PutConfig config);
 }
\ No newline at end of file
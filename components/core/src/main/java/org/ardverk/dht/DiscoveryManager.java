@@ -16,29 +16,47 @@
 
 package org.ardverk.dht;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
 import javax.inject.Inject;
 import javax.inject.Provider;
 import javax.inject.Singleton;
 
+import org.ardverk.concurrent.AsyncFuture;
+import org.ardverk.concurrent.AsyncFutureListener;
+import org.ardverk.concurrent.FutureUtils;
 import org.ardverk.dht.concurrent.DHTFuture;
 import org.ardverk.dht.concurrent.DHTProcess;
+import org.ardverk.dht.concurrent.DHTValueFuture;
+import org.ardverk.dht.concurrent.Deadline;
+import org.ardverk.dht.concurrent.NopProcess;
 import org.ardverk.dht.config.ConfigProvider;
 import org.ardverk.dht.config.ValueConfig;
 import org.ardverk.dht.config.NodeConfig;
 import org.ardverk.dht.entity.NodeEntity;
 import org.ardverk.dht.entity.ValueEntity;
+import org.ardverk.dht.io.LookupListener;
 import org.ardverk.dht.io.MessageDispatcher;
+import org.ardverk.dht.io.NoSuchValueException;
 import org.ardverk.dht.io.NodeResponseHandler;
+import org.ardverk.dht.io.Outcome;
+import org.ardverk.dht.io.ValueListener;
 import org.ardverk.dht.io.ValueResponseHandler;
 import org.ardverk.dht.routing.Contact;
 import org.ardverk.dht.routing.RouteTable;
 import org.ardverk.dht.rsrc.Key;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * The {@link DiscoveryManager} manages FIND_NODE and FIND_VALUE lookups.
  */
 @Singleton
 public class DiscoveryManager {
+  
+  private static final Logger LOG 
+    = LoggerFactory.getLogger(DiscoveryManager.class);
 
   private final ConfigProvider configProvider;
   
@@ -48,9 +66,19 @@ public class DiscoveryManager {
   
   private final RouteTable routeTable;
   
+  private final LookupCache lookupCache;
+  
+  private final ValueEntityCache valueCache;
+  
+  private final SingleFlight<KUID, NodeEntity> nodeFlights;
+  
+  private final SingleFlight<Key, ValueEntity> valueFlights;
+  
   @Inject
   DiscoveryManager(ConfigProvider configProvider,
       RouteTable routeTable, 
+      LookupCache lookupCache,
+      ValueEntityCache valueCache,
       FutureManager futureManager, 
       Provider<MessageDispatcher> messageDispatcher) {
     
@@ -58,37 +86,309 @@ public class DiscoveryManager {
     this.futureManager = futureManager;
     this.messageDispatcher = messageDispatcher;
     this.routeTable = routeTable;
+    this.lookupCache = lookupCache;
+    this.valueCache = valueCache;
+    
+    this.nodeFlights = new SingleFlight<KUID, NodeEntity>(futureManager);
+    this.valueFlights = new SingleFlight<Key, ValueEntity>(futureManager);
   }
   
   public DHTFuture<NodeEntity> discover(KUID lookupId, NodeConfig config) {
-    Contact[] contacts = routeTable.select(lookupId);
-    return discover(contacts, lookupId, config);
+    return discover(lookupId, config, null);
+  }
+  
+  /**
+   * Performs a FIND_NODE lookup that doesn't send any requests past 
+   * the given {@link Deadline}. A lookup that is being shared with 
+   * other callers isn't bound to the {@link Deadline}.
+   */
+  public DHTFuture<NodeEntity> discover(final KUID lookupId, 
+      final NodeConfig config, final Deadline deadline) {
+    
+    NodeConfig cfg = configProvider.get(config);
+    
+    // Skip the lookup if we've got a fresh enough result
+    long cacheTimeout = cfg.getCacheTimeoutInMillis();
+    if (0L < cacheTimeout) {
+      Contact[] closest = lookupCache.get(lookupId, 
+          cacheTimeout, TimeUnit.MILLISECONDS);
+      if (closest != null) {
+        return new DHTValueFuture<NodeEntity>(
+            new NodeEntity(createOutcome(lookupId, closest)));
+      }
+    }
+    
+    if (cfg.isSingleFlight()) {
+      SingleFlight.Operation<NodeEntity> operation 
+          = new SingleFlight.Operation<NodeEntity>() {
+        @Override
+        public DHTFuture<NodeEntity> start() {
+          Contact[] contacts = select(lookupId);
+          return discover(contacts, lookupId, config);
+        }
+      };
+      
+      return nodeFlights.submit(lookupId, operation, cfg, 
+          cfg.getReuseTimeoutInMillis(), TimeUnit.MILLISECONDS);
+    }
+    
+    Contact[] contacts = select(lookupId);
+    return discover(contacts, lookupId, null, config, deadline);
+  }
+  
+  /**
+   * Performs a FIND_NODE lookup that notifies the given 
+   * {@link LookupListener} while it's converging. The lookup 
+   * bypasses the {@link LookupCache} and it's never being shared.
+   */
+  public DHTFuture<NodeEntity> discover(KUID lookupId, 
+      LookupListener listener, NodeConfig config) {
+    return discover(lookupId, listener, config, null);
+  }
+  
+  public DHTFuture<NodeEntity> discover(KUID lookupId, 
+      LookupListener listener, NodeConfig config, Deadline deadline) {
+    Contact[] contacts = select(lookupId);
+    return discover(contacts, lookupId, listener, config, deadline);
   }
   
   public DHTFuture<NodeEntity> discover(Contact[] contacts, 
       KUID lookupId, NodeConfig config) {
+    return discover(contacts, lookupId, null, config);
+  }
+  
+  public DHTFuture<NodeEntity> discover(Contact[] contacts, 
+      KUID lookupId, LookupListener listener, NodeConfig config) {
+    return discover(contacts, lookupId, listener, config, null);
+  }
+  
+  public DHTFuture<NodeEntity> discover(Contact[] contacts, 
+      final KUID lookupId, LookupListener listener, 
+      NodeConfig config, Deadline deadline) {
     
     NodeConfig cfg = configProvider.get(config);
     
-    DHTProcess<NodeEntity> process 
+    NodeResponseHandler process 
       = new NodeResponseHandler(messageDispatcher, 
-          contacts, routeTable, lookupId, cfg);
-    return futureManager.submit(process, cfg);
+          contacts, routeTable, lookupId, listener, cfg);
+    process.setDeadline(deadline);
+    
+    DHTFuture<NodeEntity> future = futureManager.submit(process, cfg);
+    
+    future.addAsyncFutureListener(new AsyncFutureListener<NodeEntity>() {
+      @Override
+      public void operationComplete(AsyncFuture<NodeEntity> future) {
+        if (future.isCompletedAbnormally()) {
+          return;
+        }
+        
+        try {
+          lookupCache.put(lookupId, future.get().getClosest());
+        } catch (Exception err) {
+          LOG.error("Exception", err);
+        }
+      }
+    });
+    
+    return future;
   }
   
   public DHTFuture<ValueEntity> get(Key key, ValueConfig config) {
-    Contact[] contacts = routeTable.select(key.getId());
+    
+    ValueConfig cfg = configProvider.get(config);
+    if (0L < cfg.getValueCacheTimeoutInMillis() || cfg.isConditional()) {
+      return getCached(key, cfg);
+    }
+    
+    return lookup(key, cfg);
+  }
+  
+  /**
+   * Returns a cached {@link ValueEntity} if it's fresh enough. Does
+   * a (conditional) lookup and caches its result otherwise.
+   */
+  private DHTFuture<ValueEntity> getCached(final Key key, ValueConfig config) {
+    
+    ValueEntity entity = valueCache.get(key, 
+        config.getValueCacheTimeoutInMillis(), TimeUnit.MILLISECONDS);
+    if (entity != null) {
+      return new DHTValueFuture<ValueEntity>(entity);
+    }
+    
+    // Ask for the value only if it differs from our cached copy.
+    Key lookupKey = key;
+    ValueEntity cached = null;
+    if (config.isConditional()) {
+      cached = valueCache.get(key);
+      
+      Key conditionalKey = null;
+      if (cached != null) {
+        conditionalKey = valueCache.createConditionalKey(key, cached);
+      }
+      
+      if (conditionalKey != null) {
+        lookupKey = conditionalKey;
+      } else {
+        cached = null;
+      }
+    }
+    
+    final ValueEntity revalidate = cached;
+    final DHTFuture<ValueEntity> lookupFuture = lookup(lookupKey, config);
+    
+    DHTProcess<ValueEntity> process = NopProcess.create();
+    final DHTFuture<ValueEntity> userFuture 
+      = futureManager.submit(process, config);
+    
+    lookupFuture.addAsyncFutureListener(new AsyncFutureListener<ValueEntity>() {
+      @Override
+      public void operationComplete(AsyncFuture<ValueEntity> future) {
+        if (future.isCancelled()) {
+          userFuture.cancel(true);
+          return;
+        }
+        
+        try {
+          ValueEntity entity = future.get();
+          if (revalidate != null) {
+            entity = valueCache.revalidate(entity, revalidate);
+          }
+          
+          valueCache.put(key, entity);
+          userFuture.setValue(entity);
+          
+        } catch (ExecutionException err) {
+          Throwable cause = err.getCause();
+          if (cause instanceof NoSuchValueException) {
+            valueCache.remove(key);
+          }
+          userFuture.setException(cause);
+        } catch (Throwable t) {
+          userFuture.setException(t);
+        }
+      }
+    });
+    
+    userFuture.addAsyncFutureListener(new AsyncFutureListener<ValueEntity>() {
+      @Override
+      public void operationComplete(AsyncFuture<ValueEntity> future) {
+        FutureUtils.cancel(lookupFuture, true);
+      }
+    });
+    
+    return userFuture;
+  }
+  
+  private DHTFuture<ValueEntity> lookup(final Key key, 
+      final ValueConfig config) {
+    
+    if (config.isSingleFlight()) {
+      SingleFlight.Operation<ValueEntity> operation 
+          = new SingleFlight.Operation<ValueEntity>() {
+        @Override
+        public DHTFuture<ValueEntity> start() {
+          Contact[] contacts = select(key.getId());
+          return get(contacts, key, config);
+        }
+      };
+      
+      return valueFlights.submit(key, operation, config, 
+          config.getReuseTimeoutInMillis(), TimeUnit.MILLISECONDS);
+    }
+    
+    Contact[] contacts = select(key.getId());
     return get(contacts, key, config);
   }
   
+  /**
+   * Performs a FIND_VALUE lookup that notifies the given 
+   * {@link ValueListener} about every value as soon as it arrives.
+   * The lookup bypasses the caches and it's never being shared.
+   */
+  public DHTFuture<ValueEntity> get(Key key, 
+      ValueListener listener, ValueConfig config) {
+    Contact[] contacts = select(key.getId());
+    return get(contacts, key, listener, config);
+  }
+  
   public DHTFuture<ValueEntity> get(Contact[] contacts, 
       Key key, ValueConfig config) {
+    return get(contacts, key, null, config);
+  }
+  
+  public DHTFuture<ValueEntity> get(Contact[] contacts, 
+      Key key, ValueListener listener, ValueConfig config) {
+    return get(contacts, key, listener, config, null);
+  }
+  
+  public DHTFuture<ValueEntity> get(Contact[] contacts, Key key, 
+      ValueListener listener, ValueConfig config, Deadline deadline) {
     
     ValueConfig cfg = configProvider.get(config);
     
-    DHTProcess<ValueEntity> process
+    ValueResponseHandler process
       = new ValueResponseHandler(messageDispatcher, contacts, 
-          routeTable, key, cfg);
+          routeTable, key, listener, cfg);
+    process.setDeadline(deadline);
+    
     return futureManager.submit(process, cfg);
   }
-}
\ No newline at end of file
+  
+  /**
+   * Returns the {@link Contact}s a lookup for the given {@link KUID}
+   * should start with. These are the cached k-closest {@link Contact}s
+   * of a previous lookup (if any) and the closest {@link Contact}s 
+   * from our {@link RouteTable}.
+   */
+  private Contact[] select(KUID lookupId) {
+    Contact[] contacts = routeTable.select(lookupId);
+    
+    Contact[] cached = lookupCache.get(lookupId);
+    if (cached == null) {
+      return contacts;
+    }
+    
+    Contact[] dst = new Contact[cached.length + contacts.length];
+    System.arraycopy(cached, 0, dst, 0, cached.length);
+    System.arraycopy(contacts, 0, dst, cached.length, contacts.length);
+    return dst;
+  }
+  
+  /**
+   * Creates an {@link Outcome} for a cached lookup result.
+   */
+  private static Outcome createOutcome(final KUID lookupId, 
+      final Contact[] closest) {
+    return new Outcome() {
+      @Override
+      public KUID getId() {
+        return lookupId;
+      }
+      
+      @Override
+      public Contact[] getClosest() {
+        return closest;
+      }
+      
+      @Override
+      public Contact[] getContacts() {
+        return closest;
+      }
+      
+      @Override
+      public int getHop() {
+        return 0;
+      }
+      
+      @Override
+      public int getErrorCount() {
+        return 0;
+      }
+      
+      @Override
+      public long getTime(TimeUnit unit) {
+        return 0L;
+      }
+    };
+  }
+}
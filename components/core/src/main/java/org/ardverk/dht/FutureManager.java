@@ -17,12 +17,22 @@
 package org.ardverk.dht;
 
 import java.io.Closeable;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.inject.Singleton;
 
-import org.ardverk.collection.IdentityHashSet;
 import org.ardverk.concurrent.AsyncFuture;
 import org.ardverk.concurrent.AsyncProcess;
 import org.ardverk.concurrent.FutureUtils;
@@ -31,21 +41,62 @@ import org.ardverk.dht.concurrent.DHTFuture;
 import org.ardverk.dht.concurrent.DHTFutureTask;
 import org.ardverk.dht.concurrent.DHTProcess;
 import org.ardverk.dht.concurrent.ExecutorKey;
+import org.ardverk.dht.concurrent.NopProcess;
+import org.ardverk.dht.concurrent.TimerWheel;
 import org.ardverk.dht.config.Config;
 
 
 /**
  * The {@link FutureManager} manages {@link DHTFuture}s.
+ * 
+ * The number of in-flight operations can be limited per 
+ * {@link ExecutorKey}. Operations that exceed the limit are either
+ * being rejected with a {@link RejectedExecutionException} or being
+ * queued until an in-flight operation has completed, depending on 
+ * the {@link AdmissionPolicy}. {@link NopProcess}es are not being 
+ * counted as they only wait for other operations. Queued operations
+ * fail with a {@link TimeoutException} if they're still waiting once
+ * their timeout has elapsed.
  */
 @Singleton
 public class FutureManager implements Closeable {
   
-  private final Set<AsyncFuture<?>> futures = new IdentityHashSet<>();
+  /**
+   * The {@link AdmissionPolicy} controls what happens with operations 
+   * that exceed the maximum number of in-flight operations.
+   */
+  public static enum AdmissionPolicy {
+    
+    /**
+     * Operations are being rejected with a 
+     * {@link RejectedExecutionException}.
+     */
+    REJECT,
+    
+    /**
+     * Operations are being queued.
+     */
+    QUEUE;
+  }
+  
+  private final Set<AsyncFuture<?>> futures = Collections.newSetFromMap(
+      new ConcurrentHashMap<AsyncFuture<?>, Boolean>());
+  
+  private final Map<ExecutorKey, Admission> admissions 
+    = new EnumMap<>(ExecutorKey.class);
   
-  private boolean open = true;
+  private volatile AdmissionPolicy admissionPolicy = AdmissionPolicy.REJECT;
+  
+  private volatile boolean open = true;
+  
+  public FutureManager() {
+    for (ExecutorKey executorKey : ExecutorKey.values()) {
+      admissions.put(executorKey, new Admission());
+    }
+  }
   
   @Override
-  public synchronized void close() {
+  public void close() {
     if (!open) {
       return;
     }
@@ -56,46 +107,353 @@ public class FutureManager implements Closeable {
     futures.clear();
   }
   
+  /**
+   * Returns the {@link AdmissionPolicy}.
+   */
+  public AdmissionPolicy getAdmissionPolicy() {
+    return admissionPolicy;
+  }
+  
+  /**
+   * Sets the {@link AdmissionPolicy}.
+   */
+  public void setAdmissionPolicy(AdmissionPolicy admissionPolicy) {
+    if (admissionPolicy == null) {
+      throw new NullPointerException("admissionPolicy");
+    }
+    
+    this.admissionPolicy = admissionPolicy;
+  }
+  
+  /**
+   * Returns the maximum number of in-flight operations 
+   * for the given {@link ExecutorKey}.
+   */
+  public int getMaxInFlight(ExecutorKey executorKey) {
+    return admissions.get(executorKey).maxInFlight;
+  }
+  
+  /**
+   * Sets the maximum number of in-flight operations for the 
+   * given {@link ExecutorKey}. The default is no limit.
+   */
+  public void setMaxInFlight(ExecutorKey executorKey, int maxInFlight) {
+    if (maxInFlight < 1) {
+      throw new IllegalArgumentException("maxInFlight=" + maxInFlight);
+    }
+    
+    Admission admission = admissions.get(executorKey);
+    admission.maxInFlight = maxInFlight;
+    admission.drain();
+  }
+  
+  /**
+   * Returns the number of in-flight operations 
+   * for the given {@link ExecutorKey}.
+   */
+  public int getInFlight(ExecutorKey executorKey) {
+    return admissions.get(executorKey).inFlight.get();
+  }
+  
+  /**
+   * Returns the total number of in-flight operations.
+   */
+  public int getInFlight() {
+    int inFlight = 0;
+    for (Admission admission : admissions.values()) {
+      inFlight += admission.inFlight.get();
+    }
+    return inFlight;
+  }
+  
+  /**
+   * Returns the number of queued operations 
+   * for the given {@link ExecutorKey}.
+   */
+  public int getQueued(ExecutorKey executorKey) {
+    return admissions.get(executorKey).queue.size();
+  }
+  
+  /**
+   * Returns the number of rejected operations 
+   * for the given {@link ExecutorKey}.
+   */
+  public long getRejectedCount(ExecutorKey executorKey) {
+    return admissions.get(executorKey).rejected.get();
+  }
+  
+  /**
+   * Returns the total number of rejected operations.
+   */
+  public long getRejectedCount() {
+    long rejected = 0L;
+    for (Admission admission : admissions.values()) {
+      rejected += admission.rejected.get();
+    }
+    return rejected;
+  }
+  
+  /**
+   * Returns the number of active {@link DHTFuture}s.
+   */
+  public int size() {
+    return futures.size();
+  }
+  
   public <V> DHTFuture<V> submit(DHTProcess<V> process, Config config) {
+    return submit(null, process, config);
+  }
+  
+  /**
+   * Submits the given {@link DHTProcess} for execution and returns
+   * an {@link DHTFuture} for it. {@link DHTProcess}es with the same
+   * key are being executed in order if the {@link Config}'s 
+   * {@link ExecutorKey} is {@link ExecutorKey#KEYED_SERIAL}.
+   */
+  public <V> DHTFuture<V> submit(Object key, 
+      DHTProcess<V> process, Config config) {
     ExecutorKey executorKey = config.getExecutorKey();
     long timeout = config.getOperationTimeoutInMillis();
-    return submit(executorKey, process, timeout, TimeUnit.MILLISECONDS);
+    return submit(executorKey, key, process, 
+        timeout, TimeUnit.MILLISECONDS);
   }
   
   /**
    * Submits the given {@link DHTProcess} for execution and returns
    * an {@link DHTFuture} for it.
    */
-  public synchronized <T> DHTFuture<T> submit(ExecutorKey executorKey, 
+  public <T> DHTFuture<T> submit(ExecutorKey executorKey, 
       DHTProcess<T> process, long timeout, TimeUnit unit) {
+    return submit(executorKey, null, process, timeout, unit);
+  }
+  
+  /**
+   * Submits the given {@link DHTProcess} for execution and returns
+   * an {@link DHTFuture} for it.
+   * 
+   * @throws RejectedExecutionException if the maximum number of 
+   * in-flight operations has been reached and the {@link AdmissionPolicy}
+   * is {@link AdmissionPolicy#REJECT} or if the {@link DHTExecutor} 
+   * rejects the operation.
+   * 
+   * @see DHTExecutor#execute(ExecutorKey, Object, Runnable)
+   */
+  public <T> DHTFuture<T> submit(ExecutorKey executorKey, 
+      Object key, DHTProcess<T> process, long timeout, TimeUnit unit) {
     
     if (!open) {
       throw new IllegalStateException();
     }
     
-    ManagedFutureTask<T> future 
-      = new ManagedFutureTask<T>(process, timeout, unit);
+    ManagedFutureTask<T> future = new ManagedFutureTask<T>(
+        executorKey, key, process, timeout, unit);
+    
+    Admission admission = null;
+    if (!(process instanceof NopProcess<?>)) {
+      admission = admissions.get(executorKey);
+      
+      if (!admission.tryAcquire()) {
+        if (admissionPolicy == AdmissionPolicy.REJECT) {
+          admission.rejected.incrementAndGet();
+          throw new RejectedExecutionException(
+              "executorKey=" + executorKey 
+              + ", maxInFlight=" + admission.maxInFlight);
+        }
+        
+        futures.add(future);
+        admission.queue.add(future);
+        future.scheduleQueueTimeout(admission, timeout, unit);
+        
+        // An in-flight operation may have completed in the meantime
+        admission.drain();
+        
+        cancelIfClosed(future);
+        return future;
+      }
+    }
     
-    DHTExecutor.execute(executorKey, future);
     futures.add(future);
     
+    try {
+      future.execute(admission);
+    } catch (RejectedExecutionException err) {
+      futures.remove(future);
+      if (admission != null) {
+        admission.rejected.incrementAndGet();
+      }
+      throw err;
+    }
+    
+    cancelIfClosed(future);
     return future;
   }
   
+  /**
+   * Cancels the given {@link DHTFuture} if the {@link FutureManager}
+   * got closed while it was being submitted.
+   */
+  private void cancelIfClosed(DHTFuture<?> future) {
+    if (!open) {
+      futures.remove(future);
+      future.cancel(true);
+    }
+  }
+  
   /**
    * Callback for completed {@link DHTFuture}s.
    */
-  private synchronized void complete(DHTFuture<?> future) {
+  private void complete(ManagedFutureTask<?> future) {
     futures.remove(future);
+    
+    Admission admission = future.admission.getAndSet(null);
+    if (admission != null) {
+      admission.release();
+    } else {
+      // It may have been cancelled while it was queued
+      admissions.get(future.executorKey).queue.remove(future);
+    }
+  }
+  
+  /**
+   * An {@link Admission} keeps track of the in-flight operations
+   * of an {@link ExecutorKey}.
+   */
+  private class Admission {
+    
+    private final AtomicInteger inFlight = new AtomicInteger();
+    
+    private final AtomicLong rejected = new AtomicLong();
+    
+    private final Queue<ManagedFutureTask<?>> queue 
+      = new ConcurrentLinkedQueue<>();
+    
+    private volatile int maxInFlight = Integer.MAX_VALUE;
+    
+    private boolean tryAcquire() {
+      while (true) {
+        int current = inFlight.get();
+        if (current >= maxInFlight) {
+          return false;
+        }
+        
+        if (inFlight.compareAndSet(current, current + 1)) {
+          return true;
+        }
+      }
+    }
+    
+    private void release() {
+      inFlight.decrementAndGet();
+      drain();
+    }
+    
+    /**
+     * Starts queued operations as long as there are free slots.
+     */
+    private void drain() {
+      while (!queue.isEmpty() && tryAcquire()) {
+        ManagedFutureTask<?> future = queue.poll();
+        
+        // Cancelled while it was waiting or someone else got it.
+        if (future == null || future.isDone()) {
+          inFlight.decrementAndGet();
+          continue;
+        }
+        
+        try {
+          future.execute(this);
+        } catch (RejectedExecutionException err) {
+          rejected.incrementAndGet();
+          future.setException(err);
+        }
+      }
+    }
   }
   
   private class ManagedFutureTask<T> extends DHTFutureTask<T> {
     
-    public ManagedFutureTask(AsyncProcess<T> process, 
-        long timeout, TimeUnit unit) {
+    private final ExecutorKey executorKey;
+    
+    private final Object key;
+    
+    /**
+     * The {@link Admission} that has admitted this 
+     * {@link ManagedFutureTask} or {@code null}. Whoever takes 
+     * it out gives back the in-flight slot.
+     */
+    private final AtomicReference<Admission> admission 
+      = new AtomicReference<>();
+    
+    private volatile TimerWheel.Timeout queueTimeout = null;
+    
+    public ManagedFutureTask(ExecutorKey executorKey, Object key, 
+        AsyncProcess<T> process, long timeout, TimeUnit unit) {
       super(process, timeout, unit);
+      this.executorKey = executorKey;
+      this.key = key;
     }
-
+    
+    /**
+     * Fails the {@link ManagedFutureTask} with a {@link TimeoutException}
+     * if it's still queued after the given amount of time.
+     */
+    private void scheduleQueueTimeout(final Admission admission, 
+        final long timeout, final TimeUnit unit) {
+      if (timeout <= 0L) {
+        return;
+      }
+      
+      Runnable task = new Runnable() {
+        @Override
+        public void run() {
+          if (admission.queue.remove(ManagedFutureTask.this)) {
+            setException(new TimeoutException(
+                "Queued for " + timeout + " " + unit));
+          }
+        }
+      };
+      
+      queueTimeout = TimerWheel.getDefault().schedule(task, timeout, unit);
+    }
+    
+    /**
+     * Executes the {@link ManagedFutureTask} on the {@link DHTExecutor}.
+     * The in-flight slot of the given {@link Admission} is given back 
+     * if the {@link ManagedFutureTask} is done or gets rejected.
+     */
+    private void execute(Admission admission) {
+      TimerWheel.Timeout queueTimeout = this.queueTimeout;
+      if (queueTimeout != null) {
+        queueTimeout.cancel();
+      }
+      
+      this.admission.set(admission);
+      
+      // It may have been cancelled while it was being dequeued 
+      // in which case complete() didn't see the Admission.
+      if (isDone()) {
+        release(admission);
+        return;
+      }
+      
+      try {
+        DHTExecutor.execute(executorKey, key, this);
+      } catch (RejectedExecutionException err) {
+        release(admission);
+        throw err;
+      }
+    }
+    
+    /**
+     * Gives back the in-flight slot unless complete() did it already.
+     */
+    private void release(Admission admission) {
+      if (admission != null 
+          && this.admission.compareAndSet(admission, null)) {
+        admission.release();
+      }
+    }
+    
     @Override
     protected void done0() {
       complete(this);
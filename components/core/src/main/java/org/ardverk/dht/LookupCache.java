@@ -0,0 +1,223 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.ardverk.collection.FixedSizeHashMap;
+import org.ardverk.dht.routing.Bucket;
+import org.ardverk.dht.routing.Contact;
+import org.ardverk.dht.routing.RouteTable;
+import org.ardverk.dht.routing.RouteTableAdapter;
+import org.ardverk.dht.routing.RouteTableListener;
+import org.ardverk.utils.TimeUtils;
+
+/**
+ * The {@link LookupCache} remembers the k-closest {@link Contact}s of
+ * recently completed lookups. The entries are bounded in size and age
+ * and an entry is dropped as soon as one of its {@link Contact}s gets
+ * removed from the {@link RouteTable}.
+ */
+@Singleton
+public class LookupCache {
+
+  public static final int DEFAULT_MAX_SIZE = 256;
+
+  private static final long DEFAULT_TIMEOUT
+    = TimeUtils.convert(5L, TimeUnit.MINUTES, TimeUnit.MILLISECONDS);
+
+  private final RouteTableListener listener = new RouteTableAdapter() {
+    @Override
+    public void handleContactReplaced(Bucket bucket,
+        Contact existing, Contact contact) {
+      invalidate(existing);
+    }
+
+    @Override
+    public void handleContactRemoved(Bucket bucket, Contact contact) {
+      invalidate(contact);
+    }
+  };
+
+  private final Map<KUID, CacheEntry> entries;
+
+  private final AtomicLong hitCount = new AtomicLong();
+
+  private final AtomicLong missCount = new AtomicLong();
+
+  private volatile long timeoutInMillis = DEFAULT_TIMEOUT;
+
+  @Inject
+  public LookupCache(RouteTable routeTable) {
+    this(DEFAULT_MAX_SIZE);
+    routeTable.addRouteTableListener(listener);
+  }
+
+  public LookupCache(int maxSize) {
+    this.entries = new FixedSizeHashMap<>(16, 0.75f, true, maxSize);
+  }
+
+  /**
+   * Returns the maximum age of a cached lookup result.
+   */
+  public long getTimeout(TimeUnit unit) {
+    return unit.convert(timeoutInMillis, TimeUnit.MILLISECONDS);
+  }
+
+  public long getTimeoutInMillis() {
+    return getTimeout(TimeUnit.MILLISECONDS);
+  }
+
+  public void setTimeout(long timeout, TimeUnit unit) {
+    this.timeoutInMillis = unit.toMillis(timeout);
+  }
+
+  /**
+   * Caches the k-closest {@link Contact}s of a lookup.
+   */
+  public void put(KUID lookupId, Contact[] contacts) {
+    if (contacts.length == 0) {
+      return;
+    }
+
+    CacheEntry entry = new CacheEntry(contacts.clone());
+    synchronized (entries) {
+      entries.put(lookupId, entry);
+    }
+  }
+
+  /**
+   * Returns the cached {@link Contact}s for the given {@link KUID}
+   * or {@code null} if there are none or if they're older than
+   * the given amount of time.
+   */
+  public Contact[] get(KUID lookupId, long maxAge, TimeUnit unit) {
+    long maxAgeInMillis = Math.min(unit.toMillis(maxAge), timeoutInMillis);
+
+    Contact[] contacts = null;
+    synchronized (entries) {
+      CacheEntry entry = entries.get(lookupId);
+      if (entry != null) {
+        long age = System.currentTimeMillis() - entry.creationTime;
+        if (age < maxAgeInMillis) {
+          contacts = entry.contacts;
+        } else if (age >= timeoutInMillis) {
+          entries.remove(lookupId);
+        }
+      }
+    }
+
+    if (contacts != null) {
+      hitCount.incrementAndGet();
+      return contacts.clone();
+    }
+
+    missCount.incrementAndGet();
+    return null;
+  }
+
+  /**
+   * Returns the cached {@link Contact}s for the given {@link KUID}
+   * or {@code null} if there are none or if they've expired.
+   */
+  public Contact[] get(KUID lookupId) {
+    return get(lookupId, timeoutInMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Removes the cached {@link Contact}s for the given {@link KUID}.
+   */
+  public void remove(KUID lookupId) {
+    synchronized (entries) {
+      entries.remove(lookupId);
+    }
+  }
+
+  /**
+   * Removes all entries that contain the given {@link Contact}.
+   */
+  public void invalidate(Contact contact) {
+    KUID contactId = contact.getId();
+
+    synchronized (entries) {
+      Iterator<CacheEntry> it = entries.values().iterator();
+      while (it.hasNext()) {
+        if (it.next().contains(contactId)) {
+          it.remove();
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the number of entries.
+   */
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  /**
+   * Removes all entries.
+   */
+  public void clear() {
+    synchronized (entries) {
+      entries.clear();
+    }
+  }
+
+  /**
+   * Returns the number of cache hits.
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * Returns the number of cache misses.
+   */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  private static class CacheEntry {
+
+    private final long creationTime = System.currentTimeMillis();
+
+    private final Contact[] contacts;
+
+    private CacheEntry(Contact[] contacts) {
+      this.contacts = contacts;
+    }
+
+    public boolean contains(KUID contactId) {
+      for (Contact contact : contacts) {
+        if (contact.getId().equals(contactId)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
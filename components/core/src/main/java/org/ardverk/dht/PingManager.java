@@ -60,7 +60,7 @@ public class PingManager {
     
     DHTProcess<PingEntity> process 
       = new PingResponseHandler(messageDispatcher, contact, cfg);
-    return futureManager.submit(process, cfg);
+    return futureManager.submit(contact.getId(), process, cfg);
   }
   
   public DHTFuture<PingEntity> ping(
@@ -70,6 +70,6 @@ public class PingManager {
     
     DHTProcess<PingEntity> process 
       = new PingResponseHandler(messageDispatcher, dst, cfg);
-    return futureManager.submit(process, cfg);
+    return futureManager.submit(dst, process, cfg);
   }
 }
\ No newline at end of file
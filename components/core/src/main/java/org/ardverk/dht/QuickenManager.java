@@ -19,6 +19,7 @@ package org.ardverk.dht;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
@@ -40,9 +41,12 @@ import org.ardverk.dht.entity.PingEntity;
 import org.ardverk.dht.entity.QuickenEntity;
 import org.ardverk.dht.routing.Bucket;
 import org.ardverk.dht.routing.Contact;
+import org.ardverk.dht.routing.LivenessTracker;
 import org.ardverk.dht.routing.RouteTable;
 import org.ardverk.dht.utils.IdentifierUtils;
 import org.ardverk.lang.TimeStamp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 
 /**
@@ -52,6 +56,9 @@ import org.ardverk.lang.TimeStamp;
 @Singleton
 public class QuickenManager {
 
+  private static final Logger LOG
+    = LoggerFactory.getLogger(QuickenManager.class);
+  
   private final ConfigProvider configProvider;
   
   private final PingManager pingManager;
@@ -60,12 +67,16 @@ public class QuickenManager {
   
   private final RouteTable routeTable;
   
+  private final LivenessTracker liveness;
+  
   @Inject
   QuickenManager(PingManager pingManager, DiscoveryManager discoveryManager,
-      RouteTable routeTable, ConfigProvider configProvider) {
+      RouteTable routeTable, LivenessTracker liveness, 
+      ConfigProvider configProvider) {
     this.pingManager = pingManager;
     this.discoveryManager = discoveryManager;
     this.routeTable = routeTable;
+    this.liveness = liveness;
     this.configProvider = configProvider;
   }
   
@@ -75,9 +86,11 @@ public class QuickenManager {
     
     TimeStamp creationTime = TimeStamp.now();
     
-    List<DHTFuture<PingEntity>> pingFutures = new ArrayList<>();
-    List<DHTFuture<NodeEntity>> discoveryFutures = new ArrayList<>();
+    List<Contact> pingContacts = new ArrayList<>();
+    List<KUID> lookupIds = new ArrayList<>();
     
+    // Select the Contacts and Buckets while holding the RouteTable
+    // lock but send the PINGs and start the lookups without it.
     synchronized (routeTable) {
       int pingCount = (int)(routeTable.getK() * cfg.getPingCount());
       
@@ -85,7 +98,6 @@ public class QuickenManager {
       KUID localhostId = localhost.getId();
 
       if (0 < pingCount) {
-        PingConfig pingConfig = cfg.getPingConfig();
         long contactTimeout = cfg.getContactTimeoutInMillis();
         
         Contact[] contacts = routeTable.select(localhostId, pingCount);
@@ -95,15 +107,21 @@ public class QuickenManager {
             continue;
           }
           
-          if (contact.isTimeout(contactTimeout, TimeUnit.MILLISECONDS)) {
-            DHTFuture<PingEntity> future 
-              = pingManager.ping(contact, pingConfig);
-            pingFutures.add(future);
+          if (!contact.isTimeout(contactTimeout, TimeUnit.MILLISECONDS)) {
+            continue;
           }
+          
+          // Don't send PINGs to Contacts that are known to be
+          // alive or that have requests in-flight.
+          if (liveness.getOutcome(contact, contactTimeout, 
+              TimeUnit.MILLISECONDS) != null) {
+            continue;
+          }
+          
+          pingContacts.add(contact);
         }
       }
       
-      NodeConfig lookupConfig = cfg.getLookupConfig();
       long bucketTimeout = cfg.getBucketTimeoutInMillis();
       
       Bucket[] buckets = routeTable.getBuckets();
@@ -122,11 +140,31 @@ public class QuickenManager {
         // Select a random ID with this prefix
         KUID randomId = KUID.createWithPrefix(
             bucket.getId(), bucket.getDepth());
-        
+        lookupIds.add(randomId);
+      }
+    }
+    
+    // The rest of the round is being skipped if the DHT is too busy.
+    // The Contacts and Buckets will be due again next time.
+    PingConfig pingConfig = cfg.getPingConfig();
+    List<DHTFuture<PingEntity>> pingFutures = new ArrayList<>();
+    NodeConfig lookupConfig = cfg.getLookupConfig();
+    List<DHTFuture<NodeEntity>> discoveryFutures = new ArrayList<>();
+    
+    try {
+      for (Contact contact : pingContacts) {
+        DHTFuture<PingEntity> future 
+          = pingManager.ping(contact, pingConfig);
+        pingFutures.add(future);
+      }
+      
+      for (KUID randomId : lookupIds) {
         DHTFuture<NodeEntity> future 
           = discoveryManager.discover(randomId, lookupConfig);
         discoveryFutures.add(future);
       }
+    } catch (RejectedExecutionException err) {
+      LOG.warn("Skipping the rest of the round", err);
     }
     
     @SuppressWarnings("unchecked")
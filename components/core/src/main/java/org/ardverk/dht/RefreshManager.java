@@ -0,0 +1,482 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.ardverk.concurrent.AsyncFuture;
+import org.ardverk.concurrent.AsyncFutureListener;
+import org.ardverk.concurrent.ExecutorUtils;
+import org.ardverk.concurrent.FutureUtils;
+import org.ardverk.dht.concurrent.DHTFuture;
+import org.ardverk.dht.config.RefreshConfig;
+import org.ardverk.dht.entity.NodeEntity;
+import org.ardverk.dht.entity.PingEntity;
+import org.ardverk.dht.routing.Bucket;
+import org.ardverk.dht.routing.Contact;
+import org.ardverk.dht.routing.ContactEntry;
+import org.ardverk.dht.routing.LivenessTracker;
+import org.ardverk.dht.routing.RouteTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * The {@link RefreshManager} keeps the {@link RouteTable} fresh in the
+ * background. Unlike {@link QuickenManager#quicken(org.ardverk.dht.config.QuickenConfig)}
+ * it's spreading the PINGs and lookups over time and never exceeds the
+ * configured number of messages per second.
+ *
+ * <p>{@link Contact}s and {@link Bucket}s we've recently had traffic with
+ * are considered fresh and are not being refreshed.
+ */
+@Singleton
+public class RefreshManager implements Closeable {
+
+  private static final Logger LOG
+    = LoggerFactory.getLogger(RefreshManager.class);
+
+  private static final ScheduledExecutorService EXECUTOR
+    = ExecutorUtils.newSingleThreadScheduledExecutor("RefreshManagerThread");
+
+  private final PingManager pingManager;
+
+  private final DiscoveryManager discoveryManager;
+
+  private final RouteTable routeTable;
+
+  private final LivenessTracker liveness;
+
+  private final Random generator = new Random();
+
+  /**
+   * The PINGs and lookups that are currently in progress.
+   */
+  private final Map<KUID, DHTFuture<?>> active
+    = new ConcurrentHashMap<KUID, DHTFuture<?>>();
+
+  /**
+   * The refresh {@link State} of every {@link Contact} and {@link Bucket}.
+   *
+   * NOTE: It's only being accessed from the {@link #EXECUTOR} thread.
+   */
+  private final Map<KUID, State> states = new HashMap<KUID, State>();
+
+  private final AtomicLong pingCount = new AtomicLong();
+
+  private final AtomicLong lookupCount = new AtomicLong();
+
+  private final AtomicLong deferredCount = new AtomicLong();
+
+  private RefreshConfig config = null;
+
+  private Budget budget = null;
+
+  private ScheduledFuture<?> future = null;
+
+  /**
+   * Incremented by every {@link #stop()} to keep refresh tasks of
+   * previous runs from re-arming themselves.
+   */
+  private long generation = 0L;
+
+  @Inject
+  RefreshManager(PingManager pingManager,
+      DiscoveryManager discoveryManager,
+      RouteTable routeTable, LivenessTracker liveness) {
+    this.pingManager = pingManager;
+    this.discoveryManager = discoveryManager;
+    this.routeTable = routeTable;
+    this.liveness = liveness;
+  }
+
+  /**
+   * Starts the background refresh. The refresher is being
+   * restarted if it's already running.
+   */
+  public synchronized void start(RefreshConfig config) {
+    stop();
+
+    this.config = config;
+    this.budget = new Budget(config.getMessagesPerSecond(),
+        Math.max(config.getLookupCost(), 1));
+
+    schedule(generation);
+  }
+
+  /**
+   * Stops the background refresh.
+   */
+  public synchronized void stop() {
+    FutureUtils.cancel(future, true);
+    future = null;
+    config = null;
+    ++generation;
+  }
+
+  /**
+   * Returns {@code true} if the background refresh is running.
+   */
+  public synchronized boolean isRunning() {
+    return config != null;
+  }
+
+  @Override
+  public void close() {
+    stop();
+
+    for (DHTFuture<?> future : active.values()) {
+      FutureUtils.cancel(future, true);
+    }
+    active.clear();
+  }
+
+  /**
+   * Returns the number of PINGs that have been sent.
+   */
+  public long getPingCount() {
+    return pingCount.get();
+  }
+
+  /**
+   * Returns the number of refresh lookups that have been started.
+   */
+  public long getLookupCount() {
+    return lookupCount.get();
+  }
+
+  /**
+   * Returns the number of times a refresh had to be deferred
+   * because the message budget was exhausted.
+   */
+  public long getDeferredCount() {
+    return deferredCount.get();
+  }
+
+  /**
+   * Schedules the next refresh with a bit of jitter unless the
+   * refresher has been stopped or restarted since the given generation.
+   */
+  private synchronized void schedule(final long generation) {
+    if (config == null || generation != this.generation) {
+      return;
+    }
+
+    long frequency = config.getFrequencyInMillis();
+    long delay = frequency
+        + (long)(frequency * config.getJitter() * (generator.nextFloat() - 0.5f));
+
+    Runnable task = new Runnable() {
+      @Override
+      public void run() {
+        try {
+          refresh();
+        } catch (Exception err) {
+          LOG.error("Exception", err);
+        } finally {
+          schedule(generation);
+        }
+      }
+    };
+
+    future = EXECUTOR.schedule(task,
+        Math.max(delay, 1L), TimeUnit.MILLISECONDS);
+  }
+
+  private void refresh() {
+    RefreshConfig config = null;
+    Budget budget = null;
+
+    synchronized (this) {
+      config = this.config;
+      budget = this.budget;
+    }
+
+    if (config == null) {
+      return;
+    }
+
+    List<Candidate> candidates = select(config);
+    if (candidates.isEmpty()) {
+      return;
+    }
+
+    budget.refill();
+
+    int lookupCost = Math.max(config.getLookupCost(), 1);
+
+    for (Candidate candidate : candidates) {
+
+      // There is no need to PING Contacts that are known to be
+      // alive or that have requests in-flight.
+      if (candidate.contact != null && liveness.getOutcome(
+          candidate.contact, config.getContactTimeoutInMillis(),
+          TimeUnit.MILLISECONDS) != null) {
+        states.put(candidate.getId(), new State(config.getJitter(),
+            System.currentTimeMillis()));
+        continue;
+      }
+
+      int cost = (candidate.contact != null ? 1 : lookupCost);
+      if (!budget.tryAcquire(cost)) {
+        deferredCount.incrementAndGet();
+        break;
+      }
+
+      KUID id = candidate.getId();
+      states.put(id, new State(config.getJitter(),
+          System.currentTimeMillis()));
+
+      try {
+        if (candidate.contact != null) {
+          DHTFuture<PingEntity> future = pingManager.ping(
+              candidate.contact, config.getPingConfig());
+          pingCount.incrementAndGet();
+          track(id, future);
+
+        } else {
+          Bucket bucket = candidate.bucket;
+          KUID randomId = KUID.createWithPrefix(
+              bucket.getId(), bucket.getDepth());
+
+          DHTFuture<NodeEntity> future = discoveryManager.discover(
+              randomId, config.getLookupConfig());
+          lookupCount.incrementAndGet();
+          track(id, future);
+        }
+      } catch (RejectedExecutionException err) {
+        // The DHT is too busy. Try again in the next round.
+        states.remove(id);
+        deferredCount.incrementAndGet();
+        break;
+      }
+    }
+  }
+
+  /**
+   * Selects all {@link Contact}s and {@link Bucket}s that need to be
+   * refreshed. The oldest are first. The lock on the {@link RouteTable}
+   * is held only while copying its state, no messages are being sent.
+   */
+  List<Candidate> select(RefreshConfig config) {
+    long contactTimeout = config.getContactTimeoutInMillis();
+    long bucketTimeout = config.getBucketTimeoutInMillis();
+    float maxJitter = config.getJitter();
+
+    Bucket[] buckets = null;
+    List<ContactEntry[]> entries = new ArrayList<>();
+
+    synchronized (routeTable) {
+      buckets = routeTable.getBuckets();
+      for (Bucket bucket : buckets) {
+        entries.add(bucket.getActive());
+      }
+    }
+
+    Contact localhost = routeTable.getIdentity();
+    KUID localhostId = localhost.getId();
+
+    List<Candidate> candidates = new ArrayList<>();
+    Map<KUID, State> current = new HashMap<KUID, State>();
+
+    for (int i = 0; i < buckets.length; i++) {
+      Bucket bucket = buckets[i];
+
+      for (ContactEntry entry : entries.get(i)) {
+        Contact contact = entry.getContact();
+        if (contact.equals(localhost)) {
+          continue;
+        }
+
+        KUID contactId = contact.getId();
+        State state = getState(contactId, maxJitter, current);
+        long age = Math.min(state.getAgeInMillis(),
+            contact.getTimeSinceLastContactInMillis());
+
+        if (state.isStale(contactId, age, contactTimeout)) {
+          candidates.add(new Candidate(contact, null, age));
+        }
+      }
+
+      if (bucket.contains(localhostId)) {
+        continue;
+      }
+
+      KUID bucketId = bucket.getId();
+      State state = getState(bucketId, maxJitter, current);
+      long age = Math.min(state.getAgeInMillis(),
+          bucket.getTimeStamp().getAgeInMillis());
+
+      if (state.isStale(bucketId, age, bucketTimeout)) {
+        candidates.add(new Candidate(null, bucket, age));
+      }
+    }
+
+    // Forget about Contacts and Buckets that are no longer
+    // in the RouteTable.
+    states.keySet().retainAll(current.keySet());
+
+    Collections.sort(candidates, Candidate.OLDEST_FIRST);
+    return candidates;
+  }
+
+  private State getState(KUID id, float maxJitter, Map<KUID, State> current) {
+    State state = states.get(id);
+    if (state == null) {
+      state = new State(maxJitter, 0L);
+      states.put(id, state);
+    }
+
+    current.put(id, state);
+    return state;
+  }
+
+  private void track(final KUID id, DHTFuture<?> future) {
+    active.put(id, future);
+
+    @SuppressWarnings("unchecked")
+    DHTFuture<Object> f = (DHTFuture<Object>)future;
+    f.addAsyncFutureListener(new AsyncFutureListener<Object>() {
+      @Override
+      public void operationComplete(AsyncFuture<Object> future) {
+        active.remove(id);
+      }
+    });
+  }
+
+  /**
+   * The refresh state of a {@link Contact} or {@link Bucket}. It holds
+   * the time of the last refresh and a jitter factor that is being
+   * re-rolled with every refresh.
+   */
+  private class State {
+
+    private final long timeStamp;
+
+    private final float jitter;
+
+    private State(float maxJitter, long timeStamp) {
+      this.jitter = generator.nextFloat() * maxJitter;
+      this.timeStamp = timeStamp;
+    }
+
+    /**
+     * Returns the amount of time that has passed since the last refresh.
+     */
+    public long getAgeInMillis() {
+      return System.currentTimeMillis() - timeStamp;
+    }
+
+    /**
+     * Returns {@code true} if the item with the given {@link KUID} is
+     * stale and not being refreshed right now.
+     */
+    public boolean isStale(KUID id, long age, long timeout) {
+      if (timeout < 0L || active.containsKey(id)) {
+        return false;
+      }
+
+      return age >= (long)(timeout * (1f - jitter));
+    }
+  }
+
+  /**
+   * A {@link Contact} that needs to be pinged or a {@link Bucket} that
+   * needs to be refreshed.
+   */
+  static class Candidate {
+
+    private static final Comparator<Candidate> OLDEST_FIRST
+        = new Comparator<Candidate>() {
+      @Override
+      public int compare(Candidate o1, Candidate o2) {
+        return o1.age > o2.age ? -1 : (o1.age < o2.age ? 1 : 0);
+      }
+    };
+
+    private final Contact contact;
+
+    private final Bucket bucket;
+
+    private final long age;
+
+    private Candidate(Contact contact, Bucket bucket, long age) {
+      this.contact = contact;
+      this.bucket = bucket;
+      this.age = age;
+    }
+
+    public KUID getId() {
+      return contact != null ? contact.getId() : bucket.getId();
+    }
+  }
+
+  /**
+   * A simple token bucket that limits the number of messages
+   * we're sending per second.
+   */
+  static class Budget {
+
+    private final double tokensPerMilli;
+
+    private final double capacity;
+
+    private double tokens = 0d;
+
+    private long timeStamp = System.currentTimeMillis();
+
+    public Budget(float messagesPerSecond, int maxCost) {
+      this.tokensPerMilli = messagesPerSecond / 1000d;
+
+      // The capacity is never more than one second worth of messages
+      // (or a single lookup) to prevent bursts after idle periods.
+      this.capacity = Math.max(messagesPerSecond, maxCost);
+    }
+
+    public synchronized void refill() {
+      long now = System.currentTimeMillis();
+      long elapsed = Math.max(now - timeStamp, 0L);
+      timeStamp = now;
+
+      tokens = Math.min(tokens + elapsed * tokensPerMilli, capacity);
+    }
+
+    public synchronized boolean tryAcquire(int cost) {
+      if (tokens >= cost) {
+        tokens -= cost;
+        return true;
+      }
+      return false;
+    }
+  }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.ardverk.concurrent.AsyncFuture;
+import org.ardverk.concurrent.AsyncFutureListener;
+import org.ardverk.dht.concurrent.DHTFuture;
+import org.ardverk.dht.concurrent.DHTFutures;
+import org.ardverk.dht.concurrent.DHTProcess;
+import org.ardverk.dht.concurrent.DHTValueFuture;
+import org.ardverk.dht.concurrent.NopProcess;
+import org.ardverk.dht.concurrent.TimerWheel;
+import org.ardverk.dht.config.Config;
+
+
+/**
+ * The {@link SingleFlight} coalesces concurrent operations with the
+ * same key into a single operation. Every caller gets its own
+ * {@link DHTFuture} that completes with the shared result. The shared
+ * operation is cancelled if all callers have cancelled their
+ * {@link DHTFuture}s.
+ * 
+ * <p>The lock is held only while registering a {@link Flight}, the 
+ * operations are being started outside of it.
+ */
+class SingleFlight<K, V> {
+
+  private final Map<K, Flight> flights = new HashMap<K, Flight>();
+
+  private final FutureManager futureManager;
+
+  public SingleFlight(FutureManager futureManager) {
+    this.futureManager = futureManager;
+  }
+
+  /**
+   * Joins the in-flight operation for the given key or starts a new
+   * one with the given {@link Operation}. The result of a completed
+   * operation is being reused if it's not older than the reuse timeout.
+   */
+  public DHTFuture<V> submit(K key, Operation<V> operation,
+      Config config, long reuseTimeout, TimeUnit unit) {
+
+    long reuseTimeoutInMillis = unit.toMillis(reuseTimeout);
+
+    Flight flight = null;
+    boolean start = false;
+    synchronized (this) {
+      flight = flights.get(key);
+
+      if (flight != null && !flight.isReusable(reuseTimeoutInMillis)) {
+        flights.remove(key);
+        flight = null;
+      }
+
+      if (flight == null) {
+        flight = new Flight(key, reuseTimeoutInMillis);
+        flights.put(key, flight);
+        start = true;
+      }
+
+      flight.reuseTimeout = Math.max(
+          flight.reuseTimeout, reuseTimeoutInMillis);
+      flight.count++;
+    }
+
+    if (start) {
+      flight.start(operation);
+    }
+
+    DHTProcess<V> process = NopProcess.create();
+    DHTFuture<V> future = futureManager.submit(process, config);
+    flight.join(future);
+    return future;
+  }
+
+  /**
+   * Returns the number of in-flight and reusable operations.
+   */
+  public synchronized int size() {
+    return flights.size();
+  }
+
+  private synchronized void remove(K key, Flight flight) {
+    if (flights.get(key) == flight) {
+      flights.remove(key);
+    }
+  }
+
+  /**
+   * An operation that can be coalesced.
+   */
+  public static interface Operation<V> {
+
+    /**
+     * Starts the operation.
+     */
+    public DHTFuture<V> start();
+  }
+
+  /**
+   * A shared operation and the callers that are waiting for it.
+   *
+   * NOTE: All fields are guarded by the {@link SingleFlight}'s lock.
+   */
+  private class Flight implements AsyncFutureListener<V> {
+
+    private final K key;
+
+    /**
+     * Completes with the result of the operation. Callers may join
+     * it before the operation has been started.
+     */
+    private final DHTFuture<V> future = new DHTValueFuture<V>();
+
+    private long reuseTimeout;
+
+    private long completionTime = -1L;
+
+    private int count = 0;
+
+    private Flight(K key, long reuseTimeout) {
+      this.key = key;
+      this.reuseTimeout = reuseTimeout;
+
+      future.addAsyncFutureListener(this);
+    }
+
+    /**
+     * Starts the given {@link Operation}. The {@link Flight} fails
+     * and the exception is being re-thrown if it can't be started.
+     */
+    private void start(Operation<V> operation) {
+      DHTFuture<V> src = null;
+      try {
+        src = operation.start();
+      } catch (RuntimeException err) {
+        remove(key, this);
+        future.setException(err);
+        throw err;
+      }
+
+      DHTFutures.forward(src, future);
+    }
+
+    @Override
+    public void operationComplete(AsyncFuture<V> future) {
+      long reuseTimeout = 0L;
+      synchronized (SingleFlight.this) {
+        completionTime = System.currentTimeMillis();
+        reuseTimeout = this.reuseTimeout;
+      }
+
+      Runnable task = new Runnable() {
+        @Override
+        public void run() {
+          remove(key, Flight.this);
+        }
+      };
+
+      // Failed and cancelled operations are never reused and
+      // successful operations are kept only for a while.
+      if (!future.isCompletedAbnormally() && 0L < reuseTimeout) {
+        TimerWheel.getDefault().schedule(task,
+            reuseTimeout, TimeUnit.MILLISECONDS);
+      } else {
+        task.run();
+      }
+    }
+
+    /**
+     * Returns {@code true} if the operation is either in-flight or
+     * if it completed within the given amount of time.
+     */
+    private boolean isReusable(long timeout) {
+      assert (Thread.holdsLock(SingleFlight.this));
+
+      if (!future.isDone()) {
+        return true;
+      }
+
+      return !future.isCompletedAbnormally() && completionTime != -1L
+          && (System.currentTimeMillis() - completionTime) < timeout;
+    }
+
+    /**
+     * Attaches the given caller's {@link DHTFuture} to the operation.
+     */
+    private void join(final DHTFuture<V> dst) {
+      dst.addAsyncFutureListener(new AsyncFutureListener<V>() {
+        @Override
+        public void operationComplete(AsyncFuture<V> dst) {
+          leave();
+        }
+      });
+
+      future.addAsyncFutureListener(new AsyncFutureListener<V>() {
+        @Override
+        public void operationComplete(AsyncFuture<V> src) {
+          if (src.isCancelled()) {
+            dst.cancel(true);
+            return;
+          }
+
+          try {
+            dst.setValue(src.get());
+          } catch (InterruptedException err) {
+            dst.setException(err);
+          } catch (ExecutionException err) {
+            dst.setException(err.getCause());
+          }
+        }
+      });
+    }
+
+    /**
+     * Cancels the operation if no one is waiting for it anymore.
+     */
+    private void leave() {
+      synchronized (SingleFlight.this) {
+        if (--count > 0 || future.isDone()) {
+          return;
+        }
+
+        if (flights.get(key) == this) {
+          flights.remove(key);
+        }
+      }
+
+      future.cancel(true);
+    }
+  }
+}
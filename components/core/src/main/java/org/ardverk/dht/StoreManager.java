@@ -16,6 +16,13 @@
 
 package org.ardverk.dht;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
 import javax.inject.Inject;
 import javax.inject.Provider;
 import javax.inject.Singleton;
@@ -23,23 +30,31 @@ import javax.inject.Singleton;
 import org.ardverk.concurrent.AsyncFuture;
 import org.ardverk.concurrent.AsyncFutureListener;
 import org.ardverk.concurrent.FutureUtils;
-import org.ardverk.concurrent.ValueReference;
 import org.ardverk.dht.concurrent.DHTFuture;
+import org.ardverk.dht.concurrent.DHTFutures;
+import org.ardverk.dht.concurrent.DHTFutures.AsyncFunction;
+import org.ardverk.dht.concurrent.DHTFutures.Function;
 import org.ardverk.dht.concurrent.DHTProcess;
+import org.ardverk.dht.concurrent.Deadline;
 import org.ardverk.dht.concurrent.NopProcess;
 import org.ardverk.dht.config.ConfigProvider;
 import org.ardverk.dht.config.PutConfig;
 import org.ardverk.dht.config.StoreConfig;
 import org.ardverk.dht.entity.NodeEntity;
 import org.ardverk.dht.entity.PutEntity;
+import org.ardverk.dht.entity.StoreBatchEntity;
 import org.ardverk.dht.entity.StoreEntity;
-import org.ardverk.dht.entity.ValueEntity;
+import org.ardverk.dht.io.LookupListener;
 import org.ardverk.dht.io.MessageDispatcher;
+import org.ardverk.dht.io.StoreBatchResponseHandler;
+import org.ardverk.dht.io.StoreException;
 import org.ardverk.dht.io.StoreResponseHandler;
+import org.ardverk.dht.message.StoreResponse;
 import org.ardverk.dht.routing.Contact;
 import org.ardverk.dht.routing.RouteTable;
 import org.ardverk.dht.rsrc.Key;
 import org.ardverk.dht.rsrc.Value;
+import org.ardverk.lang.TimeStamp;
 
 /**
  * The {@link StoreManager} manages STORE operations.
@@ -81,120 +96,377 @@ public class StoreManager {
       throw new IllegalArgumentException("w=" + w);
     }
     
-    if (w >= 2 && !value.isRepeatable()) {
+    if ((w >= 2 || cfg.isPipelined()) && !value.isRepeatable()) {
       throw new IllegalArgumentException(
           "The value is not repeatable: w=" + w);
     }
     
-    final Object lock = new Object();
-    synchronized (lock) {
+    if (cfg.isPipelined()) {
+      return new PipelinedPut(key, value, cfg).start();
+    }
+    
+    // The lookup and the STORE share the same budget
+    final Deadline deadline = Deadline.after(
+        cfg.getOperationTimeoutInMillis(), TimeUnit.MILLISECONDS);
+    
+    // This is the DHTFuture we're going to return to the caller
+    // of this method (in most cases the user).
+    DHTProcess<PutEntity> process = NopProcess.create();
+    DHTFuture<PutEntity> userFuture = futureManager.submit(process, cfg);
+    
+    // Start the lookup for the given KUID and STORE the value 
+    // at the k-closest Contacts once it has completed.
+    DHTFuture<NodeEntity> lookupFuture = discoveryManager.discover(
+        key.getId(), cfg.getLookupConfig(), deadline);
+    
+    DHTFuture<PutEntity> putFuture = DHTFutures.compose(lookupFuture, 
+        new AsyncFunction<NodeEntity, PutEntity>() {
+      @Override
+      public DHTFuture<PutEntity> apply(final NodeEntity nodeEntity) {
+        Contact[] contacts = nodeEntity.getContacts();
+        StoreConfig storeConfig = cfg.getStoreConfig();
+        
+        // The ack DHTFuture completes as soon as a quorum of replicas
+        // has been written and the remaining ones keep going in the
+        // background.
+        DHTFuture<StoreEntity> ackFuture = null;
+        if (0 < storeConfig.getQuorum()) {
+          DHTProcess<StoreEntity> ackProcess = NopProcess.create();
+          ackFuture = futureManager.submit(ackProcess, storeConfig);
+        }
+        
+        final DHTFuture<StoreEntity> storeFuture = store(contacts, 
+            key, value, ackFuture, storeConfig, deadline);
+        
+        if (ackFuture == null) {
+          return toPutEntity(nodeEntity, storeFuture, storeFuture);
+        }
+        
+        // Let the remaining replicas of an early acknowledged 
+        // STORE complete in the background.
+        DHTFuture<PutEntity> future 
+          = toPutEntity(nodeEntity, ackFuture, storeFuture);
+        future.addAsyncFutureListener(new AsyncFutureListener<PutEntity>() {
+          @Override
+          public void operationComplete(AsyncFuture<PutEntity> future) {
+            if (future.isCompletedAbnormally()) {
+              FutureUtils.cancel(storeFuture, true);
+            }
+          }
+        });
+        return future;
+      }
+    });
+    
+    DHTFutures.forward(putFuture, userFuture);
+    return userFuture;
+  }
+  
+  /**
+   * Turns the result of the given {@link StoreEntity} {@link DHTFuture} 
+   * into a {@link PutEntity}.
+   */
+  private static DHTFuture<PutEntity> toPutEntity(
+      final NodeEntity nodeEntity, DHTFuture<StoreEntity> resultFuture, 
+      final DHTFuture<StoreEntity> storeFuture) {
+    return DHTFutures.transform(resultFuture, 
+        new Function<StoreEntity, PutEntity>() {
+      @Override
+      public PutEntity apply(StoreEntity storeEntity) {
+        return new PutEntity(nodeEntity, storeEntity, storeFuture);
+      }
+    });
+  }
+  
+  /**
+   * Sends a STORE request to the given list of {@link Contact}s.
+   * 
+   * NOTE: It's being assumed the {@link Contact}s are already sorted by
+   * their XOR distance to the given {@link KUID}.
+   */
+  public DHTFuture<StoreEntity> store(Contact[] dst, Key key, 
+      Value value, StoreConfig config) {
+    return store(dst, key, value, config, null);
+  }
+  
+  /**
+   * Sends a STORE request to the given list of {@link Contact}s 
+   * that doesn't send any requests past the given {@link Deadline}.
+   */
+  public DHTFuture<StoreEntity> store(Contact[] dst, Key key, 
+      Value value, StoreConfig config, Deadline deadline) {
+    return store(dst, key, value, null, config, deadline);
+  }
+  
+  /**
+   * Sends a STORE request to the given list of {@link Contact}s and 
+   * completes the given ack {@link DHTFuture} as soon as a quorum of
+   * replicas has been written.
+   */
+  private DHTFuture<StoreEntity> store(Contact[] dst, Key key, 
+      Value value, DHTFuture<StoreEntity> ackFuture, 
+      StoreConfig config, Deadline deadline) {
+    
+    int k = routeTable.getK();
+    StoreResponseHandler process 
+      = new StoreResponseHandler(messageDispatcher, 
+        dst, k, key, value, ackFuture, config);
+    process.setDeadline(deadline);
+    
+    return futureManager.submit(process, config);
+  }
+  
+  /**
+   * Sends the given {@link Key}-{@link Value} pairs in a single STORE 
+   * request to each of the given {@link Contact}s.
+   * 
+   * NOTE: It's being assumed the {@link Contact}s are already sorted by
+   * their XOR distance to the {@link Key}s.
+   */
+  public DHTFuture<StoreBatchEntity> storeAll(Contact[] dst, Key[] keys, 
+      Value[] values, StoreConfig config) {
+    return storeAll(dst, keys, values, config, null);
+  }
+  
+  /**
+   * Sends the given {@link Key}-{@link Value} pairs in a single STORE 
+   * request to each of the given {@link Contact}s but not past the
+   * given {@link Deadline}.
+   */
+  public DHTFuture<StoreBatchEntity> storeAll(Contact[] dst, Key[] keys, 
+      Value[] values, StoreConfig config, Deadline deadline) {
+    
+    int k = routeTable.getK();
+    StoreBatchResponseHandler process 
+      = new StoreBatchResponseHandler(messageDispatcher, 
+        dst, k, keys, values, config);
+    process.setDeadline(deadline);
+    
+    return futureManager.submit(process, config);
+  }
+  
+  /**
+   * Returns the {@link Contact}s a STORE must be sent to so that there 
+   * are W replicas (or pending STOREs) among the given {@link Contact}s.
+   * The returned {@link Contact}s are being added to the attempted ones
+   * and {@link Contact}s that have been attempted before are never 
+   * being returned again.
+   */
+  static List<Contact> selectReplicas(Contact[] contacts, 
+      Set<KUID> attempted, Set<KUID> failed, int w) {
+    
+    int count = 0;
+    for (Contact contact : contacts) {
+      KUID contactId = contact.getId();
+      if (attempted.contains(contactId) && !failed.contains(contactId)) {
+        ++count;
+      }
+    }
+    
+    List<Contact> replicas = new ArrayList<>();
+    for (Contact contact : contacts) {
+      if (count >= w) {
+        break;
+      }
       
-      // This is the DHTFuture we're going to return to the caller
-      // of this method (in most cases the user).
+      if (attempted.add(contact.getId())) {
+        replicas.add(contact);
+        ++count;
+      }
+    }
+    return replicas;
+  }
+  
+  /**
+   * A {@link PipelinedPut} doesn't wait for the lookup to converge. 
+   * It sends STOREs to the k-closest {@link Contact}s as soon as they 
+   * are stable and tops up the replicas once the lookup has completed
+   * in case the k-closest {@link Contact}s have changed.
+   */
+  private class PipelinedPut implements LookupListener {
+    
+    private final TimeStamp creationTime = TimeStamp.now();
+    
+    private final Key key;
+    
+    private final Value value;
+    
+    private final PutConfig config;
+    
+    private final int w;
+    
+    private final Set<KUID> attempted = new HashSet<>();
+    
+    private final Set<KUID> failed = new HashSet<>();
+    
+    private final List<StoreResponse> responses = new ArrayList<>();
+    
+    private final List<DHTFuture<StoreEntity>> storeFutures = new ArrayList<>();
+    
+    private DHTFuture<PutEntity> userFuture = null;
+    
+    private DHTFuture<NodeEntity> lookupFuture = null;
+    
+    private NodeEntity nodeEntity = null;
+    
+    private Contact[] contacts = new Contact[0];
+    
+    private int active = 0;
+    
+    private final Deadline deadline;
+    
+    public PipelinedPut(Key key, Value value, PutConfig config) {
+      this.key = key;
+      this.value = value;
+      this.config = config;
+      this.w = Math.min(config.getStoreConfig().getW(), routeTable.getK());
+      this.deadline = Deadline.after(
+          config.getOperationTimeoutInMillis(), TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Starts the lookup. We're not holding our lock while we're doing
+     * it as the lookup's {@link DHTFuture} has its own lock.
+     */
+    public DHTFuture<PutEntity> start() {
       DHTProcess<PutEntity> process = NopProcess.create();
       final DHTFuture<PutEntity> userFuture 
-        = futureManager.submit(process, cfg);
-      
-      // This will get initialized once we've found the k-closest
-      // Contacts to the given KUID
-      final ValueReference<DHTFuture<StoreEntity>> storeFutureRef 
-        = new ValueReference<DHTFuture<StoreEntity>>();
-      
-      // This will get initialized once we've found the k-closest
-      // Contacts to the given KUID
-      final ValueReference<DHTFuture<ValueEntity>> clockFutureRef 
-        = new ValueReference<DHTFuture<ValueEntity>>();
+        = futureManager.submit(process, config);
+      synchronized (this) {
+        this.userFuture = userFuture;
+      }
       
-      // Start the lookup for the given KUID
-      final DHTFuture<NodeEntity> lookupFuture 
-        = discoveryManager.discover(key.getId(), 
-            cfg.getLookupConfig());
+      DHTFuture<NodeEntity> lookupFuture = discoveryManager.discover(
+          key.getId(), this, config.getLookupConfig(), deadline);
+      synchronized (this) {
+        this.lookupFuture = lookupFuture;
+      }
       
-      // Let's wait for the result of the FIND_NODE operation. On success we're 
-      // going to initialize the storeFutureRef and do the actual STOREing.
       lookupFuture.addAsyncFutureListener(new AsyncFutureListener<NodeEntity>() {
         @Override
         public void operationComplete(AsyncFuture<NodeEntity> future) {
-          synchronized (lock) {
-            try {
-              if (!future.isCancelled()) {
-                handleNodeEntity(future.get());
-              } else {
-                handleCancelled();
-              }
-            } catch (Throwable t) {
-              handleException(t);
-            }
+          if (future.isCancelled()) {
+            userFuture.cancel(true);
+            return;
           }
-        }
-        
-        private void handleNodeEntity(final NodeEntity nodeEntity) {
-          Contact[] contacts = nodeEntity.getContacts();
-          DHTFuture<StoreEntity> storeFuture 
-            = storeFutureRef.make(store(contacts, 
-                key, value, cfg.getStoreConfig()));
           
-          storeFuture.addAsyncFutureListener(new AsyncFutureListener<StoreEntity>() {
-            @Override
-            public void operationComplete(AsyncFuture<StoreEntity> future) {
-              synchronized (lock) {
-                try {
-                  if (!future.isCancelled()) {
-                    handleStoreEntity(future.get());
-                  } else {
-                    handleCancelled();
-                  }
-                } catch (Throwable t) {
-                  handleException(t);
-                }
-              }
-            }
-            
-            private void handleStoreEntity(StoreEntity storeEntity) {
-              userFuture.setValue(new PutEntity(
-                  nodeEntity, storeEntity));
-            }
-          });
-        }
-        
-        private void handleCancelled() {
-          userFuture.cancel(true);
-        }
-        
-        private void handleException(Throwable t) {
-          userFuture.setException(t);
+          try {
+            handleNodeEntity(future.get());
+          } catch (Throwable t) {
+            userFuture.setException(t);
+          }
         }
       });
       
       userFuture.addAsyncFutureListener(new AsyncFutureListener<PutEntity>() {
         @Override
         public void operationComplete(AsyncFuture<PutEntity> future) {
-          synchronized (lock) {
-            FutureUtils.cancel(lookupFuture, true);
-            FutureUtils.cancel(storeFutureRef, true);
-            FutureUtils.cancel(clockFutureRef, true);
-          }
+          cancel();
         }
       });
       
       return userFuture;
     }
-  }
-  
-  /**
-   * Sends a STORE request to the given list of {@link Contact}s.
-   * 
-   * NOTE: It's being assumed the {@link Contact}s are already sorted by
-   * their XOR distance to the given {@link KUID}.
-   */
-  public DHTFuture<StoreEntity> store(Contact[] dst, Key key, 
-      Value value, StoreConfig config) {
     
-    int k = routeTable.getK();
-    DHTProcess<StoreEntity> process 
-      = new StoreResponseHandler(messageDispatcher, 
-        dst, k, key, value, config);
+    @Override
+    public synchronized void handleStableContacts(
+        KUID lookupId, Contact[] contacts) {
+      if (nodeEntity == null) {
+        this.contacts = contacts;
+        store(contacts);
+      }
+    }
     
-    return futureManager.submit(process, config);
+    private synchronized void handleNodeEntity(NodeEntity nodeEntity) {
+      this.nodeEntity = nodeEntity;
+      this.contacts = nodeEntity.getContacts();
+      
+      // Top up the replicas in case the k-closest Contacts 
+      // have changed since the first STOREs went out.
+      store(contacts);
+      complete();
+    }
+    
+    private synchronized void handleStoreEntity(Contact dst, 
+        AsyncFuture<StoreEntity> future) {
+      --active;
+      
+      if (future.isCompletedAbnormally()) {
+        failed.add(dst.getId());
+      } else {
+        try {
+          responses.addAll(Arrays.asList(
+              future.get().getStoreResponses()));
+        } catch (Exception err) {
+          failed.add(dst.getId());
+        }
+      }
+      
+      store(contacts);
+      complete();
+    }
+    
+    /**
+     * Sends STOREs to the given {@link Contact}s until there are 
+     * W replicas (or pending STOREs) among them.
+     */
+    private synchronized void store(Contact[] contacts) {
+      if (userFuture.isDone()) {
+        return;
+      }
+      
+      for (final Contact contact : selectReplicas(
+          contacts, attempted, failed, w)) {
+        DHTFuture<StoreEntity> future = StoreManager.this.store(
+            new Contact[] { contact }, key, value, 
+            config.getStoreConfig(), deadline);
+        storeFutures.add(future);
+        ++active;
+        
+        future.addAsyncFutureListener(new AsyncFutureListener<StoreEntity>() {
+          @Override
+          public void operationComplete(AsyncFuture<StoreEntity> future) {
+            handleStoreEntity(contact, future);
+          }
+        });
+      }
+    }
+    
+    private synchronized void complete() {
+      if (nodeEntity == null || 0 < active || userFuture.isDone()) {
+        return;
+      }
+      
+      long time = creationTime.getAgeInMillis();
+      
+      StoreResponse[] values = responses.toArray(new StoreResponse[0]);
+      if (values.length == 0) {
+        userFuture.setException(new StoreException(key, 
+            value, time, TimeUnit.MILLISECONDS));
+      } else {
+        StoreEntity storeEntity = new StoreEntity(contacts, key, value, 
+            values, time, TimeUnit.MILLISECONDS);
+        userFuture.setValue(new PutEntity(nodeEntity, storeEntity));
+      }
+    }
+    
+    /**
+     * Cancels the lookup and all pending STOREs. The {@link DHTFuture}s
+     * are being cancelled outside of our lock as their listeners may 
+     * call back into this {@link PipelinedPut}.
+     */
+    private void cancel() {
+      List<DHTFuture<?>> futures = new ArrayList<>();
+      synchronized (this) {
+        if (lookupFuture != null) {
+          futures.add(lookupFuture);
+        }
+        futures.addAll(storeFutures);
+      }
+      
+      for (DHTFuture<?> future : futures) {
+        future.cancel(true);
+      }
+    }
   }
 }
\ No newline at end of file
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.ardverk.collection.FixedSizeHashMap;
+import org.ardverk.dht.entity.ValueEntity;
+import org.ardverk.dht.message.ValueResponse;
+import org.ardverk.dht.rsrc.Key;
+import org.ardverk.dht.rsrc.Value;
+import org.ardverk.utils.TimeUtils;
+
+/**
+ * The {@link ValueEntityCache} is a client-side cache of recent
+ * FIND_VALUE results. A cached {@link ValueEntity} is either being
+ * returned as is or, if a {@link Revalidator} is installed, being
+ * revalidated with a conditional FIND_VALUE that doesn't transfer
+ * the value if it hasn't changed.
+ */
+@Singleton
+public class ValueEntityCache {
+
+  public static final int DEFAULT_MAX_SIZE = 256;
+
+  private static final long DEFAULT_TIMEOUT
+    = TimeUtils.convert(5L, TimeUnit.MINUTES, TimeUnit.MILLISECONDS);
+
+  private final Map<Key, CacheEntry> entries;
+
+  private final AtomicLong hitCount = new AtomicLong();
+
+  private final AtomicLong notModifiedCount = new AtomicLong();
+
+  private volatile long timeoutInMillis = DEFAULT_TIMEOUT;
+
+  private volatile Revalidator revalidator = null;
+
+  @Inject
+  public ValueEntityCache() {
+    this(DEFAULT_MAX_SIZE);
+  }
+
+  public ValueEntityCache(int maxSize) {
+    this.entries = new FixedSizeHashMap<>(16, 0.75f, true, maxSize);
+  }
+
+  /**
+   * Returns the maximum age of a cached {@link ValueEntity}.
+   */
+  public long getTimeout(TimeUnit unit) {
+    return unit.convert(timeoutInMillis, TimeUnit.MILLISECONDS);
+  }
+
+  public long getTimeoutInMillis() {
+    return getTimeout(TimeUnit.MILLISECONDS);
+  }
+
+  public void setTimeout(long timeout, TimeUnit unit) {
+    this.timeoutInMillis = unit.toMillis(timeout);
+  }
+
+  /**
+   * Returns the {@link Revalidator} or {@code null}.
+   */
+  public Revalidator getRevalidator() {
+    return revalidator;
+  }
+
+  /**
+   * Sets the {@link Revalidator} that is used for conditional
+   * FIND_VALUE lookups.
+   */
+  public void setRevalidator(Revalidator revalidator) {
+    this.revalidator = revalidator;
+  }
+
+  /**
+   * Caches the given {@link ValueEntity}. Entities with values that
+   * can't be read more than once are not being cached.
+   */
+  public boolean put(Key key, ValueEntity entity) {
+    for (ValueResponse response : entity.ValueResponses()) {
+      if (!response.getValue().isRepeatable()) {
+        return false;
+      }
+    }
+
+    CacheEntry entry = new CacheEntry(entity);
+    synchronized (entries) {
+      entries.put(key, entry);
+    }
+    return true;
+  }
+
+  /**
+   * Returns the cached {@link ValueEntity} for the given {@link Key}
+   * or {@code null} if there is none or if it's older than the given
+   * amount of time.
+   */
+  public ValueEntity get(Key key, long maxAge, TimeUnit unit) {
+    long maxAgeInMillis = Math.min(unit.toMillis(maxAge), timeoutInMillis);
+
+    ValueEntity entity = null;
+    synchronized (entries) {
+      CacheEntry entry = entries.get(key);
+      if (entry != null) {
+        long age = System.currentTimeMillis() - entry.creationTime;
+        if (age < maxAgeInMillis) {
+          entity = entry.entity;
+        } else if (age >= timeoutInMillis) {
+          entries.remove(key);
+        }
+      }
+    }
+
+    if (entity != null) {
+      hitCount.incrementAndGet();
+    }
+    return entity;
+  }
+
+  /**
+   * Returns the cached {@link ValueEntity} for the given {@link Key}
+   * or {@code null} if there is none or if it has expired.
+   */
+  public ValueEntity get(Key key) {
+    return get(key, timeoutInMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Removes the cached {@link ValueEntity} for the given {@link Key}.
+   */
+  public void remove(Key key) {
+    synchronized (entries) {
+      entries.remove(key);
+    }
+  }
+
+  /**
+   * Returns a conditional {@link Key} for the given cached
+   * {@link ValueEntity} or {@code null} if it can't be revalidated.
+   */
+  public Key createConditionalKey(Key key, ValueEntity entity) {
+    Revalidator revalidator = this.revalidator;
+    if (revalidator == null) {
+      return null;
+    }
+
+    return revalidator.createConditionalKey(key, entity.getValue());
+  }
+
+  /**
+   * Returns the {@link ValueEntity} of a conditional FIND_VALUE. It's
+   * the cached {@link ValueEntity} if all {@link ValueResponse}s say
+   * that it's still up-to-date. Otherwise it's the given 
+   * {@link ValueEntity} with the {@link ValueResponse}s that have
+   * a (new) value.
+   */
+  public ValueEntity revalidate(ValueEntity entity, ValueEntity cached) {
+    Revalidator revalidator = this.revalidator;
+    if (revalidator == null) {
+      return entity;
+    }
+    
+    ValueResponse[] responses = entity.ValueResponses();
+    List<ValueResponse> modified = new ArrayList<>(responses.length);
+    for (ValueResponse response : responses) {
+      if (!revalidator.isNotModified(response.getValue())) {
+        modified.add(response);
+      }
+    }
+    
+    if (modified.isEmpty()) {
+      notModifiedCount.incrementAndGet();
+      return cached;
+    }
+    
+    if (modified.size() == responses.length) {
+      return entity;
+    }
+    
+    return new ValueEntity(entity.getOutcome(), 
+        modified.toArray(new ValueResponse[0]));
+  }
+
+  /**
+   * Returns the number of entries.
+   */
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  /**
+   * Removes all entries.
+   */
+  public void clear() {
+    synchronized (entries) {
+      entries.clear();
+    }
+  }
+
+  /**
+   * Returns the number of cache hits.
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * Returns the number of successful revalidations.
+   */
+  public long getNotModifiedCount() {
+    return notModifiedCount.get();
+  }
+
+  /**
+   * A {@link Revalidator} knows how to ask for a {@link Value} only
+   * if it differs from a cached copy.
+   */
+  public static interface Revalidator {
+
+    /**
+     * Returns a {@link Key} that asks for the value only if it's
+     * different from the given cached {@link Value} or {@code null}
+     * if the {@link Value} can't be revalidated.
+     */
+    public Key createConditionalKey(Key key, Value value);
+
+    /**
+     * Returns {@code true} if the given {@link Value} is
+     * a "not modified" answer.
+     */
+    public boolean isNotModified(Value value);
+  }
+
+  private static class CacheEntry {
+
+    private final long creationTime = System.currentTimeMillis();
+
+    private final ValueEntity entity;
+
+    private CacheEntry(ValueEntity entity) {
+      this.entity = entity;
+    }
+  }
+}
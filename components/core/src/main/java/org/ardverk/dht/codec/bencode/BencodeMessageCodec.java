@@ -19,10 +19,14 @@ package org.ardverk.dht.codec.bencode;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.util.Map;
 
+import org.ardverk.collection.FixedSizeHashMap;
 import org.ardverk.dht.codec.AbstractMessageCodec;
 import org.ardverk.dht.message.Message;
+import org.ardverk.dht.routing.Contact;
 
 
 /**
@@ -31,6 +35,44 @@ import org.ardverk.dht.message.Message;
  */
 public class BencodeMessageCodec extends AbstractMessageCodec {
   
+  /**
+   * The maximum number of remote hosts whose {@link Message} 
+   * Version we remember.
+   */
+  private static final int MAX_VERSIONS = 4096;
+  
+  /**
+   * The highest {@link Message} Version each remote host has sent us. 
+   * We write the default Version to everybody else because older 
+   * nodes reject {@link Message}s of any other Version.
+   */
+  private final Map<Object, Integer> versions 
+    = new FixedSizeHashMap<>(16, 0.75f, true, MAX_VERSIONS);
+  
+  private volatile int defaultVersion = Constants.MIN_VERSION;
+  
+  /**
+   * Returns the {@link Message} Version that is being written to 
+   * remote hosts that haven't sent us a higher Version.
+   */
+  public int getDefaultVersion() {
+    return defaultVersion;
+  }
+  
+  /**
+   * Sets the {@link Message} Version that is being written to remote 
+   * hosts that haven't sent us a higher Version. It should be raised
+   * only once all nodes of the network are able to read it.
+   */
+  public void setDefaultVersion(int defaultVersion) {
+    if (defaultVersion < Constants.MIN_VERSION 
+        || Constants.VERSION < defaultVersion) {
+      throw new IllegalArgumentException(
+          "defaultVersion=" + defaultVersion);
+    }
+    this.defaultVersion = defaultVersion;
+  }
+  
   @Override
   public Decoder createDecoder(final SocketAddress src, final InputStream in) {
     Decoder decoder = new Decoder() {
@@ -40,7 +82,11 @@ public class BencodeMessageCodec extends AbstractMessageCodec {
       
       @Override
       public Message read() throws IOException {
-        return mis.readMessage(src);
+        Message message = mis.readMessage(src);
+        
+        Contact contact = message.getContact();
+        setVersion(contact.getRemoteAddress(), mis.getVersion());
+        return message;
       }
       
       @Override
@@ -59,7 +105,7 @@ public class BencodeMessageCodec extends AbstractMessageCodec {
       
       @Override
       public void write(Message message) throws IOException {
-        mos.writeMessage(message);
+        mos.writeMessage(message, getVersion(message.getAddress()));
       }
       
       @Override
@@ -74,4 +120,40 @@ public class BencodeMessageCodec extends AbstractMessageCodec {
     };
     return encoder;
   }
+  
+  /**
+   * Returns the {@link Message} Version that is being written to
+   * the given remote host.
+   */
+  public int getVersion(SocketAddress address) {
+    Integer version = null;
+    synchronized (versions) {
+      version = versions.get(key(address));
+    }
+    
+    int defaultVersion = this.defaultVersion;
+    return version != null ? Math.max(version, defaultVersion) : defaultVersion;
+  }
+  
+  /**
+   * Remembers the given {@link Message} Version of the remote host 
+   * unless it has sent us a higher Version before.
+   */
+  private void setVersion(SocketAddress address, int version) {
+    Object key = key(address);
+    synchronized (versions) {
+      Integer existing = versions.get(key);
+      if (existing == null || existing < version) {
+        versions.put(key, version);
+      }
+    }
+  }
+  
+  private static Object key(SocketAddress address) {
+    if (address instanceof InetSocketAddress) {
+      InetSocketAddress isa = (InetSocketAddress)address;
+      return isa.getHostString() + ":" + isa.getPort();
+    }
+    return address;
+  }
 }
\ No newline at end of file
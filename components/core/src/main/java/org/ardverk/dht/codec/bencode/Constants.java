@@ -17,6 +17,7 @@
 package org.ardverk.dht.codec.bencode;
 
 import org.ardverk.dht.message.Message;
+import org.ardverk.dht.routing.Contact;
 
 /**
  * Just a few constants.
@@ -25,6 +26,29 @@ interface Constants {
   
   /**
    * The current {@link Message} Version.
+   * 
+   * <p>Version 1 adds the network coordinates of the sender and
+   * of the {@link Contact}s in the message.
+   * 
+   * <p>Version 2 adds the cache timeout to STORE requests.
+   * 
+   * <p>Version 3 adds the hop limit to FIND_NODE and FIND_VALUE requests.
+   * 
+   * <p>Version 4 adds STORE requests and responses with many 
+   * key-value pairs.
    */
-  public static final int VERSION = 0;
+  public static final int VERSION = 4;
+  
+  /**
+   * The first {@link Message} Version we're able to read. It's also
+   * the Version we're writing until a remote host has shown us that 
+   * it's able to read a newer Version.
+   */
+  public static final int MIN_VERSION = 0;
+  
+  /**
+   * The first {@link Message} Version with STORE requests and 
+   * responses that carry many key-value pairs.
+   */
+  public static final int BATCH_VERSION = 4;
 }
\ No newline at end of file
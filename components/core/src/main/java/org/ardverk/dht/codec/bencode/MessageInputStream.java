@@ -25,6 +25,7 @@ import java.net.SocketAddress;
 import java.net.URI;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 
 import org.ardverk.coding.BencodingInputStream;
 import org.ardverk.dht.KUID;
@@ -34,6 +35,8 @@ import org.ardverk.dht.message.DefaultNodeRequest;
 import org.ardverk.dht.message.DefaultNodeResponse;
 import org.ardverk.dht.message.DefaultPingRequest;
 import org.ardverk.dht.message.DefaultPingResponse;
+import org.ardverk.dht.message.DefaultStoreBatchRequest;
+import org.ardverk.dht.message.DefaultStoreBatchResponse;
 import org.ardverk.dht.message.DefaultStoreRequest;
 import org.ardverk.dht.message.DefaultStoreResponse;
 import org.ardverk.dht.message.DefaultValueRequest;
@@ -44,11 +47,14 @@ import org.ardverk.dht.message.NodeRequest;
 import org.ardverk.dht.message.NodeResponse;
 import org.ardverk.dht.message.PingRequest;
 import org.ardverk.dht.message.PingResponse;
+import org.ardverk.dht.message.StoreBatchRequest;
+import org.ardverk.dht.message.StoreBatchResponse;
 import org.ardverk.dht.message.StoreRequest;
 import org.ardverk.dht.message.StoreResponse;
 import org.ardverk.dht.message.ValueRequest;
 import org.ardverk.dht.message.ValueResponse;
 import org.ardverk.dht.routing.Contact;
+import org.ardverk.dht.routing.Coordinate;
 import org.ardverk.dht.routing.DefaultContact;
 import org.ardverk.dht.rsrc.ByteArrayValue;
 import org.ardverk.dht.rsrc.Key;
@@ -66,6 +72,16 @@ import org.ardverk.version.VectorClock;
  */
 public class MessageInputStream extends BencodingInputStream {
   
+  /**
+   * The maximum number of key-value pairs in a STORE batch.
+   */
+  private static final int MAX_BATCH_SIZE = 1024;
+  
+  /**
+   * The version of the {@link Message} that is being read.
+   */
+  private int version = Constants.VERSION;
+  
   public MessageInputStream(InputStream in) {
     super(in);
   }
@@ -96,6 +112,13 @@ public class MessageInputStream extends BencodingInputStream {
     }
   }
 
+  /**
+   * Returns the version of the last {@link Message} that was read.
+   */
+  public int getVersion() {
+    return version;
+  }
+  
   public MessageId readMessageId() throws IOException {
     return MessageId.create(readBytes());
   }
@@ -155,16 +178,61 @@ public class MessageInputStream extends BencodingInputStream {
     int instanceId = readInt();
     boolean invisible = readBoolean();
     SocketAddress address = readSocketAddress();
+    Coordinate coordinate = readCoordinate();
     
-    return new DefaultContact(type, contactId, 
+    DefaultContact contact = new DefaultContact(type, contactId, 
         instanceId, invisible, src, address);
+    contact.setCoordinate(coordinate);
+    return contact;
   }
   
   public Contact readContact() throws IOException {
     KUID contactId = readKUID();
     SocketAddress address = readSocketAddress();
+    Coordinate coordinate = readCoordinate();
     
-    return new DefaultContact(contactId, address);
+    DefaultContact contact = new DefaultContact(contactId, address);
+    contact.setCoordinate(coordinate);
+    return contact;
+  }
+  
+  /**
+   * Reads and returns a {@link Coordinate} or {@code null} if the 
+   * {@link Message} has no {@link Coordinate}s.
+   */
+  public Coordinate readCoordinate() throws IOException {
+    if (version < 1) {
+      return null;
+    }
+    
+    int dimensions = readUnsignedByte();
+    if (dimensions == 0) {
+      return null;
+    }
+    
+    double[] position = new double[dimensions];
+    for (int i = 0; i < position.length; i++) {
+      position[i] = readCoordinateValue();
+    }
+    
+    double height = readCoordinateValue();
+    double error = readCoordinateValue();
+    
+    // Ignore Coordinates from a different (future) model or
+    // Coordinates that are obviously broken.
+    if (dimensions != Coordinate.DIMENSIONS) {
+      return null;
+    }
+    
+    try {
+      return new Coordinate(position, height, error);
+    } catch (IllegalArgumentException err) {
+      return null;
+    }
+  }
+  
+  private double readCoordinateValue() throws IOException {
+    return Float.intBitsToFloat(readInt());
   }
   
   public Contact[] readContacts() throws IOException {
@@ -190,11 +258,17 @@ public class MessageInputStream extends BencodingInputStream {
   
   public Message readMessage(SocketAddress src) throws IOException {
     int version = readUnsignedByte();
-    if (version != Constants.VERSION) {
+    if (version < Constants.MIN_VERSION || Constants.VERSION < version) {
       throw new IOException("version=" + version);
     }
     
+    this.version = version;
+    
     OpCode opcode = readEnum(OpCode.class);
+    if (opcode.isBatch() && version < Constants.BATCH_VERSION) {
+      throw new IOException("opcode=" + opcode + ", version=" + version);
+    }
+    
     MessageId messageId = readMessageId();
     Contact contact = readSender(opcode.isRequest() 
         ? Contact.Type.UNSOLICITED : Contact.Type.SOLICITED, src);
@@ -217,6 +291,10 @@ public class MessageInputStream extends BencodingInputStream {
         return readStoreRequest(messageId, contact, address);
       case STORE_RESPONSE:
         return readStoreResponse(messageId, contact, address);
+      case STORE_BATCH_REQUEST:
+        return readStoreBatchRequest(messageId, contact, address);
+      case STORE_BATCH_RESPONSE:
+        return readStoreBatchResponse(messageId, contact, address);
       default:
         throw new IllegalArgumentException("opcode=" + opcode);
     }
@@ -235,7 +313,9 @@ public class MessageInputStream extends BencodingInputStream {
   private NodeRequest readNodeRequest(MessageId messageId, 
       Contact contact, SocketAddress address) throws IOException {
     KUID lookupId = readKUID();
-    return new DefaultNodeRequest(messageId, contact, address, lookupId);
+    int hopLimit = (version >= 3 ? readUnsignedByte() : 0);
+    return new DefaultNodeRequest(messageId, contact, 
+        address, lookupId, hopLimit);
   }
   
   private NodeResponse readNodeResponse(MessageId messageId, 
@@ -249,7 +329,9 @@ public class MessageInputStream extends BencodingInputStream {
       Contact contact, SocketAddress address) throws IOException {
     
     Key key = readKey();
-    return new DefaultValueRequest(messageId, contact, address, key);
+    int hopLimit = (version >= 3 ? readUnsignedByte() : 0);
+    return new DefaultValueRequest(messageId, contact, 
+        address, key, hopLimit);
   }
   
   private ValueResponse readValueResponse(MessageId messageId, 
@@ -263,9 +345,10 @@ public class MessageInputStream extends BencodingInputStream {
       Contact contact, SocketAddress address) throws IOException {
     
     Key key = readKey();
+    long cacheTimeout = (version >= 2 ? readLong() : 0L);
     Value value = readValue();
     return new DefaultStoreRequest(messageId, contact, 
-        address, key, value);
+        address, key, value, cacheTimeout, TimeUnit.MILLISECONDS);
   }
   
   private StoreResponse readStoreResponse(MessageId messageId, 
@@ -273,4 +356,40 @@ public class MessageInputStream extends BencodingInputStream {
     Value value = readValue();
     return new DefaultStoreResponse(messageId, contact, address, value);
   }
+  
+  private StoreBatchRequest readStoreBatchRequest(MessageId messageId, 
+      Contact contact, SocketAddress address) throws IOException {
+    
+    int count = readCount();
+    Key[] keys = new Key[count];
+    Value[] values = new Value[count];
+    
+    for (int i = 0; i < count; i++) {
+      keys[i] = readKey();
+      values[i] = readValue();
+    }
+    
+    return new DefaultStoreBatchRequest(messageId, 
+        contact, address, keys, values);
+  }
+  
+  private StoreBatchResponse readStoreBatchResponse(MessageId messageId, 
+      Contact contact, SocketAddress address) throws IOException {
+    
+    Value[] values = new Value[readCount()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = readValue();
+    }
+    
+    return new DefaultStoreBatchResponse(messageId, 
+        contact, address, values);
+  }
+  
+  private int readCount() throws IOException {
+    int count = readInt();
+    if (count < 0 || MAX_BATCH_SIZE < count) {
+      throw new IOException("count=" + count);
+    }
+    return count;
+  }
 }
\ No newline at end of file
@@ -33,11 +33,14 @@ import org.ardverk.dht.message.NodeRequest;
 import org.ardverk.dht.message.NodeResponse;
 import org.ardverk.dht.message.PingRequest;
 import org.ardverk.dht.message.PingResponse;
+import org.ardverk.dht.message.StoreBatchRequest;
+import org.ardverk.dht.message.StoreBatchResponse;
 import org.ardverk.dht.message.StoreRequest;
 import org.ardverk.dht.message.StoreResponse;
 import org.ardverk.dht.message.ValueRequest;
 import org.ardverk.dht.message.ValueResponse;
 import org.ardverk.dht.routing.Contact;
+import org.ardverk.dht.routing.Coordinate;
 import org.ardverk.dht.rsrc.Key;
 import org.ardverk.dht.rsrc.NoValue;
 import org.ardverk.dht.rsrc.Value;
@@ -51,6 +54,11 @@ import org.ardverk.version.VectorClock;
  */
 public class MessageOutputStream extends BencodingOutputStream {
   
+  /**
+   * The version of the {@link Message} that is being written.
+   */
+  private int version = Constants.VERSION;
+  
   public MessageOutputStream(OutputStream out) {
     super(out);
   }
@@ -139,11 +147,39 @@ public class MessageOutputStream extends BencodingOutputStream {
     writeInt(contact.getInstanceId());
     writeBoolean(contact.isHidden());
     writeSocketAddress(contact.getRemoteAddress());
+    writeCoordinate(contact.getCoordinate());
   }
   
   public void writeContact(Contact contact) throws IOException {
     writeKUID(contact.getId());
     writeSocketAddress(contact.getRemoteAddress());
+    writeCoordinate(contact.getCoordinate());
+  }
+  
+  /**
+   * Writes the given {@link Coordinate} which may be {@code null}.
+   */
+  public void writeCoordinate(Coordinate coordinate) throws IOException {
+    if (version < 1) {
+      return;
+    }
+    
+    if (coordinate == null) {
+      writeByte(0);
+      return;
+    }
+    
+    writeByte(Coordinate.DIMENSIONS);
+    for (int i = 0; i < Coordinate.DIMENSIONS; i++) {
+      writeCoordinateValue(coordinate.getPosition(i));
+    }
+    
+    writeCoordinateValue(coordinate.getHeight());
+    writeCoordinateValue(coordinate.getError());
+  }
+  
+  private void writeCoordinateValue(double value) throws IOException {
+    writeInt(Float.floatToIntBits((float)value));
   }
   
   public void writeContacts(Contact[] contacts) throws IOException {
@@ -156,10 +192,26 @@ public class MessageOutputStream extends BencodingOutputStream {
   }
   
   public void writeMessage(Message message) throws IOException {
-    
-    writeByte(Constants.VERSION);
+    writeMessage(message, Constants.VERSION);
+  }
+  
+  /**
+   * Writes the given {@link Message} in the given version. Fields 
+   * that were added after that version are omitted.
+   */
+  public void writeMessage(Message message, int version) throws IOException {
+    if (version < Constants.MIN_VERSION || Constants.VERSION < version) {
+      throw new IOException("version=" + version);
+    }
     
     OpCode opcode = OpCode.valueOf(message);
+    if (opcode.isBatch() && version < Constants.BATCH_VERSION) {
+      throw new IOException("opcode=" + opcode + ", version=" + version);
+    }
+    
+    this.version = version;
+    writeByte(version);
+    
     writeEnum(opcode);
     writeMessageId(message.getMessageId());
     
@@ -192,6 +244,12 @@ public class MessageOutputStream extends BencodingOutputStream {
       case STORE_RESPONSE:
         writeStoreResponse((StoreResponse)message);
         break;
+      case STORE_BATCH_REQUEST:
+        writeStoreBatchRequest((StoreBatchRequest)message);
+        break;
+      case STORE_BATCH_RESPONSE:
+        writeStoreBatchResponse((StoreBatchResponse)message);
+        break;
       default:
         throw new IllegalArgumentException("opcode=" + opcode);
     }
@@ -210,6 +268,7 @@ public class MessageOutputStream extends BencodingOutputStream {
   
   private void writeNodeRequest(NodeRequest message) throws IOException {
     writeKUID(message.getId());
+    writeHopLimit(message.getHopLimit());
   }
   
   private void writeNodeResponse(NodeResponse message) throws IOException {
@@ -223,6 +282,13 @@ public class MessageOutputStream extends BencodingOutputStream {
   
   private void writeValueRequest(ValueRequest message) throws IOException {
     writeKey(message.getKey());
+    writeHopLimit(message.getHopLimit());
+  }
+  
+  private void writeHopLimit(int hopLimit) throws IOException {
+    if (version >= 3) {
+      writeByte(hopLimit);
+    }
   }
   
   private void writeValueResponse(ValueResponse message) throws IOException {
@@ -230,8 +296,31 @@ public class MessageOutputStream extends BencodingOutputStream {
   
   private void writeStoreRequest(StoreRequest message) throws IOException {
     writeKey(message.getKey());
+    if (version >= 2) {
+      writeLong(message.getCacheTimeoutInMillis());
+    }
   }
   
   private void writeStoreResponse(StoreResponse message) throws IOException {
   }
+  
+  private void writeStoreBatchRequest(StoreBatchRequest message) throws IOException {
+    Key[] keys = message.getKeys();
+    Value[] values = message.getValues();
+    
+    writeInt(keys.length);
+    for (int i = 0; i < keys.length; i++) {
+      writeKey(keys[i]);
+      writeValue(values[i]);
+    }
+  }
+  
+  private void writeStoreBatchResponse(StoreBatchResponse message) throws IOException {
+    Value[] values = message.getValues();
+    
+    writeInt(values.length);
+    for (Value value : values) {
+      writeValue(value);
+    }
+  }
 }
\ No newline at end of file
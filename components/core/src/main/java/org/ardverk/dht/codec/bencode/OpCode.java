@@ -23,6 +23,8 @@ import org.ardverk.dht.message.NodeRequest;
 import org.ardverk.dht.message.NodeResponse;
 import org.ardverk.dht.message.PingRequest;
 import org.ardverk.dht.message.PingResponse;
+import org.ardverk.dht.message.StoreBatchRequest;
+import org.ardverk.dht.message.StoreBatchResponse;
 import org.ardverk.dht.message.StoreRequest;
 import org.ardverk.dht.message.StoreResponse;
 import org.ardverk.dht.message.ValueRequest;
@@ -46,7 +48,10 @@ enum OpCode implements PrimitiveEnum.Int, IntegerValue {
   FIND_VALUE_RESPONSE(0x05, MessageType.FIND_VALUE),
   
   STORE_REQUEST(0x06, MessageType.STORE),
-  STORE_RESPONSE(0x07, MessageType.STORE);
+  STORE_RESPONSE(0x07, MessageType.STORE),
+  
+  STORE_BATCH_REQUEST(0x08, MessageType.STORE),
+  STORE_BATCH_RESPONSE(0x09, MessageType.STORE);
   
   private final int value;
   
@@ -83,12 +88,21 @@ enum OpCode implements PrimitiveEnum.Int, IntegerValue {
       case FIND_NODE_REQUEST:
       case FIND_VALUE_REQUEST:
       case STORE_REQUEST:
+      case STORE_BATCH_REQUEST:
         return true;
       default:
         return false;
     }
   }
   
+  /**
+   * Returns {@code true} if the {@link OpCode} is representing a 
+   * STORE request or response with many key-value pairs.
+   */
+  public boolean isBatch() {
+    return this == STORE_BATCH_REQUEST || this == STORE_BATCH_RESPONSE;
+  }
+  
   @Override
   public String toString() {
     return name() + " (" + value + ", " + messageType + ")";
@@ -121,6 +135,10 @@ enum OpCode implements PrimitiveEnum.Int, IntegerValue {
       return STORE_REQUEST;
     } else if (message instanceof StoreResponse) {
       return STORE_RESPONSE;
+    } else if (message instanceof StoreBatchRequest) {
+      return STORE_BATCH_REQUEST;
+    } else if (message instanceof StoreBatchResponse) {
+      return STORE_BATCH_RESPONSE;
     }
     
     throw new IllegalArgumentException("message=" + message);
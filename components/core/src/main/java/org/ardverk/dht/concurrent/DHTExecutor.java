@@ -17,37 +17,268 @@
 package org.ardverk.dht.concurrent;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.ardverk.concurrent.AsyncProcessExecutorService;
 import org.ardverk.concurrent.ExecutorUtils;
 
 /**
  * The {@link DHTExecutor} provides {@link Executor}s for the DHT.
+ * 
+ * All parallel operations share a bounded pool of {@link Thread}s 
+ * with a bounded queue. Enqueued operations are being executed by 
+ * the priority of their {@link ExecutorKey} and in FIFO order among 
+ * operations of the same priority. Operations that don't fit into 
+ * the queue are being handed to the {@link RejectedExecutionHandler}.
  */
 public class DHTExecutor {
   
-  private static final AsyncProcessExecutorService CACHED_THREAD_EXECUTOR 
-    = ExecutorUtils.newCachedThreadPool("DHTExecutorCachedThread");
+  /**
+   * The default number of {@link Thread}s of the bounded pool.
+   */
+  public static final int DEFAULT_POOL_SIZE = 32;
+  
+  /**
+   * The default maximum number of enqueued operations.
+   */
+  public static final int DEFAULT_MAX_QUEUE_SIZE = 4096;
   
   private static final AsyncProcessExecutorService SINGLE_THREAD_EXECUTOR
     = ExecutorUtils.newSingleThreadExecutor("DHTExecutorSingleThread");
   
+  private static final ThreadPoolExecutor BOUNDED_THREAD_EXECUTOR 
+    = new ThreadPoolExecutor(DEFAULT_POOL_SIZE, DEFAULT_POOL_SIZE, 
+        60L, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(), 
+        new DaemonThreadFactory("DHTExecutorBoundedThread"));
+  
+  private static final ForkJoinPool WORK_STEALING_EXECUTOR 
+    = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), 
+        ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+  
+  private static final AtomicLong SEQUENCE = new AtomicLong();
+  
+  private static volatile int maxQueueSize = DEFAULT_MAX_QUEUE_SIZE;
+  
+  private static volatile RejectedExecutionHandler rejectedExecutionHandler 
+    = new ThreadPoolExecutor.AbortPolicy();
+  
+  static {
+    BOUNDED_THREAD_EXECUTOR.allowCoreThreadTimeOut(true);
+  }
+  
+  private static final KeyedSerialExecutor KEYED_SERIAL_EXECUTOR 
+    = new KeyedSerialExecutor(new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        if (!offer(ExecutorKey.KEYED_SERIAL, command)) {
+          throw new RejectedExecutionException();
+        }
+      }
+    });
+  
   private DHTExecutor() {}
   
   /**
    * Executes the given {@link Runnable}.
+   * 
+   * @throws RejectedExecutionException if the queue is full and the
+   * {@link RejectedExecutionHandler} doesn't handle it otherwise.
    */
   public static void execute(ExecutorKey executorKey, Runnable command) {
+    execute(executorKey, null, command);
+  }
+  
+  /**
+   * Executes the given {@link Runnable}. {@link ExecutorKey#KEYED_SERIAL}
+   * {@link Runnable}s are being executed in order with all other 
+   * {@link Runnable}s of the same key. They're being executed like 
+   * {@link ExecutorKey#SERIAL} {@link Runnable}s if the key is 
+   * {@code null}. The key is being ignored for all other 
+   * {@link ExecutorKey}s.
+   * 
+   * @throws RejectedExecutionException if the queue is full and the
+   * {@link RejectedExecutionHandler} doesn't handle it otherwise.
+   */
+  public static void execute(ExecutorKey executorKey, 
+      Object key, Runnable command) {
     switch (executorKey) {
+      case KEYED_SERIAL:
+        if (key != null) {
+          // There is no RejectedExecutionHandler for keyed operations.
+          // It might run them outside of their key's order.
+          KEYED_SERIAL_EXECUTOR.execute(key, command);
+          break;
+        }
+        // Fall through, there is no key!
       case SERIAL:
         SINGLE_THREAD_EXECUTOR.execute(command);
         break;
       case PARALLEL:
-        CACHED_THREAD_EXECUTOR.execute(command);
+      case MAINTENANCE:
+      case REFRESH:
+        if (!offer(executorKey, command)) {
+          reject(command, BOUNDED_THREAD_EXECUTOR);
+        }
+        break;
+      case WORK_STEALING:
+        // The RejectedExecutionHandler needs a ThreadPoolExecutor
+        if (WORK_STEALING_EXECUTOR.getQueuedSubmissionCount() >= maxQueueSize) {
+          throw new RejectedExecutionException(
+              "executorKey=" + executorKey + ", maxQueueSize=" + maxQueueSize);
+        }
+        
+        WORK_STEALING_EXECUTOR.execute(command);
         break;
       default:
         throw new IllegalArgumentException(
             "executorKey=" + executorKey);
     }
   }
+  
+  /**
+   * Enqueues the given {@link Runnable} on the bounded pool and returns
+   * {@code true} on success or {@code false} if the queue is full.
+   */
+  private static boolean offer(ExecutorKey executorKey, Runnable command) {
+    if (BOUNDED_THREAD_EXECUTOR.getQueue().size() >= maxQueueSize) {
+      return false;
+    }
+    
+    BOUNDED_THREAD_EXECUTOR.execute(new PriorityTask(
+        executorKey.getPriority(), command));
+    return true;
+  }
+  
+  private static void reject(Runnable command, ThreadPoolExecutor executor) {
+    RejectedExecutionHandler handler = rejectedExecutionHandler;
+    if (handler == null) {
+      throw new RejectedExecutionException();
+    }
+    
+    handler.rejectedExecution(command, executor);
+  }
+  
+  /**
+   * Returns the number of {@link Thread}s of the bounded pool.
+   */
+  public static int getPoolSize() {
+    return BOUNDED_THREAD_EXECUTOR.getMaximumPoolSize();
+  }
+  
+  /**
+   * Sets the number of {@link Thread}s of the bounded pool.
+   */
+  public static synchronized void setPoolSize(int poolSize) {
+    if (poolSize < 1) {
+      throw new IllegalArgumentException("poolSize=" + poolSize);
+    }
+    
+    if (poolSize >= BOUNDED_THREAD_EXECUTOR.getMaximumPoolSize()) {
+      BOUNDED_THREAD_EXECUTOR.setMaximumPoolSize(poolSize);
+      BOUNDED_THREAD_EXECUTOR.setCorePoolSize(poolSize);
+    } else {
+      BOUNDED_THREAD_EXECUTOR.setCorePoolSize(poolSize);
+      BOUNDED_THREAD_EXECUTOR.setMaximumPoolSize(poolSize);
+    }
+  }
+  
+  /**
+   * Returns the maximum number of enqueued operations.
+   */
+  public static int getMaxQueueSize() {
+    return maxQueueSize;
+  }
+  
+  /**
+   * Sets the maximum number of enqueued operations.
+   */
+  public static void setMaxQueueSize(int maxQueueSize) {
+    DHTExecutor.maxQueueSize = maxQueueSize;
+  }
+  
+  /**
+   * Returns the {@link RejectedExecutionHandler} that handles 
+   * operations that don't fit into the queue.
+   */
+  public static RejectedExecutionHandler getRejectedExecutionHandler() {
+    return rejectedExecutionHandler;
+  }
+  
+  /**
+   * Sets the {@link RejectedExecutionHandler}. The default handler 
+   * throws a {@link RejectedExecutionException}. It's not being used 
+   * for {@link ExecutorKey#KEYED_SERIAL} and 
+   * {@link ExecutorKey#WORK_STEALING} which always throw a
+   * {@link RejectedExecutionException}.
+   */
+  public static void setRejectedExecutionHandler(
+      RejectedExecutionHandler rejectedExecutionHandler) {
+    DHTExecutor.rejectedExecutionHandler = rejectedExecutionHandler;
+  }
+  
+  /**
+   * Returns the number of operations that are waiting for a {@link Thread}.
+   */
+  public static int getQueueSize() {
+    return BOUNDED_THREAD_EXECUTOR.getQueue().size();
+  }
+  
+  /**
+   * A {@link PriorityTask} orders operations by their priority and
+   * by their submission order.
+   */
+  private static class PriorityTask 
+      implements Runnable, Comparable<PriorityTask> {
+    
+    private final int priority;
+    
+    private final long sequence = SEQUENCE.getAndIncrement();
+    
+    private final Runnable command;
+    
+    public PriorityTask(int priority, Runnable command) {
+      this.priority = priority;
+      this.command = command;
+    }
+    
+    @Override
+    public void run() {
+      command.run();
+    }
+    
+    @Override
+    public int compareTo(PriorityTask o) {
+      if (priority != o.priority) {
+        return priority > o.priority ? -1 : 1;
+      }
+      
+      return sequence < o.sequence ? -1 : (sequence > o.sequence ? 1 : 0);
+    }
+  }
+  
+  private static class DaemonThreadFactory implements ThreadFactory {
+    
+    private final AtomicInteger counter = new AtomicInteger();
+    
+    private final String name;
+    
+    public DaemonThreadFactory(String name) {
+      this.name = name;
+    }
+    
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread thread = new Thread(r, name + "-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
 }
\ No newline at end of file
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht.concurrent;
+
+import java.util.concurrent.ExecutionException;
+
+import org.ardverk.concurrent.AsyncFuture;
+import org.ardverk.concurrent.AsyncFutureListener;
+import org.ardverk.concurrent.FutureUtils;
+
+/**
+ * Non-blocking composition of {@link DHTFuture}s. Each stage is being
+ * chained with {@link AsyncFutureListener}s and a cancellation of a 
+ * downstream {@link DHTFuture} is being propagated to the upstream
+ * {@link DHTFuture}s. No stage holds a lock while it's being completed.
+ */
+public class DHTFutures {
+
+  private DHTFutures() {}
+  
+  /**
+   * A {@link Function} turns the result of a {@link DHTFuture}
+   * into a different value.
+   */
+  public static interface Function<F, T> {
+    
+    /**
+     * Returns the transformed value.
+     */
+    public T apply(F value) throws Exception;
+  }
+  
+  /**
+   * An {@link AsyncFunction} turns the result of a {@link DHTFuture}
+   * into another {@link DHTFuture}.
+   */
+  public static interface AsyncFunction<F, T> {
+    
+    /**
+     * Returns the {@link DHTFuture} of the next stage.
+     */
+    public DHTFuture<T> apply(F value) throws Exception;
+  }
+  
+  /**
+   * Returns a {@link DHTFuture} that completes with the transformed
+   * result of the given {@link DHTFuture}.
+   */
+  public static <F, T> DHTFuture<T> transform(final DHTFuture<F> src, 
+      final Function<? super F, ? extends T> function) {
+    
+    final DHTFuture<T> dst = new DHTValueFuture<T>();
+    
+    src.addAsyncFutureListener(new AsyncFutureListener<F>() {
+      @Override
+      public void operationComplete(AsyncFuture<F> future) {
+        if (future.isCancelled()) {
+          dst.cancel(true);
+          return;
+        }
+        
+        try {
+          dst.setValue(function.apply(future.get()));
+        } catch (ExecutionException err) {
+          dst.setException(err.getCause());
+        } catch (Throwable t) {
+          dst.setException(t);
+        }
+      }
+    });
+    
+    cancelOnDone(dst, src);
+    return dst;
+  }
+  
+  /**
+   * Returns a {@link DHTFuture} that completes with the result of
+   * the {@link DHTFuture} that the given {@link AsyncFunction} 
+   * returns for the result of the given {@link DHTFuture}.
+   */
+  public static <F, T> DHTFuture<T> compose(final DHTFuture<F> src, 
+      final AsyncFunction<? super F, T> function) {
+    
+    final DHTFuture<T> dst = new DHTValueFuture<T>();
+    
+    src.addAsyncFutureListener(new AsyncFutureListener<F>() {
+      @Override
+      public void operationComplete(AsyncFuture<F> future) {
+        if (future.isCancelled()) {
+          dst.cancel(true);
+          return;
+        }
+        
+        try {
+          forward(function.apply(future.get()), dst);
+        } catch (ExecutionException err) {
+          dst.setException(err.getCause());
+        } catch (Throwable t) {
+          dst.setException(t);
+        }
+      }
+    });
+    
+    cancelOnDone(dst, src);
+    return dst;
+  }
+  
+  /**
+   * Completes the destination {@link DHTFuture} with the result of
+   * the source {@link DHTFuture} and cancels the source if the 
+   * destination completes first.
+   */
+  public static <V> void forward(final DHTFuture<V> src, 
+      final DHTFuture<V> dst) {
+    
+    src.addAsyncFutureListener(new AsyncFutureListener<V>() {
+      @Override
+      public void operationComplete(AsyncFuture<V> future) {
+        if (future.isCancelled()) {
+          dst.cancel(true);
+          return;
+        }
+        
+        try {
+          dst.setValue(future.get());
+        } catch (ExecutionException err) {
+          dst.setException(err.getCause());
+        } catch (Throwable t) {
+          dst.setException(t);
+        }
+      }
+    });
+    
+    cancelOnDone(dst, src);
+  }
+  
+  /**
+   * Cancels the given {@link DHTFuture} once the other 
+   * {@link DHTFuture} has completed. It's a no-op if it's
+   * already done.
+   */
+  private static <V> void cancelOnDone(DHTFuture<V> done, 
+      final DHTFuture<?> other) {
+    done.addAsyncFutureListener(new AsyncFutureListener<V>() {
+      @Override
+      public void operationComplete(AsyncFuture<V> future) {
+        FutureUtils.cancel(other, true);
+      }
+    });
+  }
+}
\ No newline at end of file
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht.concurrent;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link Deadline} is the point in time by which an operation 
+ * and all of its sub-operations should have completed. It's being
+ * created once for the user's call and handed down to every 
+ * sub-operation so that they share the same budget rather than 
+ * each one applying its own full timeout.
+ */
+public class Deadline {
+  
+  private final long deadlineInNanos;
+  
+  private Deadline(long deadlineInNanos) {
+    this.deadlineInNanos = deadlineInNanos;
+  }
+  
+  /**
+   * Creates and returns a {@link Deadline} that expires after 
+   * the given amount of time.
+   */
+  public static Deadline after(long timeout, TimeUnit unit) {
+    return new Deadline(System.nanoTime() + unit.toNanos(timeout));
+  }
+  
+  /**
+   * Returns the earlier of the two {@link Deadline}s. Either 
+   * one of them may be {@code null}.
+   */
+  public static Deadline min(Deadline d1, Deadline d2) {
+    if (d1 == null) {
+      return d2;
+    } else if (d2 == null) {
+      return d1;
+    }
+    
+    return (d1.deadlineInNanos - d2.deadlineInNanos) <= 0L ? d1 : d2;
+  }
+  
+  /**
+   * Returns the remaining amount of time or zero if the 
+   * {@link Deadline} has expired.
+   */
+  public long getRemaining(TimeUnit unit) {
+    long remaining = deadlineInNanos - System.nanoTime();
+    return unit.convert(Math.max(remaining, 0L), TimeUnit.NANOSECONDS);
+  }
+  
+  /**
+   * Returns the remaining amount of time in milliseconds.
+   */
+  public long getRemainingInMillis() {
+    return getRemaining(TimeUnit.MILLISECONDS);
+  }
+  
+  /**
+   * Returns {@code true} if the {@link Deadline} has expired.
+   */
+  public boolean isExpired() {
+    return (deadlineInNanos - System.nanoTime()) <= 0L;
+  }
+  
+  /**
+   * Returns the given timeout or the remaining amount of time if 
+   * it's shorter. The result is at least one unit as a timeout of 
+   * zero means no timeout to some of our callers.
+   */
+  public long clamp(long timeout, TimeUnit unit) {
+    return Math.max(Math.min(timeout, getRemaining(unit)), 1L);
+  }
+  
+  @Override
+  public String toString() {
+    return "Deadline: " + getRemainingInMillis() + "ms";
+  }
+}
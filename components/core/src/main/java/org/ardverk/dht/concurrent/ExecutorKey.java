@@ -26,13 +26,40 @@ public enum ExecutorKey {
    * The {@link #SERIAL} {@link ExecutorKey} executions enqueued operations
    * in a serial fashion.
    */
-  SERIAL,
+  SERIAL(0),
   
   /**
    * The {@link #PARALLEL} {@link ExecutorKey} executions enqueued operations
-   * in a parallel fashion.
+   * in a parallel fashion and ahead of all other enqueued operations.
    */
-  PARALLEL;
+  PARALLEL(2),
+  
+  /**
+   * The {@link #MAINTENANCE} {@link ExecutorKey} executions enqueued 
+   * operations in a parallel fashion but behind {@link #PARALLEL} 
+   * operations. It's meant for the routing table's PINGs.
+   */
+  MAINTENANCE(1),
+  
+  /**
+   * The {@link #REFRESH} {@link ExecutorKey} executions enqueued 
+   * operations in a parallel fashion but behind all other operations.
+   */
+  REFRESH(0),
+  
+  /**
+   * The {@link #KEYED_SERIAL} {@link ExecutorKey} executions enqueued 
+   * operations with the same key in a serial fashion and operations 
+   * with different keys in a parallel fashion. Operations without a 
+   * key are being executed like {@link #SERIAL} operations.
+   */
+  KEYED_SERIAL(1),
+  
+  /**
+   * The {@link #WORK_STEALING} {@link ExecutorKey} executions enqueued 
+   * operations on a work-stealing pool with one {@link Thread} per CPU.
+   */
+  WORK_STEALING(2);
   
   /**
    * The default {@link ExecutorKey} that should be used unless there
@@ -44,5 +71,19 @@ public enum ExecutorKey {
    * The {@link ExecutorKey} that should be used for backend and possibly 
    * for other low priority operations.
    */
-  public static final ExecutorKey BACKEND = ExecutorKey.SERIAL;
+  public static final ExecutorKey BACKEND = ExecutorKey.MAINTENANCE;
+  
+  private final int priority;
+  
+  private ExecutorKey(int priority) {
+    this.priority = priority;
+  }
+  
+  /**
+   * Returns the priority of the {@link ExecutorKey}. Operations with 
+   * a higher priority are being executed first.
+   */
+  public int getPriority() {
+    return priority;
+  }
 }
\ No newline at end of file
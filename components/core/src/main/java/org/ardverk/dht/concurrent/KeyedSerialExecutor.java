@@ -0,0 +1,184 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht.concurrent;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link KeyedSerialExecutor} executes {@link Runnable}s with the 
+ * same key in the order in which they've been submitted and 
+ * {@link Runnable}s with different keys in parallel on the given 
+ * {@link Executor}. At most one {@link Runnable} per key is being 
+ * handed to the {@link Executor} at a time.
+ */
+public class KeyedSerialExecutor {
+  
+  private static final Logger LOG 
+    = LoggerFactory.getLogger(KeyedSerialExecutor.class);
+  
+  private final ConcurrentMap<Object, SerialQueue> queues 
+    = new ConcurrentHashMap<>();
+  
+  private final Executor executor;
+  
+  public KeyedSerialExecutor(Executor executor) {
+    this.executor = executor;
+  }
+  
+  /**
+   * Executes the given {@link Runnable} after all previously 
+   * submitted {@link Runnable}s with the same key.
+   * 
+   * @throws RejectedExecutionException if the {@link Executor} 
+   * rejects the {@link Runnable}.
+   */
+  public void execute(Object key, Runnable command) {
+    if (key == null) {
+      throw new NullPointerException("key");
+    }
+    
+    if (command == null) {
+      throw new NullPointerException("command");
+    }
+    
+    while (true) {
+      SerialQueue queue = queues.get(key);
+      if (queue == null) {
+        SerialQueue created = new SerialQueue(key);
+        queue = queues.putIfAbsent(key, created);
+        if (queue == null) {
+          queue = created;
+        }
+      }
+      
+      if (queue.offer(command)) {
+        return;
+      }
+    }
+  }
+  
+  /**
+   * Returns the number of keys that have pending {@link Runnable}s.
+   */
+  public int size() {
+    return queues.size();
+  }
+  
+  /**
+   * A {@link SerialQueue} holds the pending {@link Runnable}s of a key.
+   * It removes itself once it has run empty.
+   */
+  private class SerialQueue implements Runnable {
+    
+    private final Queue<Runnable> commands = new ArrayDeque<>();
+    
+    private final Object key;
+    
+    private boolean running = false;
+    
+    private boolean removed = false;
+    
+    public SerialQueue(Object key) {
+      this.key = key;
+    }
+    
+    /**
+     * Adds the given {@link Runnable} and returns {@code true} on
+     * success or {@code false} if the {@link SerialQueue} has been 
+     * removed in the meantime.
+     */
+    public boolean offer(Runnable command) {
+      synchronized (this) {
+        if (removed) {
+          return false;
+        }
+        
+        commands.add(command);
+        if (running) {
+          return true;
+        }
+        
+        running = true;
+      }
+      
+      try {
+        executor.execute(this);
+      } catch (RejectedExecutionException err) {
+        synchronized (this) {
+          commands.remove(command);
+          running = false;
+          removeIfEmpty();
+        }
+        throw err;
+      }
+      
+      return true;
+    }
+    
+    @Override
+    public void run() {
+      while (true) {
+        Runnable command = null;
+        synchronized (this) {
+          command = commands.poll();
+        }
+        
+        if (command != null) {
+          try {
+            command.run();
+          } catch (Exception err) {
+            LOG.error("Exception", err);
+          }
+        }
+        
+        synchronized (this) {
+          if (commands.isEmpty()) {
+            running = false;
+            removeIfEmpty();
+            return;
+          }
+        }
+        
+        // Give the other keys a chance and run inline only 
+        // if the Executor doesn't take the next Runnable.
+        try {
+          executor.execute(this);
+          return;
+        } catch (RejectedExecutionException err) {
+          LOG.debug("RejectedExecutionException", err);
+        }
+      }
+    }
+    
+    private void removeIfEmpty() {
+      assert (Thread.holdsLock(this));
+      
+      if (!running && commands.isEmpty()) {
+        removed = true;
+        queues.remove(key, this);
+      }
+    }
+  }
+}
\ No newline at end of file
@@ -0,0 +1,420 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht.concurrent;
+
+import java.io.Closeable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A hashed timer wheel. Inserting and cancelling a {@link Timeout} are
+ * O(1) operations that don't acquire any locks that are shared with
+ * other {@link Thread}s. The price is a resolution of one tick.
+ *
+ * <p>All tasks are being executed on the {@link TimerWheel}'s
+ * {@link Thread} and should therefore be short-lived.
+ */
+public class TimerWheel implements Closeable {
+
+  private static final Logger LOG
+    = LoggerFactory.getLogger(TimerWheel.class);
+
+  /**
+   * The default tick duration in milliseconds. It can be changed
+   * with the {@code org.ardverk.dht.concurrent.TimerWheel.tick}
+   * system property.
+   */
+  public static final long DEFAULT_TICK = Long.getLong(
+      TimerWheel.class.getName() + ".tick", 10L);
+
+  /**
+   * The default number of buckets in the wheel.
+   */
+  public static final int DEFAULT_TICKS_PER_WHEEL = 512;
+
+  private static final TimerWheel DEFAULT = new TimerWheel(
+      "TimerWheelThread", DEFAULT_TICK, TimeUnit.MILLISECONDS,
+      DEFAULT_TICKS_PER_WHEEL);
+
+  /**
+   * Returns the shared {@link TimerWheel}.
+   */
+  public static TimerWheel getDefault() {
+    return DEFAULT;
+  }
+
+  private final Queue<Timeout> added = new ConcurrentLinkedQueue<Timeout>();
+
+  private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<Timeout>();
+
+  private final Bucket[] wheel;
+
+  private final int mask;
+
+  private final long tickInNanos;
+
+  private final long startTime = System.nanoTime();
+
+  private final Thread thread;
+
+  private volatile boolean open = true;
+
+  private long tick = 0L;
+
+  public TimerWheel(String name, long tick, TimeUnit unit) {
+    this(name, tick, unit, DEFAULT_TICKS_PER_WHEEL);
+  }
+
+  public TimerWheel(String name, long tick,
+      TimeUnit unit, int ticksPerWheel) {
+
+    if (tick <= 0L) {
+      throw new IllegalArgumentException("tick=" + tick);
+    }
+
+    if (ticksPerWheel <= 0) {
+      throw new IllegalArgumentException(
+          "ticksPerWheel=" + ticksPerWheel);
+    }
+
+    int size = Integer.highestOneBit(ticksPerWheel);
+    if (size < ticksPerWheel) {
+      size <<= 1;
+    }
+
+    this.wheel = new Bucket[size];
+    for (int i = 0; i < wheel.length; i++) {
+      wheel[i] = new Bucket();
+    }
+
+    this.mask = size - 1;
+    this.tickInNanos = unit.toNanos(tick);
+
+    this.thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        TimerWheel.this.run();
+      }
+    }, name);
+
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Returns the tick duration in the given {@link TimeUnit}.
+   */
+  public long getTick(TimeUnit unit) {
+    return unit.convert(tickInNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Returns the tick duration in milliseconds.
+   */
+  public long getTickInMillis() {
+    return getTick(TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Returns {@code true} if the {@link TimerWheel} is open.
+   */
+  public boolean isOpen() {
+    return open;
+  }
+
+  @Override
+  public void close() {
+    open = false;
+    thread.interrupt();
+  }
+
+  /**
+   * Schedules a one-shot task that is being executed
+   * after the given delay.
+   */
+  public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+    return schedule(task, delay, -1L, unit);
+  }
+
+  /**
+   * Schedules a periodic task that is being executed for the first time
+   * after the initial delay and with the given delay between the end of
+   * one execution and the start of the next.
+   */
+  public Timeout scheduleWithFixedDelay(Runnable task,
+      long initialDelay, long delay, TimeUnit unit) {
+
+    if (delay <= 0L) {
+      throw new IllegalArgumentException("delay=" + delay);
+    }
+
+    return schedule(task, initialDelay, delay, unit);
+  }
+
+  private Timeout schedule(Runnable task, long delay,
+      long period, TimeUnit unit) {
+
+    if (task == null) {
+      throw new NullPointerException("task");
+    }
+
+    if (!open) {
+      throw new IllegalStateException();
+    }
+
+    long periodInNanos = (0L < period ? unit.toNanos(period) : -1L);
+
+    Timeout timeout = new Timeout(task, periodInNanos);
+    timeout.deadline = System.nanoTime() + unit.toNanos(Math.max(delay, 0L));
+    added.offer(timeout);
+    return timeout;
+  }
+
+  private void run() {
+    while (open) {
+      long deadline = startTime + (tick + 1L) * tickInNanos;
+      long sleep = deadline - System.nanoTime();
+
+      if (0L < sleep) {
+        try {
+          TimeUnit.NANOSECONDS.sleep(sleep);
+        } catch (InterruptedException err) {
+          if (!open) {
+            break;
+          }
+        }
+        continue;
+      }
+
+      removeCancelled();
+      transferAdded();
+
+      Bucket bucket = wheel[(int)(tick & mask)];
+      expire(bucket, System.nanoTime());
+
+      ++tick;
+    }
+
+    for (Bucket bucket : wheel) {
+      bucket.clear();
+    }
+
+    added.clear();
+    cancelled.clear();
+  }
+
+  private void transferAdded() {
+    Timeout timeout = null;
+    while ((timeout = added.poll()) != null) {
+      if (timeout.isCancelled()) {
+        continue;
+      }
+
+      long ticks = (timeout.deadline - startTime) / tickInNanos;
+
+      // Put everything that is already expired into the current bucket.
+      ticks = Math.max(ticks, tick);
+
+      timeout.rounds = (ticks - tick) / wheel.length;
+      wheel[(int)(ticks & mask)].add(timeout);
+    }
+  }
+
+  private void removeCancelled() {
+    Timeout timeout = null;
+    while ((timeout = cancelled.poll()) != null) {
+      if (timeout.bucket != null) {
+        timeout.bucket.remove(timeout);
+      }
+    }
+  }
+
+  private void expire(Bucket bucket, long now) {
+    Timeout timeout = bucket.head;
+    while (timeout != null) {
+      Timeout next = timeout.next;
+
+      if (timeout.rounds <= 0L) {
+        bucket.remove(timeout);
+
+        if (timeout.deadline <= now) {
+          timeout.expire();
+        } else {
+          // It's not due yet (can happen for Timeouts that were
+          // scheduled in the current tick). Try again next round.
+          added.offer(timeout);
+        }
+      } else {
+        --timeout.rounds;
+      }
+
+      timeout = next;
+    }
+  }
+
+  /**
+   * A handle for a scheduled task.
+   */
+  public class Timeout {
+
+    private static final int INIT = 0;
+
+    private static final int CANCELLED = 1;
+
+    private static final int EXPIRED = 2;
+
+    private final AtomicInteger state = new AtomicInteger(INIT);
+
+    private final Runnable task;
+
+    private final long periodInNanos;
+
+    private long deadline;
+
+    private long rounds;
+
+    private Bucket bucket;
+
+    private Timeout prev;
+
+    private Timeout next;
+
+    private Timeout(Runnable task, long periodInNanos) {
+      this.task = task;
+      this.periodInNanos = periodInNanos;
+    }
+
+    /**
+     * Cancels the {@link Timeout}. Returns {@code true} if it was
+     * neither cancelled nor expired.
+     */
+    public boolean cancel() {
+      if (state.compareAndSet(INIT, CANCELLED)) {
+        cancelled.offer(this);
+        return true;
+      }
+      return false;
+    }
+
+    /**
+     * Returns {@code true} if the {@link Timeout} was cancelled.
+     */
+    public boolean isCancelled() {
+      return state.get() == CANCELLED;
+    }
+
+    /**
+     * Returns {@code true} if the {@link Timeout} has expired.
+     */
+    public boolean isExpired() {
+      return state.get() == EXPIRED;
+    }
+
+    /**
+     * Returns {@code true} if the {@link Timeout} is periodic.
+     */
+    public boolean isPeriodic() {
+      return 0L < periodInNanos;
+    }
+
+    private void expire() {
+      if (isPeriodic()) {
+        if (state.get() != INIT) {
+          return;
+        }
+
+        run();
+
+        if (state.get() == INIT) {
+          deadline = System.nanoTime() + periodInNanos;
+          added.offer(this);
+        }
+        return;
+      }
+
+      if (state.compareAndSet(INIT, EXPIRED)) {
+        run();
+      }
+    }
+
+    private void run() {
+      try {
+        task.run();
+      } catch (Throwable t) {
+        LOG.error("Exception", t);
+      }
+    }
+  }
+
+  /**
+   * A doubly linked list of {@link Timeout}s. It's only
+   * being accessed by the {@link TimerWheel}'s {@link Thread}.
+   */
+  private static class Bucket {
+
+    private Timeout head;
+
+    private Timeout tail;
+
+    public void add(Timeout timeout) {
+      timeout.bucket = this;
+      timeout.prev = tail;
+      timeout.next = null;
+
+      if (tail == null) {
+        head = tail = timeout;
+      } else {
+        tail.next = timeout;
+        tail = timeout;
+      }
+    }
+
+    public void remove(Timeout timeout) {
+      if (timeout.bucket != this) {
+        return;
+      }
+
+      Timeout prev = timeout.prev;
+      Timeout next = timeout.next;
+
+      if (prev != null) {
+        prev.next = next;
+      } else {
+        head = next;
+      }
+
+      if (next != null) {
+        next.prev = prev;
+      } else {
+        tail = prev;
+      }
+
+      timeout.bucket = null;
+      timeout.prev = null;
+      timeout.next = null;
+    }
+
+    public void clear() {
+      head = tail = null;
+    }
+  }
+}
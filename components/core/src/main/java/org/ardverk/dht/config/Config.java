@@ -71,4 +71,16 @@ public abstract class Config {
     return ConfigUtils.getAdaptiveTimeout(dst, 
         multiplier, defaultTimeout, unit);
   }
+  
+  /**
+   * Returns an adaptive timeout for the destination {@link Contact}. 
+   * The source {@link Contact}'s network coordinate is being used to 
+   * predict the RTT if the destination's RTT hasn't been measured yet.
+   */
+  public long getAdaptiveTimeout(Contact src, Contact dst, 
+      long defaultTimeout, TimeUnit unit) {
+    double multiplier = getRoundTripTimeMultiplier();
+    return ConfigUtils.getAdaptiveTimeout(src, dst, 
+        multiplier, defaultTimeout, unit);
+  }
 }
\ No newline at end of file
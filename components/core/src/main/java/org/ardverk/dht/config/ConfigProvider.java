@@ -15,26 +15,26 @@ public class ConfigProvider {
   }
   
   public BootstrapConfig get(BootstrapConfig config) {
-    return config != null ? cf.newBootstrapConfig() : config;
+    return config != null ? config : cf.newBootstrapConfig();
   }
   
   public PingConfig get(PingConfig config) {
-    return config != null ? cf.newPingConfig() : config;
+    return config != null ? config : cf.newPingConfig();
   }
   
   public ValueConfig get(ValueConfig config) {
-    return config != null ? cf.newGetConfig() : config;
+    return config != null ? config : cf.newGetConfig();
   }
   
   public PutConfig get(PutConfig config) {
-    return config != null ? cf.newPutConfig() : config;
+    return config != null ? config : cf.newPutConfig();
   }
   
   public QuickenConfig get(QuickenConfig config) {
-    return config != null ? cf.newQuickenConfig() : config;
+    return config != null ? config : cf.newQuickenConfig();
   }
   
   public NodeConfig get(NodeConfig config) {
-    return config != null ? cf.newLookupConfig() : config;
+    return config != null ? config : cf.newLookupConfig();
   }
 }
\ No newline at end of file
@@ -19,6 +19,7 @@ package org.ardverk.dht.config;
 import java.util.concurrent.TimeUnit;
 
 import org.ardverk.dht.routing.Contact;
+import org.ardverk.dht.routing.ContactUtils;
 
 class ConfigUtils {
 
@@ -48,8 +49,13 @@ class ConfigUtils {
   
   public static long getAdaptiveTimeout(Contact dst, 
       double multiplier, long defaultTimeout, TimeUnit unit) {
+    return getAdaptiveTimeout(null, dst, multiplier, defaultTimeout, unit);
+  }
+  
+  public static long getAdaptiveTimeout(Contact src, Contact dst, 
+      double multiplier, long defaultTimeout, TimeUnit unit) {
     
-    long rttInMillis = dst.getRoundTripTimeInMillis();
+    long rttInMillis = ContactUtils.getRoundTripTimeInMillis(src, dst);
     if (0L < rttInMillis && 0d < multiplier) {
       long timeout = (long)(rttInMillis * multiplier);
       long adaptive = Math.min(timeout, 
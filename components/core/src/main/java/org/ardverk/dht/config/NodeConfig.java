@@ -18,6 +18,7 @@ package org.ardverk.dht.config;
 
 import java.util.concurrent.TimeUnit;
 
+import org.ardverk.dht.routing.Contact;
 import org.ardverk.utils.TimeUtils;
 
 public class NodeConfig extends Config {
@@ -29,7 +30,15 @@ public class NodeConfig extends Config {
   
   private volatile boolean randomize = false;
   
+  private volatile boolean proximity = false;
+  
   private volatile int alpha = 4;
+  
+  private volatile boolean adaptiveAlpha = false;
+  
+  private volatile int minAlpha = 2;
+  
+  private volatile int maxAlpha = 8;
 
   private volatile long boostFrequency 
     = TimeUtils.convert(5L, TimeUnit.SECONDS, TimeUnit.MILLISECONDS);
@@ -40,6 +49,18 @@ public class NodeConfig extends Config {
   private volatile long lookupTimeoutInMillis 
     = TimeUtils.convert(10L, TimeUnit.SECONDS, TimeUnit.MILLISECONDS);
   
+  private volatile boolean singleFlight = false;
+  
+  private volatile long reuseTimeoutInMillis = 0L;
+  
+  private volatile long cacheTimeoutInMillis = 0L;
+  
+  private volatile double hedgePercentile = 0.9d;
+  
+  private volatile int hedgeBudget = 0;
+  
+  private volatile int hopLimit = 0;
+  
   public NodeConfig() {
     this(DEFAULT_OPERATION_TIMEOUT, TimeUnit.MILLISECONDS);
   }
@@ -64,6 +85,18 @@ public class NodeConfig extends Config {
     this.randomize = randomize;
   }
 
+  /**
+   * Returns {@code true} if the lookup should prefer {@link Contact}s 
+   * with a low (predicted) Round-Trip-Time among the closest candidates.
+   */
+  public boolean isProximity() {
+    return proximity;
+  }
+
+  public void setProximity(boolean proximity) {
+    this.proximity = proximity;
+  }
+
   public int getAlpha() {
     return alpha;
   }
@@ -72,6 +105,35 @@ public class NodeConfig extends Config {
     this.alpha = alpha;
   }
   
+  /**
+   * Returns {@code true} if the lookup should adjust its parallelism
+   * to the observed timeouts and Round-Trip-Times. The alpha is then
+   * only the starting point and kept within the min/max bounds.
+   */
+  public boolean isAdaptiveAlpha() {
+    return adaptiveAlpha;
+  }
+  
+  public void setAdaptiveAlpha(boolean adaptiveAlpha) {
+    this.adaptiveAlpha = adaptiveAlpha;
+  }
+  
+  public int getMinAlpha() {
+    return minAlpha;
+  }
+  
+  public void setMinAlpha(int minAlpha) {
+    this.minAlpha = minAlpha;
+  }
+  
+  public int getMaxAlpha() {
+    return maxAlpha;
+  }
+  
+  public void setMaxAlpha(int maxAlpha) {
+    this.maxAlpha = maxAlpha;
+  }
+  
   public long getBoostFrequency(TimeUnit unit) {
     return unit.convert(boostFrequency, TimeUnit.MILLISECONDS);
   }
@@ -107,4 +169,86 @@ public class NodeConfig extends Config {
   public void setLookupTimeout(long timeout, TimeUnit unit) {
     this.lookupTimeoutInMillis = unit.toMillis(timeout);
   }
-}
\ No newline at end of file
+
+  /**
+   * Returns {@code true} if concurrent lookups for the same 
+   * {@link org.ardverk.dht.KUID} should share a single lookup.
+   */
+  public boolean isSingleFlight() {
+    return singleFlight;
+  }
+
+  public void setSingleFlight(boolean singleFlight) {
+    this.singleFlight = singleFlight;
+  }
+
+  /**
+   * Returns the amount of time the result of a completed single-flight 
+   * lookup may be reused. The result is never reused if it's zero.
+   */
+  public long getReuseTimeout(TimeUnit unit) {
+    return unit.convert(reuseTimeoutInMillis, TimeUnit.MILLISECONDS);
+  }
+
+  public long getReuseTimeoutInMillis() {
+    return getReuseTimeout(TimeUnit.MILLISECONDS);
+  }
+
+  public void setReuseTimeout(long timeout, TimeUnit unit) {
+    this.reuseTimeoutInMillis = unit.toMillis(timeout);
+  }
+
+  /**
+   * Returns the maximum age of a cached lookup result that is being
+   * used instead of doing a lookup. Cached results are only used as
+   * the starting point of a new lookup if it's zero.
+   */
+  public long getCacheTimeout(TimeUnit unit) {
+    return unit.convert(cacheTimeoutInMillis, TimeUnit.MILLISECONDS);
+  }
+
+  public long getCacheTimeoutInMillis() {
+    return getCacheTimeout(TimeUnit.MILLISECONDS);
+  }
+
+  public void setCacheTimeout(long timeout, TimeUnit unit) {
+    this.cacheTimeoutInMillis = unit.toMillis(timeout);
+  }
+
+  /**
+   * Returns the percentile of the observed Round-Trip-Times after 
+   * which an outstanding request is being hedged.
+   */
+  public double getHedgePercentile() {
+    return hedgePercentile;
+  }
+
+  public void setHedgePercentile(double hedgePercentile) {
+    this.hedgePercentile = hedgePercentile;
+  }
+
+  /**
+   * Returns the maximum number of hedged requests per lookup. A slow
+   * request is never being hedged if it's zero.
+   */
+  public int getHedgeBudget() {
+    return hedgeBudget;
+  }
+
+  public void setHedgeBudget(int hedgeBudget) {
+    this.hedgeBudget = hedgeBudget;
+  }
+
+  /**
+   * Returns the number of hops the receivers of the lookup requests 
+   * may forward them towards the lookup target. The lookup is purely 
+   * iterative if it's zero.
+   */
+  public int getHopLimit() {
+    return hopLimit;
+  }
+
+  public void setHopLimit(int hopLimit) {
+    this.hopLimit = hopLimit;
+  }
+}
@@ -29,6 +29,8 @@ public class PutConfig extends Config {
   
   private volatile ValueConfig getConfig = new ValueConfig();
   
+  private volatile boolean pipelined = false;
+  
   @Override
   public void setExecutorKey(ExecutorKey executorKey) {
     super.setExecutorKey(executorKey);
@@ -61,6 +63,19 @@ public class PutConfig extends Config {
     this.getConfig = getConfig;
   }
 
+  /**
+   * Returns {@code true} if the STOREs should be sent to the 
+   * k-closest {@link org.ardverk.dht.routing.Contact}s as soon as 
+   * they're known rather than after the lookup has completed.
+   */
+  public boolean isPipelined() {
+    return pipelined;
+  }
+
+  public void setPipelined(boolean pipelined) {
+    this.pipelined = pipelined;
+  }
+
   public void setOperationTimeout(long timeout, TimeUnit unit) {
     throw new UnsupportedOperationException();
   }
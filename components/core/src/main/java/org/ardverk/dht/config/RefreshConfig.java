@@ -0,0 +1,179 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht.config;
+
+import java.util.concurrent.TimeUnit;
+
+import org.ardverk.dht.concurrent.ExecutorKey;
+import org.ardverk.utils.TimeUtils;
+
+/**
+ * The {@link RefreshConfig} controls the background refresh of
+ * the {@link org.ardverk.dht.routing.RouteTable}.
+ */
+public class RefreshConfig extends Config {
+
+  private volatile PingConfig pingConfig = new PingConfig();
+
+  private volatile NodeConfig lookupConfig = new NodeConfig();
+
+  private volatile long frequencyInMillis
+    = TimeUtils.convert(1L, TimeUnit.SECONDS, TimeUnit.MILLISECONDS);
+
+  private volatile long contactTimeoutInMillis
+    = TimeUtils.convert(5L*60L, TimeUnit.SECONDS, TimeUnit.MILLISECONDS);
+
+  private volatile long bucketTimeoutInMillis
+    = TimeUtils.convert(15L*60L, TimeUnit.SECONDS, TimeUnit.MILLISECONDS);
+
+  private volatile float jitter = 0.25f;
+
+  private volatile float messagesPerSecond = 5.0f;
+
+  private volatile int lookupCost = 20;
+
+  public RefreshConfig() {
+    setExecutorKey(ExecutorKey.REFRESH);
+  }
+
+  @Override
+  public void setExecutorKey(ExecutorKey executorKey) {
+    super.setExecutorKey(executorKey);
+    pingConfig.setExecutorKey(executorKey);
+    lookupConfig.setExecutorKey(executorKey);
+  }
+
+  public PingConfig getPingConfig() {
+    return pingConfig;
+  }
+
+  public void setPingConfig(PingConfig pingConfig) {
+    this.pingConfig = pingConfig;
+  }
+
+  public NodeConfig getLookupConfig() {
+    return lookupConfig;
+  }
+
+  public void setLookupConfig(NodeConfig lookupConfig) {
+    this.lookupConfig = lookupConfig;
+  }
+
+  /**
+   * Returns the frequency in which the refresher is looking
+   * for stale {@link org.ardverk.dht.routing.Contact}s and
+   * {@link org.ardverk.dht.routing.Bucket}s.
+   */
+  public long getFrequency(TimeUnit unit) {
+    return unit.convert(frequencyInMillis, TimeUnit.MILLISECONDS);
+  }
+
+  public long getFrequencyInMillis() {
+    return getFrequency(TimeUnit.MILLISECONDS);
+  }
+
+  public void setFrequency(long frequency, TimeUnit unit) {
+    this.frequencyInMillis = unit.toMillis(frequency);
+  }
+
+  /**
+   * Returns the amount of time after which a silent
+   * {@link org.ardverk.dht.routing.Contact} gets pinged.
+   */
+  public long getContactTimeout(TimeUnit unit) {
+    return unit.convert(contactTimeoutInMillis, TimeUnit.MILLISECONDS);
+  }
+
+  public long getContactTimeoutInMillis() {
+    return getContactTimeout(TimeUnit.MILLISECONDS);
+  }
+
+  public void setContactTimeout(long timeout, TimeUnit unit) {
+    this.contactTimeoutInMillis = unit.toMillis(timeout);
+  }
+
+  /**
+   * Returns the amount of time after which a silent
+   * {@link org.ardverk.dht.routing.Bucket} gets refreshed
+   * with a lookup.
+   */
+  public long getBucketTimeout(TimeUnit unit) {
+    return unit.convert(bucketTimeoutInMillis, TimeUnit.MILLISECONDS);
+  }
+
+  public long getBucketTimeoutInMillis() {
+    return getBucketTimeout(TimeUnit.MILLISECONDS);
+  }
+
+  public void setBucketTimeout(long timeout, TimeUnit unit) {
+    this.bucketTimeoutInMillis = unit.toMillis(timeout);
+  }
+
+  /**
+   * Returns the jitter as a fraction of the timeouts. A jitter of
+   * {@code 0.25} will refresh an item somewhere between 75% and 100%
+   * of its timeout.
+   */
+  public float getJitter() {
+    return jitter;
+  }
+
+  public void setJitter(float jitter) {
+    if (jitter < 0f || 1f < jitter) {
+      throw new IllegalArgumentException("jitter=" + jitter);
+    }
+
+    this.jitter = jitter;
+  }
+
+  /**
+   * Returns the maximum number of refresh messages per second.
+   */
+  public float getMessagesPerSecond() {
+    return messagesPerSecond;
+  }
+
+  public void setMessagesPerSecond(float messagesPerSecond) {
+    if (messagesPerSecond <= 0f) {
+      throw new IllegalArgumentException(
+          "messagesPerSecond=" + messagesPerSecond);
+    }
+
+    this.messagesPerSecond = messagesPerSecond;
+  }
+
+  /**
+   * Returns the estimated number of messages a refresh lookup costs.
+   */
+  public int getLookupCost() {
+    return lookupCost;
+  }
+
+  public void setLookupCost(int lookupCost) {
+    this.lookupCost = lookupCost;
+  }
+
+  @Override
+  public void setOperationTimeout(long timeout, TimeUnit unit) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public long getOperationTimeout(TimeUnit unit) {
+    throw new UnsupportedOperationException();
+  }
+}
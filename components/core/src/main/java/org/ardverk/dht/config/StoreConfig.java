@@ -30,6 +30,10 @@ public class StoreConfig extends Config {
   
   private volatile int w = RouteTableConfig.DEFAULT_K;
   
+  private volatile int quorum = 0;
+  
+  private volatile int batchSize = 0;
+  
   public StoreConfig() {
     super(DEFAULT_STORE_TIMEOUT, TimeUnit.MILLISECONDS);
   }
@@ -65,4 +69,32 @@ public class StoreConfig extends Config {
   public void setW(int w) {
     this.w = w;
   }
+
+  /**
+   * Returns the number of acknowledgements after which a STORE is 
+   * considered successful. The remaining replicas are being written 
+   * in the background. The STORE waits for all W replicas if it's zero.
+   */
+  public int getQuorum() {
+    return quorum;
+  }
+
+  public void setQuorum(int quorum) {
+    this.quorum = quorum;
+  }
+
+  /**
+   * Returns the maximum number of key-value pairs that are being sent
+   * to a replica in a single STORE request. Batching is disabled if 
+   * it's zero. Nodes that are older than this feature don't understand 
+   * batched STOREs and a batched STORE fails for any node that hasn't 
+   * sent us a message in a version that supports them.
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
 }
\ No newline at end of file
@@ -18,10 +18,21 @@ package org.ardverk.dht.config;
 
 import java.util.concurrent.TimeUnit;
 
+import org.ardverk.utils.TimeUtils;
+
 public class ValueConfig extends NodeConfig {
   
   private volatile int r = 1;
   
+  private volatile boolean pathCaching = false;
+  
+  private volatile long pathCacheTimeoutInMillis 
+    = TimeUtils.convert(1L, TimeUnit.HOURS, TimeUnit.MILLISECONDS);
+  
+  private volatile long valueCacheTimeoutInMillis = 0L;
+  
+  private volatile boolean conditional = false;
+  
   public ValueConfig() {
     super();
   }
@@ -37,4 +48,69 @@ public class ValueConfig extends NodeConfig {
   public void setR(int r) {
     this.r = r;
   }
-}
\ No newline at end of file
+
+  /**
+   * Returns {@code true} if a cached copy of the value should be 
+   * STOREd at the closest node along the lookup path that didn't 
+   * have the value.
+   */
+  public boolean isPathCaching() {
+    return pathCaching;
+  }
+
+  public void setPathCaching(boolean pathCaching) {
+    this.pathCaching = pathCaching;
+  }
+
+  /**
+   * Returns the time to live of a cached copy. It's being halved for
+   * every bit the cache node is further away from the key than the
+   * closest node that had the value.
+   */
+  public long getPathCacheTimeout(TimeUnit unit) {
+    return unit.convert(pathCacheTimeoutInMillis, TimeUnit.MILLISECONDS);
+  }
+
+  public long getPathCacheTimeoutInMillis() {
+    return getPathCacheTimeout(TimeUnit.MILLISECONDS);
+  }
+
+  public void setPathCacheTimeout(long timeout, TimeUnit unit) {
+    this.pathCacheTimeoutInMillis = unit.toMillis(timeout);
+  }
+
+  /**
+   * Returns the maximum age of a cached value that is being returned
+   * without doing a lookup. Values are not cached if it's zero (and
+   * conditional lookups are disabled).
+   */
+  public long getValueCacheTimeout(TimeUnit unit) {
+    return unit.convert(valueCacheTimeoutInMillis, TimeUnit.MILLISECONDS);
+  }
+
+  public long getValueCacheTimeoutInMillis() {
+    return getValueCacheTimeout(TimeUnit.MILLISECONDS);
+  }
+
+  public void setValueCacheTimeout(long timeout, TimeUnit unit) {
+    this.valueCacheTimeoutInMillis = unit.toMillis(timeout);
+  }
+
+  /**
+   * Returns {@code true} if a cached value should be revalidated with
+   * a conditional lookup that doesn't transfer the value if it hasn't
+   * changed.
+   * 
+   * NOTE: It requires a {@link org.ardverk.dht.ValueEntityCache.Revalidator}
+   * that knows the format of the values (e.g. the store module's
+   * {@code ResponseRevalidator}). There is none by default and cached
+   * values are being looked up unconditionally without it.
+   */
+  public boolean isConditional() {
+    return conditional;
+  }
+
+  public void setConditional(boolean conditional) {
+    this.conditional = conditional;
+  }
+}
@@ -18,6 +18,8 @@ package org.ardverk.dht.entity;
 
 import java.util.concurrent.TimeUnit;
 
+import org.ardverk.dht.concurrent.DHTFuture;
+import org.ardverk.dht.concurrent.DHTValueFuture;
 import org.ardverk.dht.message.StoreResponse;
 import org.ardverk.dht.routing.Contact;
 
@@ -30,13 +32,22 @@ public class PutEntity extends LookupEntity {
   
   private final StoreEntity storeEntity;
   
+  private final DHTFuture<StoreEntity> storeFuture;
+  
   public PutEntity(NodeEntity nodeEntity, StoreEntity storeEntity) {
+    this(nodeEntity, storeEntity, 
+        new DHTValueFuture<StoreEntity>(storeEntity));
+  }
+  
+  public PutEntity(NodeEntity nodeEntity, StoreEntity storeEntity, 
+      DHTFuture<StoreEntity> storeFuture) {
     super(nodeEntity.getId(), 
         EntityUtils.getTimeInMillis(nodeEntity, storeEntity), 
         TimeUnit.MILLISECONDS);
     
     this.nodeEntity = nodeEntity;
     this.storeEntity = storeEntity;
+    this.storeFuture = storeFuture;
   }
 
   public NodeEntity getNodeEntity() {
@@ -46,6 +57,15 @@ public class PutEntity extends LookupEntity {
   public StoreEntity getStoreEntity() {
     return storeEntity;
   }
+  
+  /**
+   * Returns a {@link DHTFuture} that completes once all replicas have
+   * been written. It's different from the {@link #getStoreEntity()} 
+   * only if the STORE has been acknowledged early by a quorum.
+   */
+  public DHTFuture<StoreEntity> getStoreFuture() {
+    return storeFuture;
+  }
 
   public StoreResponse[] getStoreResponses() {
     return storeEntity.getStoreResponses();
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht.entity;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The result of a STORE of many key-value pairs. It has a 
+ * {@link StoreEntity} for every pair.
+ */
+public class StoreBatchEntity extends Entity {
+
+  private final StoreEntity[] entities;
+  
+  public StoreBatchEntity(StoreEntity[] entities, 
+      long time, TimeUnit unit) {
+    super(time, unit);
+    this.entities = entities;
+  }
+  
+  /**
+   * Returns the {@link StoreEntity}s in the same order 
+   * as the key-value pairs.
+   */
+  public StoreEntity[] getStoreEntities() {
+    return entities;
+  }
+}
@@ -27,6 +27,7 @@ import org.ardverk.concurrent.AsyncFuture;
 import org.ardverk.concurrent.AsyncFutureListener;
 import org.ardverk.concurrent.AsyncProcessFuture;
 import org.ardverk.dht.KUID;
+import org.ardverk.dht.concurrent.Deadline;
 import org.ardverk.dht.entity.Entity;
 import org.ardverk.dht.message.RequestMessage;
 import org.ardverk.dht.message.ResponseMessage;
@@ -49,6 +50,8 @@ abstract class AbstractResponseHandler<V extends Entity>
   
   private volatile TimeStamp lastResponseTime = null;
   
+  private volatile Deadline deadline = null;
+  
   public AbstractResponseHandler(Provider<MessageDispatcher> messageDispatcher) {
     super(messageDispatcher);
   }
@@ -89,6 +92,31 @@ abstract class AbstractResponseHandler<V extends Entity>
     return getLastResponseTime(TimeUnit.MILLISECONDS);
   }
   
+  /**
+   * Returns the {@link Deadline} or {@code null} if there is none.
+   */
+  public Deadline getDeadline() {
+    return deadline;
+  }
+  
+  /**
+   * Sets the {@link Deadline} of the operation this handler is a 
+   * part of. Request timeouts are being clamped to the remaining
+   * amount of time.
+   */
+  public void setDeadline(Deadline deadline) {
+    this.deadline = deadline;
+  }
+  
+  /**
+   * Returns {@code true} if the {@link Deadline} has expired and
+   * no more requests should be sent.
+   */
+  protected boolean isExpired() {
+    Deadline deadline = this.deadline;
+    return deadline != null && deadline.isExpired();
+  }
+  
   @Override
   public boolean isOpen() {
     AsyncFuture<V> future = this.future;
@@ -166,6 +194,11 @@ abstract class AbstractResponseHandler<V extends Entity>
       long timeout, TimeUnit unit) throws IOException {
     
     if (isOpen()) {
+      Deadline deadline = this.deadline;
+      if (deadline != null) {
+        timeout = deadline.clamp(timeout, unit);
+      }
+      
       getMessageDispatcher().send(this, contactId, 
           message, timeout, unit);
       lastSendTime = TimeStamp.now();
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht.io;
+
+import org.ardverk.dht.routing.Contact;
+
+/**
+ * A fixed-size array of the k-closest {@link ContactDistance}s that 
+ * is kept sorted by their distance.
+ */
+class ClosestContacts {
+  
+  private final ContactDistance[] closest;
+  
+  private int size = 0;
+  
+  public ClosestContacts(int k) {
+    this.closest = new ContactDistance[k];
+  }
+  
+  public int size() {
+    return size;
+  }
+  
+  public boolean isEmpty() {
+    return size == 0;
+  }
+  
+  public boolean isFull() {
+    return size == closest.length;
+  }
+  
+  /**
+   * Returns the {@link ContactDistance} at the given index.
+   */
+  public ContactDistance get(int index) {
+    if (index < 0 || size <= index) {
+      throw new IndexOutOfBoundsException("index=" + index);
+    }
+    return closest[index];
+  }
+  
+  /**
+   * Returns the farthest of the k-closest {@link ContactDistance}s.
+   */
+  public ContactDistance last() {
+    return size > 0 ? closest[size-1] : null;
+  }
+  
+  /**
+   * Adds the given {@link ContactDistance} and returns {@code true} 
+   * if it's one of the k-closest.
+   */
+  public boolean add(ContactDistance element) {
+    if (isFull() && !element.isCloserTo(closest[size-1])) {
+      return false;
+    }
+    
+    int index = (isFull() ? size - 1 : size++);
+    while (index > 0 && element.isCloserTo(closest[index-1])) {
+      closest[index] = closest[index-1];
+      --index;
+    }
+    closest[index] = element;
+    return true;
+  }
+  
+  /**
+   * Returns the k-closest {@link Contact}s.
+   */
+  public Contact[] toContacts() {
+    Contact[] contacts = new Contact[size];
+    for (int i = 0; i < size; i++) {
+      contacts[i] = closest[i].getContact();
+    }
+    return contacts;
+  }
+}
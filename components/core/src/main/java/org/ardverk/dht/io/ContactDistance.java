@@ -0,0 +1,104 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht.io;
+
+import org.ardverk.dht.KUID;
+import org.ardverk.dht.routing.Contact;
+
+/**
+ * A {@link Contact} and its precomputed XOR distance to a lookup 
+ * {@link KUID}. The distance is computed once instead of twice for 
+ * every comparison.
+ */
+final class ContactDistance implements Comparable<ContactDistance> {
+  
+  private final KUID distance;
+  
+  private final int hop;
+  
+  private Contact contact;
+  
+  private boolean responded = false;
+  
+  public ContactDistance(KUID lookupId, Contact contact, int hop) {
+    this.distance = lookupId.xor(contact.getId());
+    this.contact = contact;
+    this.hop = hop;
+  }
+  
+  /**
+   * Returns the {@link Contact}.
+   */
+  public Contact getContact() {
+    return contact;
+  }
+  
+  /**
+   * Returns the {@link Contact}'s {@link KUID}.
+   */
+  public KUID getId() {
+    return contact.getId();
+  }
+  
+  /**
+   * Returns the XOR distance to the lookup {@link KUID}.
+   */
+  public KUID getDistance() {
+    return distance;
+  }
+  
+  /**
+   * Returns the hop at which the {@link Contact} was discovered.
+   */
+  public int getHop() {
+    return hop;
+  }
+  
+  /**
+   * Returns {@code true} if the {@link Contact} has responded.
+   */
+  public boolean hasResponded() {
+    return responded;
+  }
+  
+  /**
+   * Marks the {@link Contact} as responded and replaces it with 
+   * the given (fresher) instance.
+   */
+  public void setResponded(Contact contact) {
+    this.contact = contact;
+    this.responded = true;
+  }
+  
+  /**
+   * Returns {@code true} if this {@link Contact} is closer to the
+   * lookup {@link KUID} than the other {@link Contact}.
+   */
+  public boolean isCloserTo(ContactDistance other) {
+    return compareTo(other) < 0;
+  }
+  
+  @Override
+  public int compareTo(ContactDistance other) {
+    return distance.compareTo(other.distance);
+  }
+  
+  @Override
+  public String toString() {
+    return contact + ", hop=" + hop;
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht.io;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A bounded binary min-heap of {@link ContactDistance}s. The closest 
+ * {@link ContactDistance} is always at the top. If the heap is full
+ * the farthest {@link ContactDistance} is being replaced by closer
+ * ones and farther ones are being rejected.
+ */
+class ContactHeap {
+  
+  private static final int INITIAL_CAPACITY = 32;
+  
+  private final int maxSize;
+  
+  private ContactDistance[] heap;
+  
+  private int size = 0;
+  
+  public ContactHeap(int maxSize) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize=" + maxSize);
+    }
+    
+    this.maxSize = maxSize;
+    this.heap = new ContactDistance[Math.min(INITIAL_CAPACITY, maxSize)];
+  }
+  
+  public int size() {
+    return size;
+  }
+  
+  public boolean isEmpty() {
+    return size == 0;
+  }
+  
+  /**
+   * Adds the given {@link ContactDistance} and returns {@code true} 
+   * on success or {@code false} if the heap is full and it's farther
+   * than all the elements in the heap.
+   */
+  public boolean offer(ContactDistance element) {
+    if (size < maxSize) {
+      if (size == heap.length) {
+        heap = Arrays.copyOf(heap, Math.min(2 * heap.length, maxSize));
+      }
+      
+      siftUp(size++, element);
+      return true;
+    }
+    
+    // The farthest element is one of the leaves
+    int farthest = size >>> 1;
+    for (int i = farthest + 1; i < size; i++) {
+      if (heap[farthest].isCloserTo(heap[i])) {
+        farthest = i;
+      }
+    }
+    
+    if (!element.isCloserTo(heap[farthest])) {
+      return false;
+    }
+    
+    siftUp(farthest, element);
+    return true;
+  }
+  
+  /**
+   * Returns the closest {@link ContactDistance} without removing it
+   * or {@code null} if the heap is empty.
+   */
+  public ContactDistance peek() {
+    return size > 0 ? heap[0] : null;
+  }
+  
+  /**
+   * Removes and returns the closest {@link ContactDistance}.
+   */
+  public ContactDistance poll() {
+    if (size == 0) {
+      throw new NoSuchElementException();
+    }
+    
+    ContactDistance first = heap[0];
+    ContactDistance last = heap[--size];
+    heap[size] = null;
+    
+    if (size > 0) {
+      siftDown(0, last);
+    }
+    return first;
+  }
+  
+  private void siftUp(int index, ContactDistance element) {
+    while (index > 0) {
+      int parent = (index - 1) >>> 1;
+      ContactDistance e = heap[parent];
+      if (!element.isCloserTo(e)) {
+        break;
+      }
+      heap[index] = e;
+      index = parent;
+    }
+    heap[index] = element;
+  }
+  
+  private void siftDown(int index, ContactDistance element) {
+    int half = size >>> 1;
+    while (index < half) {
+      int child = (index << 1) + 1;
+      int right = child + 1;
+      if (right < size && heap[right].isCloserTo(heap[child])) {
+        child = right;
+      }
+      
+      if (!heap[child].isCloserTo(element)) {
+        break;
+      }
+      
+      heap[index] = heap[child];
+      index = child;
+    }
+    heap[index] = element;
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht.io;
+
+import org.ardverk.dht.KUID;
+
+/**
+ * An open-addressing hash table of all {@link ContactDistance}s a 
+ * lookup has seen. It's keyed by the {@link KUID}s of the 
+ * {@link ContactDistance}s and uses linear probing.
+ */
+class ContactHistory {
+  
+  private static final int INITIAL_CAPACITY = 64;
+  
+  private ContactDistance[] table = new ContactDistance[INITIAL_CAPACITY];
+  
+  private int size = 0;
+  
+  public int size() {
+    return size;
+  }
+  
+  /**
+   * Returns the {@link ContactDistance} for the given {@link KUID} or 
+   * {@code null} if there is none.
+   */
+  public ContactDistance get(KUID contactId) {
+    int mask = table.length - 1;
+    for (int i = index(contactId, mask); ; i = (i + 1) & mask) {
+      ContactDistance element = table[i];
+      if (element == null) {
+        return null;
+      }
+      
+      if (element.getId().equals(contactId)) {
+        return element;
+      }
+    }
+  }
+  
+  /**
+   * Returns {@code true} if there is a {@link ContactDistance} for 
+   * the given {@link KUID}.
+   */
+  public boolean contains(KUID contactId) {
+    return get(contactId) != null;
+  }
+  
+  /**
+   * Adds the given {@link ContactDistance} and returns {@code true} 
+   * on success or {@code false} if there is already one with the 
+   * same {@link KUID}.
+   */
+  public boolean add(ContactDistance element) {
+    if (contains(element.getId())) {
+      return false;
+    }
+    
+    // Keep the load factor at or below 0.5
+    if (2 * (size + 1) > table.length) {
+      resize();
+    }
+    
+    insert(table, element);
+    ++size;
+    return true;
+  }
+  
+  private void resize() {
+    ContactDistance[] resized = new ContactDistance[2 * table.length];
+    for (ContactDistance element : table) {
+      if (element != null) {
+        insert(resized, element);
+      }
+    }
+    table = resized;
+  }
+  
+  private static void insert(ContactDistance[] table, ContactDistance element) {
+    int mask = table.length - 1;
+    int i = index(element.getId(), mask);
+    while (table[i] != null) {
+      i = (i + 1) & mask;
+    }
+    table[i] = element;
+  }
+  
+  private static int index(KUID contactId, int mask) {
+    int h = contactId.hashCode();
+    return (h ^ (h >>> 16)) & mask;
+  }
+}
@@ -28,6 +28,7 @@ import org.ardverk.dht.message.NodeRequest;
 import org.ardverk.dht.message.PingRequest;
 import org.ardverk.dht.message.RequestMessage;
 import org.ardverk.dht.message.ResponseMessage;
+import org.ardverk.dht.message.StoreBatchRequest;
 import org.ardverk.dht.message.StoreRequest;
 import org.ardverk.dht.message.ValueRequest;
 import org.slf4j.Logger;
@@ -118,13 +119,21 @@ public class DefaultMessageDispatcher extends MessageDispatcher {
       return node.handleRequest(request);
     } else if (request instanceof ValueRequest) {
       return value.handleRequest(request);
-    } else if (request instanceof StoreRequest) {
+    } else if (request instanceof StoreRequest 
+        || request instanceof StoreBatchRequest) {
       return store.handleRequest(request);
     }
     
     return unhandledRequest(request);
   }
   
+  @Override
+  protected void handleRequestSent(MessageCallback callback, 
+      RequestEntity entity) {
+    super.handleRequestSent(callback, entity);
+    defaultHandler.handleRequestSent(entity);
+  }
+  
   @Override
   protected boolean handleResponse(MessageCallback callback,
       RequestEntity entity, ResponseMessage response, long time,
@@ -29,6 +29,7 @@ import org.ardverk.dht.message.RequestMessage;
 import org.ardverk.dht.message.ResponseMessage;
 import org.ardverk.dht.routing.Contact;
 import org.ardverk.dht.routing.Identity;
+import org.ardverk.dht.routing.LivenessTracker;
 import org.ardverk.dht.routing.RoundTripTime;
 import org.ardverk.dht.routing.RouteTable;
 import org.slf4j.Logger;
@@ -48,9 +49,20 @@ public class DefaultMessageHandler implements MessageCallback {
   
   private final RouteTable routeTable;
   
+  private final LivenessTracker liveness;
+  
   @Inject
-  public DefaultMessageHandler(RouteTable routeTable) {
+  public DefaultMessageHandler(RouteTable routeTable, 
+      LivenessTracker liveness) {
     this.routeTable = routeTable;
+    this.liveness = liveness;
+  }
+  
+  /**
+   * Called for every {@link RequestMessage} we're sending.
+   */
+  public void handleRequestSent(RequestEntity entity) {
+    liveness.handleRequest(entity.getId(), entity.getAddress());
   }
   
   public void handleRequest(RequestMessage request) throws IOException {
@@ -63,11 +75,15 @@ public class DefaultMessageHandler implements MessageCallback {
       ResponseMessage response, long time, TimeUnit unit) throws IOException {
     
     Contact src = response.getContact();
+    liveness.handleResponse(entity.getId(), entity.getAddress());
     
     if (src instanceof RoundTripTime) {
       ((RoundTripTime)src).setRoundTripTime(time, unit);
     }
     
+    Identity localhost = routeTable.getIdentity();
+    localhost.updateCoordinate(src, time, unit);
+    
     SocketAddress address = response.getAddress();
     updateContactAddress(address);
     
@@ -121,6 +137,7 @@ public class DefaultMessageHandler implements MessageCallback {
     KUID contactId = entity.getId();
     SocketAddress address = entity.getAddress();
     
+    liveness.handleFailure(contactId, address);
     routeTable.handleIoError(contactId, address);
   }
   
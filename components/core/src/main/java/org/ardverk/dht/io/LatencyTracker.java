@@ -0,0 +1,101 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht.io;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link LatencyTracker} keeps a sliding window of the most 
+ * recently observed Round-Trip-Times (RTT) and estimates their 
+ * percentiles.
+ */
+public class LatencyTracker {
+  
+  public static final int DEFAULT_SIZE = 256;
+  
+  private final long[] samples;
+  
+  private int index = 0;
+  
+  private int size = 0;
+  
+  public LatencyTracker() {
+    this(DEFAULT_SIZE);
+  }
+  
+  public LatencyTracker(int size) {
+    if (size <= 0) {
+      throw new IllegalArgumentException("size=" + size);
+    }
+    
+    this.samples = new long[size];
+  }
+  
+  /**
+   * Adds the given Round-Trip-Time (RTT).
+   */
+  public synchronized void add(long rtt, TimeUnit unit) {
+    samples[index] = unit.toMillis(rtt);
+    index = (index + 1) % samples.length;
+    
+    if (size < samples.length) {
+      ++size;
+    }
+  }
+  
+  /**
+   * Returns the number of Round-Trip-Times (RTT) in the window.
+   */
+  public synchronized int size() {
+    return size;
+  }
+  
+  /**
+   * Returns the given percentile (a value between 0 and 1) of the 
+   * Round-Trip-Times (RTT) in the window or a negative value if the 
+   * window has fewer than the given number of samples.
+   */
+  public long getPercentile(double percentile, 
+      int minSamples, TimeUnit unit) {
+    
+    if (percentile < 0d || 1d < percentile) {
+      throw new IllegalArgumentException("percentile=" + percentile);
+    }
+    
+    long[] copy = null;
+    synchronized (this) {
+      if (size == 0 || size < minSamples) {
+        return -1L;
+      }
+      copy = Arrays.copyOf(samples, size);
+    }
+    
+    Arrays.sort(copy);
+    int rank = (int)Math.ceil(percentile * copy.length) - 1;
+    long rtt = copy[Math.max(0, Math.min(rank, copy.length-1))];
+    return unit.convert(rtt, TimeUnit.MILLISECONDS);
+  }
+  
+  /**
+   * Removes all Round-Trip-Times (RTT).
+   */
+  public synchronized void clear() {
+    index = 0;
+    size = 0;
+  }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht.io;
+
+import org.ardverk.dht.KUID;
+import org.ardverk.dht.routing.Contact;
+
+/**
+ * The {@link LookupListener} is notified while a lookup is converging.
+ * 
+ * <p>NOTE: The callbacks are being called on the {@link LookupScheduler}'s
+ * {@link Thread} and possibly after the lookup has completed. 
+ * Implementations should return quickly and must not block.
+ */
+public interface LookupListener {
+  
+  /**
+   * Called whenever the stable part of the k-closest {@link Contact}s 
+   * has changed. A {@link Contact} is stable if it has responded and
+   * there is neither an unqueried nor an outstanding {@link Contact} 
+   * that is closer to the lookup {@link KUID}. {@link Contact}s stay
+   * stable once they are and the {@link Contact}s are sorted by their 
+   * XOR distance to the lookup {@link KUID}.
+   */
+  public void handleStableContacts(KUID lookupId, Contact[] contacts);
+}
@@ -17,30 +17,29 @@
 package org.ardverk.dht.io;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.NavigableSet;
 import java.util.NoSuchElementException;
-import java.util.Set;
-import java.util.TreeSet;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import javax.inject.Provider;
 
 import org.ardverk.concurrent.AsyncFuture;
-import org.ardverk.concurrent.ExecutorUtils;
-import org.ardverk.concurrent.FutureUtils;
 import org.ardverk.dht.KUID;
+import org.ardverk.dht.concurrent.Deadline;
+import org.ardverk.dht.concurrent.TimerWheel.Timeout;
 import org.ardverk.dht.config.NodeConfig;
 import org.ardverk.dht.entity.LookupEntity;
+import org.ardverk.dht.io.LookupScheduler.Boostable;
+import org.ardverk.dht.io.LookupScheduler.Registration;
 import org.ardverk.dht.message.MessageType;
 import org.ardverk.dht.message.ResponseMessage;
 import org.ardverk.dht.routing.Contact;
+import org.ardverk.dht.routing.ContactUtils;
 import org.ardverk.dht.routing.RouteTable;
-import org.ardverk.dht.utils.XorComparator;
 import org.ardverk.lang.TimeStamp;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -56,8 +55,11 @@ abstract class LookupResponseHandler<T extends LookupEntity>
   private static final Logger LOG 
     = LoggerFactory.getLogger(LookupResponseHandler.class);
   
-  private static final ScheduledThreadPoolExecutor EXECUTOR 
-    = ExecutorUtils.newSingleThreadScheduledExecutor("BoostThread");
+  /**
+   * The minimum number of observed Round-Trip-Times before we 
+   * start hedging slow requests or adapting the alpha to them.
+   */
+  private static final int MIN_SAMPLES = 16;
   
   private final TimeStamp creationTime = TimeStamp.now();
   
@@ -67,14 +69,40 @@ abstract class LookupResponseHandler<T extends LookupEntity>
   
   private final ProcessCounter lookupCounter;
   
-  private ScheduledFuture<?> boostFuture;
+  private final LookupListener listener;
+  
+  private Registration boostRegistration;
+  
+  private Contact[] stable = null;
+  
+  /**
+   * The pending hedges by the {@link KUID} of the {@link Contact}
+   * they were scheduled for.
+   */
+  private final Map<KUID, Timeout> hedges = new HashMap<>();
+  
+  private int hedgeCount = 0;
+  
+  private int responseCount = 0;
+  
+  private int timeoutCount = 0;
+  
+  private boolean recursive;
   
   public LookupResponseHandler(Provider<MessageDispatcher> messageDispatcher, 
       Contact[] contacts, RouteTable routeTable, KUID lookupId, 
       NodeConfig config) {
+    this(messageDispatcher, contacts, routeTable, lookupId, null, config);
+  }
+  
+  public LookupResponseHandler(Provider<MessageDispatcher> messageDispatcher, 
+      Contact[] contacts, RouteTable routeTable, KUID lookupId, 
+      LookupListener listener, NodeConfig config) {
     super(messageDispatcher);
     
     this.config = config;
+    this.listener = listener;
+    this.recursive = (0 < config.getHopLimit());
     lookupManager = new LookupManager(contacts, routeTable, lookupId);
     lookupCounter = new ProcessCounter(config.getAlpha());
   }
@@ -86,22 +114,23 @@ abstract class LookupResponseHandler<T extends LookupEntity>
     assert (Thread.holdsLock(future));
     
     long boostFrequency = config.getBoostFrequencyInMillis();
+    long boostTimeout = config.getBoostTimeoutInMillis();
     
-    if (0L < boostFrequency) {
-      Runnable task = new Runnable() {
+    if (0L < boostFrequency && 0L <= boostTimeout) {
+      Boostable boostable = new Boostable() {
         @Override
-        public void run() {
-          try {
-            boost();          
-          } catch (IOException err) {
-            LOG.error("IOException", err);
-          }
+        public long getIdleTimeInMillis() {
+          return LookupResponseHandler.this.getIdleTimeInMillis();
+        }
+        
+        @Override
+        public boolean boost() throws IOException {
+          return LookupResponseHandler.this.boost();
         }
       };
       
-      boostFuture = EXECUTOR.scheduleWithFixedDelay(
-          task, boostFrequency, boostFrequency, 
-          TimeUnit.MILLISECONDS);
+      boostRegistration = LookupScheduler.getDefault().register(
+          boostable, boostTimeout, boostFrequency, TimeUnit.MILLISECONDS);
     }
     
     process(0);
@@ -109,34 +138,55 @@ abstract class LookupResponseHandler<T extends LookupEntity>
   
   @Override
   protected synchronized void done() {
-    FutureUtils.cancel(boostFuture, true);
+    if (boostRegistration != null) {
+      boostRegistration.cancel();
+    }
+    
+    for (Timeout timeout : hedges.values()) {
+      timeout.cancel();
+    }
+    hedges.clear();
+  }
+  
+  /**
+   * Returns the amount of time in milliseconds since we've received
+   * the last response or since the lookup has started.
+   */
+  private long getIdleTimeInMillis() {
+    long time = getLastResponseTimeInMillis();
+    if (time < 0L) {
+      time = creationTime.getAgeInMillis();
+    }
+    return time;
   }
   
   /**
    * Kicks off an additional lookup if we haven't received any 
-   * responses for a while. 
+   * responses for a while. Returns {@code true} if a lookup
+   * request was sent.
    * 
    * NOTE: This is called from a different {@link Thread}! We must 
    * therefore pay great attention to the locking order and acquire 
    * the locks in the same order as the other methods!
    */
-  private void boost() throws IOException {
+  private boolean boost() throws IOException {
     synchronized (future) {
       
       if (future.isDone()) {
-        return;
+        return false;
       }
       
       synchronized (this) {
-        if (lookupManager.hasNext(true)) {
+        if (!isExpired() && lookupManager.hasNext(true)) {
           long boostTimeout = config.getBoostTimeoutInMillis();
           
-          if (boostTimeout >= 0L && getLastResponseTimeInMillis() >= boostTimeout) {
+          if (getIdleTimeInMillis() >= boostTimeout) {
             try {
               Contact contact = lookupManager.next();
               
               lookup(contact);
               lookupCounter.increment(true);
+              return true;
             } finally {
               postProcess();
             }
@@ -144,6 +194,8 @@ abstract class LookupResponseHandler<T extends LookupEntity>
         }
       }
     }
+    
+    return false;
   }
   
   /**
@@ -153,7 +205,7 @@ abstract class LookupResponseHandler<T extends LookupEntity>
     try {
       preProcess(decrement);
       while (lookupCounter.hasNext()) {
-        if (!lookupManager.hasNext()) {
+        if (!lookupManager.hasNext() || isExpired()) {
           break;
         }
         
@@ -168,13 +220,113 @@ abstract class LookupResponseHandler<T extends LookupEntity>
   }
   
   /**
-   * Sends a lookup request to the given {@link Contact}.
+   * Sends a lookup request to the given {@link Contact}. Recursive 
+   * requests get an extra timeout for each of the hops they may take
+   * but never more than what is left of the {@link Deadline}.
    */
   private void lookup(Contact dst) throws IOException {
     long defaultTimeout = config.getLookupTimeoutInMillis();
     long adaptiveTimeout = config.getAdaptiveTimeout(
-        dst, defaultTimeout, TimeUnit.MILLISECONDS);
-    lookup(dst, lookupManager.lookupId, adaptiveTimeout, TimeUnit.MILLISECONDS);
+        lookupManager.localhost, dst, defaultTimeout, TimeUnit.MILLISECONDS);
+    
+    int hopLimit = (recursive ? Math.min(config.getHopLimit(), 0xFF) : 0);
+    adaptiveTimeout *= (1 + hopLimit);
+    
+    Deadline deadline = getDeadline();
+    if (deadline != null) {
+      adaptiveTimeout = deadline.clamp(adaptiveTimeout, TimeUnit.MILLISECONDS);
+    }
+    
+    lookup(dst, lookupManager.lookupId, hopLimit, 
+        adaptiveTimeout, TimeUnit.MILLISECONDS);
+    lookupManager.handleRequest(dst);
+    
+    scheduleHedge(dst, adaptiveTimeout);
+  }
+  
+  /**
+   * Schedules a hedged request in case the given {@link Contact} 
+   * doesn't respond within the configured percentile of the observed
+   * Round-Trip-Times.
+   */
+  private synchronized void scheduleHedge(final Contact dst, long timeout) {
+    if (hedgeCount >= config.getHedgeBudget()) {
+      return;
+    }
+    
+    LookupScheduler scheduler = LookupScheduler.getDefault();
+    long delay = scheduler.getLatencyTracker().getPercentile(
+        config.getHedgePercentile(), MIN_SAMPLES, TimeUnit.MILLISECONDS);
+    
+    if (delay < 0L || timeout <= delay) {
+      return;
+    }
+    
+    Timeout hedge = scheduler.schedule(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          hedge(dst);
+        } catch (IOException err) {
+          LOG.error("IOException", err);
+        }
+      }
+    }, delay, TimeUnit.MILLISECONDS);
+    
+    Timeout existing = hedges.put(dst.getId(), hedge);
+    if (existing != null) {
+      existing.cancel();
+    }
+  }
+  
+  /**
+   * Cancels and removes the pending hedge for the given {@link KUID}.
+   */
+  private synchronized void cancelHedge(KUID contactId) {
+    Timeout timeout = hedges.remove(contactId);
+    if (timeout != null) {
+      timeout.cancel();
+    }
+  }
+  
+  /**
+   * Sends a lookup request to the next {@link Contact} if the given 
+   * {@link Contact} hasn't responded yet. The slow request is not 
+   * being cancelled. Returns {@code true} if a request was sent.
+   * 
+   * NOTE: This is called from a different {@link Thread}! We must 
+   * therefore acquire the locks in the same order as {@link #boost()}.
+   */
+  private boolean hedge(Contact dst) throws IOException {
+    synchronized (future) {
+      
+      if (future.isDone()) {
+        return false;
+      }
+      
+      synchronized (this) {
+        hedges.remove(dst.getId());
+        
+        if (hedgeCount < config.getHedgeBudget() 
+            && !isExpired()
+            && lookupManager.isActive(dst) 
+            && lookupManager.hasNext()) {
+          try {
+            Contact contact = lookupManager.next();
+            ++hedgeCount;
+            
+            lookup(contact);
+            lookupCounter.increment(true);
+            LookupScheduler.getDefault().incrementHedgeCount();
+            return true;
+          } finally {
+            postProcess();
+          }
+        }
+      }
+    }
+    
+    return false;
   }
   
   /**
@@ -184,6 +336,44 @@ abstract class LookupResponseHandler<T extends LookupEntity>
     while (0 < decrement--) {
       lookupCounter.decrement();
     }
+    
+    if (config.isAdaptiveAlpha()) {
+      adjustAlpha();
+    }
+  }
+  
+  /**
+   * Adjusts the lookup's parallelism. We send more requests in 
+   * parallel if we've seen timeouts as only some of them are going 
+   * to succeed. The alpha is being scaled down if the recent 
+   * Round-Trip-Times are uniform (i.e. the p90 is close to the 
+   * median) and up if they have a long tail.
+   */
+  private synchronized void adjustAlpha() {
+    double success = (responseCount + 1d) 
+        / (responseCount + timeoutCount + 1d);
+    double alpha = config.getAlpha() / success;
+    
+    LatencyTracker tracker = LookupScheduler.getDefault().getLatencyTracker();
+    long p50 = tracker.getPercentile(0.5d, 
+        MIN_SAMPLES, TimeUnit.MILLISECONDS);
+    long p90 = tracker.getPercentile(0.9d, 
+        MIN_SAMPLES, TimeUnit.MILLISECONDS);
+    
+    if (0L <= p50 && 0L <= p90) {
+      double spread = p90 / (2d * Math.max(p50, 1L));
+      alpha *= Math.max(0.5d, Math.min(spread, 2d));
+    }
+    
+    int minAlpha = config.getMinAlpha();
+    int maxAlpha = Math.max(minAlpha, config.getMaxAlpha());
+    int effectiveAlpha = Math.max(minAlpha, 
+        Math.min((int)Math.round(alpha), maxAlpha));
+    
+    if (effectiveAlpha != lookupCounter.getMaxActive()) {
+      lookupCounter.setMaxActive(effectiveAlpha);
+    }
+    LookupScheduler.getDefault().addEffectiveAlpha(effectiveAlpha);
   }
   
   /**
@@ -193,14 +383,44 @@ abstract class LookupResponseHandler<T extends LookupEntity>
     int count = lookupCounter.getActive();
     if (count == 0) {
       complete(createOutcome());
+    } else if (listener != null) {
+      fireStableContacts();
     }
   }
   
   /**
-   * Sends a lookup request to the given {@link Contact}.
+   * Notifies the {@link LookupListener} if the stable part of the 
+   * k-closest {@link Contact}s has changed. The {@link LookupListener}
+   * is called on the {@link LookupScheduler}'s {@link Thread} as we're
+   * holding our own and possibly the {@link AsyncFuture}'s lock.
+   */
+  private synchronized void fireStableContacts() {
+    final Contact[] contacts = lookupManager.getStable();
+    if (contacts.length == 0 || Arrays.equals(stable, contacts)) {
+      return;
+    }
+    
+    stable = contacts;
+    
+    final KUID lookupId = lookupManager.lookupId;
+    LookupScheduler.getDefault().execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          listener.handleStableContacts(lookupId, contacts);
+        } catch (Exception err) {
+          LOG.error("Exception", err);
+        }
+      }
+    });
+  }
+  
+  /**
+   * Sends a lookup request to the given {@link Contact} that may be
+   * forwarded up to the given number of hops.
    */
   protected abstract void lookup(Contact dst, KUID lookupId, 
-      long timeout, TimeUnit unit) throws IOException;
+      int hopLimit, long timeout, TimeUnit unit) throws IOException;
   
   /**
    * Called upon completion.
@@ -213,6 +433,9 @@ abstract class LookupResponseHandler<T extends LookupEntity>
       throws IOException {
     
     try {
+      handleDone(entity);
+      ++responseCount;
+      LookupScheduler.getDefault().getLatencyTracker().add(time, unit);
       processResponse0(entity, response, time, unit);
     } finally {
       process(1);
@@ -239,6 +462,13 @@ abstract class LookupResponseHandler<T extends LookupEntity>
       long time, TimeUnit unit) throws IOException {
     
     try {
+      handleDone(entity);
+      ++timeoutCount;
+      
+      // Fall back to iterative requests as soon as a recursive 
+      // request has timed out.
+      recursive = false;
+      
       processTimeout0(entity, time, unit);
     } finally {
       process(1);
@@ -259,6 +489,7 @@ abstract class LookupResponseHandler<T extends LookupEntity>
       throws IOException {
     
     try {
+      handleDone(entity);
       processIllegalResponse0(entity, response, time, unit);
     } finally {
       process(1);
@@ -275,6 +506,7 @@ abstract class LookupResponseHandler<T extends LookupEntity>
   protected final void processException(RequestEntity entity, Throwable exception) {
     
     try {
+      handleDone(entity);
       processException0(entity, exception);
     } finally {
       try { 
@@ -289,6 +521,14 @@ abstract class LookupResponseHandler<T extends LookupEntity>
     // Do nothing!
   }
 
+  /**
+   * Called for every request that has either succeeded or failed.
+   */
+  private synchronized void handleDone(RequestEntity entity) {
+    lookupManager.handleDone(entity);
+    cancelHedge(entity.getId());
+  }
+  
   /**
    * Creates and returns the current lookup {@link Outcome}.
    */
@@ -334,38 +574,63 @@ abstract class LookupResponseHandler<T extends LookupEntity>
   }
   
   /**
-   * The {@link LookupManager} controls the lookup process.
+   * The {@link LookupManager} controls the lookup process. It keeps all 
+   * {@link Contact}s along with their precomputed XOR distances to the
+   * lookup {@link KUID} in a few compact arrays.
    */
   private class LookupManager {
     
+    /**
+     * The maximum number of {@link Contact}s we're keeping in the 
+     * {@link #query} heap of a non-exhaustive lookup (times k).
+     */
+    private static final int QUERY_SIZE_FACTOR = 4;
+    
     private final boolean exhaustive = config.isExhaustive();
     
     private final boolean randomize = config.isRandomize();
     
+    private final boolean proximity = config.isProximity();
+    
     private final RouteTable routeTable;
     
+    private final Contact localhost;
+    
     private final KUID lookupId;
     
     /**
-     * A {@link Set} of all responses
+     * All {@link Contact}s that have responded
+     */
+    private final List<ContactDistance> responses = new ArrayList<>();
+    
+    /**
+     * The k-closest responses
      */
-    private final NavigableSet<Contact> responses;
+    private final ClosestContacts closest;
     
     /**
-     * A {@link Set} of the k-closest responses
+     * The {@link Contact}s to query
      */
-    private final NavigableSet<Contact> closest;
+    private final ContactHeap query;
     
     /**
-     * A {@link Set} of {@link Contact}s to query
+     * A history of all {@link Contact}s that were added to the 
+     * {@link #query} heap.
      */
-    private final NavigableSet<Contact> query;
+    private final ContactHistory history = new ContactHistory();
     
     /**
-     * A history of all {@link KUID}s that were added to the 
-     * {@link #query} {@link NavigableSet}.
+     * The {@link Contact}s we've sent a request to and that haven't
+     * responded or timed out yet.
      */
-    private final Map<KUID, Integer> history = new HashMap<>();
+    private final List<ContactDistance> active = new ArrayList<>();
+    
+    /**
+     * The {@link Contact}s that have been stable at some point.
+     */
+    private final StableContacts stable = new StableContacts();
+    
+    private ContactDistance[] scratch = new ContactDistance[0];
     
     private int currentHop = 0;
     
@@ -374,16 +639,14 @@ abstract class LookupResponseHandler<T extends LookupEntity>
     public LookupManager(Contact[] contacts, RouteTable routeTable, KUID lookupId) {
       this.routeTable = routeTable;
       this.lookupId = lookupId;
+      this.localhost = routeTable.getIdentity();
       
-      Contact localhost = routeTable.getIdentity();
-      KUID contactId = localhost.getId();
-      
-      XorComparator comparator = new XorComparator(lookupId);
-      this.responses = new TreeSet<Contact>(comparator);
-      this.closest = new TreeSet<Contact>(comparator);
-      this.query = new TreeSet<Contact>(comparator);
+      int k = routeTable.getK();
+      this.closest = new ClosestContacts(k);
+      this.query = new ContactHeap(exhaustive 
+          ? Integer.MAX_VALUE : QUERY_SIZE_FACTOR * k);
       
-      history.put(contactId, 0);
+      history.add(new ContactDistance(lookupId, localhost, 0));
       
       addToResponses(localhost);
       for (Contact contact : contacts) {
@@ -410,19 +673,63 @@ abstract class LookupResponseHandler<T extends LookupEntity>
       timeouts++;
     }
     
+    public void handleRequest(Contact dst) {
+      ContactDistance element = history.get(dst.getId());
+      if (element != null) {
+        active.add(element);
+      }
+    }
+    
+    public void handleDone(RequestEntity entity) {
+      int index = indexOfActive(entity.getId());
+      if (index != -1) {
+        active.remove(index);
+      }
+    }
+    
+    public boolean isActive(Contact contact) {
+      return indexOfActive(contact.getId()) != -1;
+    }
+    
+    private int indexOfActive(KUID contactId) {
+      for (int i = 0; i < active.size(); i++) {
+        if (active.get(i).getId().equals(contactId)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+    
     public Contact[] getClosest() {
-      int length = Math.min(routeTable.getK(), responses.size());
-      Contact[] closest = new Contact[length];
+      return closest.toContacts();
+    }
+    
+    public Contact[] getContacts() {
+      ContactDistance[] elements 
+        = responses.toArray(new ContactDistance[0]);
+      Arrays.sort(elements);
       
-      Iterator<Contact> it = responses.iterator();
-      for (int i = 0; i < closest.length; i++) {
-        closest[i] = it.next();
+      Contact[] contacts = new Contact[elements.length];
+      for (int i = 0; i < elements.length; i++) {
+        contacts[i] = elements[i].getContact();
       }
-      return closest;
+      return contacts;
     }
     
-    public Contact[] getContacts() {
-      return responses.toArray(new Contact[0]);
+    /**
+     * Returns the k-closest {@link Contact}s that were closer than any
+     * of the {@link Contact}s we hadn't heard from at some point.
+     */
+    public Contact[] getStable() {
+      ContactDistance bound = query.peek();
+      for (ContactDistance element : active) {
+        if (bound == null || element.isCloserTo(bound)) {
+          bound = element;
+        }
+      }
+      
+      stable.update(closest, bound);
+      return stable.toContacts();
     }
     
     public int getHop() {
@@ -434,38 +741,41 @@ abstract class LookupResponseHandler<T extends LookupEntity>
     }
     
     private boolean addToResponses(Contact contact) {
-      if (responses.add(contact)) {
-        closest.add(contact);
-        
-        if (closest.size() > routeTable.getK()) {
-          closest.pollLast();
-        }
-        
-        KUID contactId = contact.getId();
-        currentHop = history.get(contactId);
-        return true;
+      KUID contactId = contact.getId();
+      
+      ContactDistance element = history.get(contactId);
+      if (element == null) {
+        element = new ContactDistance(lookupId, contact, currentHop);
+        history.add(element);
       }
       
-      return false;
+      if (element.hasResponded()) {
+        return false;
+      }
+      
+      element.setResponded(contact);
+      responses.add(element);
+      closest.add(element);
+      
+      currentHop = element.getHop();
+      return true;
     }
     
     private boolean addToQuery(Contact contact, int hop) {
       KUID contactId = contact.getId();
-      if (!history.containsKey(contactId)) { 
-        history.put(contactId, hop);
-        query.add(contact);
+      if (!history.contains(contactId)) { 
+        ContactDistance element = new ContactDistance(lookupId, contact, hop);
+        history.add(element);
+        query.offer(element);
         return true;
       }
       
       return false;
     }
     
-    private boolean isCloserThanClosest(Contact other) {
+    private boolean isCloserThanClosest(ContactDistance other) {
       if (!closest.isEmpty()) {
-        Contact contact = closest.last();
-        KUID contactId = contact.getId();
-        KUID otherId = other.getId();
-        return otherId.isCloserTo(lookupId, contactId);
+        return other.isCloserTo(closest.last());
       }
       
       return true;
@@ -478,10 +788,10 @@ abstract class LookupResponseHandler<T extends LookupEntity>
     public boolean hasNext(boolean force) {
       if (!query.isEmpty()) {
         
-        Contact contact = query.first();
+        ContactDistance element = query.peek();
         if (force || exhaustive
-            || closest.size() < routeTable.getK() 
-            || isCloserThanClosest(contact)) {
+            || !closest.isFull() 
+            || isCloserThanClosest(element)) {
           return true;
         }
       }
@@ -490,47 +800,79 @@ abstract class LookupResponseHandler<T extends LookupEntity>
     }
     
     public Contact next() {
-      Contact contact = null;
+      if (query.isEmpty()) {
+        throw new NoSuchElementException();
+      }
       
-      if (randomize && !query.isEmpty()) {
+      if (proximity) {
+        
+        // Proximity Neighbor Selection: Pick among the alpha closest 
+        // candidates the one with the lowest (predicted) RTT. Contacts
+        // without a known or predicted RTT come last.
         
-        // Knuth: Can we pick a random element from a set of 
-        // items whose cardinality we do not know?
-        //
-        // Pick an item and store it. Pick the next one, and replace 
-        // the first one with it with probability 1/2. Pick the third 
-        // one, and do a replace with probability 1/3, and so on. At 
-        // the end, the item you've stored has a probability of 1/n 
-        // of being any particular element.
-        //
-        // NOTE: We do know the cardinality but we don't have the 
-        // required methods to retrieve elements from the Set and 
-        // are forced to use the Iterator (streaming) as described 
-        // above.
+        int count = drain(config.getAlpha());
         
+        long bestRtt = Long.MAX_VALUE;
         int index = 0;
-        for (Contact c : query) {
+        for (int i = 0; i < count; i++) {
+          Contact c = scratch[i].getContact();
           
-          if (index >= routeTable.getK()) {
-            break;
+          long rtt = ContactUtils.getRoundTripTimeInMillis(localhost, c);
+          if (rtt < 0L) {
+            rtt = Long.MAX_VALUE;
           }
           
-          // First element is always true because 1/1 >= random[0..1]!
-          if (1d/++index >= Math.random()) {
-            contact = c;
+          if (i == 0 || rtt < bestRtt) {
+            index = i;
+            bestRtt = rtt;
           }
         }
         
-        query.remove(contact);
+        return refill(count, index);
         
-      } else {
-        contact = query.pollFirst();
+      } else if (randomize) {
+        
+        // Pick one of the k closest candidates at random. They're 
+        // being drained from the heap in order and the ones we don't
+        // pick are being put back.
+        
+        int count = drain(routeTable.getK());
+        int index = (int)(Math.random() * count);
+        return refill(count, index);
       }
       
-      if (contact == null) {
-        throw new NoSuchElementException();
+      return query.poll().getContact();
+    }
+    
+    /**
+     * Removes up to the given number of the closest candidates from 
+     * the {@link #query} heap and puts them into the scratch array.
+     */
+    private int drain(int max) {
+      int count = Math.min(Math.max(max, 1), query.size());
+      if (scratch.length < count) {
+        scratch = new ContactDistance[count];
+      }
+      
+      for (int i = 0; i < count; i++) {
+        scratch[i] = query.poll();
+      }
+      return count;
+    }
+    
+    /**
+     * Puts all drained candidates except for the one at the given 
+     * index back into the {@link #query} heap and returns it.
+     */
+    private Contact refill(int count, int index) {
+      Contact contact = scratch[index].getContact();
+      for (int i = 0; i < count; i++) {
+        if (i != index) {
+          query.offer(scratch[i]);
+        }
+        scratch[i] = null;
       }
       return contact;
     }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht.io;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.ardverk.concurrent.ExecutorUtils;
+import org.ardverk.dht.concurrent.TimerWheel;
+import org.ardverk.dht.concurrent.TimerWheel.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * The {@link LookupScheduler} keeps track of all active lookups and
+ * boosts the ones that have stalled. Each lookup has exactly one
+ * {@link Timeout} in the shared {@link TimerWheel} that is due when
+ * the lookup would stall if it didn't receive any responses in the
+ * meantime. Responses don't touch the {@link TimerWheel}, the
+ * {@link Timeout} is simply re-armed if the lookup is still busy.
+ */
+public class LookupScheduler {
+
+  private static final Logger LOG
+    = LoggerFactory.getLogger(LookupScheduler.class);
+
+  private static final LookupScheduler DEFAULT = new LookupScheduler(
+      TimerWheel.getDefault(), ExecutorUtils.newSingleThreadExecutor("BoostThread"));
+
+  /**
+   * Returns the shared {@link LookupScheduler}.
+   */
+  public static LookupScheduler getDefault() {
+    return DEFAULT;
+  }
+
+  private final AtomicInteger activeCount = new AtomicInteger();
+
+  private final AtomicLong boostCount = new AtomicLong();
+
+  private final AtomicLong hedgeCount = new AtomicLong();
+
+  private final LatencyTracker latencyTracker = new LatencyTracker();
+
+  private double effectiveAlpha = -1d;
+
+  private final TimerWheel timer;
+
+  private final Executor executor;
+
+  public LookupScheduler(TimerWheel timer, Executor executor) {
+    this.timer = timer;
+    this.executor = executor;
+  }
+
+  /**
+   * Registers the given {@link Boostable} lookup.
+   */
+  public Registration register(Boostable lookup,
+      long boostTimeout, long boostFrequency, TimeUnit unit) {
+    Registration registration = new Registration(lookup,
+        unit.toMillis(boostTimeout), unit.toMillis(boostFrequency));
+    registration.schedule(registration.boostTimeout);
+    activeCount.incrementAndGet();
+    return registration;
+  }
+
+  /**
+   * Returns the number of active lookups.
+   */
+  public int getActiveCount() {
+    return activeCount.get();
+  }
+
+  /**
+   * Returns the number of boosts.
+   */
+  public long getBoostCount() {
+    return boostCount.get();
+  }
+
+  /**
+   * Runs the given task on the boost {@link Thread} after the given 
+   * amount of time.
+   */
+  public Timeout schedule(final Runnable task, long delay, TimeUnit unit) {
+    return timer.schedule(new Runnable() {
+      @Override
+      public void run() {
+        executor.execute(task);
+      }
+    }, delay, unit);
+  }
+
+  /**
+   * Runs the given task on the boost {@link Thread}.
+   */
+  public void execute(Runnable task) {
+    executor.execute(task);
+  }
+
+  /**
+   * Returns the {@link LatencyTracker} of all lookup requests.
+   */
+  public LatencyTracker getLatencyTracker() {
+    return latencyTracker;
+  }
+
+  /**
+   * Returns the number of hedged requests.
+   */
+  public long getHedgeCount() {
+    return hedgeCount.get();
+  }
+
+  void incrementHedgeCount() {
+    hedgeCount.incrementAndGet();
+  }
+
+  /**
+   * Returns the moving average of the alpha the adaptive lookups 
+   * are actually using or a negative value if there are none.
+   */
+  public synchronized double getEffectiveAlpha() {
+    return effectiveAlpha;
+  }
+
+  synchronized void addEffectiveAlpha(int alpha) {
+    if (effectiveAlpha < 0d) {
+      effectiveAlpha = alpha;
+    } else {
+      effectiveAlpha = 0.9d * effectiveAlpha + 0.1d * alpha;
+    }
+  }
+
+  /**
+   * A lookup that can be boosted.
+   */
+  public static interface Boostable {
+
+    /**
+     * Returns the amount of time in milliseconds since the
+     * lookup has made any progress.
+     */
+    public long getIdleTimeInMillis();
+
+    /**
+     * Boosts the lookup and returns {@code true} on success.
+     */
+    public boolean boost() throws Exception;
+  }
+
+  /**
+   * A lookup that is registered with the {@link LookupScheduler}.
+   */
+  public class Registration implements Runnable {
+
+    private final Boostable lookup;
+
+    private final long boostTimeout;
+
+    private final long boostFrequency;
+
+    private final AtomicBoolean open = new AtomicBoolean(true);
+
+    private volatile Timeout timeout = null;
+
+    private Registration(Boostable lookup,
+        long boostTimeout, long boostFrequency) {
+      this.lookup = lookup;
+      this.boostTimeout = boostTimeout;
+      this.boostFrequency = boostFrequency;
+    }
+
+    /**
+     * Removes the lookup from the {@link LookupScheduler}.
+     */
+    public void cancel() {
+      if (open.getAndSet(false)) {
+        activeCount.decrementAndGet();
+
+        Timeout timeout = this.timeout;
+        if (timeout != null) {
+          timeout.cancel();
+        }
+      }
+    }
+
+    private void schedule(long delay) {
+      if (open.get()) {
+        timeout = timer.schedule(this, delay, TimeUnit.MILLISECONDS);
+      }
+    }
+
+    /**
+     * Called on the {@link TimerWheel}'s {@link Thread}.
+     */
+    @Override
+    public void run() {
+      if (!open.get()) {
+        return;
+      }
+
+      long idleTime = lookup.getIdleTimeInMillis();
+      if (idleTime < boostTimeout) {
+        schedule(boostTimeout - idleTime);
+        return;
+      }
+
+      // The lookup has stalled. The boost itself happens on a
+      // different Thread as it needs to acquire the lookup's locks.
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            if (open.get() && lookup.boost()) {
+              boostCount.incrementAndGet();
+            }
+          } catch (Exception err) {
+            LOG.error("Exception", err);
+          } finally {
+            schedule(Math.max(boostFrequency, 1L));
+          }
+        }
+      });
+    }
+  }
+}
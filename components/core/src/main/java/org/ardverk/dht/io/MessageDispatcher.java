@@ -19,21 +19,17 @@ package org.ardverk.dht.io;
 import java.io.Closeable;
 import java.io.IOException;
 import java.net.SocketAddress;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-import org.ardverk.collection.FixedSizeHashSet;
 import org.ardverk.concurrent.EventUtils;
-import org.ardverk.concurrent.ExecutorUtils;
 import org.ardverk.dht.KUID;
+import org.ardverk.dht.concurrent.TimerWheel;
+import org.ardverk.dht.concurrent.TimerWheel.Timeout;
 import org.ardverk.dht.io.transport.Endpoint;
 import org.ardverk.dht.io.transport.Transport;
 import org.ardverk.dht.io.transport.TransportCallback;
@@ -43,11 +39,13 @@ import org.ardverk.dht.message.MessageId;
 import org.ardverk.dht.message.RequestMessage;
 import org.ardverk.dht.message.ResponseMessage;
 import org.ardverk.dht.routing.Contact;
+import org.ardverk.dht.utils.ExpiringHashSet;
 import org.ardverk.io.IoUtils;
 import org.ardverk.lang.Bindable;
 import org.ardverk.lang.BindableUtils;
 import org.ardverk.lang.Precoditions;
 import org.ardverk.lang.TimeStamp;
+import org.ardverk.utils.TimeUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -65,9 +63,17 @@ public abstract class MessageDispatcher
   private static final Logger LOG 
     = LoggerFactory.getLogger(MessageDispatcher.class);
   
-  private static final ScheduledExecutorService EXECUTOR 
-    = ExecutorUtils.newSingleThreadScheduledExecutor(
-      "MessageDispatcherThread");
+  /**
+   * The amount of time we're memorizing the {@link MessageId}s of
+   * the {@link ResponseMessage}s we've received.
+   */
+  private static final long HISTORY_TIMEOUT 
+    = TimeUtils.convert(60L, TimeUnit.SECONDS, TimeUnit.MILLISECONDS);
+  
+  /**
+   * The maximum number of {@link MessageId}s we're memorizing.
+   */
+  private static final int HISTORY_SIZE = 16 * 1024;
   
   private final TransportCallback callback = new TransportCallback() {
     @Override
@@ -99,45 +105,43 @@ public abstract class MessageDispatcher
   private final MessageEntityManager entityManager 
     = new MessageEntityManager();
     
-  private final ScheduledExecutorService executor;
+  private final TimerWheel timer;
   
   private final MessageFactory factory;
   
   private final ResponseChecker checker;
   
-  private Transport transport = null;
+  private volatile Transport transport = null;
   
   /**
    * Creates a {@link MessageDispatcher}.
    */
   public MessageDispatcher(MessageFactory factory) {
-    this(EXECUTOR, factory);
+    this(TimerWheel.getDefault(), factory);
   }
   
   /**
    * Creates a {@link MessageDispatcher} with a custom 
-   * {@link ScheduledExecutorService} that is used to
-   * keep for timing out requests.
+   * {@link TimerWheel} that is used for timing out requests.
    */
-  public MessageDispatcher(ScheduledExecutorService executor, 
+  public MessageDispatcher(TimerWheel timer, 
       MessageFactory factory) {
-    this.executor = executor;
+    this.timer = timer;
     this.factory = factory;
     
-    // TODO: Is memorizing the 512 most recently received MessageIds
-    // too much or too little? 
-    this.checker = new ResponseChecker(factory, 512);
+    this.checker = new ResponseChecker(factory, 
+        HISTORY_TIMEOUT, TimeUnit.MILLISECONDS);
   }
   
   /**
    * Returns the {@link Transport}
    */
-  public synchronized Transport getTransport() {
+  public Transport getTransport() {
     return transport;
   }
   
   @Override
-  public synchronized boolean isBound() {
+  public boolean isBound() {
     return transport != null;
   }
   
@@ -204,13 +208,10 @@ public abstract class MessageDispatcher
       RequestEntity entity = new RequestEntity(
           contactId, request);
       entityManager.add(callback, entity, timeout, unit);
+      handleRequestSent(callback, entity);
     }
     
-    Transport transport = null;
-    synchronized (this) {
-      transport = this.transport;
-    }
-    
+    Transport transport = this.transport;
     if (transport == null) {
       throw new IOException();
     }
@@ -219,6 +220,23 @@ public abstract class MessageDispatcher
     fireMessageSent(contactId, request);
   }
   
+  /**
+   * Sends a {@link ResponseMessage} to the {@link Contact} with the 
+   * given {@link KUID}. It's meant for {@link RequestMessage}s that
+   * can't be answered right away (e.g. forwarded lookup requests).
+   */
+  public void send(KUID contactId, ResponseMessage response) 
+      throws IOException {
+    
+    Transport transport = this.transport;
+    if (transport == null) {
+      throw new IOException();
+    }
+    
+    transport.send(contactId, response, -1L, TimeUnit.MILLISECONDS);
+    fireMessageSent(contactId, response);
+  }
+  
   /**
    * Callback method for outgoing {@link Message} that failed to be sent.
    * Returns {@code true} if the {@link Throwable} was handled or not.
@@ -283,6 +301,13 @@ public abstract class MessageDispatcher
    */
   protected abstract void lateResponse(ResponseMessage response) throws IOException;
   
+  /**
+   * Callback method for {@link RequestMessage}s we're about to send.
+   */
+  protected void handleRequestSent(MessageCallback callback, 
+      RequestEntity entity) {
+  }
+  
   /**
    * Callback method for late incoming {@link ResponseMessage}s.
    */
@@ -382,26 +407,24 @@ public abstract class MessageDispatcher
    */
   private class MessageEntityManager implements Closeable {
     
-    private final Map<MessageId, MessageEntity> callbacks 
-      = Collections.synchronizedMap(new HashMap<MessageId, MessageEntity>());
+    private final ConcurrentMap<MessageId, MessageEntity> callbacks 
+      = new ConcurrentHashMap<MessageId, MessageEntity>();
     
-    private boolean open = true;
+    private volatile boolean open = true;
     
     @Override
     public void close() {
-      synchronized (callbacks) {
-        if (!open) {
-          return;
-        }
-        
-        open = false;
-        
-        for (MessageEntity entity : callbacks.values()) {
-          entity.cancel();
-        }
-        
-        callbacks.clear();
+      if (!open) {
+        return;
       }
+      
+      open = false;
+      
+      for (MessageEntity entity : callbacks.values()) {
+        entity.cancel();
+      }
+      
+      callbacks.clear();
     }
     
     /**
@@ -410,41 +433,41 @@ public abstract class MessageDispatcher
     public void add(MessageCallback callback, RequestEntity entity, 
         long timeout, TimeUnit unit) {
       
+      if (!open) {
+        throw new IllegalStateException();
+      }
+      
       final MessageId messageId = entity.getMessageId();
+      final MessageEntity messageEntity 
+        = new MessageEntity(callback, entity);
       
-      synchronized (callbacks) {
-        
-        if (!open) {
-          throw new IllegalStateException();
-        }
-        
-        if (callbacks.containsKey(messageId)) {
-          throw new IllegalArgumentException("messageId=" + messageId);
-        }
-        
-        Runnable task = new Runnable() {
-          @Override
-          public void run() {
-            MessageEntity entity 
-              = callbacks.remove(messageId);
-            
-            if (entity != null) {
-              try {
-                entity.handleTimeout();
-              } catch (IOException err) {
-                LOG.error("IOException", err);
-              }
+      MessageEntity existing = callbacks.putIfAbsent(
+          messageId, messageEntity);
+      if (existing != null) {
+        throw new IllegalArgumentException("messageId=" + messageId);
+      }
+      
+      // Make sure we didn't race with close()
+      if (!open) {
+        callbacks.remove(messageId, messageEntity);
+        messageEntity.cancel();
+        throw new IllegalStateException();
+      }
+      
+      Runnable task = new Runnable() {
+        @Override
+        public void run() {
+          if (callbacks.remove(messageId, messageEntity)) {
+            try {
+              messageEntity.handleTimeout();
+            } catch (IOException err) {
+              LOG.error("IOException", err);
             }
           }
-        };
-        
-        ScheduledFuture<?> future 
-          = executor.schedule(task, timeout, unit);
-        
-        MessageEntity messageEntity = new MessageEntity(
-            future, callback, entity);
-        callbacks.put(messageId, messageEntity);
-      }
+        }
+      };
+      
+      messageEntity.setTimeout(timer.schedule(task, timeout, unit));
     }
     
     /**
@@ -470,19 +493,17 @@ public abstract class MessageDispatcher
     
     private final TimeStamp creationTime = TimeStamp.now();
     
-    private final ScheduledFuture<?> future;
-
     private final MessageCallback callback;
     
     private final RequestEntity entity;
     
     private final AtomicBoolean open = new AtomicBoolean(true);
     
-    private MessageEntity(ScheduledFuture<?> future, 
-        MessageCallback callback, 
+    private volatile Timeout timeout = null;
+    
+    private MessageEntity(MessageCallback callback, 
         RequestEntity entity) {
       
-      this.future = Precoditions.notNull(future, "future");
       this.callback = Precoditions.notNull(callback, "callback");
       this.entity = Precoditions.notNull(entity, "entity");
     }
@@ -491,8 +512,26 @@ public abstract class MessageDispatcher
      * Cancels the {@link MessageEntity}.
      */
     public boolean cancel() {
-      future.cancel(true);
-      return open.getAndSet(false);
+      boolean success = open.getAndSet(false);
+      
+      Timeout timeout = this.timeout;
+      if (timeout != null) {
+        timeout.cancel();
+      }
+      
+      return success;
+    }
+    
+    /**
+     * Sets the {@link Timeout} of the {@link MessageEntity}.
+     */
+    private void setTimeout(Timeout timeout) {
+      this.timeout = timeout;
+      
+      // We've lost the race with a response.
+      if (!open.get()) {
+        timeout.cancel();
+      }
     }
     
     /**
@@ -548,12 +587,13 @@ public abstract class MessageDispatcher
     
     private final MessageFactory factory;
     
-    private final Set<MessageId> history;
+    private final ExpiringHashSet<MessageId> history;
     
-    public ResponseChecker(MessageFactory factory, int historySize) {
+    public ResponseChecker(MessageFactory factory, 
+        long historyTimeout, TimeUnit unit) {
       this.factory = Precoditions.notNull(factory, "factory");
-      this.history = Collections.synchronizedSet(
-          new FixedSizeHashSet<MessageId>(historySize));
+      this.history = new ExpiringHashSet<MessageId>(
+          historyTimeout, unit, HISTORY_SIZE);
     }
     
     /**
@@ -561,17 +601,22 @@ public abstract class MessageDispatcher
      */
     public boolean check(ResponseMessage response) {
       MessageId messageId = response.getMessageId();
-      if (!history.add(messageId)) {
+      
+      // Check the signature first so that forged responses 
+      // don't end up in the history.
+      Contact contact = response.getContact();
+      if (!factory.isFor(messageId, contact.getRemoteAddress())) {
         if (LOG.isErrorEnabled()) {
-          LOG.error("Multiple respones: " + response);
+          LOG.error("Wrong MessageId signature: " + response);
         }
         return false;
       }
       
-      Contact contact = response.getContact();
-      if (!factory.isFor(messageId, contact.getRemoteAddress())) {
+      // The history rejects duplicates as well as anything that
+      // exceeds its capacity.
+      if (!history.add(messageId)) {
         if (LOG.isErrorEnabled()) {
-          LOG.error("Wrong MessageId signature: " + response);
+          LOG.error("Multiple or too many respones: " + response);
         }
         return false;
       }
@@ -41,13 +41,17 @@ public class NodeRequestHandler extends AbstractRequestHandler {
   
   private final RouteTable routeTable;
   
+  private final RequestForwarder forwarder;
+  
   @Inject
   public NodeRequestHandler(
       Provider<MessageDispatcher> messageDispatcher, 
-      RouteTable routeTable) {
+      RouteTable routeTable, 
+      RequestForwarder forwarder) {
     super(messageDispatcher);
     
     this.routeTable = routeTable;
+    this.forwarder = forwarder;
   }
   
   @Override
@@ -86,6 +90,11 @@ public class NodeRequestHandler extends AbstractRequestHandler {
     
     Contact[] contacts = routeTable.select(lookupId);
     
+    // The answer of a forwarded request is sent by the RequestForwarder
+    if (forwarder.forward(request, contacts)) {
+      return null;
+    }
+    
     MessageFactory factory = getMessageFactory();
     return factory.createNodeResponse(request, contacts);
   }
@@ -44,12 +44,18 @@ public class NodeResponseHandler extends LookupResponseHandler<NodeEntity> {
     super(messageDispatcher, contacts, routeTable, lookupId, config);
   }
   
+  public NodeResponseHandler(Provider<MessageDispatcher> messageDispatcher,
+      Contact[] contacts, RouteTable routeTable, KUID lookupId, 
+      LookupListener listener, NodeConfig config) {
+    super(messageDispatcher, contacts, routeTable, lookupId, listener, config);
+  }
+  
   @Override
-  protected void lookup(Contact dst, KUID lookupId, 
+  protected void lookup(Contact dst, KUID lookupId, int hopLimit, 
       long timeout, TimeUnit unit) throws IOException {
     
     MessageFactory factory = getMessageFactory();
-    NodeRequest message = factory.createNodeRequest(dst, lookupId);
+    NodeRequest message = factory.createNodeRequest(dst, lookupId, hopLimit);
     send(dst, message, timeout, unit);
   }
 
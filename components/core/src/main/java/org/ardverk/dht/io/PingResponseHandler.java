@@ -130,7 +130,7 @@ public class PingResponseHandler extends AbstractResponseHandler<PingEntity> {
       
       long timeout = config.getPingTimeoutInMillis();
       long adaptiveTimeout = config.getAdaptiveTimeout(
-          contact, timeout, TimeUnit.MILLISECONDS);
+          request.getContact(), contact, timeout, TimeUnit.MILLISECONDS);
       send(contact, request, adaptiveTimeout, TimeUnit.MILLISECONDS);
     }
   }
@@ -22,7 +22,7 @@ package org.ardverk.dht.io;
  */
 class ProcessCounter {
   
-  private final int maxActive;
+  private int maxActive;
   
   private int active = 0;
   
@@ -37,6 +37,23 @@ class ProcessCounter {
     this.maxActive = maxActive;
   }
   
+  public int getMaxActive() {
+    return maxActive;
+  }
+  
+  /**
+   * Changes the number of concurrently active processes. Processes
+   * that are already active are not affected.
+   */
+  public void setMaxActive(int maxActive) {
+    if (maxActive < 0) {
+      throw new IllegalArgumentException(
+          "maxActive=" + maxActive);
+    }
+    
+    this.maxActive = maxActive;
+  }
+  
   public boolean hasNext() {
     return active < maxActive;
   }
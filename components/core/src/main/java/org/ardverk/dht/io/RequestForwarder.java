@@ -0,0 +1,249 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht.io;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.ardverk.dht.KUID;
+import org.ardverk.dht.config.ConfigProvider;
+import org.ardverk.dht.config.NodeConfig;
+import org.ardverk.dht.message.LookupRequest;
+import org.ardverk.dht.message.MessageFactory;
+import org.ardverk.dht.message.NodeRequest;
+import org.ardverk.dht.message.NodeResponse;
+import org.ardverk.dht.message.ResponseMessage;
+import org.ardverk.dht.message.ValueRequest;
+import org.ardverk.dht.message.ValueResponse;
+import org.ardverk.dht.routing.Contact;
+import org.ardverk.dht.routing.RouteTable;
+import org.ardverk.utils.TimeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link RequestForwarder} forwards recursive {@link LookupRequest}s
+ * to the next hop and relays its answer back to the requester. 
+ * 
+ * <p>A request is only ever forwarded to a {@link Contact} that is 
+ * strictly closer to the lookup {@link KUID} than we are. The XOR 
+ * distance is therefore decreasing with every hop and a request can't
+ * loop. The hop limit bounds the length of the path and we fall back
+ * to an iterative answer with our own k-closest {@link Contact}s if 
+ * the next hop doesn't respond in time.
+ * 
+ * <p>Requests are only forwarded if the local {@link NodeConfig} has
+ * a hop limit greater than zero and the requester's hop limit is being
+ * clamped to it.
+ */
+@Singleton
+public class RequestForwarder extends AbstractMessageHandler {
+  
+  private static final Logger LOG 
+    = LoggerFactory.getLogger(RequestForwarder.class);
+  
+  private static final long DEFAULT_HOP_TIMEOUT 
+    = TimeUtils.convert(3L, TimeUnit.SECONDS, TimeUnit.MILLISECONDS);
+  
+  private static final long DEFAULT_MAX_RELAY_TIMEOUT 
+    = TimeUtils.convert(10L, TimeUnit.SECONDS, TimeUnit.MILLISECONDS);
+  
+  private final RouteTable routeTable;
+  
+  private final ConfigProvider configProvider;
+  
+  private volatile long hopTimeoutInMillis = DEFAULT_HOP_TIMEOUT;
+  
+  private volatile long maxRelayTimeoutInMillis = DEFAULT_MAX_RELAY_TIMEOUT;
+  
+  @Inject
+  public RequestForwarder(Provider<MessageDispatcher> messageDispatcher, 
+      RouteTable routeTable, ConfigProvider configProvider) {
+    super(messageDispatcher);
+    
+    this.routeTable = routeTable;
+    this.configProvider = configProvider;
+  }
+  
+  /**
+   * Returns the amount of time we're waiting for each of the 
+   * remaining hops of a forwarded request.
+   */
+  public long getHopTimeout(TimeUnit unit) {
+    return unit.convert(hopTimeoutInMillis, TimeUnit.MILLISECONDS);
+  }
+  
+  public long getHopTimeoutInMillis() {
+    return getHopTimeout(TimeUnit.MILLISECONDS);
+  }
+  
+  public void setHopTimeout(long timeout, TimeUnit unit) {
+    this.hopTimeoutInMillis = unit.toMillis(timeout);
+  }
+  
+  /**
+   * Returns the maximum amount of time we're waiting for the answer
+   * of a forwarded request before we answer it ourselves.
+   */
+  public long getMaxRelayTimeout(TimeUnit unit) {
+    return unit.convert(maxRelayTimeoutInMillis, TimeUnit.MILLISECONDS);
+  }
+  
+  public long getMaxRelayTimeoutInMillis() {
+    return getMaxRelayTimeout(TimeUnit.MILLISECONDS);
+  }
+  
+  public void setMaxRelayTimeout(long timeout, TimeUnit unit) {
+    this.maxRelayTimeoutInMillis = unit.toMillis(timeout);
+  }
+  
+  /**
+   * Forwards the given {@link LookupRequest} to the closest of the 
+   * given {@link Contact}s that is closer to the lookup {@link KUID} 
+   * than we are. Returns {@code false} if there is no such 
+   * {@link Contact} or if recursion isn't enabled locally and the 
+   * caller must answer the request itself.
+   */
+  public boolean forward(LookupRequest request, 
+      Contact[] contacts) throws IOException {
+    
+    NodeConfig config = configProvider.get((NodeConfig)null);
+    int hopLimit = Math.min(request.getHopLimit(), config.getHopLimit());
+    if (hopLimit <= 0) {
+      return false;
+    }
+    
+    Contact next = select(request, contacts);
+    if (next == null) {
+      return false;
+    }
+    
+    MessageFactory factory = getMessageFactory();
+    
+    LookupRequest forward = null;
+    if (request instanceof ValueRequest) {
+      forward = factory.createValueRequest(next, 
+          ((ValueRequest)request).getKey(), hopLimit-1);
+    } else if (request instanceof NodeRequest) {
+      forward = factory.createNodeRequest(next, 
+          request.getId(), hopLimit-1);
+    } else {
+      return false;
+    }
+    
+    long timeout = Math.min(hopLimit * hopTimeoutInMillis, 
+        maxRelayTimeoutInMillis);
+    getMessageDispatcher().send(new Relay(request, contacts), 
+        next.getId(), forward, timeout, TimeUnit.MILLISECONDS);
+    return true;
+  }
+  
+  /**
+   * Returns the closest {@link Contact} that is strictly closer to the
+   * lookup {@link KUID} than we are or {@code null} if there is none.
+   */
+  private Contact select(LookupRequest request, Contact[] contacts) {
+    KUID lookupId = request.getId();
+    KUID localhostId = routeTable.getIdentity().getId();
+    KUID requesterId = request.getContact().getId();
+    
+    for (Contact contact : contacts) {
+      KUID contactId = contact.getId();
+      if (contactId.equals(localhostId) 
+          || contactId.equals(requesterId)) {
+        continue;
+      }
+      
+      if (contactId.isCloserTo(lookupId, localhostId)) {
+        return contact;
+      }
+    }
+    
+    return null;
+  }
+  
+  /**
+   * Relays the answer of the next hop back to the requester.
+   */
+  private class Relay implements MessageCallback {
+    
+    private final LookupRequest request;
+    
+    private final Contact[] contacts;
+    
+    private Relay(LookupRequest request, Contact[] contacts) {
+      this.request = request;
+      this.contacts = contacts;
+    }
+    
+    @Override
+    public boolean handleResponse(RequestEntity entity, 
+        ResponseMessage response, long time, TimeUnit unit) 
+          throws IOException {
+      
+      MessageFactory factory = getMessageFactory();
+      
+      if (response instanceof ValueResponse) {
+        reply(factory.createValueResponse(request, 
+            ((ValueResponse)response).getValue()));
+      } else {
+        reply(factory.createNodeResponse(request, 
+            ((NodeResponse)response).getContacts()));
+      }
+      return true;
+    }
+
+    @Override
+    public void handleTimeout(RequestEntity entity, 
+        long time, TimeUnit unit) throws IOException {
+      fallback();
+    }
+
+    @Override
+    public void handleIllegalResponse(RequestEntity entity,
+        ResponseMessage response, long time, TimeUnit unit)
+        throws IOException {
+      fallback();
+    }
+
+    @Override
+    public void handleException(RequestEntity entity, Throwable exception) {
+      try {
+        fallback();
+      } catch (IOException err) {
+        LOG.error("IOException", err);
+      }
+    }
+    
+    /**
+     * Answers the request as if it was an iterative request.
+     */
+    private void fallback() throws IOException {
+      MessageFactory factory = getMessageFactory();
+      reply(factory.createNodeResponse(request, contacts));
+    }
+    
+    private void reply(ResponseMessage response) throws IOException {
+      KUID contactId = request.getContact().getId();
+      getMessageDispatcher().send(contactId, response);
+    }
+  }
+}
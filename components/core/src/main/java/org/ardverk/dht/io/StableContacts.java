@@ -0,0 +1,79 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht.io;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.ardverk.dht.KUID;
+import org.ardverk.dht.routing.Contact;
+
+/**
+ * The stable part of a lookup's k-closest {@link ContactDistance}s. 
+ * A {@link ContactDistance} becomes stable once it has responded and 
+ * there is neither an unqueried nor an outstanding 
+ * {@link ContactDistance} that is closer to the lookup {@link KUID}.
+ * 
+ * <p>NOTE: A stable {@link ContactDistance} stays stable even if a 
+ * closer {@link Contact} shows up later on. The set is only growing.
+ */
+class StableContacts {
+  
+  private final List<ContactDistance> stable = new ArrayList<>();
+  
+  public int size() {
+    return stable.size();
+  }
+  
+  /**
+   * Adds the k-closest {@link ContactDistance}s that are closer than 
+   * the given bound and returns {@code true} if there were any new 
+   * ones. The bound is the closest unqueried or outstanding 
+   * {@link ContactDistance} or {@code null} if there is none.
+   */
+  public boolean update(ClosestContacts closest, ContactDistance bound) {
+    boolean changed = false;
+    for (int i = 0; i < closest.size(); i++) {
+      ContactDistance element = closest.get(i);
+      if (bound != null && !element.isCloserTo(bound)) {
+        break;
+      }
+      
+      if (!stable.contains(element)) {
+        stable.add(element);
+        changed = true;
+      }
+    }
+    
+    if (changed) {
+      Collections.sort(stable);
+    }
+    return changed;
+  }
+  
+  /**
+   * Returns the stable {@link Contact}s.
+   */
+  public Contact[] toContacts() {
+    Contact[] contacts = new Contact[stable.size()];
+    for (int i = 0; i < contacts.length; i++) {
+      contacts[i] = stable.get(i).getContact();
+    }
+    return contacts;
+  }
+}
\ No newline at end of file
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht.io;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Provider;
+
+import org.ardverk.collection.Iterators;
+import org.ardverk.concurrent.AsyncFuture;
+import org.ardverk.dht.config.StoreConfig;
+import org.ardverk.dht.entity.StoreBatchEntity;
+import org.ardverk.dht.entity.StoreEntity;
+import org.ardverk.dht.message.DefaultStoreResponse;
+import org.ardverk.dht.message.MessageFactory;
+import org.ardverk.dht.message.MessageType;
+import org.ardverk.dht.message.ResponseMessage;
+import org.ardverk.dht.message.StoreBatchRequest;
+import org.ardverk.dht.message.StoreBatchResponse;
+import org.ardverk.dht.message.StoreResponse;
+import org.ardverk.dht.routing.Contact;
+import org.ardverk.dht.rsrc.Key;
+import org.ardverk.dht.rsrc.Value;
+import org.ardverk.lang.TimeStamp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * The {@link StoreBatchResponseHandler} manages a {@link MessageType#STORE} 
+ * process that sends many key-value pairs in a single 
+ * {@link StoreBatchRequest} to each replica.
+ */
+public class StoreBatchResponseHandler 
+    extends AbstractResponseHandler<StoreBatchEntity> {
+  
+  private static final Logger LOG 
+    = LoggerFactory.getLogger(StoreBatchResponseHandler.class);
+  
+  private final ProcessCounter counter;
+  
+  private final List<StoreBatchResponse> responses = new ArrayList<>();
+
+  private final TimeStamp creationTime = TimeStamp.now();
+  
+  private final Contact[] contacts;
+  
+  private final Iterator<Contact> it;
+  
+  private final Key[] keys;
+  
+  private final Value[] values;
+  
+  private final StoreConfig config;
+  
+  private final int w;
+  
+  public StoreBatchResponseHandler(
+      Provider<MessageDispatcher> messageDispatcher, 
+      Contact[] contacts, int k,
+      Key[] keys, Value[] values, 
+      StoreConfig config) {
+    super(messageDispatcher);
+    
+    if (keys.length == 0 || keys.length != values.length) {
+      throw new IllegalArgumentException(
+          "keys=" + keys.length + ", values=" + values.length);
+    }
+    
+    this.contacts = contacts;
+    this.it = Iterators.iterator(contacts);
+    
+    this.keys = keys;
+    this.values = values;
+    this.config = config;
+    
+    counter = new ProcessCounter(config.getS());
+    
+    int w = config.getW();
+    
+    int replicate = Math.min(w, k);
+    if (replicate != w && LOG.isWarnEnabled()) {
+      LOG.warn("replicate=" + replicate + ", w=" + w);
+    }
+    
+    this.w = replicate;
+  }
+
+  @Override
+  protected void go(AsyncFuture<StoreBatchEntity> future) throws Exception {
+    process(0);
+  }
+  
+  private synchronized void process(int pop) throws IOException {
+    try {
+      preProcess(pop);
+      
+      while (counter.hasNext() && counter.getCount() < w) {
+        if (!it.hasNext() || isExpired()) {
+          break;
+        }
+        
+        Contact dst = it.next();
+        store(dst);
+        
+        counter.increment();
+      }
+      
+    } finally {
+      postProcess();
+    }
+  }
+  
+  private synchronized void preProcess(int pop) {
+    while (0 < pop--) {
+      counter.decrement();
+    }
+  }
+  
+  private synchronized void postProcess() {
+    if (!counter.hasActive()) {
+      long time = creationTime.getAgeInMillis();
+      
+      if (responses.isEmpty()) {
+        setException(new StoreException(keys[0], 
+            values[0], time, TimeUnit.MILLISECONDS));
+      } else {
+        setValue(new StoreBatchEntity(createStoreEntities(time), 
+            time, TimeUnit.MILLISECONDS));
+      }
+    }
+  }
+  
+  /**
+   * Splits the {@link StoreBatchResponse}s into a {@link StoreEntity}
+   * for every key-value pair.
+   */
+  private synchronized StoreEntity[] createStoreEntities(long time) {
+    StoreEntity[] entities = new StoreEntity[keys.length];
+    
+    for (int i = 0; i < keys.length; i++) {
+      StoreResponse[] messages = new StoreResponse[responses.size()];
+      for (int j = 0; j < messages.length; j++) {
+        StoreBatchResponse response = responses.get(j);
+        messages[j] = new DefaultStoreResponse(
+            response.getMessageId(), response.getContact(), 
+            response.getAddress(), response.getValues()[i]);
+      }
+      
+      entities[i] = new StoreEntity(contacts, keys[i], values[i], 
+          messages, time, TimeUnit.MILLISECONDS);
+    }
+    
+    return entities;
+  }
+  
+  private synchronized void store(Contact dst) throws IOException {
+    MessageFactory factory = getMessageFactory();
+    StoreBatchRequest request 
+      = factory.createStoreBatchRequest(dst, keys, values);
+    
+    long defaultTimeout = config.getStoreTimeoutInMillis();
+    long adaptiveTimeout = config.getAdaptiveTimeout(
+        request.getContact(), dst, defaultTimeout, TimeUnit.MILLISECONDS);
+    
+    send(dst, request, adaptiveTimeout, TimeUnit.MILLISECONDS);
+  }
+  
+  @Override
+  protected synchronized void processResponse(RequestEntity entity, 
+      ResponseMessage response, long time, TimeUnit unit) throws IOException {
+    
+    try {
+      if (response instanceof StoreBatchResponse 
+          && ((StoreBatchResponse)response).getValues().length == keys.length) {
+        responses.add((StoreBatchResponse)response);
+      } else if (LOG.isErrorEnabled()) {
+        LOG.error("Illegal Response: entity=" + entity 
+            + ", response=" + response);
+      }
+    } finally {
+      process(1);
+    }
+  }
+
+  @Override
+  protected synchronized void processTimeout(RequestEntity entity, 
+      long time, TimeUnit unit) throws IOException {
+    process(1);
+  }
+
+  @Override
+  protected synchronized void processIllegalResponse(RequestEntity entity,
+      ResponseMessage response, long time, TimeUnit unit)
+      throws IOException {
+    process(1);
+  }
+
+  @Override
+  protected synchronized void processException(RequestEntity entity, Throwable exception) {
+    try {
+      process(1);
+    } catch (IOException err) {
+      setException(err);
+    }
+  }
+}
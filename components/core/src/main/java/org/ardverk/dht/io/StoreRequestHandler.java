@@ -17,6 +17,7 @@
 package org.ardverk.dht.io;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
@@ -26,44 +27,100 @@ import org.ardverk.dht.message.MessageFactory;
 import org.ardverk.dht.message.MessageType;
 import org.ardverk.dht.message.RequestMessage;
 import org.ardverk.dht.message.ResponseMessage;
+import org.ardverk.dht.message.StoreBatchRequest;
 import org.ardverk.dht.message.StoreRequest;
 import org.ardverk.dht.routing.Contact;
 import org.ardverk.dht.rsrc.Key;
+import org.ardverk.dht.rsrc.NoValue;
+import org.ardverk.dht.rsrc.StringValue;
 import org.ardverk.dht.rsrc.Value;
 import org.ardverk.dht.storage.Datastore;
+import org.ardverk.dht.storage.ValueCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 
 /**
  * The {@link StoreRequestHandler} is called for all {@link StoreRequest} 
- * ({@link MessageType#STORE}) messages.
+ * and {@link StoreBatchRequest} ({@link MessageType#STORE}) messages.
  */
 @Singleton
 public class StoreRequestHandler extends AbstractRequestHandler {
   
+  private static final Logger LOG 
+    = LoggerFactory.getLogger(StoreRequestHandler.class);
+  
+  /**
+   * The status of a {@link StoreBatchRequest} pair that 
+   * failed with an exception.
+   */
+  private static final Value INTERNAL_ERROR = new StringValue("Internal Error");
+  
   private final Datastore datastore;
   
+  private final ValueCache valueCache;
+  
   @Inject
   public StoreRequestHandler(
       Provider<MessageDispatcher> messageDispatcher,
-      Datastore datastore) {
+      Datastore datastore, ValueCache valueCache) {
     super(messageDispatcher);
     
     this.datastore = datastore;
+    this.valueCache = valueCache;
   }
 
   private Value store(StoreRequest request) {
     Contact src = request.getContact();
     Key key = request.getKey();
     Value value = request.getValue();
+    
+    if (request.isCache()) {
+      return valueCache.store(src, key, value, 
+          request.getCacheTimeoutInMillis(), TimeUnit.MILLISECONDS);
+    }
+    
     return datastore.store(src, key, value);
   }
   
+  /**
+   * Stores every pair of the given {@link StoreBatchRequest} and 
+   * returns their status in the same order. A pair that fails 
+   * doesn't fail the others.
+   */
+  private Value[] store(StoreBatchRequest request) {
+    Contact src = request.getContact();
+    Key[] keys = request.getKeys();
+    Value[] values = request.getValues();
+    
+    Value[] status = new Value[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      try {
+        status[i] = datastore.store(src, keys[i], values[i]);
+      } catch (RuntimeException err) {
+        LOG.error("RuntimeException", err);
+        status[i] = INTERNAL_ERROR;
+      }
+      
+      if (status[i] == null) {
+        status[i] = NoValue.EMPTY;
+      }
+    }
+    return status;
+  }
+  
   @Override
   public ResponseMessage handleRequest(RequestMessage message) throws IOException {
+    MessageFactory factory = getMessageFactory();
+    
+    if (message instanceof StoreBatchRequest) {
+      StoreBatchRequest request = (StoreBatchRequest)message;
+      Value[] values = store(request);
+      return factory.createStoreBatchResponse(request, values);
+    }
+    
     StoreRequest request = (StoreRequest)message;
     Value value = store(request);
-    
-    MessageFactory factory = getMessageFactory();
     return factory.createStoreResponse(request, value);
   }
 }
\ No newline at end of file
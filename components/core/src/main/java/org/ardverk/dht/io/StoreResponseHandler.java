@@ -26,6 +26,7 @@ import javax.inject.Provider;
 
 import org.ardverk.collection.Iterators;
 import org.ardverk.concurrent.AsyncFuture;
+import org.ardverk.dht.concurrent.DHTFuture;
 import org.ardverk.dht.config.StoreConfig;
 import org.ardverk.dht.entity.StoreEntity;
 import org.ardverk.dht.message.MessageFactory;
@@ -67,11 +68,30 @@ public class StoreResponseHandler extends AbstractResponseHandler<StoreEntity> {
   
   private final int w;
   
+  private final int quorum;
+  
+  private final DHTFuture<StoreEntity> ackFuture;
+  
   public StoreResponseHandler(
       Provider<MessageDispatcher> messageDispatcher, 
       Contact[] contacts, int k,
       Key key, Value value, 
       StoreConfig config) {
+    this(messageDispatcher, contacts, k, key, value, null, config);
+  }
+  
+  /**
+   * Creates a {@link StoreResponseHandler} that completes the given 
+   * ack {@link DHTFuture} as soon as a quorum of replicas has been 
+   * written and keeps writing the remaining replicas, retrying failed
+   * ones on the next-closest {@link Contact}s.
+   */
+  public StoreResponseHandler(
+      Provider<MessageDispatcher> messageDispatcher, 
+      Contact[] contacts, int k,
+      Key key, Value value, 
+      DHTFuture<StoreEntity> ackFuture,
+      StoreConfig config) {
     super(messageDispatcher);
     
     this.contacts = contacts;
@@ -91,19 +111,28 @@ public class StoreResponseHandler extends AbstractResponseHandler<StoreEntity> {
     }
     
     this.w = replicate;
+    this.quorum = Math.max(1, Math.min(config.getQuorum(), replicate));
+    this.ackFuture = ackFuture;
   }
 
   @Override
   protected void go(AsyncFuture<StoreEntity> future) throws Exception {
     process(0);
   }
+  
+  @Override
+  protected void done() {
+    if (ackFuture != null) {
+      ackFuture.cancel(true);
+    }
+  }
 
   private synchronized void process(int pop) throws IOException {
     try {
       preProcess(pop);
       
-      while (counter.hasNext() && counter.getCount() < w) {
-        if (!it.hasNext()) {
+      while (counter.hasNext() && hasNext()) {
+        if (!it.hasNext() || isExpired()) {
           break;
         }
         
@@ -118,6 +147,18 @@ public class StoreResponseHandler extends AbstractResponseHandler<StoreEntity> {
     }
   }
   
+  /**
+   * Returns {@code true} if there are more replicas to write. Failed 
+   * replicas are retried on the next {@link Contact}s only if the
+   * STORE is being acknowledged early.
+   */
+  private synchronized boolean hasNext() {
+    if (ackFuture != null) {
+      return responses.size() + counter.getActive() < w;
+    }
+    return counter.getCount() < w;
+  }
+  
   private synchronized void preProcess(int pop) {
     while (0 < pop--) {
       counter.decrement();
@@ -126,26 +167,41 @@ public class StoreResponseHandler extends AbstractResponseHandler<StoreEntity> {
   
   private synchronized void postProcess() {
     if (!counter.hasActive()) {
-      long time = creationTime.getAgeInMillis();
-      
-      StoreResponse[] values = responses.toArray(new StoreResponse[0]);
-      if (values.length == 0) {
-        setException(new StoreException(key, 
-            value, time, TimeUnit.MILLISECONDS));
+      if (responses.isEmpty()) {
+        long time = creationTime.getAgeInMillis();
+        StoreException exception = new StoreException(key, 
+            value, time, TimeUnit.MILLISECONDS);
+        
+        if (ackFuture != null) {
+          ackFuture.setException(exception);
+        }
+        setException(exception);
+        
       } else {
-        setValue(new StoreEntity(contacts, key, value, 
-            values, time, TimeUnit.MILLISECONDS));
+        StoreEntity entity = createStoreEntity();
+        
+        if (ackFuture != null) {
+          ackFuture.setValue(entity);
+        }
+        setValue(entity);
       }
     }
   }
   
+  private synchronized StoreEntity createStoreEntity() {
+    long time = creationTime.getAgeInMillis();
+    StoreResponse[] values = responses.toArray(new StoreResponse[0]);
+    return new StoreEntity(contacts, key, value, 
+        values, time, TimeUnit.MILLISECONDS);
+  }
+  
   private synchronized void store(Contact dst) throws IOException {
     MessageFactory factory = getMessageFactory();
     StoreRequest request = factory.createStoreRequest(dst, key, value);
     
     long defaultTimeout = config.getStoreTimeoutInMillis();
     long adaptiveTimeout = config.getAdaptiveTimeout(
-        dst, defaultTimeout, TimeUnit.MILLISECONDS);
+        request.getContact(), dst, defaultTimeout, TimeUnit.MILLISECONDS);
     
     send(dst, request, adaptiveTimeout, TimeUnit.MILLISECONDS);
   }
@@ -157,6 +213,10 @@ public class StoreResponseHandler extends AbstractResponseHandler<StoreEntity> {
     
     try {
       responses.add(message);
+      
+      if (ackFuture != null && responses.size() == quorum) {
+        ackFuture.setValue(createStoreEntity());
+      }
     } finally {
       process(1);
     }
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht.io;
+
+import org.ardverk.dht.message.MessageType;
+import org.ardverk.dht.message.ValueResponse;
+
+/**
+ * The {@link ValueListener} is notified about every {@link ValueResponse}
+ * of a {@link MessageType#FIND_VALUE} lookup as soon as it arrives.
+ * 
+ * <p>NOTE: The callback is being called while the lookup holds its lock.
+ * Implementations should return quickly and must not block.
+ */
+public interface ValueListener {
+  
+  /**
+   * Called for every {@link ValueResponse}. Returns {@code true} to 
+   * continue the lookup or {@code false} to complete it with the 
+   * {@link ValueResponse}s that have been received so far.
+   */
+  public boolean handleValueResponse(ValueResponse response);
+}
@@ -32,6 +32,7 @@ import org.ardverk.dht.routing.RouteTable;
 import org.ardverk.dht.rsrc.Key;
 import org.ardverk.dht.rsrc.Value;
 import org.ardverk.dht.storage.Datastore;
+import org.ardverk.dht.storage.ValueCache;
 
 
 /**
@@ -45,15 +46,23 @@ public class ValueRequestHandler extends AbstractRequestHandler {
   
   private final Datastore datastore;
   
+  private final ValueCache valueCache;
+  
+  private final RequestForwarder forwarder;
+  
   @Inject
   public ValueRequestHandler(
       Provider<MessageDispatcher> messageDispatcher, 
       RouteTable routeTable, 
-      Datastore datastore) {
+      Datastore datastore,
+      ValueCache valueCache,
+      RequestForwarder forwarder) {
     super(messageDispatcher);
     
     this.routeTable = routeTable;
     this.datastore = datastore;
+    this.valueCache = valueCache;
+    this.forwarder = forwarder;
   }
   
   @Override
@@ -63,6 +72,9 @@ public class ValueRequestHandler extends AbstractRequestHandler {
     Contact src = request.getContact();
     Key key = request.getKey();
     Value value = datastore.get(src, key);
+    if (value == null) {
+      value = valueCache.get(src, key);
+    }
     
     MessageFactory factory = getMessageFactory();
     ResponseMessage response = null;
@@ -71,6 +83,12 @@ public class ValueRequestHandler extends AbstractRequestHandler {
       response = factory.createValueResponse(request, value);
     } else {
       Contact[] contacts = routeTable.select(key.getId());
+      
+      // The answer of a forwarded request is sent by the RequestForwarder
+      if (forwarder.forward(request, contacts)) {
+        return null;
+      }
+      
       response = factory.createNodeResponse(request, contacts);
     }
     
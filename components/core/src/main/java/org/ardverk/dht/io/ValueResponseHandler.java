@@ -30,11 +30,15 @@ import org.ardverk.dht.message.MessageFactory;
 import org.ardverk.dht.message.MessageType;
 import org.ardverk.dht.message.NodeResponse;
 import org.ardverk.dht.message.ResponseMessage;
+import org.ardverk.dht.message.StoreRequest;
 import org.ardverk.dht.message.ValueRequest;
 import org.ardverk.dht.message.ValueResponse;
 import org.ardverk.dht.routing.Contact;
 import org.ardverk.dht.routing.RouteTable;
 import org.ardverk.dht.rsrc.Key;
+import org.ardverk.dht.rsrc.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 
 /**
@@ -43,18 +47,42 @@ import org.ardverk.dht.rsrc.Key;
  */
 public class ValueResponseHandler extends LookupResponseHandler<ValueEntity> {
   
+  private static final Logger LOG 
+    = LoggerFactory.getLogger(ValueResponseHandler.class);
+  
   private final FixedSizeArrayList<ValueResponse> responses;
   
   private final Key key;
   
+  private final ValueListener listener;
+  
+  private final boolean pathCaching;
+  
+  private final long pathCacheTimeout;
+  
+  /**
+   * The closest {@link Contact} that didn't have the value.
+   */
+  private Contact cacheContact = null;
+  
   public ValueResponseHandler(Provider<MessageDispatcher> messageDispatcher,
       Contact[] contacts, RouteTable routeTable, 
       Key key, ValueConfig config) {
+    this(messageDispatcher, contacts, routeTable, key, null, config);
+  }
+  
+  public ValueResponseHandler(Provider<MessageDispatcher> messageDispatcher,
+      Contact[] contacts, RouteTable routeTable, 
+      Key key, ValueListener listener, ValueConfig config) {
     super(messageDispatcher, contacts, routeTable, 
         key.getId(), config);
     
     responses = new FixedSizeArrayList<ValueResponse>(config.getR());
     this.key = key;
+    this.listener = listener;
+    
+    this.pathCaching = config.isPathCaching();
+    this.pathCacheTimeout = config.getPathCacheTimeoutInMillis();
   }
 
   @Override
@@ -75,6 +103,11 @@ public class ValueResponseHandler extends LookupResponseHandler<ValueEntity> {
     Contact src = response.getContact();
     Contact[] contacts = response.getContacts();
     processContacts(src, contacts, time, unit);
+    
+    if (cacheContact == null || src.getId().isCloserTo(
+        key.getId(), cacheContact.getId())) {
+      cacheContact = src;
+    }
   }
   
   private synchronized void processValueResponse(ValueResponse response, 
@@ -82,21 +115,30 @@ public class ValueResponseHandler extends LookupResponseHandler<ValueEntity> {
     
     responses.add(response);
     
-    if (responses.isFull()) {
+    boolean more = true;
+    if (listener != null) {
+      try {
+        more = listener.handleValueResponse(response);
+      } catch (Exception err) {
+        LOG.error("Exception", err);
+      }
+    }
+    
+    if (!more || responses.isFull()) {
       Outcome outcome = createOutcome();
-      ValueResponse[] values = CollectionUtils.toArray(responses, ValueResponse.class);
-      setValue(new ValueEntity(outcome, values));
+      complete(outcome, CollectionUtils.toArray(
+          responses, ValueResponse.class));
     }
   }
   
   @Override
-  protected void lookup(Contact dst, KUID lookupId, 
+  protected void lookup(Contact dst, KUID lookupId, int hopLimit, 
       long timeout, TimeUnit unit) throws IOException {
     
     assert (lookupId.equals(key.getId()));
     
     MessageFactory factory = getMessageFactory();
-    ValueRequest message = factory.createValueRequest(dst, key);
+    ValueRequest message = factory.createValueRequest(dst, key, hopLimit);
     
     send(dst, message, timeout, unit);
   }
@@ -107,8 +149,75 @@ public class ValueResponseHandler extends LookupResponseHandler<ValueEntity> {
     if (responses.isEmpty()) {
       setException(new NoSuchValueException(outcome));
     } else {
-      ValueResponse[] values = CollectionUtils.toArray(responses, ValueResponse.class);
-      setValue(new ValueEntity(outcome, values));
+      complete(outcome, CollectionUtils.toArray(
+          responses, ValueResponse.class));
+    }
+  }
+  
+  private synchronized void complete(Outcome outcome, ValueResponse[] values) {
+    setValue(new ValueEntity(outcome, values));
+    
+    if (pathCaching && cacheContact != null) {
+      try {
+        cache(cacheContact, values);
+      } catch (IOException err) {
+        LOG.error("IOException", err);
+      }
     }
   }
+  
+  /**
+   * Sends a cached copy of the value to the given {@link Contact}.
+   */
+  private void cache(Contact dst, ValueResponse[] values) throws IOException {
+    KUID lookupId = key.getId();
+    
+    ValueResponse closest = null;
+    for (ValueResponse response : values) {
+      if (closest == null || response.getContact().getId().isCloserTo(
+          lookupId, closest.getContact().getId())) {
+        closest = response;
+      }
+    }
+    
+    Value value = closest.getValue();
+    if (!value.isRepeatable()) {
+      return;
+    }
+    
+    long timeout = getCacheTimeout(lookupId, 
+        closest.getContact().getId(), dst.getId(), pathCacheTimeout);
+    if (timeout <= 0L) {
+      return;
+    }
+    
+    MessageFactory factory = getMessageFactory();
+    StoreRequest request = factory.createStoreRequest(
+        dst, key, value, timeout, TimeUnit.MILLISECONDS);
+    
+    // Fire and forget, nobody is waiting for the response.
+    getMessageDispatcher().send(null, dst.getId(), request, 
+        config.getLookupTimeoutInMillis(), TimeUnit.MILLISECONDS);
+  }
+  
+  /**
+   * Returns the time to live of a cached copy. It's being halved for
+   * every bit the cache node is further away from the key than the
+   * closest node that had the value.
+   */
+  static long getCacheTimeout(KUID lookupId, KUID valueId, 
+      KUID cacheId, long timeout) {
+    int distance = lookupId.commonPrefix(valueId) 
+        - lookupId.commonPrefix(cacheId);
+    
+    if (distance <= 0) {
+      return timeout;
+    }
+    
+    if (distance >= Long.SIZE - 1) {
+      return 0L;
+    }
+    
+    return timeout >>> distance;
+  }
 }
\ No newline at end of file
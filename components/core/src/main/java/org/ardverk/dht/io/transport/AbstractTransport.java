@@ -17,6 +17,7 @@
 package org.ardverk.dht.io.transport;
 
 import java.io.IOException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.ardverk.dht.KUID;
@@ -32,6 +33,39 @@ public abstract class AbstractTransport implements Transport {
   private final AtomicReference<TransportCallback> callbackRef 
     = new AtomicReference<TransportCallback>();
   
+  private volatile Executor requestExecutor = null;
+  
+  /**
+   * Returns the {@link Executor} that handles incoming requests or 
+   * {@code null} if the {@link Transport}'s own {@link Executor} is 
+   * being used.
+   */
+  public Executor getRequestExecutor() {
+    return requestExecutor;
+  }
+  
+  /**
+   * Sets the {@link Executor} that handles incoming requests. Handling
+   * a request may block on the datastore and an {@link Executor} 
+   * that creates a (cheap) {@link Thread} per task lets many slow 
+   * requests proceed at the same time. It's off by default.
+   */
+  public void setRequestExecutor(Executor requestExecutor) {
+    this.requestExecutor = requestExecutor;
+  }
+  
+  /**
+   * Executes the given request handling task on the request 
+   * {@link Executor} or on the given default {@link Executor}.
+   */
+  protected void executeRequest(Executor defaultExecutor, Runnable task) {
+    Executor executor = requestExecutor;
+    if (executor == null) {
+      executor = defaultExecutor;
+    }
+    executor.execute(task);
+  }
+  
   @Override
   public void bind(TransportCallback callback) throws IOException {
     if (callback == null) {
@@ -25,9 +25,12 @@ import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.ardverk.concurrent.DefaultExecutorQueue;
 import org.ardverk.concurrent.ExecutorQueue;
@@ -56,6 +59,13 @@ public class DatagramTransport extends AbstractTransport implements Closeable {
   private static final ExecutorService EXECUTOR 
     = ExecutorUtils.newCachedThreadPool("DatagramTransportThread");
   
+  private static final Executor CALLER_RUNS = new Executor() {
+    @Override
+    public void execute(Runnable command) {
+      command.run();
+    }
+  };
+  
   private final int MAX_SIZE = 8 * 1024;
   
   private final ExecutorQueue<Runnable> executor 
@@ -67,6 +77,13 @@ public class DatagramTransport extends AbstractTransport implements Closeable {
   
   private volatile DatagramSocket socket = null;
   
+  /**
+   * Guards binding and unbinding. It's a {@link Lock} rather than a 
+   * monitor as it's being held while the socket is being opened 
+   * and closed.
+   */
+  private final Lock lock = new ReentrantLock();
+  
   private Future<?> future = null;
   
   private boolean open = true;
@@ -101,45 +118,60 @@ public class DatagramTransport extends AbstractTransport implements Closeable {
   }
 
   @Override
-  public synchronized void bind(TransportCallback callback) throws IOException {
-    if (!open) {
-      throw new IOException();
-    }
-    
-    super.bind(callback);
-
-    socket = new DatagramSocket(bindaddr);
-
-    Runnable task = new Runnable() {
-      @Override
-      public void run() {
-        doServe();
+  public void bind(TransportCallback callback) throws IOException {
+    lock.lock();
+    try {
+      if (!open) {
+        throw new IOException();
       }
-    };
-    
-    future = EXECUTOR.submit(task);
+      
+      super.bind(callback);
+      
+      socket = new DatagramSocket(bindaddr);
+      
+      Runnable task = new Runnable() {
+        @Override
+        public void run() {
+          doServe();
+        }
+      };
+      
+      future = EXECUTOR.submit(task);
+    } finally {
+      lock.unlock();
+    }
   }
 
   @Override
-  public synchronized void unbind() {
-    super.unbind();
-    
-    IoUtils.close(socket);
-    
-    if (future != null) {
-      future.cancel(true);
-    }
-    
-    synchronized (executor) {
-      executor.getQueue().clear();
+  public void unbind() {
+    lock.lock();
+    try {
+      super.unbind();
+      
+      IoUtils.close(socket);
+      
+      if (future != null) {
+        future.cancel(true);
+      }
+      
+      synchronized (executor) {
+        executor.getQueue().clear();
+      }
+    } finally {
+      lock.unlock();
     }
   }
 
   @Override
-  public synchronized void close() {
-    open = false;
-    executor.shutdownNow();
-    unbind();
+  public void close() {
+    lock.lock();
+    try {
+      open = false;
+      executor.shutdownNow();
+      unbind();
+    } finally {
+      lock.unlock();
+    }
   }
   
   private void doServe() {
@@ -190,12 +222,26 @@ public class DatagramTransport extends AbstractTransport implements Closeable {
         }
       }
       
-      private void handleRequest(RequestMessage request) throws IOException {
-        ResponseMessage response = DatagramTransport.this.handleRequest(request);
-        if (response != null) {
-          KUID contactId = request.getContact().getId();
-          send(contactId, response, -1L, TimeUnit.MILLISECONDS);
-        }
+      private void handleRequest(final RequestMessage request) {
+        Runnable task = new Runnable() {
+          @Override
+          public void run() {
+            try {
+              ResponseMessage response 
+                = DatagramTransport.this.handleRequest(request);
+              if (response != null) {
+                KUID contactId = request.getContact().getId();
+                send(contactId, response, -1L, TimeUnit.MILLISECONDS);
+              }
+            } catch (IOException err) {
+              uncaughtException(socket, err);
+            }
+          }
+        };
+        
+        // Requests are being handled in-line unless there is 
+        // a request Executor.
+        executeRequest(CALLER_RUNS, task);
       }
       
       private boolean handleResponse(ResponseMessage response) throws IOException {
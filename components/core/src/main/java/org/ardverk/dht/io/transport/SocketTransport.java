@@ -31,6 +31,8 @@ import java.net.SocketException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.ardverk.concurrent.ExecutorUtils;
 import org.ardverk.dht.KUID;
@@ -66,6 +68,13 @@ public class SocketTransport extends AbstractTransport implements Closeable {
   
   private volatile ServerSocket socket = null;
   
+  /**
+   * Guards binding and unbinding. It's a {@link Lock} rather than a 
+   * monitor as it's being held while the socket is being opened 
+   * and closed.
+   */
+  private final Lock lock = new ReentrantLock();
+  
   private Future<?> future = null;
   
   private boolean open = true;
@@ -100,44 +109,59 @@ public class SocketTransport extends AbstractTransport implements Closeable {
   }
   
   @Override
-  public synchronized void bind(TransportCallback callback) throws IOException {
-    if (!open) {
-      throw new IOException();
-    }
-    
-    super.bind(callback);
-  
-    socket = new ServerSocket();
-    socket.setReuseAddress(true);
-    //socket.setReceiveBufferSize(64*1024);
-    //socket.bind(bindaddr, 512);
-    socket.bind(bindaddr);
-    
-    Runnable task = new Runnable() {
-      @Override
-      public void run() {
-        doServe();
+  public void bind(TransportCallback callback) throws IOException {
+    lock.lock();
+    try {
+      if (!open) {
+        throw new IOException();
       }
-    };
-    
-    future = EXECUTOR.submit(task);
+      
+      super.bind(callback);
+      
+      socket = new ServerSocket();
+      socket.setReuseAddress(true);
+      //socket.setReceiveBufferSize(64*1024);
+      //socket.bind(bindaddr, 512);
+      socket.bind(bindaddr);
+      
+      Runnable task = new Runnable() {
+        @Override
+        public void run() {
+          doServe();
+        }
+      };
+      
+      future = EXECUTOR.submit(task);
+    } finally {
+      lock.unlock();
+    }
   }
   
   @Override
-  public synchronized void unbind() {
-    super.unbind();
-    
-    IoUtils.close(socket);
-    
-    if (future != null) {
-      future.cancel(true);
+  public void unbind() {
+    lock.lock();
+    try {
+      super.unbind();
+      
+      IoUtils.close(socket);
+      
+      if (future != null) {
+        future.cancel(true);
+      }
+    } finally {
+      lock.unlock();
     }
   }
   
   @Override
-  public synchronized void close() {
-    open = false;
-    unbind();
+  public void close() {
+    lock.lock();
+    try {
+      open = false;
+      unbind();
+    } finally {
+      lock.unlock();
+    }
   }
   
   private void doServe() {
@@ -192,7 +216,7 @@ public class SocketTransport extends AbstractTransport implements Closeable {
       }
     };
     
-    EXECUTOR.execute(task);
+    executeRequest(EXECUTOR, task);
     return true;
   }
   
@@ -26,8 +26,26 @@ import org.ardverk.dht.routing.Contact;
 abstract class AbstractLookupRequest extends AbstractRequestMessage 
     implements LookupRequest {
   
+  private final int hopLimit;
+  
   public AbstractLookupRequest(MessageId messageId, Contact contact, 
       SocketAddress address) {
+    this(messageId, contact, address, 0);
+  }
+  
+  public AbstractLookupRequest(MessageId messageId, Contact contact, 
+      SocketAddress address, int hopLimit) {
     super(messageId, contact, address);
+    
+    if (hopLimit < 0 || 0xFF < hopLimit) {
+      throw new IllegalArgumentException("hopLimit=" + hopLimit);
+    }
+    
+    this.hopLimit = hopLimit;
+  }
+  
+  @Override
+  public int getHopLimit() {
+    return hopLimit;
   }
 }
\ No newline at end of file
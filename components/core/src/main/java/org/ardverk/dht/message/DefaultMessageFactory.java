@@ -17,6 +17,7 @@
 package org.ardverk.dht.message;
 
 import java.net.SocketAddress;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -63,9 +64,15 @@ public class DefaultMessageFactory extends AbstractMessageFactory {
 
   @Override
   public NodeRequest createNodeRequest(Contact dst, KUID key) {
+    return createNodeRequest(dst, key, 0);
+  }
+
+  @Override
+  public NodeRequest createNodeRequest(Contact dst, KUID key, int hopLimit) {
     SocketAddress address = dst.getRemoteAddress();
     MessageId messageId = createMessageId(address);
-    return new DefaultNodeRequest(messageId, localhost, address, key);
+    return new DefaultNodeRequest(messageId, localhost, 
+        address, key, hopLimit);
   }
 
   @Override
@@ -78,9 +85,15 @@ public class DefaultMessageFactory extends AbstractMessageFactory {
 
   @Override
   public ValueRequest createValueRequest(Contact dst, Key key) {
+    return createValueRequest(dst, key, 0);
+  }
+
+  @Override
+  public ValueRequest createValueRequest(Contact dst, Key key, int hopLimit) {
     SocketAddress address = dst.getRemoteAddress();
     MessageId messageId = createMessageId(address);
-    return new DefaultValueRequest(messageId, localhost, address, key);
+    return new DefaultValueRequest(messageId, localhost, 
+        address, key, hopLimit);
   }
 
   @Override
@@ -101,6 +114,16 @@ public class DefaultMessageFactory extends AbstractMessageFactory {
         address, key, value);
   }
 
+  @Override
+  public StoreRequest createStoreRequest(Contact dst, Key key, 
+      Value value, long cacheTimeout, TimeUnit unit) {
+    SocketAddress address = dst.getRemoteAddress();
+    MessageId messageId = createMessageId(address);
+    
+    return new DefaultStoreRequest(messageId, localhost, 
+        address, key, value, cacheTimeout, unit);
+  }
+
   @Override
   public StoreResponse createStoreResponse(StoreRequest request, Value value) {
     Contact dst = request.getContact();
@@ -108,4 +131,23 @@ public class DefaultMessageFactory extends AbstractMessageFactory {
     MessageId messageId = request.getMessageId();
     return new DefaultStoreResponse(messageId, localhost, address, value);
   }
+
+  @Override
+  public StoreBatchRequest createStoreBatchRequest(Contact dst, 
+      Key[] keys, Value[] values) {
+    SocketAddress address = dst.getRemoteAddress();
+    MessageId messageId = createMessageId(address);
+    
+    return new DefaultStoreBatchRequest(messageId, localhost, 
+        address, keys, values);
+  }
+
+  @Override
+  public StoreBatchResponse createStoreBatchResponse(
+      StoreBatchRequest request, Value[] values) {
+    Contact dst = request.getContact();
+    SocketAddress address = dst.getRemoteAddress();
+    MessageId messageId = request.getMessageId();
+    return new DefaultStoreBatchResponse(messageId, localhost, address, values);
+  }
 }
\ No newline at end of file
@@ -29,7 +29,12 @@ public class DefaultNodeRequest extends AbstractLookupRequest
   
   public DefaultNodeRequest(MessageId messageId, Contact contact, 
       SocketAddress address, KUID lookupId) {
-    super(messageId, contact, address);
+    this(messageId, contact, address, lookupId, 0);
+  }
+  
+  public DefaultNodeRequest(MessageId messageId, Contact contact, 
+      SocketAddress address, KUID lookupId, int hopLimit) {
+    super(messageId, contact, address, hopLimit);
     
     this.lookupId = lookupId;
   }
@@ -17,6 +17,7 @@
 package org.ardverk.dht.message;
 
 import java.net.SocketAddress;
+import java.util.concurrent.TimeUnit;
 
 import org.ardverk.dht.routing.Contact;
 import org.ardverk.dht.rsrc.Key;
@@ -27,15 +28,40 @@ public class DefaultStoreRequest extends AbstractRequestMessage
 
   private final Key key;
   
+  private final long cacheTimeoutInMillis;
+  
   public DefaultStoreRequest(MessageId messageId, Contact contact, 
       SocketAddress address, Key key, Value value) {
+    this(messageId, contact, address, key, value, 
+        0L, TimeUnit.MILLISECONDS);
+  }
+  
+  public DefaultStoreRequest(MessageId messageId, Contact contact, 
+      SocketAddress address, Key key, Value value, 
+      long cacheTimeout, TimeUnit unit) {
     super(messageId, contact, address, value);
     
     this.key = key;
+    this.cacheTimeoutInMillis = Math.max(unit.toMillis(cacheTimeout), 0L);
   }
   
   @Override
   public Key getKey() {
     return key;
   }
+
+  @Override
+  public boolean isCache() {
+    return 0L < cacheTimeoutInMillis;
+  }
+
+  @Override
+  public long getCacheTimeout(TimeUnit unit) {
+    return unit.convert(cacheTimeoutInMillis, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public long getCacheTimeoutInMillis() {
+    return getCacheTimeout(TimeUnit.MILLISECONDS);
+  }
 }
\ No newline at end of file
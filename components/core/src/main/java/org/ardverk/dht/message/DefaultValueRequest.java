@@ -30,7 +30,12 @@ public class DefaultValueRequest extends AbstractLookupRequest
   
   public DefaultValueRequest(MessageId messageId, Contact contact, 
       SocketAddress address, Key key) {
-    super(messageId, contact, address);
+    this(messageId, contact, address, key, 0);
+  }
+  
+  public DefaultValueRequest(MessageId messageId, Contact contact, 
+      SocketAddress address, Key key, int hopLimit) {
+    super(messageId, contact, address, hopLimit);
     this.key = key;
   }
   
@@ -23,4 +23,11 @@ import org.ardverk.dht.lang.Identifier;
  * {@link MessageType#FIND_VALUE} request messages.
  */
 public interface LookupRequest extends RequestMessage, Identifier {
+  
+  /**
+   * Returns the number of hops the receiver may forward the request 
+   * towards the lookup {@link org.ardverk.dht.KUID} or zero if it's 
+   * an iterative request.
+   */
+  public int getHopLimit();
 }
\ No newline at end of file
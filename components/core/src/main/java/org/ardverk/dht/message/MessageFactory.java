@@ -17,6 +17,7 @@
 package org.ardverk.dht.message;
 
 import java.net.SocketAddress;
+import java.util.concurrent.TimeUnit;
 
 import org.ardverk.dht.KUID;
 import org.ardverk.dht.routing.Contact;
@@ -63,6 +64,12 @@ public interface MessageFactory {
    */
   public NodeRequest createNodeRequest(Contact dst, KUID key);
   
+  /**
+   * Creates and returns a {@link NodeRequest} that may be forwarded
+   * up to the given number of hops.
+   */
+  public NodeRequest createNodeRequest(Contact dst, KUID key, int hopLimit);
+  
   /**
    * Creates and returns a {@link NodeResponse}.
    */
@@ -73,6 +80,12 @@ public interface MessageFactory {
    */
   public ValueRequest createValueRequest(Contact dst, Key key);
   
+  /**
+   * Creates and returns a {@link ValueRequest} that may be forwarded
+   * up to the given number of hops.
+   */
+  public ValueRequest createValueRequest(Contact dst, Key key, int hopLimit);
+  
   /**
    * Creates and returns a {@link ValueResponse}.
    */
@@ -84,8 +97,27 @@ public interface MessageFactory {
   public StoreRequest createStoreRequest(Contact dst, 
       Key key, Value value);
   
+  /**
+   * Creates and returns a {@link StoreRequest} that asks the receiver
+   * to keep a cached copy of the value for the given amount of time.
+   */
+  public StoreRequest createStoreRequest(Contact dst, 
+      Key key, Value value, long cacheTimeout, TimeUnit unit);
+  
   /**
    * Creates and returns a {@link StoreResponse}.
    */
   public StoreResponse createStoreResponse(StoreRequest request, Value value);
+  
+  /**
+   * Creates and returns a {@link StoreBatchRequest}.
+   */
+  public StoreBatchRequest createStoreBatchRequest(Contact dst, 
+      Key[] keys, Value[] values);
+  
+  /**
+   * Creates and returns a {@link StoreBatchResponse}.
+   */
+  public StoreBatchResponse createStoreBatchResponse(
+      StoreBatchRequest request, Value[] values);
 }
\ No newline at end of file
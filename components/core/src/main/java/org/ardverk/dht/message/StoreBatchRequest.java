@@ -0,0 +1,42 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht.message;
+
+import org.ardverk.dht.rsrc.Key;
+import org.ardverk.dht.rsrc.Value;
+
+/**
+ * A {@link MessageType#STORE} request that carries many 
+ * {@link Key}-{@link Value} pairs.
+ */
+public interface StoreBatchRequest extends RequestMessage {
+  
+  /**
+   * Returns the number of {@link Key}-{@link Value} pairs.
+   */
+  public int size();
+  
+  /**
+   * Returns the {@link Key}s.
+   */
+  public Key[] getKeys();
+  
+  /**
+   * Returns the {@link Value}s in the same order as the {@link Key}s.
+   */
+  public Value[] getValues();
+}
@@ -16,6 +16,8 @@
 
 package org.ardverk.dht.message;
 
+import java.util.concurrent.TimeUnit;
+
 import org.ardverk.dht.rsrc.Key;
 
 /**
@@ -27,4 +29,21 @@ public interface StoreRequest extends RequestMessage {
    * Returns the {@link Key}.
    */
   public Key getKey();
+  
+  /**
+   * Returns {@code true} if the receiver is asked to keep a 
+   * cached copy of the value rather than storing it.
+   */
+  public boolean isCache();
+  
+  /**
+   * Returns the amount of time the receiver should keep a cached 
+   * copy of the value or zero if it's a regular STORE request.
+   */
+  public long getCacheTimeout(TimeUnit unit);
+  
+  /**
+   * Returns the cache timeout in milliseconds.
+   */
+  public long getCacheTimeoutInMillis();
 }
\ No newline at end of file
@@ -30,6 +30,8 @@ abstract class AbstractContact implements Contact {
   
   private volatile long rtt = -1L;
   
+  private volatile Coordinate coordinate = null;
+  
   public AbstractContact(Identifier identifier) {
     this(identifier, -1L, TimeUnit.MILLISECONDS);
   }
@@ -84,6 +86,18 @@ abstract class AbstractContact implements Contact {
     this.rtt = unit.toMillis(rtt);
   }
   
+  @Override
+  public Coordinate getCoordinate() {
+    return coordinate;
+  }
+  
+  /**
+   * Changes the {@link Contact}'s network {@link Coordinate}.
+   */
+  public void setCoordinate(Coordinate coordinate) {
+    this.coordinate = coordinate;
+  }
+  
   @Override
   public long getTimeSinceLastContact(TimeUnit unit) {
     return getTimeStamp().getAge(unit);
@@ -158,6 +158,12 @@ public interface Contact extends Identifier, Longevity,
    */
   public boolean isTimeout(long timeout, TimeUnit unit);
   
+  /**
+   * Returns the {@link Contact}'s network {@link Coordinate} or 
+   * {@code null} if it's unknown.
+   */
+  public Coordinate getCoordinate();
+  
   /**
    * Merges this with the other {@link Contact}.
    */
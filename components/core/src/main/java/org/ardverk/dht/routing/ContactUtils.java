@@ -69,6 +69,37 @@ public class ContactUtils {
     return Math.min((long)(rtt * 1.5f), defaultValue);
   }
   
+  /**
+   * Returns the measured Round-Trip-Time (RTT) of the destination
+   * {@link Contact} or a prediction that is based on the network
+   * {@link Coordinate}s of both {@link Contact}s. Returns a negative
+   * value if neither is known.
+   */
+  public static long getRoundTripTime(Contact src, Contact dst, TimeUnit unit) {
+    long rtt = dst.getRoundTripTime(unit);
+    if (0L < rtt || src == null) {
+      return rtt;
+    }
+
+    Coordinate local = src.getCoordinate();
+    Coordinate remote = dst.getCoordinate();
+    if (local != null && remote != null) {
+      return local.getRoundTripTime(remote, unit);
+    }
+
+    return -1L;
+  }
+
+  /**
+   * Returns the measured or predicted Round-Trip-Time (RTT)
+   * in milliseconds.
+   *
+   * @see #getRoundTripTime(Contact, Contact, TimeUnit)
+   */
+  public static long getRoundTripTimeInMillis(Contact src, Contact dst) {
+    return getRoundTripTime(src, dst, TimeUnit.MILLISECONDS);
+  }
+
   public static ContactEntry[] byHealth(ContactEntry[] entries) {
     return byHealth(entries, true);
   }
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht.routing;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An immutable Vivaldi network {@link Coordinate}. The distance between
+ * two {@link Coordinate}s is a prediction of the Round-Trip-Time (RTT)
+ * between the two {@link Contact}s that own them.
+ *
+ * <p>The model is an euclidean space plus a height vector that accounts
+ * for the access link of a node (Dabek et al., "Vivaldi: A Decentralized
+ * Network Coordinate System").
+ */
+public final class Coordinate implements Serializable {
+
+  private static final long serialVersionUID = -3925620734829290487L;
+
+  /**
+   * The number of euclidean dimensions (excluding the height).
+   */
+  public static final int DIMENSIONS = 3;
+
+  /**
+   * The error of a {@link Coordinate} that has never been updated.
+   */
+  public static final double MAX_ERROR = 1.0d;
+
+  private static final double MIN_ERROR = 0.01d;
+
+  private static final double MIN_HEIGHT = 0.1d;
+
+  /**
+   * The adaptive timestep constant.
+   */
+  private static final double CC = 0.25d;
+
+  /**
+   * The error weight constant.
+   */
+  private static final double CE = 0.25d;
+
+  /**
+   * Samples above this value are considered bogus and are ignored.
+   */
+  private static final double MAX_RTT_IN_MILLIS
+    = TimeUnit.MINUTES.toMillis(1L);
+
+  private static final Random GENERATOR = new Random();
+
+  /**
+   * The initial {@link Coordinate} of every {@link Contact}.
+   */
+  public static final Coordinate ORIGIN
+    = new Coordinate(new double[DIMENSIONS], MIN_HEIGHT, MAX_ERROR);
+
+  private final double[] position;
+
+  private final double height;
+
+  private final double error;
+
+  /**
+   * Creates a {@link Coordinate}.
+   */
+  public Coordinate(double[] position, double height, double error) {
+    if (position.length != DIMENSIONS) {
+      throw new IllegalArgumentException("position=" + position.length);
+    }
+
+    if (!isValid(position, height, error)) {
+      throw new IllegalArgumentException("position=" + Arrays.toString(position)
+          + ", height=" + height + ", error=" + error);
+    }
+
+    this.position = position.clone();
+    this.height = Math.max(height, MIN_HEIGHT);
+    this.error = Math.max(Math.min(error, MAX_ERROR), MIN_ERROR);
+  }
+
+  /**
+   * Returns the euclidean position.
+   */
+  public double[] getPosition() {
+    return position.clone();
+  }
+
+  /**
+   * Returns the position in the given dimension.
+   */
+  public double getPosition(int dimension) {
+    return position[dimension];
+  }
+
+  /**
+   * Returns the height in milliseconds.
+   */
+  public double getHeight() {
+    return height;
+  }
+
+  /**
+   * Returns the relative error of the {@link Coordinate}. It's a value
+   * between {@code 0} and {@link #MAX_ERROR}.
+   */
+  public double getError() {
+    return error;
+  }
+
+  /**
+   * Returns the predicted Round-Trip-Time (RTT) to the given
+   * {@link Coordinate} in the given {@link TimeUnit}.
+   */
+  public long getRoundTripTime(Coordinate other, TimeUnit unit) {
+    double distance = distance(other);
+    return unit.convert((long)Math.ceil(distance), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Returns the predicted Round-Trip-Time (RTT) to the given
+   * {@link Coordinate} in milliseconds.
+   */
+  public long getRoundTripTimeInMillis(Coordinate other) {
+    return getRoundTripTime(other, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Returns the distance (in milliseconds) between this and
+   * the other {@link Coordinate}.
+   */
+  private double distance(Coordinate other) {
+    return euclidean(other) + height + other.height;
+  }
+
+  private double euclidean(Coordinate other) {
+    double sum = 0d;
+    for (int i = 0; i < DIMENSIONS; i++) {
+      double delta = position[i] - other.position[i];
+      sum += delta * delta;
+    }
+    return Math.sqrt(sum);
+  }
+
+  /**
+   * Returns an updated copy of this {@link Coordinate} that takes the
+   * measured Round-Trip-Time (RTT) to the other {@link Coordinate} into
+   * account. Returns this {@link Coordinate} if the sample is unusable.
+   */
+  public Coordinate update(Coordinate other, long rtt, TimeUnit unit) {
+    double sample = unit.toMillis(rtt);
+    if (sample <= 0d || MAX_RTT_IN_MILLIS < sample) {
+      return this;
+    }
+
+    double distance = distance(other);
+
+    // The weight balances the local error against the remote error.
+    // Confident remote nodes move us more than unconfident ones.
+    double weight = error / (error + other.error);
+    double relativeError = Math.abs(distance - sample) / sample;
+    double newError = relativeError * CE * weight
+        + error * (1d - CE * weight);
+
+    double force = CC * weight * (sample - distance);
+
+    // Compute the unit vector from the other Coordinate towards us.
+    double[] direction = new double[DIMENSIONS];
+    double euclidean = euclidean(other);
+
+    if (euclidean > 0d) {
+      for (int i = 0; i < DIMENSIONS; i++) {
+        direction[i] = (position[i] - other.position[i]) / euclidean;
+      }
+    } else {
+      // Both Coordinates are at the same position. Move into
+      // a random direction to break the symmetry.
+      double length = 0d;
+      for (int i = 0; i < DIMENSIONS; i++) {
+        direction[i] = GENERATOR.nextDouble() - 0.5d;
+        length += direction[i] * direction[i];
+      }
+
+      length = Math.sqrt(length);
+      for (int i = 0; i < DIMENSIONS; i++) {
+        direction[i] /= length;
+      }
+    }
+
+    double[] newPosition = new double[DIMENSIONS];
+    for (int i = 0; i < DIMENSIONS; i++) {
+      newPosition[i] = position[i] + force * direction[i];
+    }
+
+    // The height moves proportionally to its share of the distance.
+    double newHeight = height;
+    if (distance > 0d) {
+      newHeight += force * (height + other.height) / distance;
+    }
+
+    if (!isValid(newPosition, newHeight, newError)) {
+      return this;
+    }
+
+    return new Coordinate(newPosition, newHeight, newError);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * Arrays.hashCode(position)
+        + (int)Double.doubleToLongBits(height);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o == this) {
+      return true;
+    } else if (!(o instanceof Coordinate)) {
+      return false;
+    }
+
+    Coordinate other = (Coordinate)o;
+    return Arrays.equals(position, other.position)
+        && height == other.height
+        && error == other.error;
+  }
+
+  @Override
+  public String toString() {
+    return "position=" + Arrays.toString(position)
+        + ", height=" + height + ", error=" + error;
+  }
+
+  private static boolean isValid(double[] position,
+      double height, double error) {
+    for (double value : position) {
+      if (Double.isNaN(value) || Double.isInfinite(value)) {
+        return false;
+      }
+    }
+
+    return !Double.isNaN(height) && !Double.isInfinite(height)
+        && !Double.isNaN(error) && !Double.isInfinite(error);
+  }
+}
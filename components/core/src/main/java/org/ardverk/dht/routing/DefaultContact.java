@@ -106,6 +106,7 @@ public class DefaultContact extends AbstractContact {
    */
   private DefaultContact(DefaultContact existing, Contact other) {
     super(existing, pickRTT(existing, other), TimeUnit.MILLISECONDS);
+    setCoordinate(pickCoordinate(existing, other));
     
     this.creationTime = existing.getCreationTime();
     
@@ -220,4 +221,12 @@ public class DefaultContact extends AbstractContact {
     long otherRTT = other.getRoundTripTimeInMillis();
     return otherRTT > 0L ? otherRTT : existing.getRoundTripTimeInMillis();
   }
+  
+  /**
+   * Picks and returns the {@link Coordinate} for the given two {@link Contact}s.
+   */
+  private static Coordinate pickCoordinate(Contact existing, Contact other) {
+    Coordinate otherCoordinate = other.getCoordinate();
+    return otherCoordinate != null ? otherCoordinate : existing.getCoordinate();
+  }
 }
\ No newline at end of file
@@ -24,6 +24,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -59,14 +61,22 @@ public class DefaultRouteTable extends AbstractRouteTable {
   
   private final Identity localhost;
   
+  private final LivenessTracker liveness;
+  
   private final Trie<KUID, DefaultBucket> buckets;
   
   private int consecutiveErrors = 0;
   
-  @Inject
   public DefaultRouteTable(RouteTableConfig config, Identity localhost) {
+    this(config, localhost, new LivenessTracker());
+  }
+  
+  @Inject
+  public DefaultRouteTable(RouteTableConfig config, 
+      Identity localhost, LivenessTracker liveness) {
     this.config = config;
     this.localhost = localhost;
+    this.liveness = liveness;
     
     this.buckets = new PatriciaTrie<>();
     
@@ -100,6 +110,13 @@ public class DefaultRouteTable extends AbstractRouteTable {
     return localhost;
   }
   
+  /**
+   * Returns the {@link LivenessTracker}.
+   */
+  public LivenessTracker getLivenessTracker() {
+    return liveness;
+  }
+  
   /**
    * Returns {@code true} if the {@link Identifier} is equal to localhost.
    */
@@ -243,7 +260,38 @@ public class DefaultRouteTable extends AbstractRouteTable {
       
       final Contact previous = entry.getContact();
       
+      // There is no need to send a PING if we know the outcome
+      // already or if there are other requests in-flight.
+      DHTFuture<Boolean> outcome = liveness.getOutcome(previous, 
+          config.getFreshnessTimeoutInMillis(), TimeUnit.MILLISECONDS);
+      
+      if (outcome != null) {
+        outcome.addAsyncFutureListener(new AsyncFutureListener<Boolean>() {
+          @Override
+          public void operationComplete(AsyncFuture<Boolean> future) {
+            if (future.isCancelled()) {
+              return;
+            }
+            
+            // The existing Contact is alive and we're dropping
+            // the new Contact's information.
+            if (isTrue(future)) {
+              fireContactCollision(previous, previous);
+              return;
+            }
+            
+            checkContactFailed(previous, contact);
+          }
+        });
+        return;
+      }
+      
+      // We're keeping the existing Contact if we can't PING it.
       DHTFuture<PingEntity> future = ping(entry);
+      if (future == null) {
+        return;
+      }
+      
       future.addAsyncFutureListener(new AsyncFutureListener<PingEntity>() {
         @Override
         public void operationComplete(AsyncFuture<PingEntity> future) {
@@ -267,25 +315,7 @@ public class DefaultRouteTable extends AbstractRouteTable {
             return;
           }
           
-          KUID contactId = contact.getId();
-          
-          synchronized (DefaultRouteTable.this) {
-            DefaultBucket bucket = buckets.selectValue(contactId);
-            ContactEntry current = bucket.get(contactId);
-            
-            // Make sure the pre-condition still holds and we're
-            // not replacing some other Contact.
-            if (current != null && current.getContact() == previous) {
-              update(bucket, current, contact);
-              
-              if (bucket.containsCached(contactId)) {
-                pingLeastRecentlySeenContact(bucket);
-              }
-              
-            } else {
-              add(contact);
-            }
-          }
+          checkContactFailed(previous, contact);
         }
       });
     } else {
@@ -297,6 +327,40 @@ public class DefaultRouteTable extends AbstractRouteTable {
     }
   }
   
+  /**
+   * Called if the previous {@link Contact} failed to respond.
+   */
+  private synchronized void checkContactFailed(Contact previous, Contact contact) {
+    KUID contactId = contact.getId();
+    
+    DefaultBucket bucket = buckets.selectValue(contactId);
+    ContactEntry current = bucket.get(contactId);
+    
+    // Make sure the pre-condition still holds and we're
+    // not replacing some other Contact.
+    if (current != null && current.getContact() == previous) {
+      update(bucket, current, contact);
+      
+      if (bucket.containsCached(contactId)) {
+        pingLeastRecentlySeenContact(bucket);
+      }
+      
+    } else {
+      add(contact);
+    }
+  }
+  
+  private static boolean isTrue(AsyncFuture<Boolean> future) {
+    try {
+      return !future.isCompletedAbnormally() && future.get();
+    } catch (InterruptedException e) {
+      LOG.error("InterruptedException", e);
+    } catch (ExecutionException e) {
+      LOG.error("ExecutionException", e);
+    }
+    return false;
+  }
+  
   private synchronized boolean isOkayToAdd(DefaultBucket bucket, ContactEntry entry) {
     return isOkayToAdd(bucket, entry.getContact());
   }
@@ -375,7 +439,16 @@ public class DefaultRouteTable extends AbstractRouteTable {
   private synchronized void pingLeastRecentlySeenContact(DefaultBucket bucket) {
     ContactEntry lrs = bucket.getLeastRecentlySeenActiveContact();
     if (!isLocalhost(lrs)) {
-      ping(lrs);
+      
+      // Don't PING the Contact if we know it's alive or if there
+      // are other requests in-flight. The DefaultMessageHandler
+      // will take care of it in case of an error.
+      DHTFuture<Boolean> outcome = liveness.getOutcome(lrs.getContact(), 
+          config.getFreshnessTimeoutInMillis(), TimeUnit.MILLISECONDS);
+      
+      if (outcome == null) {
+        ping(lrs);
+      }
     }
   }
   
@@ -490,6 +563,11 @@ public class DefaultRouteTable extends AbstractRouteTable {
     });
   }
   
+  /**
+   * Sends a PING to the given {@link ContactEntry} and returns its 
+   * {@link DHTFuture} or {@code null} if the PING was rejected 
+   * because the DHT is too busy.
+   */
   private synchronized DHTFuture<PingEntity> ping(ContactEntry entry) {
     Contact contact = entry.getContact();
     
@@ -501,7 +579,12 @@ public class DefaultRouteTable extends AbstractRouteTable {
     
     if (future == null) {
       PingConfig pingConfig = config.getPingConfig();
-      future = ping(contact, pingConfig);
+      try {
+        future = ping(contact, pingConfig);
+      } catch (RejectedExecutionException err) {
+        LOG.warn("Skipping PING: " + contact, err);
+        return null;
+      }
       
       future.addAsyncFutureListener(new AsyncFutureListener<PingEntity>() {
         @Override
@@ -44,6 +44,7 @@ public class Identity extends AbstractContact {
   public Identity(KUID contactId, SocketAddress contactAddress) {
     super(contactId);
     this.contactAddress = contactAddress;
+    setCoordinate(Coordinate.ORIGIN);
   }
   
   @Override
@@ -127,6 +128,18 @@ public class Identity extends AbstractContact {
     // Do nothing, a localhost cannot have a RTT
   }
 
+  /**
+   * Updates the {@link Identity}'s {@link Coordinate} with the measured
+   * Round-Trip-Time (RTT) to the given remote {@link Contact}.
+   */
+  public synchronized void updateCoordinate(Contact src, long rtt, TimeUnit unit) {
+    Coordinate remote = src.getCoordinate();
+    if (remote != null) {
+      Coordinate coordinate = getCoordinate();
+      setCoordinate(coordinate.update(remote, rtt, unit));
+    }
+  }
+  
   @Override
   public Contact merge(Contact other) {
     throw new UnsupportedOperationException();
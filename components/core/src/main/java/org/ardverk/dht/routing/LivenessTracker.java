@@ -0,0 +1,286 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht.routing;
+
+import java.net.SocketAddress;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Singleton;
+
+import org.ardverk.collection.FixedSizeHashMap;
+import org.ardverk.dht.KUID;
+import org.ardverk.dht.concurrent.DHTFuture;
+import org.ardverk.dht.concurrent.DHTValueFuture;
+import org.ardverk.dht.utils.ContactKey;
+
+
+/**
+ * The {@link LivenessTracker} passively keeps track of the requests
+ * we're sending and the responses we're receiving. A {@link Contact}
+ * that has successfully responded to any type of request is known
+ * to be alive and there is no point in sending it a PING.
+ *
+ * <p>NOTE: Only solicited responses are being considered. Anyone
+ * can send us a request with an arbitrary {@link KUID}.
+ * 
+ * <p>NOTE: {@link Contact}s with requests in-flight are never being 
+ * evicted. Someone may be waiting for their outcome.
+ */
+@Singleton
+public class LivenessTracker {
+
+  public static final int DEFAULT_MAX_SIZE = 4096;
+
+  private final Map<ContactKey, State> states;
+
+  private final AtomicLong avoidedCount = new AtomicLong();
+
+  private final AtomicLong piggybackCount = new AtomicLong();
+
+  public LivenessTracker() {
+    this(DEFAULT_MAX_SIZE);
+  }
+
+  public LivenessTracker(int maxSize) {
+    this.states = new StateMap(maxSize);
+  }
+
+  /**
+   * Called for every request we're sending.
+   */
+  public void handleRequest(KUID contactId, SocketAddress address) {
+    if (contactId == null || address == null) {
+      return;
+    }
+
+    ContactKey key = new ContactKey(contactId, address);
+    synchronized (states) {
+      State state = states.get(key);
+      if (state == null) {
+        state = new State();
+        states.put(key, state);
+      }
+
+      state.pending++;
+    }
+  }
+
+  /**
+   * Called for every response we've received.
+   */
+  public void handleResponse(KUID contactId, SocketAddress address) {
+    if (contactId == null || address == null) {
+      return;
+    }
+
+    DHTValueFuture<Boolean> outcome = null;
+    ContactKey key = new ContactKey(contactId, address);
+    synchronized (states) {
+      State state = states.get(key);
+      if (state == null) {
+        state = new State();
+        states.put(key, state);
+      }
+
+      state.pending = Math.max(state.pending - 1, 0);
+      state.timeStamp = System.currentTimeMillis();
+
+      outcome = state.outcome;
+      state.outcome = null;
+    }
+
+    if (outcome != null) {
+      outcome.setValue(Boolean.TRUE);
+    }
+  }
+
+  /**
+   * Called for every request that failed (timeout or error).
+   */
+  public void handleFailure(KUID contactId, SocketAddress address) {
+    if (contactId == null || address == null) {
+      return;
+    }
+
+    DHTValueFuture<Boolean> outcome = null;
+    ContactKey key = new ContactKey(contactId, address);
+    synchronized (states) {
+      State state = states.get(key);
+      if (state == null) {
+        return;
+      }
+
+      state.pending = Math.max(state.pending - 1, 0);
+
+      // Wait for the other requests if there are any. A
+      // single successful response is proof enough.
+      if (state.pending == 0) {
+        outcome = state.outcome;
+        state.outcome = null;
+      }
+    }
+
+    if (outcome != null) {
+      outcome.setValue(Boolean.FALSE);
+    }
+  }
+
+  /**
+   * Returns {@code true} if the given {@link Contact} has successfully
+   * responded to a request within the given amount of time.
+   */
+  public boolean isAlive(Contact contact, long timeout, TimeUnit unit) {
+    ContactKey key = new ContactKey(contact);
+    synchronized (states) {
+      State state = states.get(key);
+      return state != null && state.isAlive(unit.toMillis(timeout));
+    }
+  }
+
+  /**
+   * Returns {@code true} if there are requests in-flight to
+   * the given {@link Contact}.
+   */
+  public boolean isPending(Contact contact) {
+    ContactKey key = new ContactKey(contact);
+    synchronized (states) {
+      State state = states.get(key);
+      return state != null && 0 < state.pending;
+    }
+  }
+
+  /**
+   * Returns a {@link DHTFuture} that tells whether or not the given
+   * {@link Contact} is alive or {@code null} if it's unknown and a
+   * PING is necessary.
+   *
+   * <p>The {@link DHTFuture} is completed right away if the
+   * {@link Contact} has responded within the given amount of time
+   * or it completes with the outcome of the in-flight requests.
+   */
+  public DHTFuture<Boolean> getOutcome(Contact contact,
+      long timeout, TimeUnit unit) {
+    ContactKey key = new ContactKey(contact);
+    synchronized (states) {
+      State state = states.get(key);
+      if (state == null) {
+        return null;
+      }
+
+      if (state.isAlive(unit.toMillis(timeout))) {
+        avoidedCount.incrementAndGet();
+        return new DHTValueFuture<Boolean>(Boolean.TRUE);
+      }
+
+      if (0 < state.pending) {
+        if (state.outcome == null) {
+          state.outcome = new DHTValueFuture<Boolean>();
+        }
+
+        piggybackCount.incrementAndGet();
+        return state.outcome;
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Returns the number of PINGs that were avoided because
+   * the {@link Contact} was known to be alive.
+   */
+  public long getAvoidedCount() {
+    return avoidedCount.get();
+  }
+
+  /**
+   * Returns the number of PINGs that were avoided because
+   * there were requests in-flight to the {@link Contact}.
+   */
+  public long getPiggybackCount() {
+    return piggybackCount.get();
+  }
+
+  /**
+   * Clears the {@link LivenessTracker}.
+   */
+  public void clear() {
+    synchronized (states) {
+      for (State state : states.values()) {
+        if (state.outcome != null) {
+          state.outcome.cancel(true);
+        }
+      }
+      states.clear();
+    }
+  }
+
+  private static class State {
+
+    private long timeStamp = -1L;
+
+    private int pending = 0;
+
+    private DHTValueFuture<Boolean> outcome = null;
+
+    public boolean isAlive(long timeout) {
+      return timeStamp != -1L
+          && (System.currentTimeMillis() - timeStamp) < timeout;
+    }
+    
+    public boolean isPending() {
+      return 0 < pending || outcome != null;
+    }
+  }
+  
+  /**
+   * A LRU {@link Map} that evicts the least recently used {@link State}
+   * without requests in-flight. It may grow beyond its maximum size if
+   * there are requests in-flight to all {@link Contact}s.
+   */
+  private static class StateMap extends FixedSizeHashMap<ContactKey, State> {
+    
+    private static final long serialVersionUID = 8165449394563736543L;
+    
+    public StateMap(int maxSize) {
+      super(16, 0.75f, true, maxSize);
+    }
+    
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<ContactKey, State> eldest) {
+      if (size() <= getMaxSize()) {
+        return false;
+      }
+      
+      if (!eldest.getValue().isPending()) {
+        return true;
+      }
+      
+      Iterator<State> it = values().iterator();
+      while (it.hasNext()) {
+        if (!it.next().isPending()) {
+          it.remove();
+          break;
+        }
+      }
+      return false;
+    }
+  }
+}
@@ -53,9 +53,13 @@ public class RouteTableConfig {
   private volatile long hasBeenActiveTimeoutInMillis 
     = TimeUtils.convert(5L*60L, TimeUnit.SECONDS, TimeUnit.MILLISECONDS);
   
+  private volatile long freshnessTimeoutInMillis 
+    = TimeUtils.convert(30L, TimeUnit.SECONDS, TimeUnit.MILLISECONDS);
+  
   // INIT
   {
-    pingConfig.setExecutorKey(ExecutorKey.BACKEND);
+    // PINGs of the same Contact are being sent one after the other
+    pingConfig.setExecutorKey(ExecutorKey.KEYED_SERIAL);
   }
   
   public RouteTableConfig() {
@@ -161,4 +165,21 @@ public class RouteTableConfig {
   public long getHasBeenActiveTimeoutInMillis() {
     return getHasBeenActiveTimeout(TimeUnit.MILLISECONDS);
   }
+  
+  /**
+   * Returns the amount of time a successful response from a 
+   * {@link Contact} is considered proof enough that it's alive. 
+   * No PINGs are being sent to such {@link Contact}s.
+   */
+  public long getFreshnessTimeout(TimeUnit unit) {
+    return unit.convert(freshnessTimeoutInMillis, TimeUnit.MILLISECONDS);
+  }
+  
+  public long getFreshnessTimeoutInMillis() {
+    return getFreshnessTimeout(TimeUnit.MILLISECONDS);
+  }
+  
+  public void setFreshnessTimeout(long timeout, TimeUnit unit) {
+    this.freshnessTimeoutInMillis = unit.toMillis(timeout);
+  }
 }
\ No newline at end of file
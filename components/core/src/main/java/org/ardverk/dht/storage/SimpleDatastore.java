@@ -1,27 +1,24 @@
 package org.ardverk.dht.storage;
 
 import java.io.Closeable;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
-import org.ardverk.concurrent.ExecutorUtils;
-import org.ardverk.concurrent.FutureUtils;
+import org.ardverk.dht.concurrent.DHTExecutor;
+import org.ardverk.dht.concurrent.ExecutorKey;
+import org.ardverk.dht.concurrent.TimerWheel;
+import org.ardverk.dht.concurrent.TimerWheel.Timeout;
 import org.ardverk.dht.rsrc.StringValue;
 import org.ardverk.dht.rsrc.Value;
 
 abstract class SimpleDatastore extends AbstractDatastore implements Closeable {
 
-  private static final ScheduledExecutorService EXECUTOR 
-    = ExecutorUtils.newSingleThreadScheduledExecutor("SimpleDatastoreThread");
-
   public static final Value OK = new StringValue("OK");
   
   public static final Value NOT_FOUND = new StringValue("Not Found");
   
   public static final Value INTERNAL_ERROR = new StringValue("Internal Error");
   
-  private final ScheduledFuture<?> future;
+  private final Timeout future;
   
   public SimpleDatastore(long frequency, TimeUnit unit) {
     this(frequency, frequency, unit);
@@ -29,16 +26,26 @@ abstract class SimpleDatastore extends AbstractDatastore implements Closeable {
   
   public SimpleDatastore(long frequency, final long timeout, final TimeUnit unit) {
     
-    ScheduledFuture<?> future = null;
+    Timeout future = null;
     if (0L < frequency && 0L < timeout) {
-      Runnable task = new Runnable() {
+      final Runnable evict = new Runnable() {
         @Override
         public void run() {
           evict(timeout, unit);
         }
       };
       
-      future = EXECUTOR.scheduleWithFixedDelay(
+      // The eviction may take a while and is therefore
+      // not being executed on the TimerWheel's Thread.
+      Runnable task = new Runnable() {
+        @Override
+        public void run() {
+          DHTExecutor.execute(ExecutorKey.KEYED_SERIAL, 
+              SimpleDatastore.this, evict);
+        }
+      };
+      
+      future = TimerWheel.getDefault().scheduleWithFixedDelay(
           task, frequency, frequency, unit);
     }
     
@@ -47,7 +54,9 @@ abstract class SimpleDatastore extends AbstractDatastore implements Closeable {
   
   @Override
   public void close() {
-    FutureUtils.cancel(future, true);
+    if (future != null) {
+      future.cancel();
+    }
   }
   
   protected abstract void evict(long timeout, TimeUnit unit);
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht.storage;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.ardverk.collection.FixedSizeHashMap;
+import org.ardverk.dht.routing.Contact;
+import org.ardverk.dht.rsrc.ByteArrayValue;
+import org.ardverk.dht.rsrc.Key;
+import org.ardverk.dht.rsrc.Value;
+import org.ardverk.dht.rsrc.ValueUtils;
+import org.ardverk.utils.TimeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link ValueCache} holds the cached copies of popular values
+ * that other nodes have asked us to keep along their lookup paths.
+ * It's separate from the {@link Datastore} so that cached copies
+ * never replace or outlive the values that were actually STOREd.
+ */
+@Singleton
+public class ValueCache {
+
+  private static final Logger LOG
+    = LoggerFactory.getLogger(ValueCache.class);
+
+  public static final int DEFAULT_MAX_SIZE = 1024;
+
+  private static final long DEFAULT_MAX_TIMEOUT
+    = TimeUtils.convert(1L, TimeUnit.HOURS, TimeUnit.MILLISECONDS);
+
+  private final Map<Key, CacheEntry> entries;
+
+  private volatile long maxTimeoutInMillis = DEFAULT_MAX_TIMEOUT;
+
+  @Inject
+  public ValueCache() {
+    this(DEFAULT_MAX_SIZE);
+  }
+
+  public ValueCache(int maxSize) {
+    this.entries = new FixedSizeHashMap<>(16, 0.75f, true, maxSize);
+  }
+
+  /**
+   * Returns the maximum amount of time we're willing to keep
+   * a cached copy no matter what the requester asked for.
+   */
+  public long getMaxTimeout(TimeUnit unit) {
+    return unit.convert(maxTimeoutInMillis, TimeUnit.MILLISECONDS);
+  }
+
+  public long getMaxTimeoutInMillis() {
+    return getMaxTimeout(TimeUnit.MILLISECONDS);
+  }
+
+  public void setMaxTimeout(long timeout, TimeUnit unit) {
+    this.maxTimeoutInMillis = unit.toMillis(timeout);
+  }
+
+  /**
+   * Keeps a cached copy of the given {@link Value} for the
+   * given amount of time.
+   */
+  public Value store(Contact src, Key key, Value value,
+      long timeout, TimeUnit unit) {
+
+    long timeoutInMillis = Math.min(unit.toMillis(timeout),
+        maxTimeoutInMillis);
+
+    if (timeoutInMillis <= 0L) {
+      return SimpleDatastore.NOT_FOUND;
+    }
+
+    try {
+      ByteArrayValue copy = ValueUtils.valueOf(ByteArrayValue.class, value);
+
+      synchronized (entries) {
+        if (copy.isEmpty()) {
+          entries.remove(key);
+        } else {
+          entries.put(key, new CacheEntry(copy, timeoutInMillis));
+        }
+      }
+    } catch (IOException err) {
+      LOG.error("IOException", err);
+      return SimpleDatastore.INTERNAL_ERROR;
+    }
+
+    return SimpleDatastore.OK;
+  }
+
+  /**
+   * Returns the cached copy for the given {@link Key} or {@code null}
+   * if there is none.
+   */
+  public Value get(Contact src, Key key) {
+    synchronized (entries) {
+      CacheEntry entry = entries.get(key);
+      if (entry == null) {
+        return null;
+      }
+
+      if (entry.isExpired()) {
+        entries.remove(key);
+        return null;
+      }
+
+      return entry.value;
+    }
+  }
+
+  /**
+   * Returns the number of cached copies.
+   */
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  /**
+   * Removes all cached copies.
+   */
+  public void clear() {
+    synchronized (entries) {
+      entries.clear();
+    }
+  }
+
+  private static class CacheEntry {
+
+    private final ByteArrayValue value;
+
+    private final long expirationTime;
+
+    private CacheEntry(ByteArrayValue value, long timeoutInMillis) {
+      this.value = value;
+      this.expirationTime = System.currentTimeMillis() + timeoutInMillis;
+    }
+
+    public boolean isExpired() {
+      return System.currentTimeMillis() >= expirationTime;
+    }
+  }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht.utils;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A concurrent {@link Set}-like structure that remembers its elements
+ * for (at least) a given amount of time. The elements are kept in a ring
+ * of time buckets and the oldest bucket is being dropped as a whole as
+ * time goes by. Its size is therefore proportional to the number of
+ * elements that were added within the timeout but never exceeds the
+ * given maximum size. Elements that don't fit are being rejected as if
+ * they had been seen before.
+ */
+public class ExpiringHashSet<E> {
+
+  public static final int DEFAULT_MAX_SIZE = 64 * 1024;
+
+  private final AtomicReferenceArray<Slot<E>> ring;
+
+  private final long slotTimeInMillis;
+
+  private final int maxSlotSize;
+
+  public ExpiringHashSet(long timeout, TimeUnit unit) {
+    this(timeout, unit, DEFAULT_MAX_SIZE);
+  }
+
+  public ExpiringHashSet(long timeout, TimeUnit unit, int maxSize) {
+    this(timeout, unit, 8, maxSize);
+  }
+
+  public ExpiringHashSet(long timeout, TimeUnit unit, int slots, int maxSize) {
+    if (timeout <= 0L) {
+      throw new IllegalArgumentException("timeout=" + timeout);
+    }
+
+    if (slots < 1) {
+      throw new IllegalArgumentException("slots=" + slots);
+    }
+
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("maxSize=" + maxSize);
+    }
+
+    // One extra Slot so that we keep the elements at least
+    // for the given amount of time.
+    this.ring = new AtomicReferenceArray<Slot<E>>(slots + 1);
+    this.slotTimeInMillis = Math.max(unit.toMillis(timeout) / slots, 1L);
+    this.maxSlotSize = Math.max(maxSize / ring.length(), 1);
+  }
+
+  /**
+   * Adds the given element and returns {@code true} if it wasn't
+   * already in the {@link ExpiringHashSet}. Returns {@code false}
+   * if it's full as the element couldn't be remembered.
+   */
+  public boolean add(E element) {
+    long generation = System.currentTimeMillis() / slotTimeInMillis;
+    int length = ring.length();
+
+    // Check the older slots first...
+    for (int i = 1; i < length; i++) {
+      Slot<E> slot = ring.get(index(generation - i));
+      if (slot != null && slot.isValid(generation, length)
+          && slot.elements.contains(element)) {
+        return false;
+      }
+    }
+
+    // ... and add it to the current one unless it's full. We'd
+    // otherwise accept the same element over and over again.
+    Slot<E> slot = current(generation);
+    if (slot.elements.contains(element)) {
+      return false;
+    }
+
+    if (slot.size.incrementAndGet() > maxSlotSize) {
+      slot.size.decrementAndGet();
+      return false;
+    }
+
+    if (!slot.elements.add(element)) {
+      slot.size.decrementAndGet();
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Returns {@code true} if the {@link ExpiringHashSet}
+   * contains the given element.
+   */
+  public boolean contains(E element) {
+    long generation = System.currentTimeMillis() / slotTimeInMillis;
+    int length = ring.length();
+
+    for (int i = 0; i < length; i++) {
+      Slot<E> slot = ring.get(index(generation - i));
+      if (slot != null && slot.isValid(generation, length)
+          && slot.elements.contains(element)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the (approximate) number of elements.
+   */
+  public int size() {
+    long generation = System.currentTimeMillis() / slotTimeInMillis;
+    int length = ring.length();
+
+    int size = 0;
+    for (int i = 0; i < length; i++) {
+      Slot<E> slot = ring.get(i);
+      if (slot != null && slot.isValid(generation, length)) {
+        size += slot.elements.size();
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Removes all elements.
+   */
+  public void clear() {
+    for (int i = 0; i < ring.length(); i++) {
+      ring.set(i, null);
+    }
+  }
+
+  private Slot<E> current(long generation) {
+    int index = index(generation);
+
+    while (true) {
+      Slot<E> slot = ring.get(index);
+      if (slot != null && slot.generation >= generation) {
+        return slot;
+      }
+
+      // Replace the expired Slot. Only one Thread wins.
+      Slot<E> update = new Slot<E>(generation);
+      if (ring.compareAndSet(index, slot, update)) {
+        return update;
+      }
+    }
+  }
+
+  private int index(long generation) {
+    return (int)(generation % ring.length());
+  }
+
+  private static class Slot<E> {
+
+    private final Set<E> elements = Collections.newSetFromMap(
+        new ConcurrentHashMap<E, Boolean>());
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final long generation;
+
+    private Slot(long generation) {
+      this.generation = generation;
+    }
+
+    public boolean isValid(long current, int length) {
+      return (current - generation) < length;
+    }
+  }
+}
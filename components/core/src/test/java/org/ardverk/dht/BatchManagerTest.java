@@ -0,0 +1,242 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.ardverk.dht.concurrent.DHTFuture;
+import org.ardverk.dht.concurrent.DHTValueFuture;
+import org.ardverk.dht.concurrent.Deadline;
+import org.ardverk.dht.config.ConfigProvider;
+import org.ardverk.dht.config.DefaultConfigFactory;
+import org.ardverk.dht.config.NodeConfig;
+import org.ardverk.dht.config.ValueConfig;
+import org.ardverk.dht.entity.NodeEntity;
+import org.ardverk.dht.entity.ValueEntity;
+import org.ardverk.dht.io.ValueListener;
+import org.ardverk.dht.routing.Contact;
+import org.ardverk.dht.routing.DefaultContact;
+import org.ardverk.dht.routing.RouteTable;
+import org.ardverk.dht.rsrc.DefaultKey;
+import org.ardverk.dht.rsrc.Key;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BatchManagerTest {
+  
+  private static final Key A = DefaultKey.valueOf("ardverk:///a");
+  
+  private static final Key B = DefaultKey.valueOf("ardverk:///b");
+  
+  private static final Key C = DefaultKey.valueOf("ardverk:///c");
+  
+  private static final Key D = DefaultKey.valueOf("ardverk:///d");
+  
+  private final Map<KUID, Contact[]> closest = new HashMap<>();
+  
+  private FutureManager futureManager;
+  
+  private TestDiscoveryManager discoveryManager;
+  
+  private BatchManager batchManager;
+  
+  @Before
+  public void setUp() {
+    ConfigProvider configProvider 
+      = new ConfigProvider(new DefaultConfigFactory(null));
+    
+    futureManager = new FutureManager();
+    discoveryManager = new TestDiscoveryManager(
+        configProvider, futureManager);
+    batchManager = new BatchManager(configProvider, futureManager, 
+        createRouteTable(), discoveryManager, null);
+  }
+  
+  @After
+  public void tearDown() {
+    futureManager.close();
+  }
+  
+  @Test
+  public void group() {
+    setClosest(createContacts(1), A, B);
+    setClosest(createContacts(2), C);
+    
+    Map<Key, DHTFuture<ValueEntity>> futures 
+      = batchManager.getAll(Arrays.asList(A, B, C), new ValueConfig());
+    
+    TestCase.assertEquals(Arrays.asList(A, B, C), 
+        new ArrayList<Key>(futures.keySet()));
+    
+    // A and B share a lookup and C is being looked up on its own
+    TestCase.assertEquals(1, discoveryManager.lookups.size());
+    TestCase.assertEquals(Arrays.asList(C), 
+        new ArrayList<Key>(discoveryManager.singles.keySet()));
+  }
+  
+  @Test
+  public void maxConcurrentLookups() {
+    setClosest(createContacts(1), A, B);
+    setClosest(createContacts(2), C, D);
+    
+    batchManager.setMaxConcurrentLookups(1);
+    Map<Key, DHTFuture<ValueEntity>> futures 
+      = batchManager.getAll(Arrays.asList(A, B, C, D), new ValueConfig());
+    
+    TestCase.assertEquals(1, discoveryManager.lookups.size());
+    
+    discoveryManager.lookups.get(0).setException(new IllegalStateException());
+    TestCase.assertTrue(futures.get(A).isCompletedAbnormally());
+    TestCase.assertTrue(futures.get(B).isCompletedAbnormally());
+    
+    // The second Group starts once the first one is done
+    TestCase.assertEquals(2, discoveryManager.lookups.size());
+    TestCase.assertFalse(futures.get(C).isDone());
+  }
+  
+  @Test
+  public void noTimeoutWhileQueued() throws InterruptedException {
+    setClosest(createContacts(1), A, B);
+    setClosest(createContacts(2), C, D);
+    
+    batchManager.setMaxConcurrentLookups(1);
+    Map<Key, DHTFuture<ValueEntity>> futures = batchManager.getAll(
+        Arrays.asList(A, B, C, D), 
+        new ValueConfig(50L, TimeUnit.MILLISECONDS));
+    
+    Thread.sleep(250L);
+    TestCase.assertFalse(futures.get(C).isDone());
+    TestCase.assertFalse(futures.get(D).isDone());
+    
+    discoveryManager.lookups.get(0).setException(new IllegalStateException());
+    TestCase.assertEquals(2, discoveryManager.lookups.size());
+    TestCase.assertFalse(futures.get(C).isDone());
+  }
+  
+  @Test
+  public void cancelKey() {
+    setClosest(createContacts(1), A, B);
+    setClosest(createContacts(2), C, D);
+    
+    batchManager.setMaxConcurrentLookups(1);
+    Map<Key, DHTFuture<ValueEntity>> futures 
+      = batchManager.getAll(Arrays.asList(A, B, C, D), new ValueConfig());
+    
+    DHTFuture<NodeEntity> lookup = discoveryManager.lookups.get(0);
+    
+    // B is still waiting for the shared lookup
+    futures.get(A).cancel(true);
+    TestCase.assertFalse(lookup.isDone());
+    TestCase.assertFalse(futures.get(B).isDone());
+    TestCase.assertEquals(1, discoveryManager.lookups.size());
+    
+    // Nobody is waiting for it anymore
+    futures.get(B).cancel(true);
+    TestCase.assertTrue(lookup.isCancelled());
+    TestCase.assertEquals(2, discoveryManager.lookups.size());
+  }
+  
+  private void setClosest(Contact[] contacts, Key... keys) {
+    for (Key key : keys) {
+      closest.put(key.getId(), contacts);
+    }
+  }
+  
+  private static Contact[] createContacts(int prefix) {
+    Contact[] contacts = new Contact[3];
+    for (int i = 0; i < contacts.length; i++) {
+      byte[] contactId = new byte[20];
+      contactId[0] = (byte)prefix;
+      contactId[19] = (byte)i;
+      contacts[i] = new DefaultContact(KUID.create(contactId), 
+          new InetSocketAddress("localhost", 2000 + i));
+    }
+    return contacts;
+  }
+  
+  private RouteTable createRouteTable() {
+    InvocationHandler handler = new InvocationHandler() {
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+          case "getK":
+            return 20;
+          case "select":
+            Contact[] contacts = closest.get(args[0]);
+            return contacts != null ? contacts : new Contact[0];
+          default:
+            throw new UnsupportedOperationException(method.getName());
+        }
+      }
+    };
+    
+    return (RouteTable)Proxy.newProxyInstance(
+        RouteTable.class.getClassLoader(), 
+        new Class<?>[] { RouteTable.class }, handler);
+  }
+  
+  /**
+   * A {@link DiscoveryManager} that records the operations instead 
+   * of sending any messages.
+   */
+  private static class TestDiscoveryManager extends DiscoveryManager {
+    
+    private final List<DHTFuture<NodeEntity>> lookups = new ArrayList<>();
+    
+    private final Map<Key, DHTFuture<ValueEntity>> singles 
+      = new LinkedHashMap<>();
+    
+    public TestDiscoveryManager(ConfigProvider configProvider, 
+        FutureManager futureManager) {
+      super(configProvider, null, null, null, futureManager, null);
+    }
+    
+    @Override
+    public DHTFuture<NodeEntity> discover(KUID lookupId, 
+        NodeConfig config, Deadline deadline) {
+      DHTFuture<NodeEntity> future = new DHTValueFuture<NodeEntity>();
+      lookups.add(future);
+      return future;
+    }
+    
+    @Override
+    public DHTFuture<ValueEntity> get(Key key, ValueConfig config) {
+      DHTFuture<ValueEntity> future = new DHTValueFuture<ValueEntity>();
+      singles.put(key, future);
+      return future;
+    }
+    
+    @Override
+    public DHTFuture<ValueEntity> get(Contact[] contacts, Key key, 
+        ValueListener listener, ValueConfig config, Deadline deadline) {
+      return new DHTValueFuture<ValueEntity>();
+    }
+  }
+}
\ No newline at end of file
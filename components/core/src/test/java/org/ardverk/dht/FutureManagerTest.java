@@ -0,0 +1,125 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import junit.framework.TestCase;
+
+import org.ardverk.concurrent.AsyncProcessFuture;
+import org.ardverk.dht.FutureManager.AdmissionPolicy;
+import org.ardverk.dht.concurrent.DHTFuture;
+import org.ardverk.dht.concurrent.DHTProcess;
+import org.ardverk.dht.concurrent.ExecutorKey;
+import org.junit.Test;
+
+public class FutureManagerTest {
+  
+  private static final DHTProcess<Object> PROCESS = new DHTProcess<Object>() {
+    @Override
+    public void start(AsyncProcessFuture<Object> future) {
+    }
+  };
+  
+  @Test
+  public void reject() {
+    FutureManager futureManager = new FutureManager();
+    try {
+      futureManager.setMaxInFlight(ExecutorKey.PARALLEL, 1);
+      
+      futureManager.submit(ExecutorKey.PARALLEL, 
+          PROCESS, 1L, TimeUnit.MINUTES);
+      TestCase.assertEquals(1, futureManager.getInFlight(ExecutorKey.PARALLEL));
+      
+      try {
+        futureManager.submit(ExecutorKey.PARALLEL, 
+            PROCESS, 1L, TimeUnit.MINUTES);
+        TestCase.fail("Should have failed!");
+      } catch (RejectedExecutionException expected) {
+      }
+      
+      TestCase.assertEquals(1, futureManager.getInFlight());
+      TestCase.assertEquals(1L, futureManager.getRejectedCount(ExecutorKey.PARALLEL));
+      
+      // Other ExecutorKeys have their own limit
+      futureManager.submit(ExecutorKey.MAINTENANCE, 
+          PROCESS, 1L, TimeUnit.MINUTES);
+      TestCase.assertEquals(2, futureManager.getInFlight());
+    } finally {
+      futureManager.close();
+    }
+  }
+  
+  @Test
+  public void queue() {
+    FutureManager futureManager = new FutureManager();
+    try {
+      futureManager.setAdmissionPolicy(AdmissionPolicy.QUEUE);
+      futureManager.setMaxInFlight(ExecutorKey.PARALLEL, 1);
+      
+      futureManager.submit(ExecutorKey.PARALLEL, 
+          PROCESS, 1L, TimeUnit.MINUTES);
+      DHTFuture<Object> future = futureManager.submit(
+          ExecutorKey.PARALLEL, PROCESS, 1L, TimeUnit.MINUTES);
+      
+      TestCase.assertEquals(1, futureManager.getInFlight(ExecutorKey.PARALLEL));
+      TestCase.assertEquals(1, futureManager.getQueued(ExecutorKey.PARALLEL));
+      TestCase.assertEquals(0L, futureManager.getRejectedCount());
+      
+      // A larger limit starts the queued operation
+      futureManager.setMaxInFlight(ExecutorKey.PARALLEL, 2);
+      TestCase.assertEquals(2, futureManager.getInFlight(ExecutorKey.PARALLEL));
+      TestCase.assertEquals(0, futureManager.getQueued(ExecutorKey.PARALLEL));
+      TestCase.assertFalse(future.isDone());
+    } finally {
+      futureManager.close();
+    }
+  }
+  
+  @Test
+  public void queueTimeout() throws InterruptedException {
+    FutureManager futureManager = new FutureManager();
+    try {
+      futureManager.setAdmissionPolicy(AdmissionPolicy.QUEUE);
+      futureManager.setMaxInFlight(ExecutorKey.PARALLEL, 1);
+      
+      futureManager.submit(ExecutorKey.PARALLEL, 
+          PROCESS, 1L, TimeUnit.MINUTES);
+      DHTFuture<Object> future = futureManager.submit(
+          ExecutorKey.PARALLEL, PROCESS, 50L, TimeUnit.MILLISECONDS);
+      TestCase.assertEquals(1, futureManager.getQueued(ExecutorKey.PARALLEL));
+      
+      Thread.sleep(250L);
+      
+      // It never got a slot and timed out in the queue
+      TestCase.assertEquals(0, futureManager.getQueued(ExecutorKey.PARALLEL));
+      TestCase.assertEquals(1, futureManager.getInFlight(ExecutorKey.PARALLEL));
+      
+      try {
+        future.get();
+        TestCase.fail("Should have failed!");
+      } catch (ExecutionException expected) {
+        TestCase.assertTrue(expected.getCause() instanceof TimeoutException);
+      }
+    } finally {
+      futureManager.close();
+    }
+  }
+}
\ No newline at end of file
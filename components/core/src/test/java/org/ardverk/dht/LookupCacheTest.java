@@ -0,0 +1,92 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.ardverk.dht.routing.Contact;
+import org.ardverk.dht.routing.Contact.Type;
+import org.ardverk.dht.routing.DefaultContact;
+import org.junit.Test;
+
+
+public class LookupCacheTest {
+
+  @Test
+  public void get() throws InterruptedException {
+    LookupCache cache = new LookupCache(LookupCache.DEFAULT_MAX_SIZE);
+
+    KUID lookupId = KUID.createRandom(20);
+    Contact[] contacts = { createContact(), createContact() };
+
+    TestCase.assertNull(cache.get(lookupId));
+
+    cache.put(lookupId, contacts);
+    TestCase.assertEquals(1, cache.size());
+    TestCase.assertEquals(2, cache.get(lookupId).length);
+
+    Thread.sleep(50L);
+    TestCase.assertNull(cache.get(lookupId, 10L, TimeUnit.MILLISECONDS));
+    TestCase.assertNotNull(cache.get(lookupId, 1L, TimeUnit.MINUTES));
+
+    cache.setTimeout(10L, TimeUnit.MILLISECONDS);
+    TestCase.assertNull(cache.get(lookupId, 1L, TimeUnit.MINUTES));
+    TestCase.assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void invalidate() {
+    LookupCache cache = new LookupCache(LookupCache.DEFAULT_MAX_SIZE);
+
+    Contact contact = createContact();
+
+    KUID lookupId1 = KUID.createRandom(20);
+    KUID lookupId2 = KUID.createRandom(20);
+
+    cache.put(lookupId1, new Contact[] { contact, createContact() });
+    cache.put(lookupId2, new Contact[] { createContact() });
+    TestCase.assertEquals(2, cache.size());
+
+    cache.invalidate(contact);
+
+    TestCase.assertNull(cache.get(lookupId1));
+    TestCase.assertNotNull(cache.get(lookupId2));
+  }
+
+  @Test
+  public void maxSize() {
+    LookupCache cache = new LookupCache(2);
+
+    KUID lookupId = KUID.createRandom(20);
+    cache.put(lookupId, new Contact[] { createContact() });
+
+    for (int i = 0; i < 10; i++) {
+      cache.put(KUID.createRandom(20), new Contact[] { createContact() });
+    }
+
+    TestCase.assertEquals(2, cache.size());
+    TestCase.assertNull(cache.get(lookupId));
+  }
+
+  private static Contact createContact() {
+    return new DefaultContact(Type.SOLICITED, KUID.createRandom(20),
+        0, false, new InetSocketAddress("localhost", 2000));
+  }
+}
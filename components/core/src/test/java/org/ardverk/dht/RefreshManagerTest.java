@@ -0,0 +1,134 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.ardverk.dht.RefreshManager.Budget;
+import org.ardverk.dht.RefreshManager.Candidate;
+import org.ardverk.dht.config.RefreshConfig;
+import org.ardverk.dht.routing.Contact;
+import org.ardverk.dht.routing.Contact.Type;
+import org.ardverk.dht.routing.DefaultContact;
+import org.ardverk.dht.routing.DefaultRouteTable;
+import org.ardverk.dht.routing.Identity;
+import org.ardverk.dht.routing.LivenessTracker;
+import org.ardverk.dht.routing.RouteTableConfig;
+import org.junit.Test;
+
+public class RefreshManagerTest {
+  
+  @Test
+  public void budget() throws InterruptedException {
+    Budget budget = new Budget(10f, 3);
+    
+    // It starts empty
+    budget.refill();
+    TestCase.assertFalse(budget.tryAcquire(1));
+    
+    Thread.sleep(250L);
+    budget.refill();
+    TestCase.assertTrue(budget.tryAcquire(1));
+    TestCase.assertFalse(budget.tryAcquire(3));
+    
+    // It never holds more than a second worth of messages
+    Thread.sleep(1500L);
+    budget.refill();
+    TestCase.assertTrue(budget.tryAcquire(10));
+    TestCase.assertFalse(budget.tryAcquire(1));
+  }
+  
+  @Test
+  public void lookupCost() throws InterruptedException {
+    // A single lookup costs more than a second worth of messages
+    Budget budget = new Budget(2f, 3);
+    
+    Thread.sleep(2000L);
+    budget.refill();
+    TestCase.assertTrue(budget.tryAcquire(3));
+    TestCase.assertFalse(budget.tryAcquire(1));
+  }
+  
+  @Test
+  public void selectContacts() throws InterruptedException {
+    DefaultRouteTable routeTable = createRouteTable();
+    
+    Contact older = createContact();
+    routeTable.add(older);
+    
+    Thread.sleep(50L);
+    
+    Contact newer = createContact();
+    routeTable.add(newer);
+    
+    RefreshManager refreshManager = createRefreshManager(routeTable);
+    
+    RefreshConfig config = new RefreshConfig();
+    config.setJitter(0f);
+    config.setBucketTimeout(-1L, TimeUnit.MILLISECONDS);
+    
+    // Nobody is stale yet
+    config.setContactTimeout(1L, TimeUnit.MINUTES);
+    TestCase.assertTrue(refreshManager.select(config).isEmpty());
+    
+    // Everyone but the localhost is stale, the oldest first
+    config.setContactTimeout(0L, TimeUnit.MILLISECONDS);
+    List<Candidate> candidates = refreshManager.select(config);
+    TestCase.assertEquals(2, candidates.size());
+    TestCase.assertEquals(older.getId(), candidates.get(0).getId());
+    TestCase.assertEquals(newer.getId(), candidates.get(1).getId());
+  }
+  
+  @Test
+  public void selectBuckets() {
+    DefaultRouteTable routeTable = createRouteTable();
+    routeTable.add(createContact());
+    
+    RefreshManager refreshManager = createRefreshManager(routeTable);
+    
+    RefreshConfig config = new RefreshConfig();
+    config.setJitter(0f);
+    config.setContactTimeout(-1L, TimeUnit.MILLISECONDS);
+    config.setBucketTimeout(0L, TimeUnit.MILLISECONDS);
+    
+    // There is only the localhost's Bucket and it's never 
+    // being refreshed.
+    TestCase.assertEquals(1, routeTable.getBuckets().length);
+    TestCase.assertTrue(refreshManager.select(config).isEmpty());
+  }
+  
+  private static RefreshManager createRefreshManager(
+      DefaultRouteTable routeTable) {
+    return new RefreshManager(null, null, 
+        routeTable, new LivenessTracker());
+  }
+  
+  private static DefaultRouteTable createRouteTable() {
+    Identity localhost = new Identity(20, 
+        new InetSocketAddress("localhost", 2000));
+    return new DefaultRouteTable(new RouteTableConfig(20), localhost);
+  }
+  
+  private static Contact createContact() {
+    return new DefaultContact(Type.SOLICITED, KUID.createRandom(20),
+        0, false, new InetSocketAddress("localhost", 2000));
+  }
+}
\ No newline at end of file
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.ardverk.dht.SingleFlight.Operation;
+import org.ardverk.dht.concurrent.DHTFuture;
+import org.ardverk.dht.concurrent.DHTValueFuture;
+import org.ardverk.dht.config.NodeConfig;
+import org.junit.Test;
+
+public class SingleFlightTest {
+  
+  @Test
+  public void coalesce() throws Exception {
+    FutureManager futureManager = new FutureManager();
+    try {
+      SingleFlight<String, String> flights 
+        = new SingleFlight<String, String>(futureManager);
+      TestOperation operation = new TestOperation();
+      
+      DHTFuture<String> future1 = flights.submit("hello", 
+          operation, new NodeConfig(), 0L, TimeUnit.MILLISECONDS);
+      DHTFuture<String> future2 = flights.submit("hello", 
+          operation, new NodeConfig(), 0L, TimeUnit.MILLISECONDS);
+      
+      TestCase.assertNotSame(future1, future2);
+      TestCase.assertEquals(1, operation.count.get());
+      TestCase.assertEquals(1, flights.size());
+      
+      // A different key is a different operation
+      flights.submit("world", operation, 
+          new NodeConfig(), 0L, TimeUnit.MILLISECONDS);
+      TestCase.assertEquals(2, operation.count.get());
+      TestCase.assertEquals(2, flights.size());
+      
+      operation.futures[0].setValue("Hello World");
+      TestCase.assertEquals("Hello World", future1.get());
+      TestCase.assertEquals("Hello World", future2.get());
+    } finally {
+      futureManager.close();
+    }
+  }
+  
+  @Test
+  public void reuse() throws Exception {
+    FutureManager futureManager = new FutureManager();
+    try {
+      SingleFlight<String, String> flights 
+        = new SingleFlight<String, String>(futureManager);
+      TestOperation operation = new TestOperation();
+      
+      flights.submit("hello", operation, 
+          new NodeConfig(), 100L, TimeUnit.MILLISECONDS);
+      operation.futures[0].setValue("Hello World");
+      
+      // The result is being reused for a while
+      DHTFuture<String> future = flights.submit("hello", operation, 
+          new NodeConfig(), 100L, TimeUnit.MILLISECONDS);
+      TestCase.assertEquals(1, operation.count.get());
+      TestCase.assertEquals("Hello World", future.get());
+      
+      Thread.sleep(250L);
+      TestCase.assertEquals(0, flights.size());
+      
+      flights.submit("hello", operation, 
+          new NodeConfig(), 100L, TimeUnit.MILLISECONDS);
+      TestCase.assertEquals(2, operation.count.get());
+    } finally {
+      futureManager.close();
+    }
+  }
+  
+  @Test
+  public void failure() throws Exception {
+    FutureManager futureManager = new FutureManager();
+    try {
+      SingleFlight<String, String> flights 
+        = new SingleFlight<String, String>(futureManager);
+      TestOperation operation = new TestOperation();
+      
+      DHTFuture<String> future = flights.submit("hello", operation, 
+          new NodeConfig(), 1L, TimeUnit.MINUTES);
+      operation.futures[0].setException(new IllegalStateException());
+      
+      try {
+        future.get();
+        TestCase.fail("Should have failed!");
+      } catch (ExecutionException expected) {
+        TestCase.assertTrue(expected.getCause() 
+            instanceof IllegalStateException);
+      }
+      
+      // Failed operations are never being reused
+      TestCase.assertEquals(0, flights.size());
+      
+      flights.submit("hello", operation, 
+          new NodeConfig(), 1L, TimeUnit.MINUTES);
+      TestCase.assertEquals(2, operation.count.get());
+    } finally {
+      futureManager.close();
+    }
+  }
+  
+  @Test
+  public void rejected() {
+    FutureManager futureManager = new FutureManager();
+    try {
+      SingleFlight<String, String> flights 
+        = new SingleFlight<String, String>(futureManager);
+      
+      Operation<String> operation = new Operation<String>() {
+        @Override
+        public DHTFuture<String> start() {
+          throw new RejectedExecutionException();
+        }
+      };
+      
+      try {
+        flights.submit("hello", operation, 
+            new NodeConfig(), 1L, TimeUnit.MINUTES);
+        TestCase.fail("Should have failed!");
+      } catch (RejectedExecutionException expected) {
+      }
+      
+      TestCase.assertEquals(0, flights.size());
+    } finally {
+      futureManager.close();
+    }
+  }
+  
+  private static class TestOperation implements Operation<String> {
+    
+    private final AtomicInteger count = new AtomicInteger();
+    
+    @SuppressWarnings("unchecked")
+    private final DHTValueFuture<String>[] futures = new DHTValueFuture[4];
+    
+    @Override
+    public DHTFuture<String> start() {
+      DHTValueFuture<String> future = new DHTValueFuture<String>();
+      futures[count.getAndIncrement()] = future;
+      return future;
+    }
+  }
+}
\ No newline at end of file
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht;
+
+import java.net.InetSocketAddress;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.ardverk.dht.routing.Contact;
+import org.ardverk.dht.routing.Contact.Type;
+import org.ardverk.dht.routing.DefaultContact;
+import org.junit.Test;
+
+public class StoreManagerTest {
+  
+  @Test
+  public void selectReplicas() {
+    Contact[] contacts = createContacts(4);
+    
+    Set<KUID> attempted = new HashSet<KUID>();
+    Set<KUID> failed = new HashSet<KUID>();
+    
+    List<Contact> replicas = StoreManager.selectReplicas(
+        contacts, attempted, failed, 2);
+    TestCase.assertEquals(2, replicas.size());
+    TestCase.assertSame(contacts[0], replicas.get(0));
+    TestCase.assertSame(contacts[1], replicas.get(1));
+    
+    // There are two pending STOREs
+    TestCase.assertTrue(StoreManager.selectReplicas(
+        contacts, attempted, failed, 2).isEmpty());
+  }
+  
+  @Test
+  public void topUp() {
+    Contact[] contacts = createContacts(4);
+    
+    Set<KUID> attempted = new HashSet<KUID>();
+    Set<KUID> failed = new HashSet<KUID>();
+    
+    // The early STOREs go to the stable Contacts
+    Contact[] stable = { contacts[0], contacts[1] };
+    TestCase.assertEquals(2, StoreManager.selectReplicas(
+        stable, attempted, failed, 2).size());
+    
+    // One of them fails and the next Contact takes its place
+    failed.add(contacts[0].getId());
+    List<Contact> replicas = StoreManager.selectReplicas(
+        contacts, attempted, failed, 2);
+    TestCase.assertEquals(1, replicas.size());
+    TestCase.assertSame(contacts[2], replicas.get(0));
+    
+    // A failed Contact is never being retried
+    failed.add(contacts[2].getId());
+    replicas = StoreManager.selectReplicas(
+        contacts, attempted, failed, 2);
+    TestCase.assertEquals(1, replicas.size());
+    TestCase.assertSame(contacts[3], replicas.get(0));
+    
+    failed.add(contacts[3].getId());
+    TestCase.assertTrue(StoreManager.selectReplicas(
+        contacts, attempted, failed, 2).isEmpty());
+  }
+  
+  private static Contact[] createContacts(int count) {
+    Contact[] contacts = new Contact[count];
+    for (int i = 0; i < contacts.length; i++) {
+      contacts[i] = new DefaultContact(Type.SOLICITED, 
+          KUID.createRandom(20), 0, false, 
+          new InetSocketAddress("localhost", 2000));
+    }
+    return contacts;
+  }
+}
\ No newline at end of file
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht;
+
+import java.io.ByteArrayInputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.ardverk.dht.entity.ValueEntity;
+import org.ardverk.dht.io.Outcome;
+import org.ardverk.dht.message.DefaultValueResponse;
+import org.ardverk.dht.message.MessageId;
+import org.ardverk.dht.message.ValueResponse;
+import org.ardverk.dht.routing.Contact;
+import org.ardverk.dht.routing.Contact.Type;
+import org.ardverk.dht.routing.DefaultContact;
+import org.ardverk.dht.rsrc.ByteArrayValue;
+import org.ardverk.dht.rsrc.DefaultKey;
+import org.ardverk.dht.rsrc.InputStreamValue;
+import org.ardverk.dht.rsrc.Key;
+import org.ardverk.dht.rsrc.Value;
+import org.junit.Test;
+
+
+public class ValueEntityCacheTest {
+
+  @Test
+  public void get() throws InterruptedException {
+    ValueEntityCache cache = new ValueEntityCache(
+        ValueEntityCache.DEFAULT_MAX_SIZE);
+    
+    Key key = DefaultKey.valueOf("ardverk:///hello");
+    ValueEntity entity = createEntity(new ByteArrayValue(new byte[] { 1 }));
+    
+    TestCase.assertNull(cache.get(key));
+    TestCase.assertTrue(cache.put(key, entity));
+    TestCase.assertSame(entity, cache.get(key));
+    TestCase.assertEquals(1L, cache.getHitCount());
+    
+    // Too old for the caller but not expired
+    Thread.sleep(50L);
+    TestCase.assertNull(cache.get(key, 10L, TimeUnit.MILLISECONDS));
+    TestCase.assertEquals(1, cache.size());
+    
+    TestCase.assertSame(entity, cache.get(key));
+  }
+  
+  @Test
+  public void expire() throws InterruptedException {
+    ValueEntityCache cache = new ValueEntityCache(
+        ValueEntityCache.DEFAULT_MAX_SIZE);
+    cache.setTimeout(10L, TimeUnit.MILLISECONDS);
+    
+    Key key = DefaultKey.valueOf("ardverk:///hello");
+    ValueEntity entity = createEntity(new ByteArrayValue(new byte[] { 1 }));
+    
+    TestCase.assertTrue(cache.put(key, entity));
+    TestCase.assertEquals(1, cache.size());
+    
+    Thread.sleep(50L);
+    TestCase.assertNull(cache.get(key));
+    TestCase.assertEquals(0, cache.size());
+  }
+  
+  @Test
+  public void lru() {
+    ValueEntityCache cache = new ValueEntityCache(2);
+    
+    Key key1 = DefaultKey.valueOf("ardverk:///hello/1");
+    Key key2 = DefaultKey.valueOf("ardverk:///hello/2");
+    Key key3 = DefaultKey.valueOf("ardverk:///hello/3");
+    
+    ValueEntity entity = createEntity(new ByteArrayValue(new byte[] { 1 }));
+    
+    cache.put(key1, entity);
+    cache.put(key2, entity);
+    
+    // Touch the first entry to make the second the eldest
+    TestCase.assertNotNull(cache.get(key1));
+    
+    cache.put(key3, entity);
+    
+    TestCase.assertEquals(2, cache.size());
+    TestCase.assertNotNull(cache.get(key1));
+    TestCase.assertNull(cache.get(key2));
+    TestCase.assertNotNull(cache.get(key3));
+  }
+  
+  @Test
+  public void notRepeatable() {
+    ValueEntityCache cache = new ValueEntityCache(
+        ValueEntityCache.DEFAULT_MAX_SIZE);
+    
+    Key key = DefaultKey.valueOf("ardverk:///hello");
+    ValueEntity entity = createEntity(new InputStreamValue(1L, 
+        new ByteArrayInputStream(new byte[] { 1 })));
+    
+    TestCase.assertFalse(cache.put(key, entity));
+    TestCase.assertEquals(0, cache.size());
+  }
+  
+  @Test
+  public void revalidate() {
+    ValueEntityCache cache = new ValueEntityCache(
+        ValueEntityCache.DEFAULT_MAX_SIZE);
+    cache.setRevalidator(new TestRevalidator());
+    
+    ValueEntity cached = createEntity(new ByteArrayValue(new byte[] { 1 }));
+    ValueEntity entity = createEntity(NOT_MODIFIED, NOT_MODIFIED);
+    
+    TestCase.assertSame(cached, cache.revalidate(entity, cached));
+    TestCase.assertEquals(1L, cache.getNotModifiedCount());
+  }
+  
+  @Test
+  public void revalidateModified() {
+    ValueEntityCache cache = new ValueEntityCache(
+        ValueEntityCache.DEFAULT_MAX_SIZE);
+    cache.setRevalidator(new TestRevalidator());
+    
+    ValueEntity cached = createEntity(new ByteArrayValue(new byte[] { 1 }));
+    Value modified = new ByteArrayValue(new byte[] { 2 });
+    
+    // The first response has a new value and a later one says 
+    // it's not modified. The latter must not end up in the cache.
+    ValueEntity entity = cache.revalidate(
+        createEntity(modified, NOT_MODIFIED), cached);
+    TestCase.assertEquals(1, entity.ValueResponses().length);
+    TestCase.assertSame(modified, entity.ValueResponses()[0].getValue());
+    
+    // The first response says it's not modified but a later
+    // one has a newer value.
+    entity = cache.revalidate(
+        createEntity(NOT_MODIFIED, modified), cached);
+    TestCase.assertEquals(1, entity.ValueResponses().length);
+    TestCase.assertSame(modified, entity.ValueResponses()[0].getValue());
+    
+    TestCase.assertEquals(0L, cache.getNotModifiedCount());
+  }
+  
+  private static final Value NOT_MODIFIED 
+    = new ByteArrayValue(new byte[] { 0 });
+  
+  /**
+   * A {@link Revalidator} that says a {@link Value} is not modified
+   * if it's {@link #NOT_MODIFIED}.
+   */
+  private static class TestRevalidator implements ValueEntityCache.Revalidator {
+    
+    @Override
+    public Key createConditionalKey(Key key, Value value) {
+      return key;
+    }
+    
+    @Override
+    public boolean isNotModified(Value value) {
+      return value == NOT_MODIFIED;
+    }
+  }
+  
+  private static ValueEntity createEntity(Value... values) {
+    ValueResponse[] responses = new ValueResponse[values.length];
+    for (int i = 0; i < values.length; i++) {
+      Contact contact = createContact();
+      responses[i] = new DefaultValueResponse(
+          MessageId.createRandom(20), contact, 
+          contact.getRemoteAddress(), values[i]);
+    }
+    return new ValueEntity(createOutcome(), responses);
+  }
+  
+  private static Outcome createOutcome() {
+    final KUID lookupId = KUID.createRandom(20);
+    return new Outcome() {
+      @Override
+      public KUID getId() {
+        return lookupId;
+      }
+      
+      @Override
+      public Contact[] getClosest() {
+        return new Contact[0];
+      }
+      
+      @Override
+      public Contact[] getContacts() {
+        return new Contact[0];
+      }
+      
+      @Override
+      public int getHop() {
+        return 0;
+      }
+      
+      @Override
+      public int getErrorCount() {
+        return 0;
+      }
+      
+      @Override
+      public long getTime(TimeUnit unit) {
+        return 0L;
+      }
+    };
+  }
+  
+  private static Contact createContact() {
+    return new DefaultContact(Type.SOLICITED, KUID.createRandom(20),
+        0, false, new InetSocketAddress("localhost", 2000));
+  }
+}
\ No newline at end of file
@@ -21,19 +21,32 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.util.concurrent.TimeUnit;
 
 import junit.framework.TestCase;
 
 import org.ardverk.dht.KUID;
 import org.ardverk.dht.codec.MessageCodec.Decoder;
 import org.ardverk.dht.codec.MessageCodec.Encoder;
+import org.ardverk.dht.message.DefaultNodeRequest;
 import org.ardverk.dht.message.DefaultPingRequest;
+import org.ardverk.dht.message.DefaultStoreBatchRequest;
+import org.ardverk.dht.message.DefaultStoreRequest;
 import org.ardverk.dht.message.Message;
 import org.ardverk.dht.message.MessageId;
+import org.ardverk.dht.message.NodeRequest;
 import org.ardverk.dht.message.PingRequest;
+import org.ardverk.dht.message.StoreBatchRequest;
+import org.ardverk.dht.message.StoreRequest;
 import org.ardverk.dht.routing.Contact;
 import org.ardverk.dht.routing.Contact.Type;
+import org.ardverk.dht.routing.Coordinate;
 import org.ardverk.dht.routing.DefaultContact;
+import org.ardverk.dht.rsrc.ByteArrayValue;
+import org.ardverk.dht.rsrc.DefaultKey;
+import org.ardverk.dht.rsrc.Key;
+import org.ardverk.dht.rsrc.Value;
+import org.ardverk.utils.StringUtils;
 import org.junit.Test;
 
 
@@ -66,4 +79,203 @@ public class BencodeMessageCodecTest {
     
     TestCase.assertTrue(message instanceof PingRequest);
   }
+  
+  @Test
+  public void encodeDecodeStoreBatch() throws IOException {
+    BencodeMessageCodec codec 
+      = new BencodeMessageCodec();
+    
+    MessageId messageId = MessageId.createRandom(20);
+    KUID contactId = KUID.createRandom(20);
+    
+    Contact contact = new DefaultContact(Type.SOLICITED, 
+        contactId, 0, false,
+        new InetSocketAddress("localhost", 6666));
+    
+    SocketAddress address = new InetSocketAddress("localhost", 6666);
+    
+    Key[] keys = {
+      DefaultKey.valueOf("ardverk:///hello"),
+      DefaultKey.valueOf("ardverk:///world"),
+    };
+    
+    Value[] values = {
+      new ByteArrayValue(StringUtils.getBytes("Hello")),
+      new ByteArrayValue(StringUtils.getBytes("World")),
+    };
+    
+    StoreBatchRequest request = new DefaultStoreBatchRequest(
+        messageId, contact, address, keys, values);
+    
+    // Batches are only written to nodes that have sent us a 
+    // Message in a Version that supports them.
+    receive(codec, contact, address);
+    
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    Encoder encoder = codec.createEncoder(baos);
+    encoder.write(request);
+    encoder.close();
+    
+    ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray());
+    Decoder decoder = codec.createDecoder(address, bais);
+    Message message = decoder.read();
+    decoder.close();
+    
+    TestCase.assertTrue(message instanceof StoreBatchRequest);
+    
+    StoreBatchRequest decoded = (StoreBatchRequest)message;
+    TestCase.assertEquals(2, decoded.size());
+    TestCase.assertEquals(keys[1].getURI(), decoded.getKeys()[1].getURI());
+    TestCase.assertEquals(5L, decoded.getValues()[1].getContentLength());
+  }
+  
+  @Test
+  public void writeBaselineVersion() throws IOException {
+    BencodeMessageCodec codec 
+      = new BencodeMessageCodec();
+    
+    Contact contact = createContact();
+    SocketAddress address = new InetSocketAddress("localhost", 6666);
+    
+    NodeRequest nodeRequest = new DefaultNodeRequest(
+        MessageId.createRandom(20), contact, address, 
+        KUID.createRandom(20), 2);
+    
+    NodeRequest node = (NodeRequest)readBaseline(
+        encode(codec, nodeRequest), address);
+    TestCase.assertNull(node.getContact().getCoordinate());
+    TestCase.assertEquals(0, node.getHopLimit());
+    
+    StoreRequest storeRequest = new DefaultStoreRequest(
+        MessageId.createRandom(20), contact, address, 
+        DefaultKey.valueOf("ardverk:///hello"), 
+        new ByteArrayValue(StringUtils.getBytes("Hello")), 
+        10L, TimeUnit.SECONDS);
+    
+    StoreRequest store = (StoreRequest)readBaseline(
+        encode(codec, storeRequest), address);
+    TestCase.assertEquals(0L, store.getCacheTimeoutInMillis());
+    TestCase.assertEquals(5L, store.getValue().getContentLength());
+  }
+  
+  @Test
+  public void writeRemoteVersion() throws IOException {
+    BencodeMessageCodec codec 
+      = new BencodeMessageCodec();
+    
+    Contact contact = createContact();
+    SocketAddress address = new InetSocketAddress("localhost", 6666);
+    
+    TestCase.assertEquals(Constants.MIN_VERSION, codec.getVersion(address));
+    receive(codec, contact, address);
+    TestCase.assertEquals(Constants.VERSION, codec.getVersion(address));
+    
+    NodeRequest request = new DefaultNodeRequest(
+        MessageId.createRandom(20), contact, address, 
+        KUID.createRandom(20), 2);
+    
+    MessageInputStream in = new MessageInputStream(
+        new ByteArrayInputStream(encode(codec, request)));
+    NodeRequest message = (NodeRequest)in.readMessage(address);
+    in.close();
+    
+    TestCase.assertEquals(Constants.VERSION, in.getVersion());
+    TestCase.assertEquals(2, message.getHopLimit());
+    TestCase.assertNotNull(message.getContact().getCoordinate());
+  }
+  
+  @Test
+  public void writeDefaultVersion() throws IOException {
+    BencodeMessageCodec codec 
+      = new BencodeMessageCodec();
+    codec.setDefaultVersion(Constants.VERSION);
+    
+    SocketAddress address = new InetSocketAddress("localhost", 6666);
+    PingRequest request = new DefaultPingRequest(
+        MessageId.createRandom(20), createContact(), address);
+    
+    MessageInputStream in = new MessageInputStream(
+        new ByteArrayInputStream(encode(codec, request)));
+    in.readMessage(address);
+    in.close();
+    
+    TestCase.assertEquals(Constants.VERSION, in.getVersion());
+  }
+  
+  @Test(expected=IOException.class)
+  public void rejectBatchForBaselineVersion() throws IOException {
+    BencodeMessageCodec codec 
+      = new BencodeMessageCodec();
+    
+    SocketAddress address = new InetSocketAddress("localhost", 6666);
+    
+    StoreBatchRequest request = new DefaultStoreBatchRequest(
+        MessageId.createRandom(20), createContact(), address, 
+        new Key[] { DefaultKey.valueOf("ardverk:///hello") }, 
+        new Value[] { new ByteArrayValue(StringUtils.getBytes("Hello")) });
+    
+    encode(codec, request);
+  }
+  
+  private static Contact createContact() {
+    DefaultContact contact = new DefaultContact(Type.SOLICITED, 
+        KUID.createRandom(20), 0, false,
+        new InetSocketAddress("localhost", 6666));
+    contact.setCoordinate(new Coordinate(
+        new double[Coordinate.DIMENSIONS], 1.0, 0.5));
+    return contact;
+  }
+  
+  private static byte[] encode(BencodeMessageCodec codec, 
+      Message message) throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    Encoder encoder = codec.createEncoder(baos);
+    try {
+      encoder.write(message);
+    } finally {
+      encoder.close();
+    }
+    return baos.toByteArray();
+  }
+  
+  /**
+   * Lets the {@link BencodeMessageCodec} decode a {@link Message} of 
+   * the current Version from the given {@link Contact}.
+   */
+  private static void receive(BencodeMessageCodec codec, 
+      Contact contact, SocketAddress address) throws IOException {
+    
+    PingRequest request = new DefaultPingRequest(
+        MessageId.createRandom(20), contact, address);
+    
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    MessageOutputStream out = new MessageOutputStream(baos);
+    out.writeMessage(request);
+    out.close();
+    
+    Decoder decoder = codec.createDecoder(address, 
+        new ByteArrayInputStream(baos.toByteArray()));
+    decoder.read();
+    decoder.close();
+  }
+  
+  /**
+   * Reads the {@link Message} the way nodes did before there were 
+   * any other Versions: Everything but Version 0 is rejected and the 
+   * {@link Message} must end where the Version 0 layout ends.
+   */
+  private static Message readBaseline(byte[] data, 
+      SocketAddress src) throws IOException {
+    ByteArrayInputStream bais = new ByteArrayInputStream(data);
+    MessageInputStream in = new MessageInputStream(bais);
+    Message message = in.readMessage(src);
+    in.close();
+    
+    if (in.getVersion() != 0) {
+      throw new IOException("version=" + in.getVersion());
+    }
+    
+    TestCase.assertEquals(0, bais.available());
+    return message;
+  }
 }
\ No newline at end of file
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht.concurrent;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class DHTExecutorTest {
+  
+  @Test
+  public void priority() throws InterruptedException {
+    int poolSize = DHTExecutor.getPoolSize();
+    DHTExecutor.setPoolSize(1);
+    try {
+      final CountDownLatch blocked = new CountDownLatch(1);
+      final CountDownLatch release = new CountDownLatch(1);
+      DHTExecutor.execute(ExecutorKey.PARALLEL, new Runnable() {
+        @Override
+        public void run() {
+          blocked.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException ignore) {
+          }
+        }
+      });
+      
+      TestCase.assertTrue(blocked.await(1L, TimeUnit.SECONDS));
+      
+      final List<ExecutorKey> order = new CopyOnWriteArrayList<>();
+      final CountDownLatch done = new CountDownLatch(4);
+      
+      ExecutorKey[] keys = { 
+        ExecutorKey.REFRESH, ExecutorKey.MAINTENANCE, 
+        ExecutorKey.PARALLEL, ExecutorKey.REFRESH 
+      };
+      
+      for (final ExecutorKey key : keys) {
+        DHTExecutor.execute(key, new Runnable() {
+          @Override
+          public void run() {
+            order.add(key);
+            done.countDown();
+          }
+        });
+      }
+      
+      release.countDown();
+      TestCase.assertTrue(done.await(1L, TimeUnit.SECONDS));
+      
+      TestCase.assertEquals(ExecutorKey.PARALLEL, order.get(0));
+      TestCase.assertEquals(ExecutorKey.MAINTENANCE, order.get(1));
+      TestCase.assertEquals(ExecutorKey.REFRESH, order.get(2));
+      TestCase.assertEquals(ExecutorKey.REFRESH, order.get(3));
+    } finally {
+      DHTExecutor.setPoolSize(poolSize);
+    }
+  }
+  
+  @Test
+  public void reject() throws InterruptedException {
+    int poolSize = DHTExecutor.getPoolSize();
+    int maxQueueSize = DHTExecutor.getMaxQueueSize();
+    DHTExecutor.setPoolSize(1);
+    DHTExecutor.setMaxQueueSize(1);
+    
+    final CountDownLatch blocked = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    try {
+      DHTExecutor.execute(ExecutorKey.PARALLEL, new Runnable() {
+        @Override
+        public void run() {
+          blocked.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException ignore) {
+          }
+        }
+      });
+      
+      TestCase.assertTrue(blocked.await(1L, TimeUnit.SECONDS));
+      
+      Runnable nop = new Runnable() {
+        @Override
+        public void run() {
+        }
+      };
+      
+      DHTExecutor.execute(ExecutorKey.PARALLEL, nop);
+      
+      try {
+        DHTExecutor.execute(ExecutorKey.PARALLEL, nop);
+        TestCase.fail("Should have failed!");
+      } catch (RejectedExecutionException expected) {
+      }
+    } finally {
+      release.countDown();
+      DHTExecutor.setMaxQueueSize(maxQueueSize);
+      DHTExecutor.setPoolSize(poolSize);
+    }
+  }
+  
+  @Test
+  public void rejectWorkStealing() {
+    int maxQueueSize = DHTExecutor.getMaxQueueSize();
+    DHTExecutor.setMaxQueueSize(0);
+    try {
+      DHTExecutor.execute(ExecutorKey.WORK_STEALING, new Runnable() {
+        @Override
+        public void run() {
+        }
+      });
+      TestCase.fail("Should have failed!");
+    } catch (RejectedExecutionException expected) {
+    } finally {
+      DHTExecutor.setMaxQueueSize(maxQueueSize);
+    }
+  }
+  
+  @Test
+  public void rejectKeyedSerial() {
+    final AtomicBoolean ran = new AtomicBoolean(false);
+    
+    int maxQueueSize = DHTExecutor.getMaxQueueSize();
+    RejectedExecutionHandler handler 
+      = DHTExecutor.getRejectedExecutionHandler();
+    
+    // The caller must not run it outside of its key's order
+    DHTExecutor.setMaxQueueSize(0);
+    DHTExecutor.setRejectedExecutionHandler(
+        new ThreadPoolExecutor.CallerRunsPolicy());
+    try {
+      DHTExecutor.execute(ExecutorKey.KEYED_SERIAL, "key", new Runnable() {
+        @Override
+        public void run() {
+          ran.set(true);
+        }
+      });
+      TestCase.fail("Should have failed!");
+    } catch (RejectedExecutionException expected) {
+      TestCase.assertFalse(ran.get());
+    } finally {
+      DHTExecutor.setMaxQueueSize(maxQueueSize);
+      DHTExecutor.setRejectedExecutionHandler(handler);
+    }
+  }
+}
\ No newline at end of file
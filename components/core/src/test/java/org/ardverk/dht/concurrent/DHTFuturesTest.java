@@ -0,0 +1,155 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht.concurrent;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+
+import junit.framework.TestCase;
+
+import org.ardverk.dht.concurrent.DHTFutures.AsyncFunction;
+import org.ardverk.dht.concurrent.DHTFutures.Function;
+import org.junit.Test;
+
+public class DHTFuturesTest {
+  
+  private static final Function<Integer, String> TO_STRING 
+      = new Function<Integer, String>() {
+    @Override
+    public String apply(Integer value) {
+      return Integer.toString(value);
+    }
+  };
+  
+  @Test
+  public void transform() throws Exception {
+    DHTFuture<Integer> src = new DHTValueFuture<Integer>();
+    DHTFuture<String> dst = DHTFutures.transform(src, TO_STRING);
+    
+    TestCase.assertFalse(dst.isDone());
+    src.setValue(42);
+    TestCase.assertEquals("42", dst.get());
+  }
+  
+  @Test
+  public void transformException() throws Exception {
+    DHTFuture<Integer> src = new DHTValueFuture<Integer>();
+    DHTFuture<String> dst = DHTFutures.transform(src, TO_STRING);
+    
+    IOException exception = new IOException();
+    src.setException(exception);
+    
+    try {
+      dst.get();
+      TestCase.fail("Should have failed!");
+    } catch (ExecutionException expected) {
+      TestCase.assertSame(exception, expected.getCause());
+    }
+  }
+  
+  @Test
+  public void transformCancel() {
+    DHTFuture<Integer> src = new DHTValueFuture<Integer>();
+    DHTFuture<String> dst = DHTFutures.transform(src, TO_STRING);
+    
+    dst.cancel(true);
+    TestCase.assertTrue(src.isCancelled());
+    
+    // And the other way around
+    src = new DHTValueFuture<Integer>();
+    dst = DHTFutures.transform(src, TO_STRING);
+    
+    src.cancel(true);
+    TestCase.assertTrue(dst.isCancelled());
+  }
+  
+  @Test
+  public void compose() throws Exception {
+    final DHTFuture<String> next = new DHTValueFuture<String>();
+    
+    DHTFuture<Integer> src = new DHTValueFuture<Integer>();
+    DHTFuture<String> dst = DHTFutures.compose(src, 
+        new AsyncFunction<Integer, String>() {
+      @Override
+      public DHTFuture<String> apply(Integer value) {
+        return next;
+      }
+    });
+    
+    src.setValue(42);
+    TestCase.assertFalse(dst.isDone());
+    
+    next.setValue("Hello World");
+    TestCase.assertEquals("Hello World", dst.get());
+  }
+  
+  @Test
+  public void composeCancel() {
+    final DHTFuture<String> next = new DHTValueFuture<String>();
+    AsyncFunction<Integer, String> function 
+        = new AsyncFunction<Integer, String>() {
+      @Override
+      public DHTFuture<String> apply(Integer value) {
+        return next;
+      }
+    };
+    
+    // Cancel the first stage
+    DHTFuture<Integer> src = new DHTValueFuture<Integer>();
+    DHTFuture<String> dst = DHTFutures.compose(src, function);
+    
+    dst.cancel(true);
+    TestCase.assertTrue(src.isCancelled());
+    TestCase.assertFalse(next.isDone());
+    
+    // Cancel the second stage
+    src = new DHTValueFuture<Integer>();
+    dst = DHTFutures.compose(src, function);
+    
+    src.setValue(42);
+    dst.cancel(true);
+    TestCase.assertTrue(next.isCancelled());
+  }
+  
+  @Test
+  public void forward() throws Exception {
+    DHTFuture<String> src = new DHTValueFuture<String>();
+    DHTFuture<String> dst = new DHTValueFuture<String>();
+    DHTFutures.forward(src, dst);
+    
+    src.setValue("Hello World");
+    TestCase.assertEquals("Hello World", dst.get());
+  }
+  
+  @Test
+  public void forwardCancel() {
+    DHTFuture<String> src = new DHTValueFuture<String>();
+    DHTFuture<String> dst = new DHTValueFuture<String>();
+    DHTFutures.forward(src, dst);
+    
+    dst.cancel(true);
+    TestCase.assertTrue(src.isCancelled());
+    
+    // And the other way around
+    src = new DHTValueFuture<String>();
+    dst = new DHTValueFuture<String>();
+    DHTFutures.forward(src, dst);
+    
+    src.cancel(true);
+    TestCase.assertTrue(dst.isCancelled());
+  }
+}
\ No newline at end of file
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht.concurrent;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+
+public class DeadlineTest {
+
+  @Test
+  public void clamp() {
+    Deadline deadline = Deadline.after(1L, TimeUnit.MINUTES);
+    TestCase.assertFalse(deadline.isExpired());
+    
+    TestCase.assertEquals(1000L, deadline.clamp(
+        1000L, TimeUnit.MILLISECONDS));
+    TestCase.assertTrue(deadline.clamp(5L, TimeUnit.MINUTES) 
+        <= TimeUnit.MINUTES.toMillis(1L));
+  }
+  
+  @Test
+  public void expired() throws InterruptedException {
+    Deadline deadline = Deadline.after(10L, TimeUnit.MILLISECONDS);
+    Thread.sleep(50L);
+    
+    TestCase.assertTrue(deadline.isExpired());
+    TestCase.assertEquals(0L, deadline.getRemainingInMillis());
+    TestCase.assertEquals(1L, deadline.clamp(
+        1000L, TimeUnit.MILLISECONDS));
+  }
+  
+  @Test
+  public void min() {
+    Deadline d1 = Deadline.after(1L, TimeUnit.SECONDS);
+    Deadline d2 = Deadline.after(1L, TimeUnit.MINUTES);
+    
+    TestCase.assertSame(d1, Deadline.min(d1, d2));
+    TestCase.assertSame(d1, Deadline.min(d2, d1));
+    TestCase.assertSame(d2, Deadline.min(null, d2));
+    TestCase.assertNull(Deadline.min(null, null));
+  }
+}
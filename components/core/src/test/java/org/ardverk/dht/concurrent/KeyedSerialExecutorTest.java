@@ -0,0 +1,110 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht.concurrent;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class KeyedSerialExecutorTest {
+  
+  @Test
+  public void sameKey() throws InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      KeyedSerialExecutor keyed = new KeyedSerialExecutor(executor);
+      
+      final int count = 1000;
+      final List<Integer> order = new CopyOnWriteArrayList<>();
+      final AtomicInteger active = new AtomicInteger();
+      final AtomicInteger overlaps = new AtomicInteger();
+      final CountDownLatch done = new CountDownLatch(count);
+      
+      for (int i = 0; i < count; i++) {
+        final int value = i;
+        keyed.execute("key", new Runnable() {
+          @Override
+          public void run() {
+            if (active.incrementAndGet() != 1) {
+              overlaps.incrementAndGet();
+            }
+            order.add(value);
+            active.decrementAndGet();
+            done.countDown();
+          }
+        });
+      }
+      
+      TestCase.assertTrue(done.await(5L, TimeUnit.SECONDS));
+      TestCase.assertEquals(0, overlaps.get());
+      
+      for (int i = 0; i < count; i++) {
+        TestCase.assertEquals(i, order.get(i).intValue());
+      }
+      
+      Thread.sleep(50L);
+      TestCase.assertEquals(0, keyed.size());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+  
+  @Test
+  public void differentKeys() throws InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      KeyedSerialExecutor keyed = new KeyedSerialExecutor(executor);
+      
+      final CountDownLatch blocked = new CountDownLatch(1);
+      final CountDownLatch release = new CountDownLatch(1);
+      keyed.execute("key1", new Runnable() {
+        @Override
+        public void run() {
+          blocked.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException ignore) {
+          }
+        }
+      });
+      
+      TestCase.assertTrue(blocked.await(1L, TimeUnit.SECONDS));
+      
+      // key2 must not wait for key1
+      final CountDownLatch done = new CountDownLatch(1);
+      keyed.execute("key2", new Runnable() {
+        @Override
+        public void run() {
+          done.countDown();
+        }
+      });
+      
+      TestCase.assertTrue(done.await(1L, TimeUnit.SECONDS));
+      release.countDown();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
\ No newline at end of file
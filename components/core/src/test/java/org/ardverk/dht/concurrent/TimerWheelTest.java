@@ -0,0 +1,106 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht.concurrent;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.ardverk.dht.concurrent.TimerWheel.Timeout;
+import org.junit.Test;
+
+
+public class TimerWheelTest {
+
+  @Test
+  public void schedule() throws InterruptedException {
+    TimerWheel timer = new TimerWheel("TimerWheelTest",
+        1L, TimeUnit.MILLISECONDS, 8);
+
+    try {
+      final CountDownLatch latch = new CountDownLatch(1);
+      Runnable task = new Runnable() {
+        @Override
+        public void run() {
+          latch.countDown();
+        }
+      };
+
+      // The delay is longer than one revolution of the wheel.
+      long startTime = System.currentTimeMillis();
+      Timeout timeout = timer.schedule(task, 50L, TimeUnit.MILLISECONDS);
+
+      TestCase.assertTrue(latch.await(5L, TimeUnit.SECONDS));
+      TestCase.assertTrue(System.currentTimeMillis() - startTime >= 50L);
+      TestCase.assertTrue(timeout.isExpired());
+      TestCase.assertFalse(timeout.cancel());
+    } finally {
+      timer.close();
+    }
+  }
+
+  @Test
+  public void cancel() throws InterruptedException {
+    TimerWheel timer = new TimerWheel("TimerWheelTest",
+        1L, TimeUnit.MILLISECONDS, 8);
+
+    try {
+      final AtomicInteger counter = new AtomicInteger();
+      Runnable task = new Runnable() {
+        @Override
+        public void run() {
+          counter.incrementAndGet();
+        }
+      };
+
+      Timeout timeout = timer.schedule(task, 20L, TimeUnit.MILLISECONDS);
+      TestCase.assertTrue(timeout.cancel());
+      TestCase.assertTrue(timeout.isCancelled());
+
+      Thread.sleep(100L);
+      TestCase.assertEquals(0, counter.get());
+    } finally {
+      timer.close();
+    }
+  }
+
+  @Test
+  public void fixedDelay() throws InterruptedException {
+    TimerWheel timer = new TimerWheel("TimerWheelTest",
+        1L, TimeUnit.MILLISECONDS, 8);
+
+    try {
+      final CountDownLatch latch = new CountDownLatch(5);
+      Runnable task = new Runnable() {
+        @Override
+        public void run() {
+          latch.countDown();
+        }
+      };
+
+      Timeout timeout = timer.scheduleWithFixedDelay(
+          task, 5L, 5L, TimeUnit.MILLISECONDS);
+
+      TestCase.assertTrue(latch.await(5L, TimeUnit.SECONDS));
+      TestCase.assertTrue(timeout.cancel());
+    } finally {
+      timer.close();
+    }
+  }
+}
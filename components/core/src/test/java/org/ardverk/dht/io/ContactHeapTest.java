@@ -0,0 +1,105 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht.io;
+
+import java.net.InetSocketAddress;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+import org.ardverk.dht.KUID;
+import org.ardverk.dht.routing.Contact;
+import org.ardverk.dht.routing.Contact.Type;
+import org.ardverk.dht.routing.DefaultContact;
+import org.ardverk.dht.utils.XorComparator;
+import org.junit.Test;
+
+
+public class ContactHeapTest {
+
+  @Test
+  public void poll() {
+    KUID lookupId = KUID.createRandom(20);
+    
+    ContactHeap heap = new ContactHeap(Integer.MAX_VALUE);
+    TreeSet<Contact> expected = new TreeSet<Contact>(
+        new XorComparator(lookupId));
+    
+    for (int i = 0; i < 100; i++) {
+      Contact contact = createContact(lookupId);
+      heap.offer(new ContactDistance(lookupId, contact, 1));
+      expected.add(contact);
+    }
+    
+    TestCase.assertEquals(expected.size(), heap.size());
+    
+    // The heap and the Set should be in the same order!
+    while (!heap.isEmpty()) {
+      TestCase.assertEquals(expected.pollFirst(), 
+          heap.poll().getContact());
+    }
+    TestCase.assertTrue(expected.isEmpty());
+  }
+  
+  @Test
+  public void bounded() {
+    KUID lookupId = KUID.createRandom(20);
+    
+    ContactHeap heap = new ContactHeap(10);
+    TreeSet<Contact> expected = new TreeSet<Contact>(
+        new XorComparator(lookupId));
+    
+    for (int i = 0; i < 100; i++) {
+      Contact contact = createContact(lookupId);
+      heap.offer(new ContactDistance(lookupId, contact, 1));
+      expected.add(contact);
+    }
+    
+    // Only the 10 closest are being kept
+    TestCase.assertEquals(10, heap.size());
+    for (int i = 0; i < 10; i++) {
+      TestCase.assertEquals(expected.pollFirst(), 
+          heap.poll().getContact());
+    }
+  }
+  
+  @Test
+  public void closest() {
+    KUID lookupId = KUID.createRandom(20);
+    
+    ClosestContacts closest = new ClosestContacts(5);
+    TreeSet<Contact> expected = new TreeSet<Contact>(
+        new XorComparator(lookupId));
+    
+    for (int i = 0; i < 100; i++) {
+      Contact contact = createContact(lookupId);
+      closest.add(new ContactDistance(lookupId, contact, 1));
+      expected.add(contact);
+    }
+    
+    Contact[] contacts = closest.toContacts();
+    TestCase.assertEquals(5, contacts.length);
+    for (Contact contact : contacts) {
+      TestCase.assertEquals(expected.pollFirst(), contact);
+    }
+  }
+  
+  private static Contact createContact(KUID lookupId) {
+    return new DefaultContact(Type.SOLICITED, KUID.createRandom(lookupId),
+        0, false, new InetSocketAddress("localhost", 2000));
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht.io;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+
+public class LatencyTrackerTest {
+
+  @Test
+  public void percentile() {
+    LatencyTracker tracker = new LatencyTracker(100);
+    TestCase.assertEquals(-1L, tracker.getPercentile(
+        0.9d, 1, TimeUnit.MILLISECONDS));
+    
+    for (int i = 100; i > 0; --i) {
+      tracker.add(i, TimeUnit.MILLISECONDS);
+    }
+    
+    TestCase.assertEquals(100, tracker.size());
+    TestCase.assertEquals(90L, tracker.getPercentile(
+        0.9d, 1, TimeUnit.MILLISECONDS));
+    TestCase.assertEquals(100L, tracker.getPercentile(
+        1d, 1, TimeUnit.MILLISECONDS));
+    TestCase.assertEquals(1L, tracker.getPercentile(
+        0d, 1, TimeUnit.MILLISECONDS));
+    TestCase.assertEquals(-1L, tracker.getPercentile(
+        0.9d, 101, TimeUnit.MILLISECONDS));
+  }
+  
+  @Test
+  public void window() {
+    LatencyTracker tracker = new LatencyTracker(10);
+    for (int i = 0; i < 10; i++) {
+      tracker.add(1000L, TimeUnit.MILLISECONDS);
+    }
+    
+    for (int i = 0; i < 10; i++) {
+      tracker.add(10L, TimeUnit.MILLISECONDS);
+    }
+    
+    TestCase.assertEquals(10, tracker.size());
+    TestCase.assertEquals(10L, tracker.getPercentile(
+        1d, 1, TimeUnit.MILLISECONDS));
+  }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht.io;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+import org.ardverk.dht.KUID;
+import org.ardverk.dht.routing.Contact;
+import org.ardverk.dht.routing.Contact.Type;
+import org.ardverk.dht.routing.DefaultContact;
+import org.ardverk.dht.utils.XorComparator;
+import org.junit.Test;
+
+/**
+ * Compares the {@link ContactHeap}, {@link ClosestContacts} and 
+ * {@link ContactHistory} based lookup state with the {@link TreeSet} 
+ * and {@link HashMap} based one it has replaced. Both run the same 
+ * simulated lookup: every response has k {@link Contact}s from a 
+ * pre-allocated pool and the lookup ends when the query set has no 
+ * candidate closer than the k-closest.
+ */
+public class LookupStateTest {
+  
+  private static final int K = 20;
+  
+  private static final int POOL_SIZE = 4096;
+  
+  private static final int LOOKUPS = 500;
+  
+  private static final Contact[] POOL = new Contact[POOL_SIZE];
+  
+  static {
+    for (int i = 0; i < POOL.length; i++) {
+      POOL[i] = new DefaultContact(Type.SOLICITED, KUID.createRandom(20), 
+          0, false, new InetSocketAddress("localhost", 2000));
+    }
+  }
+  
+  @Test
+  public void sameRequests() {
+    for (int i = 0; i < LOOKUPS; i++) {
+      KUID lookupId = KUID.createRandom(20);
+      
+      int expected = treeSets(lookupId, POOL, new Random(i));
+      int actual = arrays(lookupId, POOL, new Random(i));
+      TestCase.assertEquals(expected, actual);
+    }
+  }
+  
+  @Test
+  public void fewerAllocations() {
+    if (getAllocatedBytes() < 0L) {
+      return;
+    }
+    
+    KUID[] lookupIds = new KUID[LOOKUPS];
+    for (int i = 0; i < lookupIds.length; i++) {
+      lookupIds[i] = KUID.createRandom(20);
+    }
+    
+    Lookup before = new Lookup() {
+      @Override
+      public int run(KUID lookupId, Contact[] pool, Random random) {
+        return treeSets(lookupId, pool, random);
+      }
+    };
+    
+    Lookup after = new Lookup() {
+      @Override
+      public int run(KUID lookupId, Contact[] pool, Random random) {
+        return arrays(lookupId, pool, random);
+      }
+    };
+    
+    // Warmup
+    run(before, lookupIds);
+    run(after, lookupIds);
+    
+    long treeSets = run(before, lookupIds);
+    long arrays = run(after, lookupIds);
+    TestCase.assertTrue("arrays=" + arrays + ", treeSets=" + treeSets, 
+        arrays < treeSets);
+  }
+  
+  /**
+   * Runs the given {@link Lookup} for all given lookup {@link KUID}s
+   * and returns the number of allocated bytes per lookup.
+   */
+  private static long run(Lookup lookup, KUID[] lookupIds) {
+    Random random = new Random(0L);
+    
+    long bytes = getAllocatedBytes();
+    for (KUID lookupId : lookupIds) {
+      lookup.run(lookupId, POOL, random);
+    }
+    
+    return (getAllocatedBytes() - bytes) / lookupIds.length;
+  }
+  
+  /**
+   * Returns the number of bytes the current {@link Thread} has 
+   * allocated or -1 if it's not supported.
+   */
+  private static long getAllocatedBytes() {
+    java.lang.management.ThreadMXBean bean 
+      = ManagementFactory.getThreadMXBean();
+    if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+      return -1L;
+    }
+    
+    com.sun.management.ThreadMXBean sun 
+      = (com.sun.management.ThreadMXBean)bean;
+    if (!sun.isThreadAllocatedMemorySupported() 
+        || !sun.isThreadAllocatedMemoryEnabled()) {
+      return -1L;
+    }
+    
+    return sun.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+  
+  /**
+   * The lookup state as it used to be.
+   */
+  private static int treeSets(KUID lookupId, Contact[] pool, Random random) {
+    XorComparator comparator = new XorComparator(lookupId);
+    TreeSet<Contact> responses = new TreeSet<Contact>(comparator);
+    TreeSet<Contact> closest = new TreeSet<Contact>(comparator);
+    TreeSet<Contact> query = new TreeSet<Contact>(comparator);
+    Map<KUID, Integer> history = new HashMap<KUID, Integer>();
+    
+    for (int i = 0; i < K; i++) {
+      Contact contact = pool[random.nextInt(pool.length)];
+      if (!history.containsKey(contact.getId())) {
+        history.put(contact.getId(), 1);
+        query.add(contact);
+      }
+    }
+    
+    int requests = 0;
+    while (!query.isEmpty()) {
+      Contact first = query.first();
+      if (closest.size() >= K && !first.getId().isCloserTo(
+          lookupId, closest.last().getId())) {
+        break;
+      }
+      
+      Contact src = query.pollFirst();
+      ++requests;
+      
+      if (responses.add(src)) {
+        closest.add(src);
+        if (closest.size() > K) {
+          closest.pollLast();
+        }
+      }
+      
+      int hop = history.get(src.getId());
+      for (int i = 0; i < K; i++) {
+        Contact contact = pool[random.nextInt(pool.length)];
+        if (!history.containsKey(contact.getId())) {
+          history.put(contact.getId(), hop+1);
+          query.add(contact);
+        }
+      }
+    }
+    
+    return requests;
+  }
+  
+  /**
+   * The lookup state as it is now.
+   */
+  private static int arrays(KUID lookupId, Contact[] pool, Random random) {
+    ClosestContacts closest = new ClosestContacts(K);
+    ContactHeap query = new ContactHeap(4 * K);
+    ContactHistory history = new ContactHistory();
+    
+    for (int i = 0; i < K; i++) {
+      Contact contact = pool[random.nextInt(pool.length)];
+      if (!history.contains(contact.getId())) {
+        ContactDistance element = new ContactDistance(lookupId, contact, 1);
+        history.add(element);
+        query.offer(element);
+      }
+    }
+    
+    int requests = 0;
+    while (!query.isEmpty()) {
+      ContactDistance first = query.peek();
+      if (closest.isFull() && !first.isCloserTo(closest.last())) {
+        break;
+      }
+      
+      ContactDistance src = query.poll();
+      ++requests;
+      
+      if (!src.hasResponded()) {
+        src.setResponded(src.getContact());
+        closest.add(src);
+      }
+      
+      for (int i = 0; i < K; i++) {
+        Contact contact = pool[random.nextInt(pool.length)];
+        if (!history.contains(contact.getId())) {
+          ContactDistance element = new ContactDistance(
+              lookupId, contact, src.getHop()+1);
+          history.add(element);
+          query.offer(element);
+        }
+      }
+    }
+    
+    return requests;
+  }
+  
+  private static interface Lookup {
+    public int run(KUID lookupId, Contact[] pool, Random random);
+  }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht.io;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Provider;
+
+import junit.framework.TestCase;
+
+import org.ardverk.dht.KUID;
+import org.ardverk.dht.config.ConfigProvider;
+import org.ardverk.dht.config.DefaultConfigFactory;
+import org.ardverk.dht.config.NodeConfig;
+import org.ardverk.dht.message.DefaultMessageFactory;
+import org.ardverk.dht.message.LookupRequest;
+import org.ardverk.dht.message.MessageFactory;
+import org.ardverk.dht.message.NodeResponse;
+import org.ardverk.dht.message.RequestMessage;
+import org.ardverk.dht.message.ResponseMessage;
+import org.ardverk.dht.routing.Contact;
+import org.ardverk.dht.routing.Contact.Type;
+import org.ardverk.dht.routing.DefaultContact;
+import org.ardverk.dht.routing.DefaultRouteTable;
+import org.ardverk.dht.routing.Identity;
+import org.ardverk.dht.routing.RouteTableConfig;
+import org.junit.Test;
+
+public class RequestForwarderTest {
+  
+  private static final KUID LOOKUP_ID 
+    = createKUID(0x00);
+  
+  private static final KUID CLOSER_ID 
+    = createKUID(0x01);
+  
+  private static final KUID LOCALHOST_ID 
+    = createKUID(0x10);
+  
+  private static final KUID FARTHER_ID 
+    = createKUID(0x20);
+  
+  private static final KUID REQUESTER_ID 
+    = createKUID(0x30);
+  
+  @Test
+  public void notEnabled() throws IOException {
+    TestMessageDispatcher dispatcher = new TestMessageDispatcher();
+    RequestForwarder forwarder = createForwarder(dispatcher, 0);
+    
+    Contact closer = createContact(CLOSER_ID);
+    TestCase.assertFalse(forwarder.forward(
+        createRequest(3), new Contact[] { closer }));
+    TestCase.assertNull(dispatcher.request);
+  }
+  
+  @Test
+  public void closerOnly() throws IOException {
+    TestMessageDispatcher dispatcher = new TestMessageDispatcher();
+    RequestForwarder forwarder = createForwarder(dispatcher, 3);
+    
+    Contact localhost = createContact(LOCALHOST_ID);
+    Contact farther = createContact(FARTHER_ID);
+    Contact requester = createContact(REQUESTER_ID);
+    Contact closer = createContact(CLOSER_ID);
+    
+    // Nobody is closer to the lookup ID than we are
+    TestCase.assertFalse(forwarder.forward(createRequest(3), 
+        new Contact[] { localhost, farther, requester }));
+    TestCase.assertNull(dispatcher.request);
+    
+    TestCase.assertTrue(forwarder.forward(createRequest(3), 
+        new Contact[] { localhost, farther, requester, closer }));
+    TestCase.assertEquals(CLOSER_ID, dispatcher.contactId);
+  }
+  
+  @Test
+  public void hopLimit() throws IOException {
+    TestMessageDispatcher dispatcher = new TestMessageDispatcher();
+    RequestForwarder forwarder = createForwarder(dispatcher, 2);
+    forwarder.setHopTimeout(3L, TimeUnit.SECONDS);
+    forwarder.setMaxRelayTimeout(4L, TimeUnit.SECONDS);
+    
+    Contact[] contacts = { createContact(CLOSER_ID) };
+    
+    // The requester's hop limit is clamped to ours
+    TestCase.assertTrue(forwarder.forward(createRequest(5), contacts));
+    TestCase.assertEquals(1, 
+        ((LookupRequest)dispatcher.request).getHopLimit());
+    TestCase.assertEquals(4000L, dispatcher.timeoutInMillis);
+    
+    TestCase.assertTrue(forwarder.forward(createRequest(1), contacts));
+    TestCase.assertEquals(0, 
+        ((LookupRequest)dispatcher.request).getHopLimit());
+    TestCase.assertEquals(3000L, dispatcher.timeoutInMillis);
+  }
+  
+  @Test
+  public void timeout() throws IOException {
+    TestMessageDispatcher dispatcher = new TestMessageDispatcher();
+    RequestForwarder forwarder = createForwarder(dispatcher, 3);
+    
+    Contact[] contacts = { createContact(CLOSER_ID), 
+        createContact(FARTHER_ID) };
+    
+    TestCase.assertTrue(forwarder.forward(createRequest(3), contacts));
+    TestCase.assertNull(dispatcher.response);
+    
+    // The next hop didn't respond, answer with our own contacts
+    dispatcher.callback.handleTimeout(null, 
+        dispatcher.timeoutInMillis, TimeUnit.MILLISECONDS);
+    
+    TestCase.assertEquals(REQUESTER_ID, dispatcher.contactId);
+    NodeResponse response = (NodeResponse)dispatcher.response;
+    TestCase.assertEquals(contacts.length, 
+        response.getContacts().length);
+  }
+  
+  private static RequestForwarder createForwarder(
+      final MessageDispatcher dispatcher, int hopLimit) {
+    
+    final NodeConfig config = new NodeConfig();
+    config.setHopLimit(hopLimit);
+    
+    ConfigProvider configProvider 
+        = new ConfigProvider(new DefaultConfigFactory(null)) {
+      @Override
+      public NodeConfig get(NodeConfig other) {
+        return other != null ? other : config;
+      }
+    };
+    
+    Identity localhost = createIdentity(LOCALHOST_ID);
+    DefaultRouteTable routeTable = new DefaultRouteTable(
+        new RouteTableConfig(20), localhost);
+    
+    return new RequestForwarder(new Provider<MessageDispatcher>() {
+      @Override
+      public MessageDispatcher get() {
+        return dispatcher;
+      }
+    }, routeTable, configProvider);
+  }
+  
+  private static LookupRequest createRequest(int hopLimit) {
+    MessageFactory factory = new DefaultMessageFactory(
+        createIdentity(REQUESTER_ID));
+    return factory.createNodeRequest(createContact(LOCALHOST_ID), 
+        LOOKUP_ID, hopLimit);
+  }
+  
+  /**
+   * Creates a {@link KUID} with the given first byte.
+   */
+  private static KUID createKUID(int prefix) {
+    byte[] data = new byte[20];
+    data[0] = (byte)prefix;
+    return KUID.create(data);
+  }
+  
+  private static Identity createIdentity(KUID contactId) {
+    return new Identity(contactId, new InetSocketAddress("localhost", 2000));
+  }
+  
+  private static Contact createContact(KUID contactId) {
+    return new DefaultContact(Type.SOLICITED, contactId,
+        0, false, new InetSocketAddress("localhost", 2000));
+  }
+  
+  private static class TestMessageDispatcher extends MessageDispatcher {
+    
+    private MessageCallback callback = null;
+    
+    private KUID contactId = null;
+    
+    private RequestMessage request = null;
+    
+    private ResponseMessage response = null;
+    
+    private long timeoutInMillis = -1L;
+    
+    public TestMessageDispatcher() {
+      super(new DefaultMessageFactory(createIdentity(LOCALHOST_ID)));
+    }
+    
+    @Override
+    public void send(MessageCallback callback, KUID contactId,
+        RequestMessage request, long timeout, TimeUnit unit) {
+      this.callback = callback;
+      this.contactId = contactId;
+      this.request = request;
+      this.timeoutInMillis = unit.toMillis(timeout);
+    }
+    
+    @Override
+    public void send(KUID contactId, ResponseMessage response) {
+      this.contactId = contactId;
+      this.response = response;
+    }
+    
+    @Override
+    protected ResponseMessage handleRequest0(RequestMessage request) {
+      return null;
+    }
+
+    @Override
+    protected void lateResponse(ResponseMessage response) {
+    }
+  }
+}
\ No newline at end of file
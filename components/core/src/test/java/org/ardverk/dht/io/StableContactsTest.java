@@ -0,0 +1,118 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht.io;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import junit.framework.TestCase;
+
+import org.ardverk.dht.KUID;
+import org.ardverk.dht.routing.Contact;
+import org.ardverk.dht.routing.Contact.Type;
+import org.ardverk.dht.routing.DefaultContact;
+import org.ardverk.dht.utils.XorComparator;
+import org.junit.Test;
+
+
+public class StableContactsTest {
+
+  @Test
+  public void closerThanBound() {
+    KUID lookupId = KUID.createRandom(20);
+    ContactDistance[] elements = createElements(lookupId, 4);
+    
+    ClosestContacts closest = new ClosestContacts(20);
+    StableContacts stable = new StableContacts();
+    
+    // The second closest hasn't responded yet
+    closest.add(elements[0]);
+    closest.add(elements[2]);
+    closest.add(elements[3]);
+    
+    TestCase.assertTrue(stable.update(closest, elements[1]));
+    TestCase.assertEquals(1, stable.size());
+    TestCase.assertEquals(elements[0].getContact(), 
+        stable.toContacts()[0]);
+    
+    // Nothing has changed
+    TestCase.assertFalse(stable.update(closest, elements[1]));
+    
+    // Everyone has responded
+    closest.add(elements[1]);
+    TestCase.assertTrue(stable.update(closest, null));
+    TestCase.assertEquals(4, stable.size());
+    
+    Contact[] contacts = stable.toContacts();
+    for (int i = 0; i < elements.length; i++) {
+      TestCase.assertEquals(elements[i].getContact(), contacts[i]);
+    }
+  }
+  
+  @Test
+  public void onlyGrowing() {
+    KUID lookupId = KUID.createRandom(20);
+    ContactDistance[] elements = createElements(lookupId, 3);
+    
+    ClosestContacts closest = new ClosestContacts(2);
+    StableContacts stable = new StableContacts();
+    
+    closest.add(elements[1]);
+    closest.add(elements[2]);
+    TestCase.assertTrue(stable.update(closest, null));
+    TestCase.assertEquals(2, stable.size());
+    
+    // A closer Contact shows up, it's not stable until it 
+    // has responded and nobody else is leaving the set.
+    TestCase.assertFalse(stable.update(closest, elements[0]));
+    TestCase.assertEquals(2, stable.size());
+    
+    // It pushes the farthest out of the k-closest
+    closest.add(elements[0]);
+    TestCase.assertTrue(stable.update(closest, null));
+    TestCase.assertEquals(3, stable.size());
+    
+    Contact[] contacts = stable.toContacts();
+    for (int i = 0; i < elements.length; i++) {
+      TestCase.assertEquals(elements[i].getContact(), contacts[i]);
+    }
+  }
+  
+  /**
+   * Returns the given number of {@link ContactDistance}s sorted 
+   * by their XOR distance to the lookup {@link KUID}.
+   */
+  private static ContactDistance[] createElements(
+      KUID lookupId, int count) {
+    Contact[] contacts = new Contact[count];
+    for (int i = 0; i < contacts.length; i++) {
+      contacts[i] = new DefaultContact(Type.SOLICITED, 
+          KUID.createRandom(lookupId), 0, false, 
+          new InetSocketAddress("localhost", 2000));
+    }
+    
+    Comparator<? super Contact> comparator = new XorComparator(lookupId);
+    Arrays.sort(contacts, comparator);
+    
+    ContactDistance[] elements = new ContactDistance[count];
+    for (int i = 0; i < elements.length; i++) {
+      elements[i] = new ContactDistance(lookupId, contacts[i], 1);
+    }
+    return elements;
+  }
+}
\ No newline at end of file
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht.io;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Provider;
+
+import junit.framework.TestCase;
+
+import org.ardverk.dht.KUID;
+import org.ardverk.dht.concurrent.DHTFuture;
+import org.ardverk.dht.concurrent.DHTValueFuture;
+import org.ardverk.dht.config.StoreConfig;
+import org.ardverk.dht.entity.StoreEntity;
+import org.ardverk.dht.message.DefaultMessageFactory;
+import org.ardverk.dht.message.RequestMessage;
+import org.ardverk.dht.message.ResponseMessage;
+import org.ardverk.dht.message.StoreRequest;
+import org.ardverk.dht.routing.Contact;
+import org.ardverk.dht.routing.Contact.Type;
+import org.ardverk.dht.routing.DefaultContact;
+import org.ardverk.dht.routing.Identity;
+import org.ardverk.dht.rsrc.ByteArrayValue;
+import org.ardverk.dht.rsrc.DefaultKey;
+import org.ardverk.dht.rsrc.Key;
+import org.ardverk.dht.rsrc.Value;
+import org.junit.Test;
+
+public class StoreResponseHandlerTest {
+  
+  private static final Key KEY = DefaultKey.valueOf("ardverk:///hello");
+  
+  private static final Value VALUE = new ByteArrayValue(new byte[] { 1 });
+  
+  @Test
+  public void quorum() throws Exception {
+    TestMessageDispatcher dispatcher = new TestMessageDispatcher();
+    Contact[] contacts = createContacts(6);
+    
+    DHTFuture<StoreEntity> ackFuture = new DHTValueFuture<StoreEntity>();
+    DHTValueFuture<StoreEntity> future = new DHTValueFuture<StoreEntity>();
+    
+    StoreResponseHandler handler = createHandler(
+        dispatcher, contacts, ackFuture, 3, 2);
+    handler.start(future);
+    
+    // Only W STOREs are being sent
+    TestCase.assertEquals(3, dispatcher.requests.size());
+    
+    dispatcher.respond(handler, 0);
+    TestCase.assertFalse(ackFuture.isDone());
+    
+    // The STORE is acknowledged as soon as there is a quorum
+    dispatcher.respond(handler, 1);
+    TestCase.assertTrue(ackFuture.isDone());
+    TestCase.assertEquals(2, ackFuture.get().getStoreResponses().length);
+    TestCase.assertFalse(future.isDone());
+  }
+  
+  @Test
+  public void background() throws Exception {
+    TestMessageDispatcher dispatcher = new TestMessageDispatcher();
+    Contact[] contacts = createContacts(6);
+    
+    DHTFuture<StoreEntity> ackFuture = new DHTValueFuture<StoreEntity>();
+    DHTValueFuture<StoreEntity> future = new DHTValueFuture<StoreEntity>();
+    
+    StoreResponseHandler handler = createHandler(
+        dispatcher, contacts, ackFuture, 3, 1);
+    handler.start(future);
+    
+    dispatcher.respond(handler, 0);
+    TestCase.assertTrue(ackFuture.isDone());
+    
+    // The remaining replicas are still being collected
+    dispatcher.respond(handler, 1);
+    TestCase.assertFalse(future.isDone());
+    
+    dispatcher.respond(handler, 2);
+    TestCase.assertTrue(future.isDone());
+    TestCase.assertEquals(3, future.get().getStoreResponses().length);
+    TestCase.assertEquals(3, dispatcher.requests.size());
+  }
+  
+  @Test
+  public void retry() throws Exception {
+    TestMessageDispatcher dispatcher = new TestMessageDispatcher();
+    Contact[] contacts = createContacts(6);
+    
+    DHTFuture<StoreEntity> ackFuture = new DHTValueFuture<StoreEntity>();
+    DHTValueFuture<StoreEntity> future = new DHTValueFuture<StoreEntity>();
+    
+    StoreResponseHandler handler = createHandler(
+        dispatcher, contacts, ackFuture, 3, 2);
+    handler.start(future);
+    TestCase.assertEquals(3, dispatcher.requests.size());
+    
+    dispatcher.respond(handler, 0);
+    
+    // The failed replica is being retried on the next Contact
+    dispatcher.timeout(handler, 1);
+    TestCase.assertEquals(4, dispatcher.requests.size());
+    TestCase.assertEquals(contacts[3].getId(), 
+        dispatcher.contactIds.get(3));
+    
+    dispatcher.respond(handler, 2);
+    TestCase.assertTrue(ackFuture.isDone());
+    TestCase.assertFalse(future.isDone());
+    
+    dispatcher.respond(handler, 3);
+    TestCase.assertTrue(future.isDone());
+    TestCase.assertEquals(3, future.get().getStoreResponses().length);
+  }
+  
+  private static StoreResponseHandler createHandler(
+      final MessageDispatcher dispatcher, Contact[] contacts, 
+      DHTFuture<StoreEntity> ackFuture, int w, int quorum) {
+    
+    StoreConfig config = new StoreConfig();
+    config.setW(w);
+    config.setQuorum(quorum);
+    
+    return new StoreResponseHandler(new Provider<MessageDispatcher>() {
+      @Override
+      public MessageDispatcher get() {
+        return dispatcher;
+      }
+    }, contacts, 20, KEY, VALUE, ackFuture, config);
+  }
+  
+  private static Contact[] createContacts(int count) {
+    Contact[] contacts = new Contact[count];
+    for (int i = 0; i < contacts.length; i++) {
+      contacts[i] = new DefaultContact(Type.SOLICITED, 
+          KUID.createRandom(20), 0, false, 
+          new InetSocketAddress("localhost", 2000));
+    }
+    return contacts;
+  }
+  
+  private static class TestMessageDispatcher extends MessageDispatcher {
+    
+    private final List<KUID> contactIds = new ArrayList<KUID>();
+    
+    private final List<RequestMessage> requests 
+      = new ArrayList<RequestMessage>();
+    
+    public TestMessageDispatcher() {
+      super(new DefaultMessageFactory(new Identity(20, 
+          new InetSocketAddress("localhost", 2000))));
+    }
+    
+    @Override
+    public void send(MessageCallback callback, KUID contactId,
+        RequestMessage request, long timeout, TimeUnit unit) {
+      contactIds.add(contactId);
+      requests.add(request);
+    }
+    
+    /**
+     * Answers the STORE with the given index.
+     */
+    public void respond(StoreResponseHandler handler, 
+        int index) throws IOException {
+      StoreRequest request = (StoreRequest)requests.get(index);
+      handler.handleResponse(
+          new RequestEntity(contactIds.get(index), request), 
+          getMessageFactory().createStoreResponse(request, VALUE), 
+          1L, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Times out the STORE with the given index.
+     */
+    public void timeout(StoreResponseHandler handler, 
+        int index) throws IOException {
+      handler.handleTimeout(
+          new RequestEntity(contactIds.get(index), requests.get(index)), 
+          1L, TimeUnit.MILLISECONDS);
+    }
+    
+    @Override
+    protected ResponseMessage handleRequest0(RequestMessage request) {
+      return null;
+    }
+
+    @Override
+    protected void lateResponse(ResponseMessage response) {
+    }
+  }
+}
\ No newline at end of file
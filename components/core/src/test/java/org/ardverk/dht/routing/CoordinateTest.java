@@ -0,0 +1,76 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht.routing;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+
+public class CoordinateTest {
+
+  @Test
+  public void converge() {
+
+    // Three nodes with known pairwise RTTs. After enough samples
+    // each Coordinate should predict the RTTs reasonably well.
+    long[][] rtt = {
+      {   0L,  50L, 120L },
+      {  50L,   0L, 100L },
+      { 120L, 100L,   0L },
+    };
+
+    Coordinate[] coordinates = {
+      Coordinate.ORIGIN, Coordinate.ORIGIN, Coordinate.ORIGIN
+    };
+
+    for (int round = 0; round < 1000; round++) {
+      for (int i = 0; i < coordinates.length; i++) {
+        for (int j = 0; j < coordinates.length; j++) {
+          if (i != j) {
+            coordinates[i] = coordinates[i].update(
+                coordinates[j], rtt[i][j], TimeUnit.MILLISECONDS);
+          }
+        }
+      }
+    }
+
+    for (int i = 0; i < coordinates.length; i++) {
+      TestCase.assertTrue(coordinates[i].getError() < Coordinate.MAX_ERROR);
+
+      for (int j = 0; j < coordinates.length; j++) {
+        if (i != j) {
+          long predicted = coordinates[i].getRoundTripTimeInMillis(coordinates[j]);
+          TestCase.assertTrue("predicted=" + predicted + ", rtt=" + rtt[i][j],
+              Math.abs(predicted - rtt[i][j]) <= rtt[i][j] * 0.2d);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void ignoreBogusSamples() {
+    Coordinate coordinate = Coordinate.ORIGIN;
+
+    TestCase.assertSame(coordinate, coordinate.update(
+        Coordinate.ORIGIN, -1L, TimeUnit.MILLISECONDS));
+    TestCase.assertSame(coordinate, coordinate.update(
+        Coordinate.ORIGIN, 1L, TimeUnit.HOURS));
+  }
+}
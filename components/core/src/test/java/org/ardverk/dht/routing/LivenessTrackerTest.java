@@ -0,0 +1,120 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht.routing;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.ardverk.dht.KUID;
+import org.ardverk.dht.routing.Contact.Type;
+import org.junit.Test;
+
+
+public class LivenessTrackerTest {
+
+  @Test
+  public void alive() {
+    LivenessTracker liveness = new LivenessTracker();
+    Contact contact = createContact();
+
+    KUID contactId = contact.getId();
+    SocketAddress address = contact.getRemoteAddress();
+
+    TestCase.assertNull(liveness.getOutcome(
+        contact, 1L, TimeUnit.MINUTES));
+
+    liveness.handleRequest(contactId, address);
+    TestCase.assertTrue(liveness.isPending(contact));
+    TestCase.assertFalse(liveness.isAlive(contact, 1L, TimeUnit.MINUTES));
+
+    TestCase.assertNotNull(liveness.getOutcome(
+        contact, 1L, TimeUnit.MINUTES));
+    TestCase.assertEquals(1L, liveness.getPiggybackCount());
+
+    liveness.handleResponse(contactId, address);
+    TestCase.assertFalse(liveness.isPending(contact));
+    TestCase.assertTrue(liveness.isAlive(contact, 1L, TimeUnit.MINUTES));
+
+    TestCase.assertNotNull(liveness.getOutcome(
+        contact, 1L, TimeUnit.MINUTES));
+    TestCase.assertEquals(1L, liveness.getAvoidedCount());
+  }
+
+  @Test
+  public void failure() {
+    LivenessTracker liveness = new LivenessTracker();
+    Contact contact = createContact();
+
+    KUID contactId = contact.getId();
+    SocketAddress address = contact.getRemoteAddress();
+
+    liveness.handleRequest(contactId, address);
+    liveness.handleFailure(contactId, address);
+
+    TestCase.assertFalse(liveness.isPending(contact));
+    TestCase.assertFalse(liveness.isAlive(contact, 1L, TimeUnit.MINUTES));
+    TestCase.assertNull(liveness.getOutcome(
+        contact, 1L, TimeUnit.MINUTES));
+  }
+
+  @Test
+  public void differentAddress() {
+    LivenessTracker liveness = new LivenessTracker();
+    Contact contact = createContact();
+
+    liveness.handleResponse(contact.getId(),
+        new InetSocketAddress("localhost", 3000));
+
+    TestCase.assertFalse(liveness.isAlive(contact, 1L, TimeUnit.MINUTES));
+  }
+
+  @Test
+  public void keepPending() {
+    LivenessTracker liveness = new LivenessTracker(2);
+    
+    Contact pending = createContact();
+    liveness.handleRequest(pending.getId(), pending.getRemoteAddress());
+    TestCase.assertNotNull(liveness.getOutcome(
+        pending, 1L, TimeUnit.MINUTES));
+    
+    // Push the pending Contact way beyond the LRU limit
+    Contact[] others = new Contact[4];
+    for (int i = 0; i < others.length; i++) {
+      others[i] = createContact();
+      liveness.handleResponse(others[i].getId(), 
+          others[i].getRemoteAddress());
+    }
+    
+    TestCase.assertTrue(liveness.isPending(pending));
+    TestCase.assertTrue(liveness.isAlive(
+        others[others.length-1], 1L, TimeUnit.MINUTES));
+    TestCase.assertFalse(liveness.isAlive(
+        others[0], 1L, TimeUnit.MINUTES));
+    
+    // Its outcome completes once it responds
+    liveness.handleResponse(pending.getId(), pending.getRemoteAddress());
+    TestCase.assertTrue(liveness.isAlive(pending, 1L, TimeUnit.MINUTES));
+  }
+
+  private static Contact createContact() {
+    return new DefaultContact(Type.SOLICITED, KUID.createRandom(20),
+        0, false, new InetSocketAddress("localhost", 2000));
+  }
+}
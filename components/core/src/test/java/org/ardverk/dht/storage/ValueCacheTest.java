@@ -0,0 +1,63 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht.storage;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.ardverk.dht.rsrc.ByteArrayValue;
+import org.ardverk.dht.rsrc.DefaultKey;
+import org.ardverk.dht.rsrc.Key;
+import org.ardverk.dht.rsrc.Value;
+import org.junit.Test;
+
+
+public class ValueCacheTest {
+
+  @Test
+  public void storeAndGet() throws InterruptedException {
+    ValueCache cache = new ValueCache();
+
+    Key key = DefaultKey.valueOf("ardverk:///hello");
+    Value value = new ByteArrayValue(new byte[] { 1, 2, 3 });
+
+    TestCase.assertNull(cache.get(null, key));
+
+    TestCase.assertSame(SimpleDatastore.OK, cache.store(
+        null, key, value, 50L, TimeUnit.MILLISECONDS));
+    TestCase.assertNotNull(cache.get(null, key));
+    TestCase.assertEquals(1, cache.size());
+
+    Thread.sleep(100L);
+    TestCase.assertNull(cache.get(null, key));
+    TestCase.assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void maxTimeout() {
+    ValueCache cache = new ValueCache();
+    cache.setMaxTimeout(0L, TimeUnit.MILLISECONDS);
+
+    Key key = DefaultKey.valueOf("ardverk:///hello");
+    Value value = new ByteArrayValue(new byte[] { 1, 2, 3 });
+
+    TestCase.assertSame(SimpleDatastore.NOT_FOUND, cache.store(
+        null, key, value, 1L, TimeUnit.MINUTES));
+    TestCase.assertNull(cache.get(null, key));
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2009-2012 Roger Kapsi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ardverk.dht.utils;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class ExpiringHashSetTest {
+  
+  @Test
+  public void addAndContains() {
+    ExpiringHashSet<String> set 
+      = new ExpiringHashSet<String>(1L, TimeUnit.MINUTES);
+    
+    TestCase.assertTrue(set.add("a"));
+    TestCase.assertFalse(set.add("a"));
+    TestCase.assertTrue(set.contains("a"));
+    TestCase.assertFalse(set.contains("b"));
+    TestCase.assertEquals(1, set.size());
+  }
+  
+  @Test
+  public void expire() throws InterruptedException {
+    ExpiringHashSet<String> set 
+      = new ExpiringHashSet<String>(100L, TimeUnit.MILLISECONDS, 4, 1024);
+    
+    TestCase.assertTrue(set.add("a"));
+    TestCase.assertTrue(set.contains("a"));
+    
+    // One extra slot: the elements live between 100 and 125ms
+    Thread.sleep(250L);
+    
+    TestCase.assertFalse(set.contains("a"));
+    TestCase.assertEquals(0, set.size());
+    TestCase.assertTrue(set.add("a"));
+  }
+  
+  @Test
+  public void maxSize() {
+    int maxSize = 90;
+    ExpiringHashSet<Integer> set 
+      = new ExpiringHashSet<Integer>(1L, TimeUnit.HOURS, 8, maxSize);
+    
+    int added = 0;
+    for (int i = 0; i < 10000; i++) {
+      if (set.add(i)) {
+        ++added;
+      }
+    }
+    
+    TestCase.assertTrue(0 < added && added <= maxSize);
+    TestCase.assertEquals(added, set.size());
+    
+    // The first elements have been remembered and the 
+    // others were rejected as they didn't fit.
+    TestCase.assertFalse(set.add(0));
+    TestCase.assertFalse(set.add(9999));
+    TestCase.assertFalse(set.contains(9999));
+  }
+}
\ No newline at end of file
@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
@@ -75,6 +76,13 @@ public class HttpTransport extends AbstractTransport {
     EXECUTOR.setKeepAliveTime(10L, TimeUnit.SECONDS);
   }
   
+  private static final Executor CALLER_RUNS = new Executor() {
+    @Override
+    public void execute(Runnable command) {
+      command.run();
+    }
+  };
+  
   private final MessageCodec codec = new BencodeMessageCodec();
   
   private final SimpleChannelHandler requestHandler 
@@ -226,9 +234,31 @@ public class HttpTransport extends AbstractTransport {
       
       ByteArrayInputStream bais = new ByteArrayInputStream(content.array());
       Decoder decoder = codec.createDecoder(src, bais);
-      RequestMessage request = (RequestMessage)decoder.read();
+      final RequestMessage request = (RequestMessage)decoder.read();
       decoder.close();
       
+      final Channel channel = e.getChannel();
+      
+      // Handling the request may block and is therefore not being 
+      // done on Netty's I/O Thread if there is a request Executor.
+      Runnable task = new Runnable() {
+        @Override
+        public void run() {
+          try {
+            handleRequest(channel, request);
+          } catch (IOException err) {
+            LOG.error("IOException", err);
+            HttpUtils.close(channel);
+          }
+        }
+      };
+      
+      executeRequest(CALLER_RUNS, task);
+    }
+    
+    private void handleRequest(Channel channel, 
+        RequestMessage request) throws IOException {
+      
       ResponseMessage response = HttpTransport.this.handleRequest(request);
       
       ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -246,7 +276,6 @@ public class HttpTransport extends AbstractTransport {
       httpResponse.setHeader(HttpHeaders.Names.CONNECTION, 
           HttpHeaders.Values.CLOSE);
       
-      Channel channel = e.getChannel();
       ChannelFuture future = channel.write(httpResponse);
       future.addListener(ChannelFutureListener.CLOSE);
       future.addListener(new MessageListener(request, response));
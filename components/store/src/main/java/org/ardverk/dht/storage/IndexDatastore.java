@@ -7,6 +7,9 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLDecoder;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.util.Arrays;
@@ -19,6 +22,7 @@ import org.ardverk.dht.KUID;
 import org.ardverk.dht.routing.Contact;
 import org.ardverk.dht.rsrc.FileValue;
 import org.ardverk.dht.rsrc.Key;
+import org.ardverk.dht.rsrc.KeyFactory;
 import org.ardverk.dht.storage.Index.Values;
 import org.ardverk.dht.storage.message.Context;
 import org.ardverk.dht.storage.message.Request;
@@ -30,17 +34,24 @@ import org.ardverk.io.FileUtils;
 import org.ardverk.io.IoUtils;
 import org.ardverk.io.StreamUtils;
 import org.ardverk.security.MessageDigestUtils;
+import org.ardverk.utils.StringUtils;
 
 public class IndexDatastore extends AbstractIndexDatastore implements Closeable {
   
   private static final String LIST = "list";
   
-  private static final String VALUE_ID = "valueId";
+  static final String VALUE_ID = "valueId";
   
   private static final String MARKER = "marker";
   
   private static final String MAX_COUNT = "max-count";
   
+  /**
+   * A conditional GET returns {@link StatusLine#NOT_MODIFIED} instead 
+   * of the value if its vtag or ETag matches the given one.
+   */
+  static final String IF_NONE_MATCH = "if-none-match";
+  
   private final Index index;
   
   private final File content;
@@ -275,7 +286,9 @@ public class IndexDatastore extends AbstractIndexDatastore implements Closeable
     
     Map<String, String> query = key.getQueryString();
     if (query != null && !query.isEmpty()) {
-      if (query.containsKey(VALUE_ID)) {
+      if (query.containsKey(IF_NONE_MATCH)) {
+        return conditional(src, key, query.get(IF_NONE_MATCH), store);
+      } else if (query.containsKey(VALUE_ID)) {
         return value(src, key, query);
       } else if (query.containsKey(LIST)) {
         return list(src, key, query);
@@ -296,6 +309,27 @@ public class IndexDatastore extends AbstractIndexDatastore implements Closeable
         StatusLine.MULTIPLE_CHOICES, key, values);
   }
   
+  private Response conditional(Contact src, Key key, 
+      String tag, boolean store) throws IOException {
+    
+    // Everything but the tag, a conditional GET for a specific 
+    // value-id must be compared against that value.
+    Response response = handleGet(src, 
+        removeQueryArgument(key, IF_NONE_MATCH), store);
+    if (response == null 
+        || !response.getStatusLine().equals(StatusLine.OK)) {
+      return response;
+    }
+    
+    Context context = response.getContext();
+    if (tag.equals(context.getStringValue(Constants.VTAG)) 
+        || tag.equals(context.getETag())) {
+      return ResponseFactory.notModified(context);
+    }
+    
+    return response;
+  }
+  
   private Values listValues(Contact src, Key key, Map<String, String> query) throws IOException {
     KUID marker = getMarker(query);
     int maxCount = getMaxCount(query, 1000);
@@ -356,6 +390,39 @@ public class IndexDatastore extends AbstractIndexDatastore implements Closeable
     return getKUID(VALUE_ID, query);
   }
   
+  /**
+   * Returns a copy of the given {@link Key} without the 
+   * given query argument.
+   */
+  static Key removeQueryArgument(Key key, String name) {
+    URI uri = key.getURI();
+    String query = uri.getRawQuery();
+    if (query == null) {
+      return key;
+    }
+    
+    StringBuilder sb = new StringBuilder();
+    for (String argument : query.split("&")) {
+      int index = argument.indexOf('=');
+      String argumentName = (index != -1 
+          ? argument.substring(0, index) : argument);
+      
+      if (!name.equals(decode(argumentName))) {
+        sb.append(sb.length() == 0 ? '?' : '&').append(argument);
+      }
+    }
+    
+    return KeyFactory.parseKey(key.strip().getURI().toString() + sb);
+  }
+  
+  private static String decode(String value) {
+    try {
+      return URLDecoder.decode(value, StringUtils.UTF8);
+    } catch (UnsupportedEncodingException err) {
+      throw new IllegalArgumentException("UnsupportedEncodingException", err);
+    }
+  }
+  
   private static KUID getKUID(String key, Map<String, String> query) {
     String marker = query != null ? query.get(key) : null;
     return marker != null ? KUID.create(marker, 16) : null;
@@ -0,0 +1,94 @@
+package org.ardverk.dht.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLEncoder;
+
+import org.apache.http.HttpStatus;
+import org.ardverk.dht.ValueEntityCache;
+import org.ardverk.dht.rsrc.Key;
+import org.ardverk.dht.rsrc.KeyFactory;
+import org.ardverk.dht.rsrc.Value;
+import org.ardverk.dht.storage.message.Context;
+import org.ardverk.dht.storage.message.StatusLine;
+import org.ardverk.io.IoUtils;
+import org.ardverk.utils.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link ValueEntityCache.Revalidator} for the values that are being
+ * returned by the {@link IndexDatastore}. It asks for a value only if
+ * its vtag (or ETag) is different from the one of the cached copy.
+ * It's installed with {@link ValueEntityCache#setRevalidator(
+ * ValueEntityCache.Revalidator)}.
+ */
+public class ResponseRevalidator implements ValueEntityCache.Revalidator {
+
+  private static final Logger LOG
+    = LoggerFactory.getLogger(ResponseRevalidator.class);
+
+  @Override
+  public Key createConditionalKey(Key key, Value value) {
+    String tag = null;
+
+    InputStream in = null;
+    try {
+      in = value.getContent();
+
+      StatusLine statusLine = StatusLine.valueOf(in);
+      if (statusLine.getCode() != HttpStatus.SC_OK) {
+        return null;
+      }
+
+      Context context = Context.valueOf(in);
+      tag = context.getStringValue(Constants.VTAG);
+      if (tag == null) {
+        tag = context.getETag();
+      }
+    } catch (IOException err) {
+      LOG.error("IOException", err);
+    } finally {
+      IoUtils.close(in);
+    }
+
+    if (tag == null) {
+      return null;
+    }
+
+    URI uri = key.getURI();
+
+    StringBuilder sb = new StringBuilder(uri.toString());
+    sb.append(uri.getRawQuery() == null ? '?' : '&')
+      .append(IndexDatastore.IF_NONE_MATCH).append('=')
+      .append(encode(tag));
+
+    return KeyFactory.parseKey(sb.toString());
+  }
+
+  @Override
+  public boolean isNotModified(Value value) {
+    InputStream in = null;
+    try {
+      in = value.getContent();
+
+      StatusLine statusLine = StatusLine.valueOf(in);
+      return statusLine.getCode() == HttpStatus.SC_NOT_MODIFIED;
+    } catch (IOException err) {
+      LOG.error("IOException", err);
+      return false;
+    } finally {
+      IoUtils.close(in);
+    }
+  }
+
+  private static String encode(String value) {
+    try {
+      return URLEncoder.encode(value, StringUtils.UTF8);
+    } catch (UnsupportedEncodingException err) {
+      throw new IllegalArgumentException("UnsupportedEncodingException", err);
+    }
+  }
+}
@@ -36,6 +36,13 @@ public class ResponseFactory {
     return new Response(StatusLine.NOT_FOUND);
   }
   
+  public static Response notModified(Context context) {
+    Context copy = context.clone();
+    copy.removeHeader(HTTP.CONTENT_LEN);
+    copy.addHeader(Constants.NO_CONTENT);
+    return new Response(StatusLine.NOT_MODIFIED, copy);
+  }
+  
   public static Response error(Throwable t) {
     return error(ExceptionUtils.toString(t));
   }
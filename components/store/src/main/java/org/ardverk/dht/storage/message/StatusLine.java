@@ -17,6 +17,9 @@ public class StatusLine implements Streamable {
   public static final StatusLine MULTIPLE_CHOICES = new StatusLine(
       HttpStatus.SC_MULTIPLE_CHOICES, "Multiple Choices");
   
+  public static final StatusLine NOT_MODIFIED = new StatusLine(
+      HttpStatus.SC_NOT_MODIFIED, "Not Modified");
+  
   public static final StatusLine NOT_FOUND = new StatusLine(
       HttpStatus.SC_NOT_FOUND, "Not Found");
   
@@ -0,0 +1,120 @@
+package org.ardverk.dht.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.net.URLEncoder;
+
+import junit.framework.TestCase;
+
+import org.ardverk.dht.rsrc.Key;
+import org.ardverk.dht.rsrc.KeyFactory;
+import org.ardverk.dht.storage.message.Context;
+import org.ardverk.dht.storage.message.Method;
+import org.ardverk.dht.storage.message.Request;
+import org.ardverk.dht.storage.message.Response;
+import org.ardverk.dht.storage.message.StatusLine;
+import org.ardverk.utils.StringUtils;
+import org.junit.Test;
+
+public class IndexDatastoreTest {
+
+  @Test
+  public void notModified() throws Exception {
+    
+    File dir = new File("data/test");
+    IndexDatastore datastore = new IndexDatastore(dir);
+    try {
+      Key key = KeyFactory.parseKey("ardverk:///hello/conditional");
+      
+      String valueId = put(datastore, key, "Hello");
+      
+      Response response = datastore.handleGet(null, key, false);
+      TestCase.assertEquals(StatusLine.OK, response.getStatusLine());
+      
+      Context context = response.getContext();
+      TestCase.assertEquals(valueId, 
+          context.getStringValue(Constants.VALUE_ID));
+      
+      String vtag = context.getStringValue(Constants.VTAG);
+      TestCase.assertNotNull(vtag);
+      
+      response = datastore.handleGet(null, 
+          conditional(key, "", vtag), false);
+      TestCase.assertEquals(StatusLine.NOT_MODIFIED, 
+          response.getStatusLine());
+      
+      response = datastore.handleGet(null, 
+          conditional(key, "", "other"), false);
+      TestCase.assertEquals(StatusLine.OK, response.getStatusLine());
+    } finally {
+      datastore.close();
+    }
+  }
+  
+  @Test
+  public void notModifiedValueId() throws Exception {
+    
+    File dir = new File("data/test");
+    IndexDatastore datastore = new IndexDatastore(dir);
+    try {
+      Key key = KeyFactory.parseKey("ardverk:///hello/conditional-value");
+      
+      String valueId1 = put(datastore, key, "Hello");
+      Key valueKey1 = KeyFactory.parseKey(key.getURI() 
+          + "?" + IndexDatastore.VALUE_ID + "=" + valueId1);
+      
+      Response response = datastore.handleGet(null, valueKey1, false);
+      TestCase.assertEquals(StatusLine.OK, response.getStatusLine());
+      String vtag1 = response.getContext().getStringValue(Constants.VTAG);
+      
+      // A second value turns the plain GET into a list
+      put(datastore, key, "World");
+      
+      response = datastore.handleGet(null, 
+          conditional(valueKey1, "&", vtag1), false);
+      TestCase.assertEquals(StatusLine.NOT_MODIFIED, 
+          response.getStatusLine());
+      
+      response = datastore.handleGet(null, 
+          conditional(valueKey1, "&", "other"), false);
+      TestCase.assertEquals(StatusLine.OK, response.getStatusLine());
+      TestCase.assertEquals(valueId1, 
+          response.getContext().getStringValue(Constants.VALUE_ID));
+    } finally {
+      datastore.close();
+    }
+  }
+  
+  @Test
+  public void removeQueryArgument() {
+    Key key = KeyFactory.parseKey("ardverk:///hello/world"
+        + "?valueId=abc&if-none-match=xyz&list=true");
+    
+    Key stripped = IndexDatastore.removeQueryArgument(
+        key, IndexDatastore.IF_NONE_MATCH);
+    
+    TestCase.assertEquals("ardverk:///hello/world?valueId=abc&list=true", 
+        stripped.getURI().toString());
+  }
+  
+  private static String put(IndexDatastore datastore, 
+      Key key, String content) throws Exception {
+    byte[] data = StringUtils.getBytes(content);
+    
+    Request request = new Request(Method.PUT, null);
+    request.setContentLength(data.length);
+    
+    Response response = datastore.handlePut(null, key, request, 
+        new ByteArrayInputStream(data));
+    TestCase.assertEquals(StatusLine.OK, response.getStatusLine());
+    
+    return request.getContext().getStringValue(Constants.VALUE_ID);
+  }
+  
+  private static Key conditional(Key key, String separator, String tag) 
+      throws Exception {
+    return KeyFactory.parseKey(key.getURI() + separator 
+        + IndexDatastore.IF_NONE_MATCH + "=" 
+        + URLEncoder.encode(tag, StringUtils.UTF8));
+  }
+}
\ No newline at end of file